@@ -32,21 +32,35 @@ import jmemorize.core.CardSide.CardSideObserver;
 public class Card implements Events, Cloneable
 {
     public static final long    ONE_DAY     = 1000 * 60 * 60 * 24;
-    public static final boolean CLONE_DATES = Main.isDevel();
+
+    /**
+     * Marks a date field as unset. Dates are stored as epoch milliseconds and
+     * are only turned into Date objects by the getters, so that a card doesn't
+     * need to hold five Date instances.
+     */
+    static final long           NO_DATE     = Long.MIN_VALUE;
+    
+    // the dates that can be read with getTime
+    static final int            TESTED      = 0;
+    static final int            EXPIRED     = 1;
+    static final int            CREATED     = 2;
+    static final int            MODIFIED    = 3;
 
     private Category m_category;
     private int      m_level;
+    private long     m_id;        // 0 until the card is added to a lesson
 
-    // content
-    private CardSide m_frontSide = new CardSide();
-    private CardSide m_backSide  = new CardSide();
+    // content, volatile because the sides of cards that are created without
+    // them can be created by any thread
+    private volatile CardSide m_frontSide;
+    private volatile CardSide m_backSide;
     
     // dates
-    private Date     m_dateTested;
-    private Date     m_dateExpired;
-    private Date     m_dateCreated;
-    private Date     m_dateModified;
-    private Date     m_dateTouched; //this date is used internaly to order cards
+    private long     m_dateTested  = NO_DATE;
+    private long     m_dateExpired = NO_DATE;
+    private long     m_dateCreated;
+    private long     m_dateModified;
+    private long     m_dateTouched; //this date is used internaly to order cards
 
     // stats
     private int      m_testsTotal;
@@ -82,15 +96,25 @@ public class Card implements Events, Cloneable
     
     public Card(Date created, CardSide frontSide, CardSide backSide)
     {
-        m_dateCreated = cloneDate(created);
-        m_dateModified = cloneDate(created);
-        m_dateTouched = cloneDate(created);
+        this(created);
 
         m_frontSide = frontSide;
         m_backSide = backSide;
         
         attachCardSideObservers();
     }
+    
+    /**
+     * Creates a card without sides. They are created by 
+     * {@link #loadSide(boolean)} when they are first needed, so that cards
+     * whose texts are kept elsewhere don't hold them until then.
+     */
+    protected Card(Date created)
+    {
+        m_dateCreated = created.getTime();
+        m_dateModified = m_dateCreated;
+        m_dateTouched = m_dateCreated;
+    }
 
     /**
      * The given card sides are assumend to be unformatted.
@@ -111,18 +135,18 @@ public class Card implements Events, Cloneable
     public void setSides(FormattedText front, FormattedText back) 
         throws IllegalArgumentException
     {
-        if (front.equals(m_frontSide.getText()) && 
-            back.equals(m_backSide.getText()))
+        if (front.equals(getFrontSide().getText()) && 
+            back.equals(getBackSide().getText()))
         {
             return;
         }
         
-        m_frontSide.setText(front);
-        m_backSide.setText(back);
+        getFrontSide().setText(front);
+        getBackSide().setText(back);
         
         if (m_category != null)
         {
-            m_dateModified = new Date();
+            m_dateModified = System.currentTimeMillis();
             m_category.fireCardEvent(EDITED_EVENT, this, getCategory(), m_level);
         }
     }
@@ -199,11 +223,17 @@ public class Card implements Events, Cloneable
 
     public CardSide getFrontSide()
     {
+        if (m_frontSide == null)
+            initSides();
+        
         return m_frontSide;
     }
 
     public CardSide getBackSide()
     {
+        if (m_backSide == null)
+            initSides();
+        
         return m_backSide;
     }
     
@@ -213,13 +243,13 @@ public class Card implements Events, Cloneable
      */
     public Date getDateTested()
     {
-        return cloneDate(m_dateTested);
+        return toDate(m_dateTested);
     }
 
     public void setDateTested(Date date)
     {
-        m_dateTested = cloneDate(date);
-        m_dateTouched = cloneDate(date);
+        m_dateTested = toTime(date);
+        m_dateTouched = m_dateTested;
     }
 
     /**
@@ -227,7 +257,7 @@ public class Card implements Events, Cloneable
      */
     public Date getDateExpired()
     {
-        return cloneDate(m_dateExpired);
+        return toDate(m_dateExpired);
     }
 
     /**
@@ -235,7 +265,7 @@ public class Card implements Events, Cloneable
      */
     public void setDateExpired(Date date) // CHECK should this throw a event?
     {
-        m_dateExpired = cloneDate(date);
+        m_dateExpired = toTime(date);
     }
 
     /**
@@ -243,7 +273,7 @@ public class Card implements Events, Cloneable
      */
     public Date getDateCreated()
     {
-        return cloneDate(m_dateCreated);
+        return toDate(m_dateCreated);
     }
 
     public void setDateCreated(Date date)
@@ -251,7 +281,7 @@ public class Card implements Events, Cloneable
         if (date == null) 
             throw new NullPointerException();
         
-        m_dateCreated = cloneDate(date);
+        m_dateCreated = date.getTime();
     }
     
     /**
@@ -259,7 +289,7 @@ public class Card implements Events, Cloneable
      */
     public Date getDateModified()
     {
-        return m_dateModified;
+        return toDate(m_dateModified);
     }
 
     /**
@@ -267,11 +297,11 @@ public class Card implements Events, Cloneable
      */
     public void setDateModified(Date date)
     {
-        if (date.before(m_dateCreated))
+        if (date.getTime() < m_dateCreated)
             throw new IllegalArgumentException(
                 "Modification date can't be before creation date.");
         
-        m_dateModified = date;
+        m_dateModified = date.getTime();
     }
 
     /**
@@ -281,14 +311,40 @@ public class Card implements Events, Cloneable
      */
     public Date getDateTouched()
     {
-        return cloneDate(m_dateTouched);
+        return toDate(m_dateTouched);
     }
 
     public void setDateTouched(Date date)
     {
-        m_dateTouched = cloneDate(date);
+        m_dateTouched = toTime(date);
     }
 
+    /**
+     * The dates of this card in milliseconds, for code that compares a lot of
+     * cards without creating date objects.
+     * 
+     * @param column one of {@link #TESTED}, {@link #EXPIRED}, {@link #CREATED}
+     * or {@link #MODIFIED}.
+     * @return {@link #NO_DATE} if the date isn't set.
+     */
+    long getTime(int column)
+    {
+        switch (column)
+        {
+        case TESTED:
+            return m_dateTested;
+            
+        case EXPIRED:
+            return m_dateExpired;
+            
+        case CREATED:
+            return m_dateCreated;
+            
+        default:
+            return m_dateModified;
+        }
+    }
+    
     /**
      * @return Number of times this card has been tested.
      */
@@ -334,6 +390,25 @@ public class Card implements Events, Cloneable
         return m_category;
     }
 
+    /**
+     * @return the id of this card, which is unique within its lesson and
+     * kept when the lesson is saved. Cards get their id when they are first
+     * added to a category. Cards that were never added have the id 0.
+     */
+    public long getId()
+    {
+        return m_id;
+    }
+
+    /**
+     * Sets the id of a card that is loaded from a file. Cards that are
+     * created otherwise get their id from their lesson.
+     */
+    public void setId(long id)
+    {
+        m_id = id;
+    }
+
     protected void setCategory(Category category)
     {
         m_category = category;
@@ -347,9 +422,8 @@ public class Card implements Events, Cloneable
      */
     public boolean isExpired()
     {
-        Date now = Main.getNow();
-        return m_dateExpired != null && 
-            (m_dateExpired.before(now) || m_dateExpired.equals(now));
+        return m_dateExpired != NO_DATE && 
+            m_dateExpired <= Main.getNow().getTime();
     }
 
     /**
@@ -360,7 +434,8 @@ public class Card implements Events, Cloneable
      */
     public boolean isLearned()
     {
-        return m_dateExpired != null && m_dateExpired.after(Main.getNow());
+        return m_dateExpired != NO_DATE && 
+            m_dateExpired > Main.getNow().getTime();
     }
 
     /**
@@ -371,7 +446,7 @@ public class Card implements Events, Cloneable
      */
     public boolean isUnlearned()
     {
-        return m_dateExpired == null;
+        return m_dateExpired == NO_DATE;
     }
 
     /**
@@ -399,16 +474,11 @@ public class Card implements Events, Cloneable
         try
         {
             card = (Card)super.clone();
-            card.m_frontSide = (CardSide)m_frontSide.clone();
-            card.m_backSide = (CardSide)m_backSide.clone();
-            
-            card.m_dateCreated = cloneDate(m_dateCreated);
-            card.m_dateExpired = cloneDate(m_dateExpired);
-            card.m_dateModified = cloneDate(m_dateModified);
-            card.m_dateTested = cloneDate(m_dateTested);
-            card.m_dateTouched = cloneDate(m_dateTouched);
+            card.m_frontSide = (CardSide)getFrontSide().clone();
+            card.m_backSide = (CardSide)getBackSide().clone();
             
             card.m_category = null; // don't clone category
+            card.m_id = 0;          // the clone gets its own id when added
         }
         catch (CloneNotSupportedException e) 
         {
@@ -428,8 +498,8 @@ public class Card implements Events, Cloneable
     {
         try
         {
-            return new Card(m_dateCreated, 
-                (CardSide)m_frontSide.clone(), (CardSide)m_backSide.clone());
+            return new Card(toDate(m_dateCreated), 
+                (CardSide)getFrontSide().clone(), (CardSide)getBackSide().clone());
         }
         catch (CloneNotSupportedException e)
         {
@@ -443,7 +513,31 @@ public class Card implements Events, Cloneable
      */
     public String toString()
     {
-        return "("+m_frontSide+"/"+m_backSide+")";
+        return "("+getFrontSide()+"/"+getBackSide()+")";
+    }
+    
+    /**
+     * Creates a side of a card that was created without sides. Each side is
+     * only created once.
+     * 
+     * @param frontside <code>true</code> for the front side,
+     * <code>false</code> for the back side.
+     */
+    protected CardSide loadSide(boolean frontside)
+    {
+        throw new IllegalStateException("Card has no sides"); //$NON-NLS-1$
+    }
+    
+    private synchronized void initSides()
+    {
+        if (m_frontSide != null)
+            return;
+        
+        // the front side is set last, because it is checked above
+        m_backSide = loadSide(false);
+        m_frontSide = loadSide(true);
+        
+        attachCardSideObservers();
     }
     
     private void attachCardSideObservers()
@@ -453,7 +547,7 @@ public class Card implements Events, Cloneable
             {
                 if (m_category != null)
                 {
-                    m_dateModified = new Date();
+                    m_dateModified = System.currentTimeMillis();
                     m_category.fireCardEvent(EDITED_EVENT, Card.this, getCategory(), m_level);
                 }
             }
@@ -470,16 +564,20 @@ public class Card implements Events, Cloneable
     }
 
     /**
-     * @return clone of given date or <code>null</code> if given date was
+     * @return a new date for given time or <code>null</code> if the time is
+     * unset.
+     */
+    private static Date toDate(long time)
+    {
+        return time == NO_DATE ? null : new Date(time);
+    }
+
+    /**
+     * @return the time of given date or {@link #NO_DATE} if given date was
      * <code>null</code>.
      */
-    private Date cloneDate(Date date)
+    private static long toTime(Date date)
     {
-        if (CLONE_DATES)
-        {
-            return date == null ? null : (Date)date.clone();
-        }
-        
-        return date;
+        return date == null ? NO_DATE : date.getTime();
     }
 }
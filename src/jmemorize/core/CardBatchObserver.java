@@ -0,0 +1,41 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.List;
+
+/**
+ * A category observer that can handle a number of card events at once. Card
+ * events that happen between {@link Category#beginUpdate()} and
+ * {@link Category#endUpdate()} are delivered to observers implementing this
+ * interface with one call per category and event type, instead of one call
+ * per card. Other observers still get one call per card.
+ */
+public interface CardBatchObserver extends CategoryObserver
+{
+    /**
+     * Gets notified when a number of card events of the same type happened in
+     * the same category.
+     * 
+     * @param type see {@link CategoryObserver#onCardEvent}.
+     * @param cards the cards that changed, in the order of the changes.
+     * @param category the category of the cards, when the events happend.
+     */
+    void onCardsEvent(int type, List<Card> cards, Category category);
+}
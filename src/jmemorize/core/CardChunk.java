@@ -0,0 +1,51 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The local cards of a single category, stored apart from the rest of the
+ * lesson. A category with a chunk only loads its cards when they are first
+ * needed and can drop them again while they are unchanged.
+ *
+ * @see Category#setCardChunk(CardChunk, boolean)
+ */
+public interface CardChunk
+{
+    /**
+     * @return the number of cards in the chunk.
+     */
+    int getCardCount();
+
+    /**
+     * @return the number of decks of the category when the chunk was
+     * written, which can be higher than the number of decks with cards.
+     */
+    int getNumberOfDecks();
+
+    /**
+     * Reads the cards of the chunk. Can be called on any thread.
+     *
+     * @return the cards of every deck level, in the order of their decks.
+     * The cards don't belong to any category yet.
+     */
+    List<List<Card>> loadDecks() throws IOException;
+}
@@ -0,0 +1,444 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.List;
+
+/**
+ * A node of a compiled {@link CardQuery}. Besides testing single cards, a
+ * predicate tells which decks and categories can contain matching cards at
+ * all, so that the others don't have to be visited.
+ */
+abstract class CardPredicate
+{
+    // comparison operators
+    static final int EQUAL         = 0;
+    static final int NOT_EQUAL     = 1;
+    static final int LESS          = 2;
+    static final int LESS_EQUAL    = 3;
+    static final int GREATER       = 4;
+    static final int GREATER_EQUAL = 5;
+    static final int CONTAINS      = 6;
+
+    abstract boolean matches(Card card);
+
+    /**
+     * @return the lowest deck level that a matching card can have.
+     */
+    int getMinLevel()
+    {
+        return 0;
+    }
+
+    /**
+     * @return the highest deck level that a matching card can have.
+     */
+    int getMaxLevel()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the names of the categories below the root that all
+     * matching cards are in, or <code>null</code> if there is no such path.
+     */
+    String[] getPath()
+    {
+        return null;
+    }
+
+    static class And extends CardPredicate
+    {
+        private final CardPredicate[] m_operands;
+
+        public And(List<CardPredicate> operands)
+        {
+            m_operands = operands.toArray(new CardPredicate[operands.size()]);
+        }
+
+        boolean matches(Card card)
+        {
+            for (CardPredicate operand : m_operands)
+            {
+                if (!operand.matches(card))
+                    return false;
+            }
+
+            return true;
+        }
+
+        int getMinLevel()
+        {
+            int level = 0;
+            for (CardPredicate operand : m_operands)
+                level = Math.max(level, operand.getMinLevel());
+
+            return level;
+        }
+
+        int getMaxLevel()
+        {
+            int level = Integer.MAX_VALUE;
+            for (CardPredicate operand : m_operands)
+                level = Math.min(level, operand.getMaxLevel());
+
+            return level;
+        }
+
+        String[] getPath()
+        {
+            // every path has to match, so the longest one is enough
+            String[] path = null;
+            for (CardPredicate operand : m_operands)
+            {
+                String[] other = operand.getPath();
+                if (other != null && (path == null || other.length > path.length))
+                    path = other;
+            }
+
+            return path;
+        }
+    }
+
+    static class Or extends CardPredicate
+    {
+        private final CardPredicate[] m_operands;
+
+        public Or(List<CardPredicate> operands)
+        {
+            m_operands = operands.toArray(new CardPredicate[operands.size()]);
+        }
+
+        boolean matches(Card card)
+        {
+            for (CardPredicate operand : m_operands)
+            {
+                if (operand.matches(card))
+                    return true;
+            }
+
+            return false;
+        }
+
+        int getMinLevel()
+        {
+            int level = Integer.MAX_VALUE;
+            for (CardPredicate operand : m_operands)
+                level = Math.min(level, operand.getMinLevel());
+
+            return level;
+        }
+
+        int getMaxLevel()
+        {
+            int level = 0;
+            for (CardPredicate operand : m_operands)
+                level = Math.max(level, operand.getMaxLevel());
+
+            return level;
+        }
+    }
+
+    static class Not extends CardPredicate
+    {
+        private final CardPredicate m_operand;
+
+        public Not(CardPredicate operand)
+        {
+            m_operand = operand;
+        }
+
+        boolean matches(Card card)
+        {
+            return !m_operand.matches(card);
+        }
+    }
+
+    /**
+     * Compares the deck level of cards.
+     */
+    static class Level extends CardPredicate
+    {
+        private final int m_operator;
+        private final int m_level;
+
+        public Level(int operator, int level)
+        {
+            m_operator = operator;
+            m_level = level;
+        }
+
+        boolean matches(Card card)
+        {
+            return compare(m_operator, card.getLevel(), m_level);
+        }
+
+        int getMinLevel()
+        {
+            switch (m_operator)
+            {
+            case EQUAL:
+            case GREATER_EQUAL:
+                return Math.max(0, m_level);
+
+            case GREATER:
+                return Math.max(0, m_level + 1);
+
+            default:
+                return 0;
+            }
+        }
+
+        int getMaxLevel()
+        {
+            switch (m_operator)
+            {
+            case EQUAL:
+            case LESS_EQUAL:
+                return m_level;
+
+            case LESS:
+                return m_level - 1;
+
+            default:
+                return Integer.MAX_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Compares the pass ratio of cards in percent.
+     */
+    static class Ratio extends CardPredicate
+    {
+        private final int m_operator;
+        private final int m_ratio;
+
+        public Ratio(int operator, int ratio)
+        {
+            m_operator = operator;
+            m_ratio = ratio;
+        }
+
+        boolean matches(Card card)
+        {
+            return compare(m_operator, card.getPassRatio(), m_ratio);
+        }
+    }
+
+    /**
+     * Compares a date of cards with a time span, usually a whole day. A card
+     * is equal to the span if its date is inside of it. Cards without the
+     * date only match {@link #NOT_EQUAL}, unless the span starts at
+     * {@link Card#NO_DATE}, which stands for no date.
+     */
+    static class DateSpan extends CardPredicate
+    {
+        private final int  m_column;
+        private final int  m_operator;
+        private final long m_from;
+        private final long m_to;   // exclusive
+
+        public DateSpan(int column, int operator, long from, long to)
+        {
+            m_column = column;
+            m_operator = operator;
+            m_from = from;
+            m_to = to;
+        }
+
+        boolean matches(Card card)
+        {
+            long time = card.getTime(m_column);
+
+            if (m_from == Card.NO_DATE || time == Card.NO_DATE)
+            {
+                boolean equal = time == m_from;
+                return m_operator == NOT_EQUAL ? !equal :
+                    equal && m_operator != LESS && m_operator != GREATER;
+            }
+
+            switch (m_operator)
+            {
+            case NOT_EQUAL:
+                return time < m_from || time >= m_to;
+
+            case LESS:
+                return time < m_from;
+
+            case LESS_EQUAL:
+                return time < m_to;
+
+            case GREATER:
+                return time >= m_to;
+
+            case GREATER_EQUAL:
+                return time >= m_from;
+
+            default:
+                return time >= m_from && time < m_to;
+            }
+        }
+    }
+
+    /**
+     * Compares the case folded text of card sides.
+     */
+    static class Text extends CardPredicate
+    {
+        private final int    m_side;
+        private final int    m_operator;
+        private final String m_text;
+
+        /**
+         * @param side one of the side constants of {@link SearchTool}.
+         * @param operator {@link #CONTAINS}, {@link #EQUAL} or
+         * {@link #NOT_EQUAL}.
+         */
+        public Text(int side, int operator, String text)
+        {
+            m_side = side;
+            m_operator = operator;
+            m_text = FormattedText.fold(text, false);
+        }
+
+        boolean matches(Card card)
+        {
+            boolean matches = false;
+            if (m_side != SearchTool.FLIP_SIDE)
+                matches = matches(card.getFrontSide());
+
+            if (!matches && m_side != SearchTool.FRONT_SIDE)
+                matches = matches(card.getBackSide());
+
+            return m_operator == NOT_EQUAL ? !matches : matches;
+        }
+
+        private boolean matches(CardSide side)
+        {
+            String text = side.getText().getFolded(false);
+            return m_operator == CONTAINS ? text.contains(m_text) :
+                text.equals(m_text);
+        }
+    }
+
+    /**
+     * Compares the name of the category of cards, ignoring the case.
+     */
+    static class CategoryName extends CardPredicate
+    {
+        private final boolean m_equal;
+        private final String  m_name;
+
+        public CategoryName(boolean equal, String name)
+        {
+            m_equal = equal;
+            m_name = name;
+        }
+
+        boolean matches(Card card)
+        {
+            return card.getCategory().getName().equalsIgnoreCase(m_name) == m_equal;
+        }
+    }
+
+    /**
+     * Matches cards that are in the category with given path or in one of
+     * its child categories. The path starts below the root category and the
+     * names are compared ignoring the case.
+     */
+    static class Path extends CardPredicate
+    {
+        private final boolean  m_equal;
+        private final String[] m_names;
+
+        public Path(boolean equal, String[] names)
+        {
+            m_equal = equal;
+            m_names = names;
+        }
+
+        boolean matches(Card card)
+        {
+            Category category = card.getCategory();
+            int depth = getDepth(category);
+            if (depth < m_names.length)
+                return !m_equal;
+
+            // go up to the category at the depth of the path
+            while (depth > m_names.length)
+            {
+                category = category.getParent();
+                depth--;
+            }
+
+            for (int i = m_names.length - 1; i >= 0; i--)
+            {
+                if (!category.getName().equalsIgnoreCase(m_names[i]))
+                    return !m_equal;
+
+                category = category.getParent();
+            }
+
+            return m_equal;
+        }
+
+        String[] getPath()
+        {
+            return m_equal ? m_names : null;
+        }
+    }
+
+    /**
+     * @return the number of hops from given category to the root. Counted
+     * by walking up the parents, so that it doesn't rely on stored depths.
+     */
+    static int getDepth(Category category)
+    {
+        int depth = 0;
+        for (Category c = category.getParent(); c != null; c = c.getParent())
+            depth++;
+
+        return depth;
+    }
+
+    static boolean compare(int operator, int value, int other)
+    {
+        switch (operator)
+        {
+        case NOT_EQUAL:
+            return value != other;
+
+        case LESS:
+            return value < other;
+
+        case LESS_EQUAL:
+            return value <= other;
+
+        case GREATER:
+            return value > other;
+
+        case GREATER_EQUAL:
+            return value >= other;
+
+        default:
+            return value == other;
+        }
+    }
+}
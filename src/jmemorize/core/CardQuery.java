@@ -0,0 +1,646 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A query over the attributes of cards, compiled to a tree of predicates. A
+ * query consists of terms that are joined with <code>AND</code> (which can be
+ * left out), <code>OR</code> and <code>NOT</code> and grouped with
+ * parentheses. A term is either a word or a quoted text, which has to occur
+ * on one of the card sides, or a comparison like <code>level &gt;= 3</code>.
+ * The fields are
+ * <ul>
+ * <li><code>level</code> (or <code>deck</code>) and <code>ratio</code>, the
+ * pass ratio in percent, which are compared to numbers.</li>
+ * <li><code>created</code>, <code>modified</code>, <code>tested</code> and
+ * <code>expires</code>, which are compared to days like
+ * <code>2008-05-01</code>, <code>today</code>, <code>today+7</code> or
+ * <code>yesterday</code>, to <code>now</code> or to <code>never</code>.</li>
+ * <li><code>front</code>, <code>back</code> and <code>text</code>, where
+ * <code>:</code> tests if the text is contained and <code>=</code> if it is
+ * equal, both ignoring the case.</li>
+ * <li><code>category</code>, the name of the category, and <code>path</code>,
+ * the path of a category below the root like <code>Biology/Cells</code>,
+ * which matches the cards of the category and its child categories.</li>
+ * </ul>
+ * The operators are <code>: = != &lt; &lt;= &gt; &gt;=</code>. For example
+ * <code>level &gt;= 3 expires &lt; today+7 path:Biology ratio &lt; 50</code>.
+ */
+public class CardQuery
+{
+    /**
+     * Thrown if a query can't be parsed.
+     */
+    public static class ParseException extends Exception
+    {
+        private final int m_position;
+
+        public ParseException(String message, int position)
+        {
+            super(message);
+            m_position = position;
+        }
+
+        /**
+         * @return the offset in the query where the error was found.
+         */
+        public int getPosition()
+        {
+            return m_position;
+        }
+    }
+
+    // queries over more cards than this are split into parallel tasks
+    private static final int      PARALLEL_THRESHOLD = 50000;
+    private static final int      CHUNK_SIZE         = 10000;
+
+    private static final long     DAY                = 24L * 60 * 60 * 1000;
+
+    private static ExecutorService s_executor;
+
+    private final String          m_query;
+    private final CardPredicate   m_predicate;
+
+    /**
+     * Compiles given query. Relative days like <code>today</code> refer to
+     * the current date.
+     */
+    public static CardQuery compile(String query) throws ParseException
+    {
+        return compile(query, new Date());
+    }
+
+    /**
+     * Compiles given query with relative days referring to the day of given
+     * date.
+     */
+    public static CardQuery compile(String query, Date now)
+        throws ParseException
+    {
+        return new CardQuery(query, new Parser(query, now).parse());
+    }
+
+    private CardQuery(String query, CardPredicate predicate)
+    {
+        m_query = query;
+        m_predicate = predicate;
+    }
+
+    public boolean matches(Card card)
+    {
+        return m_predicate.matches(card);
+    }
+
+    /**
+     * Finds all cards in given category and its child categories that match
+     * this query, in the same order as {@link Category#getCards()}. Only the
+     * decks and categories that can contain matches are visited. Large
+     * lessons are searched in parallel, so this must be called on the thread
+     * that modifies the lesson, which has to wait for the result.
+     */
+    public List<Card> search(Category category)
+    {
+        List<List<Card>> chunks = getChunks(category);
+
+        int count = 0;
+        for (List<Card> chunk : chunks)
+            count += chunk.size();
+
+        if (count < PARALLEL_THRESHOLD ||
+            Runtime.getRuntime().availableProcessors() < 2)
+        {
+            List<Card> foundCards = new ArrayList<Card>();
+            for (List<Card> chunk : chunks)
+                filter(chunk, foundCards);
+
+            return foundCards;
+        }
+
+        return searchParallel(chunks);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public String toString()
+    {
+        return m_query;
+    }
+
+    /**
+     * @return the decks that can contain matching cards, split into chunks
+     * of at most {@link #CHUNK_SIZE} cards, level by level.
+     */
+    private List<List<Card>> getChunks(Category category)
+    {
+        List<Category> categories = new ArrayList<Category>();
+        collectCategories(category, CardPredicate.getDepth(category),
+            m_predicate.getPath(), categories);
+
+        int maxLevel = Math.min(m_predicate.getMaxLevel(),
+            category.getNumberOfDecks() - 1);
+
+        List<List<Card>> chunks = new ArrayList<List<Card>>();
+        for (int level = m_predicate.getMinLevel(); level <= maxLevel; level++)
+        {
+            for (Category c : categories)
+            {
+                if (level >= c.getNumberOfDecks())
+                    continue;
+
+                List<Card> deck = c.getLocalCards(level);
+                for (int i = 0; i < deck.size(); i += CHUNK_SIZE)
+                {
+                    chunks.add(deck.subList(i, Math.min(deck.size(), i + CHUNK_SIZE)));
+                }
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Adds the given category and its child categories in pre-order, leaving
+     * out the ones that don't lie on the path.
+     * 
+     * @param depth the number of hops from given category to the root.
+     */
+    private static void collectCategories(Category category, int depth,
+        String[] path, List<Category> categories)
+    {
+        if (path != null && depth > 0 && depth <= path.length &&
+            !category.getName().equalsIgnoreCase(path[depth - 1]))
+        {
+            return;
+        }
+
+        // categories above the path can't contain matching cards themselves
+        if (path == null || depth >= path.length)
+            categories.add(category);
+
+        for (Category child : category.getChildCategories())
+            collectCategories(child, depth + 1, path, categories);
+    }
+
+    private void filter(List<Card> cards, List<Card> foundCards)
+    {
+        for (Card card : cards)
+        {
+            if (m_predicate.matches(card))
+                foundCards.add(card);
+        }
+    }
+
+    private List<Card> searchParallel(List<List<Card>> chunks)
+    {
+        List<Future<List<Card>>> futures = new ArrayList<Future<List<Card>>>();
+        for (final List<Card> chunk : chunks)
+        {
+            futures.add(getExecutor().submit(new Callable<List<Card>>() {
+                public List<Card> call()
+                {
+                    List<Card> foundCards = new ArrayList<Card>();
+                    filter(chunk, foundCards);
+                    return foundCards;
+                }
+            }));
+        }
+
+        List<Card> foundCards = new ArrayList<Card>();
+        try
+        {
+            for (Future<List<Card>> future : futures)
+                foundCards.addAll(future.get());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            for (Future<List<Card>> future : futures)
+                future.cancel(true);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+
+        return foundCards;
+    }
+
+    private static synchronized ExecutorService getExecutor()
+    {
+        if (s_executor == null)
+        {
+            int threads = Runtime.getRuntime().availableProcessors();
+            s_executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "Card query"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return s_executor;
+    }
+
+    /**
+     * A recursive descent parser for queries.
+     */
+    private static class Parser
+    {
+        private static final String SPECIAL_CHARS = "()<>=!:\""; //$NON-NLS-1$
+
+        private final String m_text;
+        private final long   m_now;
+        private final long   m_today;
+
+        private int          m_pos;
+
+        public Parser(String text, Date now)
+        {
+            m_text = text;
+            m_now = now.getTime();
+
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(now);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            m_today = calendar.getTimeInMillis();
+        }
+
+        public CardPredicate parse() throws ParseException
+        {
+            CardPredicate predicate = parseOr();
+
+            skipWhitespace();
+            if (m_pos < m_text.length())
+                throw new ParseException("Unexpected '" + m_text.charAt(m_pos) + "'", m_pos);
+
+            return predicate;
+        }
+
+        private CardPredicate parseOr() throws ParseException
+        {
+            List<CardPredicate> operands = new ArrayList<CardPredicate>();
+            operands.add(parseAnd());
+
+            while (acceptKeyword("OR")) //$NON-NLS-1$
+                operands.add(parseAnd());
+
+            return operands.size() == 1 ? operands.get(0) :
+                new CardPredicate.Or(operands);
+        }
+
+        private CardPredicate parseAnd() throws ParseException
+        {
+            List<CardPredicate> operands = new ArrayList<CardPredicate>();
+            operands.add(parseNot());
+
+            while (true)
+            {
+                if (acceptKeyword("AND")) //$NON-NLS-1$
+                {
+                    operands.add(parseNot());
+                    continue;
+                }
+
+                // terms that follow each other are joined with AND
+                skipWhitespace();
+                if (m_pos >= m_text.length() || m_text.charAt(m_pos) == ')' ||
+                    peekKeyword("OR")) //$NON-NLS-1$
+                {
+                    break;
+                }
+
+                operands.add(parseNot());
+            }
+
+            return operands.size() == 1 ? operands.get(0) :
+                new CardPredicate.And(operands);
+        }
+
+        private CardPredicate parseNot() throws ParseException
+        {
+            if (acceptKeyword("NOT")) //$NON-NLS-1$
+                return new CardPredicate.Not(parseNot());
+
+            return parsePrimary();
+        }
+
+        private CardPredicate parsePrimary() throws ParseException
+        {
+            skipWhitespace();
+            if (m_pos >= m_text.length())
+                throw new ParseException("Unexpected end of query", m_pos);
+
+            if (m_text.charAt(m_pos) == '(')
+            {
+                m_pos++;
+                CardPredicate predicate = parseOr();
+
+                skipWhitespace();
+                if (m_pos >= m_text.length() || m_text.charAt(m_pos) != ')')
+                    throw new ParseException("Missing ')'", m_pos);
+
+                m_pos++;
+                return predicate;
+            }
+
+            int start = m_pos;
+            boolean quoted = m_text.charAt(m_pos) == '"';
+            String word = parseValue();
+
+            if (!quoted)
+            {
+                int save = m_pos;
+                skipWhitespace();
+                int operatorPos = m_pos;
+                int operator = parseOperator();
+
+                if (operator >= 0)
+                    return parseComparison(word.toLowerCase(), operator, start, operatorPos);
+
+                m_pos = save;
+            }
+
+            return new CardPredicate.Text(SearchTool.BOTH_SIDES,
+                CardPredicate.CONTAINS, word);
+        }
+
+        private CardPredicate parseComparison(String field, int operator,
+            int fieldPos, int operatorPos) throws ParseException
+        {
+            skipWhitespace();
+            int valuePos = m_pos;
+            String value = parseValue();
+
+            boolean equality = operator == CardPredicate.EQUAL ||
+                operator == CardPredicate.NOT_EQUAL ||
+                operator == CardPredicate.CONTAINS;
+
+            if (field.equals("level") || field.equals("deck")) //$NON-NLS-1$ //$NON-NLS-2$
+                return new CardPredicate.Level(numeric(operator), parseInt(value, valuePos));
+
+            if (field.equals("ratio")) //$NON-NLS-1$
+                return new CardPredicate.Ratio(numeric(operator), parseInt(value, valuePos));
+
+            if (field.equals("created")) //$NON-NLS-1$
+                return parseDate(Card.CREATED, numeric(operator), value, valuePos);
+
+            if (field.equals("modified")) //$NON-NLS-1$
+                return parseDate(Card.MODIFIED, numeric(operator), value, valuePos);
+
+            if (field.equals("tested")) //$NON-NLS-1$
+                return parseDate(Card.TESTED, numeric(operator), value, valuePos);
+
+            if (field.equals("expires")) //$NON-NLS-1$
+                return parseDate(Card.EXPIRED, numeric(operator), value, valuePos);
+
+            if (!equality)
+                throw new ParseException("Operator not allowed for " + field, operatorPos);
+
+            if (field.equals("text")) //$NON-NLS-1$
+                return new CardPredicate.Text(SearchTool.BOTH_SIDES, operator, value);
+
+            if (field.equals("front")) //$NON-NLS-1$
+                return new CardPredicate.Text(SearchTool.FRONT_SIDE, operator, value);
+
+            if (field.equals("back")) //$NON-NLS-1$
+                return new CardPredicate.Text(SearchTool.FLIP_SIDE, operator, value);
+
+            boolean equal = operator != CardPredicate.NOT_EQUAL;
+
+            if (field.equals("category")) //$NON-NLS-1$
+                return new CardPredicate.CategoryName(equal, value);
+
+            if (field.equals("path")) //$NON-NLS-1$
+            {
+                String path = value;
+                while (path.startsWith("/")) //$NON-NLS-1$
+                    path = path.substring(1);
+                while (path.endsWith("/")) //$NON-NLS-1$
+                    path = path.substring(0, path.length() - 1);
+
+                String[] names = path.length() > 0 ?
+                    path.split("/") : new String[0]; //$NON-NLS-1$
+                return new CardPredicate.Path(equal, names);
+            }
+
+            throw new ParseException("Unknown field '" + field + "'", fieldPos);
+        }
+
+        private CardPredicate parseDate(int column, int operator, String value,
+            int valuePos) throws ParseException
+        {
+            String day = value.toLowerCase();
+
+            if (day.equals("never")) //$NON-NLS-1$
+                return new CardPredicate.DateSpan(column, operator, Card.NO_DATE, Card.NO_DATE);
+
+            if (day.equals("now")) //$NON-NLS-1$
+                return new CardPredicate.DateSpan(column, operator, m_now, m_now + 1);
+
+            long from;
+            if (day.equals("yesterday")) //$NON-NLS-1$
+            {
+                from = addDays(m_today, -1);
+            }
+            else if (day.equals("tomorrow")) //$NON-NLS-1$
+            {
+                from = addDays(m_today, 1);
+            }
+            else if (day.startsWith("today")) //$NON-NLS-1$
+            {
+                String offset = day.substring(5);
+                int sign = offset.startsWith("-") ? -1 : 1; //$NON-NLS-1$
+
+                if (offset.length() == 0)
+                    from = m_today;
+                else if (offset.startsWith("+") || offset.startsWith("-")) //$NON-NLS-1$ //$NON-NLS-2$
+                    from = addDays(m_today, sign * parseInt(offset.substring(1), valuePos + 6));
+                else
+                    throw new ParseException("Invalid date '" + value + "'", valuePos);
+            }
+            else
+            {
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd"); //$NON-NLS-1$
+                format.setLenient(false);
+
+                ParsePosition position = new ParsePosition(0);
+                Date date = format.parse(value, position);
+                if (date == null || position.getIndex() != value.length())
+                    throw new ParseException("Invalid date '" + value + "'", valuePos);
+
+                from = date.getTime();
+            }
+
+            return new CardPredicate.DateSpan(column, operator, from, addDays(from, 1));
+        }
+
+        /**
+         * Adds days in the calendar, so that days with a daylight saving
+         * change are handled correctly.
+         */
+        private static long addDays(long time, int days)
+        {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(time);
+            calendar.add(Calendar.DAY_OF_MONTH, days);
+
+            return calendar.getTimeInMillis();
+        }
+
+        /**
+         * The contains operator compares numbers and dates for equality.
+         */
+        private static int numeric(int operator)
+        {
+            return operator == CardPredicate.CONTAINS ? CardPredicate.EQUAL : operator;
+        }
+
+        private static int parseInt(String value, int pos) throws ParseException
+        {
+            try
+            {
+                return Integer.parseInt(value);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new ParseException("Invalid number '" + value + "'", pos);
+            }
+        }
+
+        /**
+         * @return the next word or quoted text.
+         */
+        private String parseValue() throws ParseException
+        {
+            skipWhitespace();
+            int start = m_pos;
+
+            if (m_pos < m_text.length() && m_text.charAt(m_pos) == '"')
+            {
+                int end = m_text.indexOf('"', m_pos + 1);
+                if (end < 0)
+                    throw new ParseException("Missing '\"'", m_pos);
+
+                m_pos = end + 1;
+                return m_text.substring(start + 1, end);
+            }
+
+            while (m_pos < m_text.length() && !isDelimiter(m_text.charAt(m_pos)))
+                m_pos++;
+
+            if (m_pos == start)
+            {
+                throw new ParseException(m_pos < m_text.length() ?
+                    "Unexpected '" + m_text.charAt(m_pos) + "'" :
+                    "Unexpected end of query", m_pos);
+            }
+
+            return m_text.substring(start, m_pos);
+        }
+
+        /**
+         * @return the operator at the current position or -1 if there is
+         * none.
+         */
+        private int parseOperator()
+        {
+            if (m_text.startsWith("<=", m_pos)) //$NON-NLS-1$
+                return operator(2, CardPredicate.LESS_EQUAL);
+
+            if (m_text.startsWith(">=", m_pos)) //$NON-NLS-1$
+                return operator(2, CardPredicate.GREATER_EQUAL);
+
+            if (m_text.startsWith("!=", m_pos)) //$NON-NLS-1$
+                return operator(2, CardPredicate.NOT_EQUAL);
+
+            if (m_text.startsWith("<", m_pos)) //$NON-NLS-1$
+                return operator(1, CardPredicate.LESS);
+
+            if (m_text.startsWith(">", m_pos)) //$NON-NLS-1$
+                return operator(1, CardPredicate.GREATER);
+
+            if (m_text.startsWith("=", m_pos)) //$NON-NLS-1$
+                return operator(1, CardPredicate.EQUAL);
+
+            if (m_text.startsWith(":", m_pos)) //$NON-NLS-1$
+                return operator(1, CardPredicate.CONTAINS);
+
+            return -1;
+        }
+
+        private int operator(int length, int operator)
+        {
+            m_pos += length;
+            return operator;
+        }
+
+        private boolean acceptKeyword(String keyword)
+        {
+            if (!peekKeyword(keyword))
+                return false;
+
+            m_pos += keyword.length();
+            return true;
+        }
+
+        /**
+         * Keywords have to be upper case, so that <i>or</i> and <i>not</i>
+         * can still be searched for.
+         */
+        private boolean peekKeyword(String keyword)
+        {
+            skipWhitespace();
+
+            int end = m_pos + keyword.length();
+            return m_text.startsWith(keyword, m_pos) &&
+                (end == m_text.length() || Character.isWhitespace(m_text.charAt(end)) ||
+                    m_text.charAt(end) == '(');
+        }
+
+        private void skipWhitespace()
+        {
+            while (m_pos < m_text.length() && Character.isWhitespace(m_text.charAt(m_pos)))
+                m_pos++;
+        }
+
+        private static boolean isDelimiter(char c)
+        {
+            return Character.isWhitespace(c) || SPECIAL_CHARS.indexOf(c) >= 0;
+        }
+    }
+}
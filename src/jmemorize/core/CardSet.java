@@ -0,0 +1,98 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+import jmemorize.util.LongHashMap;
+
+/**
+ * A set of cards that finds its cards by their ids instead of hashing the
+ * card objects. The cards should belong to the same lesson, because their
+ * ids are only unique within it.
+ */
+public class CardSet extends AbstractSet<Card>
+{
+    private final LongHashMap<Card> m_cards;
+
+    public CardSet()
+    {
+        m_cards = new LongHashMap<Card>();
+    }
+
+    public CardSet(Collection<Card> cards)
+    {
+        m_cards = new LongHashMap<Card>(cards.size());
+        addAll(cards);
+    }
+
+    /*
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    public boolean contains(Object o)
+    {
+        return o instanceof Card && m_cards.get(((Card)o).getId()) == o;
+    }
+
+    /*
+     * @see java.util.AbstractCollection#add(java.lang.Object)
+     */
+    public boolean add(Card card)
+    {
+        return m_cards.put(card.getId(), card) != card;
+    }
+
+    /*
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    public boolean remove(Object o)
+    {
+        if (!contains(o))
+            return false;
+
+        m_cards.remove(((Card)o).getId());
+        return true;
+    }
+
+    /*
+     * @see java.util.AbstractCollection#clear()
+     */
+    public void clear()
+    {
+        m_cards.clear();
+    }
+
+    /*
+     * @see java.util.AbstractCollection#iterator()
+     */
+    public Iterator<Card> iterator()
+    {
+        return m_cards.values().iterator();
+    }
+
+    /*
+     * @see java.util.AbstractCollection#size()
+     */
+    public int size()
+    {
+        return m_cards.size();
+    }
+}
@@ -18,7 +18,9 @@
  */
 package jmemorize.core;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -35,9 +37,15 @@ public class CardSide implements Cloneable
         public void onImagesChanged(CardSide cardSide, List<String> imageIDs);
     }
     
+    private static final List<String> NO_IMAGES = Collections.emptyList();
+    
     private FormattedText          m_text;
-    private List<String>           m_imageIDs  = new LinkedList<String>();
-    private List<CardSideObserver> m_observers = new LinkedList<CardSideObserver>();
+    
+    // immutable, shared by all card sides without images
+    private List<String>           m_imageIDs  = NO_IMAGES;
+    
+    // copied on every change, null as long as there are no observers
+    private CardSideObserver[]     m_observers;
     
     public CardSide()
     {
@@ -65,6 +73,9 @@ public class CardSide implements Cloneable
         
         m_text = text;
         
+        if (m_observers == null)
+            return;
+        
         for (CardSideObserver observer : m_observers)
         {
             observer.onTextChanged(this, m_text);
@@ -72,7 +83,8 @@ public class CardSide implements Cloneable
     }
     
     /**
-     * @return the IDs of all images of this card side.
+     * @return the IDs of all images of this card side. The returned list can't
+     * be modified. Use {@link #setImages(List)} instead.
      */
     public List<String> getImages()
     {
@@ -84,8 +96,10 @@ public class CardSide implements Cloneable
         if (m_imageIDs.equals(ids))
             return;
         
-        m_imageIDs.clear();
-        m_imageIDs.addAll(ids);
+        m_imageIDs = copyImages(ids);
+        
+        if (m_observers == null)
+            return;
         
         for (CardSideObserver observer : m_observers)
         {
@@ -95,12 +109,30 @@ public class CardSide implements Cloneable
     
     public void addObserver(CardSideObserver observer)
     {
-        m_observers.add(observer);
+        if (m_observers == null)
+        {
+            m_observers = new CardSideObserver[] {observer};
+            return;
+        }
+        
+        int n = m_observers.length;
+        m_observers = Arrays.copyOf(m_observers, n + 1);
+        m_observers[n] = observer;
     }
     
     public void removeObserver(CardSideObserver observer)
     {
-        m_observers.remove(observer);
+        if (m_observers == null)
+            return;
+        
+        List<CardSideObserver> observers = 
+            new ArrayList<CardSideObserver>(Arrays.asList(m_observers));
+        
+        if (!observers.remove(observer))
+            return;
+        
+        m_observers = observers.isEmpty() ? null : 
+            observers.toArray(new CardSideObserver[observers.size()]);
     }
     
     /** 
@@ -119,8 +151,16 @@ public class CardSide implements Cloneable
     {
         CardSide cardSide = new CardSide();
         cardSide.m_text = (FormattedText)m_text.clone();
-        cardSide.m_imageIDs.addAll(m_imageIDs);
+        cardSide.m_imageIDs = m_imageIDs; // immutable, can be shared
         
         return cardSide;
     }
+    
+    private static List<String> copyImages(List<String> ids)
+    {
+        if (ids.isEmpty())
+            return NO_IMAGES;
+        
+        return Collections.unmodifiableList(new ArrayList<String>(ids));
+    }
 }
@@ -18,13 +18,22 @@
  */
 package jmemorize.core;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import jmemorize.util.NaturalOrderComparator;
 
@@ -43,6 +52,13 @@ import jmemorize.util.NaturalOrderComparator;
  *
  * Observers can be hooked to categories and will be notified when a card or
  * category event in this category or one of its child categories happens.
+ * Bulk changes should be enclosed in {@link #beginUpdate()} and
+ * {@link #endUpdate()}, so that their card events are delivered at once.
+ *
+ * The local cards of a category can be stored in a {@link CardChunk}. Such a
+ * category loads its cards when they are first needed, e.g. when they are
+ * shown, learned or searched, and can unload them again while they are
+ * unchanged. The getters look the same for both kinds of categories.
  *
  * @author djemili
  */
@@ -52,6 +68,8 @@ import jmemorize.util.NaturalOrderComparator;
  */
 public class Category implements Events
 {
+    private static final Comparator NAME_ORDER = new NaturalOrderComparator();
+
     // TODO use CopyOnWriteArrayList in Java1.5
     private List<CategoryObserver> mObservers       = new ArrayList<>();
 
@@ -61,7 +79,139 @@ public class Category implements Events
     private List<List<Card>>       mDecks           = new ArrayList<>(); // list of card lists
 
     private Category               mParent;
-    private List<Category>         mChildCategories = new LinkedList<>();
+    private List<Category>         mChildCategories = new ArrayList<>();    // sorted by name
+    private Map<String, Category>  mChildrenByName  = new HashMap<>();     // first child with name
+
+    // the chunk that holds the local cards. while they are unloaded, the
+    // decks are empty and the cards that are still referenced elsewhere are
+    // kept weakly, so that loading them again keeps their identity
+    private CardChunk              mChunk;
+    private volatile boolean       mCardsLoaded     = true;
+    private boolean                mCardsChanged;
+    private int                    mUnloadedDecks;
+    private List<List<WeakReference<Card>>> mUnloadedCards;
+
+    // the cards of the chunk got their ids in another tree and need new ones
+    // when they are loaded
+    private boolean                mRenumberOnLoad;
+
+    // batch updates, only used on the root category
+    private int                    mUpdateDepth     = 0;
+    private List<CardEvent>        mPendingEvents;
+
+    // the id of the next new card, only used on the root category
+    private long                   mNextCardId      = 1;
+
+    /**
+     * Walks the decks of a category tree level by level. For every level the
+     * categories are visited in pre-order with a stack of child iterators, so
+     * that only memory proportional to the depth of the tree is needed.
+     */
+    private static class CardIterator implements Iterator<Card>
+    {
+        private final Category                       mRoot;
+        private final LinkedList<Iterator<Category>> mStack = new LinkedList<>();
+
+        private int                                  mLevel = 0;
+        private Iterator<Card>                       mDeck;
+
+        public CardIterator(Category root)
+        {
+            mRoot = root;
+            root.ensureCardsLoaded();
+            mDeck = root.getNumberOfDecks() > 0 ?
+                root.mDecks.get(0).iterator() : null;
+            mStack.add(root.mChildCategories.iterator());
+        }
+
+        public boolean hasNext()
+        {
+            while (mDeck != null && !mDeck.hasNext())
+            {
+                mDeck = nextDeck();
+            }
+
+            return mDeck != null;
+        }
+
+        public Card next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            return mDeck.next();
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @return the deck of the next category in pre-order with the current
+         * level, or the deck of the root with the next level. Returns
+         * <code>null</code> if there are no more decks.
+         */
+        private Iterator<Card> nextDeck()
+        {
+            while (!mStack.isEmpty())
+            {
+                Iterator<Category> children = mStack.getLast();
+                if (!children.hasNext())
+                {
+                    mStack.removeLast();
+                    continue;
+                }
+
+                // children have at most as many decks as their parents
+                Category child = children.next();
+                if (child.getNumberOfDecks() > mLevel)
+                {
+                    child.ensureCardsLoaded();
+                    mStack.add(child.mChildCategories.iterator());
+                    return child.mDecks.get(mLevel).iterator();
+                }
+            }
+
+            if (++mLevel >= mRoot.getNumberOfDecks())
+                return null;
+
+            mStack.add(mRoot.mChildCategories.iterator());
+            return mRoot.mDecks.get(mLevel).iterator();
+        }
+    }
+
+    /**
+     * A card event that was fired during a batch update.
+     */
+    private static class CardEvent
+    {
+        private final int      mType;
+        private final Card     mCard;
+        private final Category mCategory;
+        private final int      mDeck;
+        private final Category mSource; // the category that fired the event
+
+        public CardEvent(int type, Card card, Category category, int deck,
+            Category source)
+        {
+            mType     = type;
+            mCard     = card;
+            mCategory = category;
+            mDeck     = deck;
+            mSource   = source;
+        }
+
+        /**
+         * @return <code>true</code> if given event can be delivered together
+         * with this event.
+         */
+        public boolean isSameBatch(CardEvent other)
+        {
+            return mType == other.mType && mCategory == other.mCategory &&
+                mSource == other.mSource;
+        }
+    }
 
     /**
      * Creates a new Category.
@@ -100,6 +250,28 @@ public class Category implements Events
         fireCardEvent(ADDED_EVENT, card, card.getCategory(), level);
     }
 
+    /**
+     * Adds all given cards to the deck with given level. The events of the
+     * cards are delivered at once.
+     *
+     * Fires a ADDED_EVENT for every card.
+     */
+    public void addCards(Collection<Card> cards, int level)
+    {
+        beginUpdate();
+        try
+        {
+            for (Card card : cards)
+            {
+                addCard(card, level);
+            }
+        }
+        finally
+        {
+            endUpdate();
+        }
+    }
+
     /**
      * Removes a card from its associated deck and fires an event.
      */
@@ -112,6 +284,29 @@ public class Category implements Events
         fireCardEvent(REMOVED_EVENT, card, category, level);
     }
 
+    /**
+     * Removes all given cards from their associated decks. The cards can
+     * belong to this category or to any of its child categories. The events
+     * of the cards are delivered at once.
+     *
+     * Fires a REMOVED_EVENT for every card.
+     */
+    public void removeCards(Collection<Card> cards)
+    {
+        beginUpdate();
+        try
+        {
+            for (Card card : cards)
+            {
+                card.getCategory().removeCard(card);
+            }
+        }
+        finally
+        {
+            endUpdate();
+        }
+    }
+
     /**
      * Moves the card to a new category, preserving all its fields and its
      * level. This is different from removing and then adding a card because it
@@ -181,6 +376,47 @@ public class Category implements Events
      * Card getter methods
      */
 
+    /**
+     * Iterates over the same cards in the same order as {@link #getCards()},
+     * that is deck after deck and within a deck this category before its
+     * child categories, but without copying them into a list first. The
+     * category tree must not be modified while iterating.
+     *
+     * @return an unmodifiable iterator over all cards of all decks in this
+     * category and its child categories.
+     */
+    public Iterator<Card> getCardIterator()
+    {
+        return new CardIterator(this);
+    }
+
+    /**
+     * @return the number of cards in this category and its child categories.
+     * Unlike <code>getCards().size()</code> this doesn't copy any cards.
+     */
+    public int getCardCount()
+    {
+        int count = 0;
+        if (mCardsLoaded)
+        {
+            for (List<Card> deck : mDecks)
+            {
+                count += deck.size();
+            }
+        }
+        else
+        {
+            count = mChunk.getCardCount();
+        }
+
+        for (Category child : mChildCategories)
+        {
+            count += child.getCardCount();
+        }
+
+        return count;
+    }
+
     /**
      * @return All cards of all decks in this category.
      */
@@ -216,6 +452,7 @@ public class Category implements Events
         }
 
         //get cards in this category
+        ensureCardsLoaded();
         List<Card> cardList = new ArrayList<>(mDecks.get(level));
 
         //get cards in child categories
@@ -376,6 +613,7 @@ public class Category implements Events
      */
     public List<Card> getLocalCards(int level)
     {
+        ensureCardsLoaded();
         return mDecks.get(level);
     }
 
@@ -389,6 +627,176 @@ public class Category implements Events
         return mDecks.size();
     }
 
+    /**
+     * Stores the local cards of this category in given chunk.
+     *
+     * @param chunk the chunk or <code>null</code> if the cards should only
+     * be kept in memory from now on.
+     * @param loaded <code>true</code> if the local cards of this category
+     * are the same as the ones in the chunk, <code>false</code> if this
+     * category has no cards yet and should load them from the chunk when
+     * they are first needed.
+     */
+    public synchronized void setCardChunk(CardChunk chunk, boolean loaded)
+    {
+        if (chunk == null || loaded)
+        {
+            ensureCardsLoaded();
+            mChunk = chunk;
+            mCardsChanged = false;
+            return;
+        }
+
+        assert getLocalCards().isEmpty() : "Category already has cards"; //$NON-NLS-1$
+
+        mChunk = chunk;
+        mUnloadedDecks = chunk.getNumberOfDecks();
+        mUnloadedCards = null;
+        mCardsLoaded = false;
+
+        while (mDecks.size() < mUnloadedDecks)
+        {
+            mDecks.add(new ArrayList<Card>());
+        }
+
+        for (Category parent = mParent; parent != null; parent = parent.mParent)
+        {
+            parent.adjustNumberOfDecks();
+        }
+    }
+
+    /**
+     * @return the chunk that the local cards of this category are stored in
+     * or <code>null</code> if they are only kept in memory.
+     */
+    public CardChunk getCardChunk()
+    {
+        return mChunk;
+    }
+
+    /**
+     * @return the id that the next new card of this category tree will get.
+     * All cards of the tree have lower ids.
+     */
+    public long getNextCardId()
+    {
+        Category root = getRoot();
+        synchronized (root)
+        {
+            return root.mNextCardId;
+        }
+    }
+
+    /**
+     * Makes sure that new cards of this category tree get given id or higher
+     * ones, e.g. when the tree is loaded with cards whose ids are not known
+     * yet because they are stored in chunks.
+     */
+    public void setNextCardId(long id)
+    {
+        Category root = getRoot();
+        synchronized (root)
+        {
+            root.mNextCardId = Math.max(root.mNextCardId, id);
+        }
+    }
+
+    /**
+     * Reserves a range of ids for cards that are created later, e.g. the
+     * cards of a chunk that don't store their ids.
+     *
+     * @return the first of the given number of consecutive ids.
+     */
+    public long reserveCardIds(int count)
+    {
+        Category root = getRoot();
+        synchronized (root)
+        {
+            long first = root.mNextCardId;
+            root.mNextCardId += count;
+            return first;
+        }
+    }
+
+    /**
+     * Gives the local cards of this category new ids of its tree when they
+     * are loaded from the chunk, e.g. because the chunk belongs to a lesson
+     * that is merged into this one. Loaded cards keep their ids.
+     */
+    public synchronized void renumberCardsOnLoad()
+    {
+        if (!mCardsLoaded)
+            mRenumberOnLoad = true;
+    }
+
+    /**
+     * @return <code>false</code> if the local cards of this category are
+     * stored in a chunk and aren't loaded yet.
+     */
+    public boolean isCardsLoaded()
+    {
+        return mCardsLoaded;
+    }
+
+    /**
+     * Loads the local cards of this category, if they are stored in a chunk
+     * and aren't loaded yet. Can be called on any thread.
+     */
+    public void loadLocalCards()
+    {
+        ensureCardsLoaded();
+    }
+
+    /**
+     * Loads the cards of this category and its child categories that are
+     * not loaded yet, e.g. before the file of their chunks is overwritten.
+     */
+    public void loadCards()
+    {
+        ensureCardsLoaded();
+
+        for (Category child : mChildCategories)
+        {
+            child.loadCards();
+        }
+    }
+
+    /**
+     * Drops the local cards of this category, if they are stored in a chunk
+     * and weren't changed since they were loaded. They are loaded again when
+     * they are needed the next time. Cards that are still referenced
+     * somewhere else stay the same objects. No events are fired.
+     *
+     * @return <code>true</code> if the cards were unloaded.
+     */
+    public synchronized boolean unloadCards()
+    {
+        if (!mCardsLoaded || mChunk == null || mCardsChanged)
+            return false;
+
+        mUnloadedCards = new ArrayList<>(mDecks.size());
+        mUnloadedDecks = 0;
+        for (int level = 0; level < mDecks.size(); level++)
+        {
+            List<Card> deck = mDecks.get(level);
+            List<WeakReference<Card>> refs = new ArrayList<>(deck.size());
+            for (Card card : deck)
+            {
+                refs.add(new WeakReference<Card>(card));
+            }
+            mUnloadedCards.add(refs);
+
+            if (!deck.isEmpty())
+                mUnloadedDecks = level + 1;
+
+            // iterations that are still running keep the old list
+            mDecks.set(level, new ArrayList<Card>());
+        }
+
+        mCardsLoaded = false;
+        return true;
+    }
+
     /*
      * Category related methods.
      */
@@ -403,46 +811,115 @@ public class Category implements Events
 
 
     /**
-     * @return the child category with given name. <code>null</code> if there
-     * is child category with given name.
+     * @return the index of given child category in the list of child
+     * categories or -1 if it isn't a child of this category. The index is
+     * found by a binary search on the names.
      */
-    public Category getChildCategory(String name)
+    public int getChildIndex(Category child)
     {
-        for (Category category : mChildCategories)
+        int index = findFirstChild(child.getName());
+        for (; index < mChildCategories.size(); index++)
         {
-            if (category.getName().equals(name))
-                return category;
+            Category category = mChildCategories.get(index);
+            if (category == child)
+                return index;
+
+            if (NAME_ORDER.compare(category.getName(), child.getName()) != 0)
+                break;
         }
 
-        return null;
+        return -1;
     }
 
     /**
-     * Appends the category at end of category child list.
+     * Compares two categories of the same tree by the order in which they
+     * appear in {@link #getSubtreeList()} of the root, i.e. parents come
+     * before their children and siblings are ordered by name. A category
+     * that was just removed still compares by the place it had, unless it
+     * had siblings with the same name.
      */
-    public Category addCategoryChild(Category category)
+    public static int compareTreeOrder(Category c1, Category c2)
     {
-        category.mParent = this;
-        category.mDepth  = mDepth + 1;
-
-        Comparator comp = new NaturalOrderComparator();
+        if (c1 == c2)
+            return 0;
 
-        int position = 0;
-        for (Category childCategory : mChildCategories)
+        // go up to the same depth. ancestors come first
+        Category a = c1;
+        Category b = c2;
+        while (a.mDepth > b.mDepth)
         {
-            if (comp.compare(category.getName(), childCategory.getName()) < 0)
-                break;
+            a = a.mParent;
+            if (a == b)
+                return 1;
+        }
+        while (b.mDepth > a.mDepth)
+        {
+            b = b.mParent;
+            if (a == b)
+                return -1;
+        }
 
-            position++;
+        // go up to the children of the common ancestor
+        while (a.mParent != b.mParent)
+        {
+            a = a.mParent;
+            b = b.mParent;
         }
 
-        mChildCategories.add(position, category);
+        int result = NAME_ORDER.compare(a.getName(), b.getName());
+        if (result != 0 || a.mParent == null)
+            return result;
+
+        return a.mParent.getChildIndex(a) - a.mParent.getChildIndex(b);
+    }
+
+    /**
+     * @return the child category with given name. <code>null</code> if there
+     * is child category with given name.
+     */
+    public Category getChildCategory(String name)
+    {
+        return mChildrenByName.get(name);
+    }
+
+    /**
+     * Inserts the category into the child list, which is kept in natural
+     * order of the category names. Categories with equal names are appended
+     * after each other.
+     */
+    public Category addCategoryChild(Category category)
+    {
+        // cards that got ids while the category was a root of its own need
+        // new ones, which are unique in this tree
+        boolean renumber = category.mNextCardId > 1;
+        category.mNextCardId = 1;
+
+        category.mParent = this;
+        category.setDepth(mDepth + 1);
+
+        addChildInternal(category);
+
+        if (renumber)
+            category.renumberCards();
 
         fireCategoryEvent(ADDED_EVENT, category);
 
         return category;
     }
 
+    /**
+     * Sets the depth of this category and of all its descendants, which can
+     * have been added to it while it was a root of its own.
+     */
+    private void setDepth(int depth)
+    {
+        mDepth = depth;
+        for (Category child : mChildCategories)
+        {
+            child.setDepth(depth + 1);
+        }
+    }
+
     /**
      * Removes this category. Note that the root category can't be removed.
      *
@@ -452,7 +929,9 @@ public class Category implements Events
     {
         assert mParent != null : "Root category can't be deleted"; //$NON-NLS-1$
 
-        mParent.mChildCategories.remove(this);
+        // deliver pending events while this category is still attached
+        getRoot().flushPendingEvents();
+        mParent.removeChildInternal(this);
 
         fireCategoryEvent(REMOVED_EVENT, this);
         mParent = null; // have to release parent AFTER firing event
@@ -499,7 +978,17 @@ public class Category implements Events
 
         if (!mName.equals(newName))
         {
-            mName = newName;
+            // the new name can change the position among the siblings
+            if (mParent != null)
+            {
+                mParent.removeChildInternal(this);
+                mName = newName;
+                mParent.addChildInternal(this);
+            }
+            else
+            {
+                mName = newName;
+            }
 
             fireCategoryEvent(EDITED_EVENT, this);
         }
@@ -569,6 +1058,44 @@ public class Category implements Events
         mObservers.remove(observer);
     }
 
+    /**
+     * Starts a batch update on the category tree of this category. Until the
+     * matching call to {@link #endUpdate()}, card events of all categories in
+     * the tree are queued instead of being delivered. Category events are
+     * still delivered immediately after the queued card events. Calls can be
+     * nested.
+     *
+     * Note that the number of decks of parent categories is only updated when
+     * the batch update ends.
+     */
+    public void beginUpdate()
+    {
+        Category root = getRoot();
+        if (root.mUpdateDepth++ == 0)
+        {
+            root.mPendingEvents = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Ends a batch update that was started with {@link #beginUpdate()}. When
+     * the outermost batch update ends, all queued card events are delivered,
+     * grouped by the category that fired them. Consecutive events of the
+     * same type and category are delivered with a single call to
+     * {@link CardBatchObserver#onCardsEvent}.
+     */
+    public void endUpdate()
+    {
+        Category root = getRoot();
+        assert root.mUpdateDepth > 0 : "endUpdate without beginUpdate"; //$NON-NLS-1$
+
+        if (--root.mUpdateDepth == 0)
+        {
+            root.flushPendingEvents();
+            root.mPendingEvents = null;
+        }
+    }
+
     /**
      * @return a clone of this category. The clone contains the same child
      * categories and the same cards as this category, but without any user
@@ -578,6 +1105,7 @@ public class Category implements Events
     {
         Category clonedCategory = new Category(mName);
 
+        ensureCardsLoaded();
         for (List<Card> cards : mDecks)
         {
             for (Card card : cards)
@@ -596,6 +1124,20 @@ public class Category implements Events
 
     void fireCardEvent(int type, Card card, Category category, int deck)
     {
+        // the changed cards must not be loaded from the chunk again
+        if (this == category || this == card.getCategory())
+        {
+            ensureCardsLoaded();
+            mCardsChanged = true;
+        }
+
+        Category root = getRoot();
+        if (root.mUpdateDepth > 0)
+        {
+            root.mPendingEvents.add(new CardEvent(type, card, category, deck, this));
+            return;
+        }
+
         if (type != EDITED_EVENT)
         {
             adjustNumberOfDecks();
@@ -615,6 +1157,11 @@ public class Category implements Events
 
     void fireCategoryEvent(int type, Category category)
     {
+        if (mParent == null)
+        {
+            flushPendingEvents();
+        }
+
         adjustNumberOfDecks();
 
         if (mParent != null)
@@ -629,11 +1176,209 @@ public class Category implements Events
         }
     }
 
+    /**
+     * Delivers the card events that were queued by a batch update. Must be
+     * called on the root category.
+     */
+    private void flushPendingEvents()
+    {
+        if (mPendingEvents == null || mPendingEvents.isEmpty())
+            return;
+
+        List<CardEvent> events = mPendingEvents;
+        mPendingEvents = new ArrayList<>();
+
+        // adjust every affected category once, children before their parents
+        Set<Category> affected = new LinkedHashSet<>();
+        for (CardEvent event : events)
+        {
+            if (event.mType == EDITED_EVENT)
+                continue;
+
+            for (Category cat = event.mSource; cat != null; cat = cat.mParent)
+            {
+                if (!affected.add(cat))
+                    break;
+            }
+        }
+
+        List<Category> byDepth = new ArrayList<>(affected);
+        Collections.sort(byDepth, new Comparator<Category>() {
+            public int compare(Category c1, Category c2)
+            {
+                return c2.mDepth - c1.mDepth;
+            }
+        });
+        for (Category cat : byDepth)
+        {
+            cat.adjustNumberOfDecks();
+        }
+
+        // group by firing category, so that imports that alternate between
+        // categories still result in one notification per category
+        Map<Category, List<CardEvent>> eventsBySource = new LinkedHashMap<>();
+        for (CardEvent event : events)
+        {
+            List<CardEvent> sourceEvents = eventsBySource.get(event.mSource);
+            if (sourceEvents == null)
+            {
+                sourceEvents = new ArrayList<>();
+                eventsBySource.put(event.mSource, sourceEvents);
+            }
+            sourceEvents.add(event);
+        }
+
+        for (List<CardEvent> sourceEvents : eventsBySource.values())
+        {
+            int start = 0;
+            while (start < sourceEvents.size())
+            {
+                CardEvent first = sourceEvents.get(start);
+                int end = start + 1;
+                while (end < sourceEvents.size() &&
+                    first.isSameBatch(sourceEvents.get(end)))
+                {
+                    end++;
+                }
+
+                first.mSource.fireCardsEvent(sourceEvents.subList(start, end));
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * Delivers the given queued events, which all have the same type and
+     * category, to the observers of this category and its parents.
+     */
+    private void fireCardsEvent(List<CardEvent> events)
+    {
+        if (mParent != null)
+        {
+            mParent.fireCardsEvent(events);
+        }
+
+        if (mObservers.isEmpty())
+            return;
+
+        CardEvent first = events.get(0);
+        List<Card> cards = null;
+
+        List<CategoryObserver> observersCopy = new ArrayList<>(mObservers);
+        for (CategoryObserver observer : observersCopy)
+        {
+            if (observer instanceof CardBatchObserver)
+            {
+                if (cards == null)
+                {
+                    cards = new ArrayList<>(events.size());
+                    for (CardEvent event : events)
+                    {
+                        cards.add(event.mCard);
+                    }
+                    cards = Collections.unmodifiableList(cards);
+                }
+
+                ((CardBatchObserver)observer).onCardsEvent(
+                    first.mType, cards, first.mCategory);
+            }
+            else
+            {
+                for (CardEvent event : events)
+                {
+                    observer.onCardEvent(event.mType, event.mCard,
+                        event.mCategory, event.mDeck);
+                }
+            }
+        }
+    }
+
+    private Category getRoot()
+    {
+        Category root = this;
+        while (root.mParent != null)
+        {
+            root = root.mParent;
+        }
+
+        return root;
+    }
+
+    /**
+     * Inserts given child category at its sorted position and indexes its
+     * name. The position is found by a binary search on the child list.
+     */
+    private void addChildInternal(Category category)
+    {
+        String name = category.getName();
+
+        // insert after all categories that are not greater than the new one
+        int low = 0;
+        int high = mChildCategories.size();
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (NAME_ORDER.compare(name, mChildCategories.get(mid).getName()) < 0)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+
+        mChildCategories.add(low, category);
+
+        if (!mChildrenByName.containsKey(name))
+            mChildrenByName.put(name, category);
+    }
+
+    /**
+     * @return the index of the first child category that is not less than
+     * given name.
+     */
+    private int findFirstChild(String name)
+    {
+        int low = 0;
+        int high = mChildCategories.size();
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (NAME_ORDER.compare(mChildCategories.get(mid).getName(), name) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     * Removes given child category from the child list and the name index.
+     */
+    private void removeChildInternal(Category category)
+    {
+        mChildCategories.remove(category);
+
+        String name = category.getName();
+        if (mChildrenByName.get(name) != category)
+            return;
+
+        mChildrenByName.remove(name);
+        for (Category child : mChildCategories)
+        {
+            if (child.getName().equals(name))
+            {
+                mChildrenByName.put(name, child);
+                break;
+            }
+        }
+    }
+
     /**
      * Adds a card to this category without emitting a ADDED_EVENT.
      */
     private void addCardInternal(Card card, int level)
     {
+        ensureCardsLoaded();
+
         // check boundary
         while (mDecks.size() <= level)
         {
@@ -645,6 +1390,7 @@ public class Category implements Events
 
         card.setCategory(this);
         card.setLevel(level);
+        card.setId(getRoot().takeCardId(card.getId()));
 
         // sanity checks
         if (level > 0 && card.getDateExpired() == null)
@@ -662,6 +1408,7 @@ public class Category implements Events
         Category cat = card.getCategory();
         if (cat == this)
         {
+            ensureCardsLoaded();
             int level = card.getLevel();
             List<Card> cards = mDecks.get(level);
             cards.remove(card);
@@ -696,6 +1443,118 @@ public class Category implements Events
         category.fireCardEvent(DECK_EVENT, card, category, level);
     }
 
+    /**
+     * Loads the local cards from the chunk, if they aren't loaded yet. Cards
+     * that were unloaded but are still referenced are put back instead of
+     * the loaded ones, which are equal to them.
+     */
+    private void ensureCardsLoaded()
+    {
+        if (mCardsLoaded)
+            return;
+
+        synchronized (this)
+        {
+            if (mCardsLoaded)
+                return;
+
+            List<List<Card>> decks;
+            try
+            {
+                decks = mChunk.loadDecks();
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(
+                    "Could not load the cards of " + getPath(), e); //$NON-NLS-1$
+            }
+
+            boolean newIds = false;
+            for (int level = 0; level < decks.size(); level++)
+            {
+                List<WeakReference<Card>> refs = mUnloadedCards != null &&
+                    level < mUnloadedCards.size() ? mUnloadedCards.get(level) : null;
+
+                List<Card> loaded = decks.get(level);
+                List<Card> deck = new ArrayList<>(loaded.size());
+                for (int i = 0; i < loaded.size(); i++)
+                {
+                    Card card = refs != null && i < refs.size() ?
+                        refs.get(i).get() : null;
+                    if (card == null)
+                        card = loaded.get(i);
+
+                    // chunks that were written before cards had ids or in
+                    // another tree. their cards are kept until the new ids
+                    // are saved
+                    if (card.getId() == 0 || mRenumberOnLoad)
+                    {
+                        card.setId(getRoot().takeCardId(0));
+                        newIds = true;
+                    }
+
+                    card.setCategory(this);
+                    card.setLevel(level);
+                    deck.add(card);
+                }
+
+                while (mDecks.size() <= level)
+                {
+                    mDecks.add(new ArrayList<Card>());
+                }
+                mDecks.set(level, deck);
+            }
+
+            mUnloadedCards = null;
+            mRenumberOnLoad = false;
+            mCardsChanged = newIds;
+            mCardsLoaded = true;
+        }
+    }
+
+    /**
+     * @return given id, if it is set, or otherwise the id for a new card.
+     * Ids that are handed out later are higher than given one. Only called
+     * on the root category.
+     */
+    private synchronized long takeCardId(long id)
+    {
+        if (id == 0)
+            return mNextCardId++;
+
+        mNextCardId = Math.max(mNextCardId, id + 1);
+        return id;
+    }
+
+    /**
+     * Gives the cards of this category and its child categories new ids of
+     * the tree that this category belongs to now. Cards that aren't loaded
+     * yet get them when they are loaded.
+     */
+    private void renumberCards()
+    {
+        Category root = getRoot();
+        for (Category category : getSubtreeList())
+        {
+            if (!category.mCardsLoaded)
+            {
+                category.renumberCardsOnLoad();
+                continue;
+            }
+
+            for (List<Card> deck : category.mDecks)
+            {
+                for (Card card : deck)
+                {
+                    card.setId(root.takeCardId(0));
+                }
+            }
+
+            // the chunk has the old ids, so the cards must not be unloaded
+            category.mCardsChanged = true;
+        }
+    }
+
     private void adjustNumberOfDecks()
     {
         // find child category with most decks
@@ -714,8 +1573,9 @@ public class Category implements Events
             mDecks.add(new ArrayList<Card>());
         }
 
-        //trim decks
-        while (maxChildDecks < getNumberOfDecks()
+        //trim decks, but not the ones whose cards are unloaded
+        int minDecks = Math.max(maxChildDecks, mCardsLoaded ? 0 : mUnloadedDecks);
+        while (minDecks < getNumberOfDecks()
                 && (mDecks.get(getNumberOfDecks()-1)).isEmpty() )
         {
             mDecks.remove(getNumberOfDecks()-1);
@@ -0,0 +1,361 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Finds groups of cards with nearly the same texts, e.g. after merging
+ * lessons. Comparing all pairs of cards is too slow for large lessons, so
+ * every card gets a MinHash signature of the shingles (the substrings of
+ * three chars) of its case folded front and back side. Cards whose
+ * signatures agree in all rows of at least one band of rows end up in the
+ * same bucket, and only cards in the same bucket are compared. This finds
+ * most pairs whose shingles overlap by about 70% or more in near-linear
+ * time.
+ */
+public class DuplicateFinder
+{
+    /**
+     * Gets notified about the progress of a search for duplicates.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * @param done the units of work that are done.
+         * @param total the units of work of the whole search.
+         */
+        void onProgress(int done, int total);
+    }
+
+    /**
+     * The default share of equal signature values that makes two cards
+     * duplicates.
+     */
+    public static final double DEFAULT_SIMILARITY = 0.7;
+
+    // 12 bands of 4 rows catch pairs with a similarity of about 0.55 and more
+    private static final int   BANDS              = 12;
+    private static final int   ROWS               = 4;
+    private static final int   SIGNATURE_SIZE     = BANDS * ROWS;
+
+    // members of a bucket are compared with this many previous members
+    private static final int   MAX_COMPARISONS    = 8;
+
+    private static final int   PROGRESS_STEP      = 4096;
+    private static final long  BACK_SIDE          = 1L << 48;
+
+    private static final long[] MULTIPLIERS       = new long[SIGNATURE_SIZE];
+    private static final long[] ADDENDS           = new long[SIGNATURE_SIZE];
+
+    static
+    {
+        // fixed seed, so that the same cards always give the same groups
+        Random random = new Random(0x5eed);
+        for (int k = 0; k < SIGNATURE_SIZE; k++)
+        {
+            MULTIPLIERS[k] = random.nextLong() | 1;
+            ADDENDS[k] = random.nextLong();
+        }
+    }
+
+    private final Card[]       m_cards;
+    private final double       m_similarity;
+
+    private volatile boolean   m_cancelled;
+
+    /**
+     * @param cards the cards that should be checked. The list is copied, so
+     * the search can run in another thread than the one that modifies the
+     * lesson.
+     */
+    public DuplicateFinder(List<Card> cards)
+    {
+        this(cards, DEFAULT_SIMILARITY);
+    }
+
+    /**
+     * @param similarity the share of equal signature values, an estimate of
+     * the share of equal shingles, from which on two cards are duplicates.
+     */
+    public DuplicateFinder(List<Card> cards, double similarity)
+    {
+        m_cards = cards.toArray(new Card[cards.size()]);
+        m_similarity = similarity;
+    }
+
+    /**
+     * Cancels a running search. It returns early with the groups found so
+     * far.
+     */
+    public void cancel()
+    {
+        m_cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return m_cancelled;
+    }
+
+    /**
+     * Finds the groups of duplicate cards. Every group has at least two
+     * cards, which are in the order of the given list, and the groups are
+     * sorted by their first card.
+     *
+     * @param listener can be <code>null</code>.
+     */
+    public List<List<Card>> find(ProgressListener listener)
+    {
+        int n = m_cards.length;
+        int total = n + BANDS;
+
+        int[] signatures = new int[n * SIGNATURE_SIZE];
+        for (int i = 0; i < n && !m_cancelled; i++)
+        {
+            computeSignature(m_cards[i], signatures, i * SIGNATURE_SIZE);
+
+            if (listener != null && i % PROGRESS_STEP == 0)
+                listener.onProgress(i, total);
+        }
+
+        int[] parents = new int[n];
+        for (int i = 0; i < n; i++)
+            parents[i] = i;
+
+        // the low bits of the bucket entries hold the card index
+        int indexBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(n));
+        long indexMask = (1L << indexBits) - 1;
+
+        long[] entries = new long[n];
+        for (int band = 0; band < BANDS && !m_cancelled; band++)
+        {
+            for (int i = 0; i < n; i++)
+                entries[i] = (bandHash(signatures, i, band) & ~indexMask) | i;
+
+            Arrays.sort(entries);
+
+            int start = 0;
+            for (int i = 1; i <= n; i++)
+            {
+                if (i == n || (entries[i] & ~indexMask) != (entries[start] & ~indexMask))
+                {
+                    if (i - start > 1)
+                        checkBucket(entries, start, i, indexMask, signatures, parents);
+
+                    start = i;
+                }
+            }
+
+            if (listener != null)
+                listener.onProgress(n + band + 1, total);
+        }
+
+        return collectGroups(parents);
+    }
+
+    /**
+     * Compares the cards in the bucket and joins the groups of the ones that
+     * are similar. The entries are sorted, so the cards are in index order.
+     */
+    private void checkBucket(long[] entries, int start, int end, long indexMask,
+        int[] signatures, int[] parents)
+    {
+        for (int i = start + 1; i < end; i++)
+        {
+            int card = (int)(entries[i] & indexMask);
+
+            for (int j = Math.max(start, i - MAX_COMPARISONS); j < i; j++)
+            {
+                int other = (int)(entries[j] & indexMask);
+                if (find(parents, card) != find(parents, other) &&
+                    similarity(signatures, card, other) >= m_similarity)
+                {
+                    union(parents, card, other);
+                    break;
+                }
+            }
+        }
+    }
+
+    private List<List<Card>> collectGroups(int[] parents)
+    {
+        int n = parents.length;
+
+        int[] sizes = new int[n];
+        for (int i = 0; i < n; i++)
+            sizes[find(parents, i)]++;
+
+        // groups are created when their first card is reached
+        List<List<Card>> groups = new ArrayList<List<Card>>();
+        List<List<Card>> groupOfRoot = new ArrayList<List<Card>>(n);
+        for (int i = 0; i < n; i++)
+            groupOfRoot.add(null);
+
+        for (int i = 0; i < n; i++)
+        {
+            int root = find(parents, i);
+            if (sizes[root] < 2)
+                continue;
+
+            List<Card> group = groupOfRoot.get(root);
+            if (group == null)
+            {
+                group = new ArrayList<Card>(sizes[root]);
+                groupOfRoot.set(root, group);
+                groups.add(group);
+            }
+
+            group.add(m_cards[i]);
+        }
+
+        return groups;
+    }
+
+    private static void computeSignature(Card card, int[] signatures, int offset)
+    {
+        Arrays.fill(signatures, offset, offset + SIGNATURE_SIZE, Integer.MAX_VALUE);
+
+        addShingles(card.getFrontSide().getText().getFolded(true), 0,
+            signatures, offset);
+        addShingles(card.getBackSide().getText().getFolded(true), BACK_SIDE,
+            signatures, offset);
+    }
+
+    /**
+     * Adds the shingles of given text to the signature. Runs of whitespace
+     * count as a single space, so that only the words matter.
+     */
+    private static void addShingles(String text, long side, int[] signatures,
+        int offset)
+    {
+        // the last three chars are packed into the low 48 bits
+        long shingle = 0;
+        int chars = 0;
+        boolean space = true;
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c))
+            {
+                if (space)
+                    continue;
+
+                c = ' ';
+                space = true;
+            }
+            else
+            {
+                space = false;
+            }
+
+            shingle = ((shingle << 16) | c) & (BACK_SIDE - 1);
+            if (++chars >= 3)
+                addShingle(shingle | side, signatures, offset);
+        }
+
+        // short texts are a shingle of their own
+        if (chars < 3)
+            addShingle(shingle | side | (1L << 49), signatures, offset);
+    }
+
+    /**
+     * Updates the signature with the hash values of given shingle. The hash
+     * functions are multiply-shift functions with random factors, applied to
+     * a mixed hash of the shingle.
+     */
+    private static void addShingle(long shingle, int[] signatures, int offset)
+    {
+        long hash = mix(shingle);
+
+        for (int k = 0; k < SIGNATURE_SIZE; k++)
+        {
+            int value = (int)((MULTIPLIERS[k] * hash + ADDENDS[k]) >>> 33);
+            if (value < signatures[offset + k])
+                signatures[offset + k] = value;
+        }
+    }
+
+    private static long bandHash(int[] signatures, int card, int band)
+    {
+        int offset = card * SIGNATURE_SIZE + band * ROWS;
+
+        long hash = band;
+        for (int row = 0; row < ROWS; row++)
+            hash = mix(hash * 31 + signatures[offset + row]);
+
+        return hash;
+    }
+
+    private static double similarity(int[] signatures, int card, int other)
+    {
+        int offset = card * SIGNATURE_SIZE;
+        int otherOffset = other * SIGNATURE_SIZE;
+
+        int equal = 0;
+        for (int k = 0; k < SIGNATURE_SIZE; k++)
+        {
+            if (signatures[offset + k] == signatures[otherOffset + k])
+                equal++;
+        }
+
+        return (double)equal / SIGNATURE_SIZE;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads all bits.
+     */
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+
+    private static int find(int[] parents, int i)
+    {
+        while (parents[i] != i)
+        {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+
+        return i;
+    }
+
+    private static void union(int[] parents, int i, int j)
+    {
+        int rootI = find(parents, i);
+        int rootJ = find(parents, j);
+
+        // the first card of a group stays its root
+        if (rootI < rootJ)
+            parents[rootJ] = rootI;
+        else
+            parents[rootI] = rootJ;
+    }
+}
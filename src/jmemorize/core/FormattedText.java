@@ -22,11 +22,11 @@ import java.awt.Dimension;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.text.Normalizer;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
@@ -35,6 +35,7 @@ import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
 import javax.swing.text.Document;
 import javax.swing.text.Element;
+import javax.swing.text.Segment;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
@@ -56,6 +57,8 @@ public class FormattedText {
     public FormattedText(FormattedText other) {
         this.mFormattedText = other.mFormattedText;
         this.mUnformattedText = other.mUnformattedText;
+        this.mFoldedText = other.mFoldedText;
+        this.mStrippedText = other.mStrippedText;
     }
     public FormattedText() {}
     //Made Static
@@ -69,52 +72,185 @@ public class FormattedText {
     // TODO add trimming at end
     // TODO check if reg exp that breaks at new lines is suffice
     // TODO replace direct StyledDocument reference by eclipse-style IAdapter pattern
-    // TODO optimze the reg expr
 
     /**
      * An empty formatted text (immutable).
      */
     public static final FormattedText EMPTY = FormattedText.unformatted("");
 
-    private static final String  TAGS = "<(/?(b|i|u|sub|sup)?)>";
-    private static final Pattern TEXT_PATTERN = Pattern.compile(
-            "(.*?)<(/?(b|i|u|sub|sup)?)>", Pattern.DOTALL);
+    private static final String IMG_TAG_START = "<img ";
+    private static final String IMG_TAG_END   = "/>";
 
     private static final String CONTENT_ELEMENT_NAME = "content";
 
     private String mFormattedText;
-    private String mUnformattedText;
+    private String mUnformattedText; // lazily computed by getUnformatted
+    private String mFoldedText;      // lazily computed by getFolded
+    private String mStrippedText;    // folded without accents
     private static final Map<String, Object> stylesMap = new HashMap<>();
 
+    /**
+     * The style keys and ids in the order in which the encoder has always
+     * written them (the iteration order of the styles map). Keeping this
+     * order keeps the encoding of existing card texts stable.
+     */
+    private static final String[] STYLE_NAMES;
+    private static final Object[] STYLE_IDS;
+    private static final char[][] REDUNDANT_TAGS;
+
     static {
         setupStylesMap();
+
+        int n = stylesMap.size();
+        STYLE_NAMES = new String[n];
+        STYLE_IDS = new Object[n];
+        REDUNDANT_TAGS = new char[n][];
+
+        int i = 0;
+        for (Map.Entry<String, Object> entry : stylesMap.entrySet()) {
+            STYLE_NAMES[i] = entry.getKey();
+            STYLE_IDS[i] = entry.getValue();
+            REDUNDANT_TAGS[i] = ("</" + entry.getKey() + "><" +
+                    entry.getKey() + ">").toCharArray();
+            i++;
+        }
+    }
+
+    /**
+     * Scans a formatted string in one pass and splits it into text runs and
+     * the style tags that follow them. This replaces the regular expressions
+     * that were used to strip and decode the tags. No objects are created
+     * while scanning, text runs are reported as offsets into the formatted
+     * string.
+     */
+    private static final class TagScanner
+    {
+        private final String mText;
+        private int          mPos;
+
+        private int          mRunStart;
+        private int          mRunEnd;
+        private String       mTagStyle;
+        private boolean      mTagClosing;
+
+        TagScanner(String text)
+        {
+            mText = text;
+        }
+
+        /**
+         * Advances to the next text run and the tag that ends it.
+         *
+         * @return <code>false</code> if the whole text has been scanned.
+         */
+        boolean next()
+        {
+            int length = mText.length();
+            if (mPos > length)
+                return false;
+
+            mRunStart = mPos;
+            mTagStyle = null;
+
+            int i = mText.indexOf('<', mPos);
+            while (i >= 0)
+            {
+                int tagEnd = matchStyleTag(i);
+                if (tagEnd >= 0)
+                {
+                    mRunEnd = i;
+                    mPos = tagEnd;
+                    return true;
+                }
+
+                i = mText.indexOf('<', i + 1);
+            }
+
+            mRunEnd = length;
+            mPos = length + 1;
+            return true;
+        }
+
+        /**
+         * @return the style key of the tag that ends the current run. Is
+         * <code>null</code> if the run ends with the text or with one of the
+         * empty tags <code>&lt;&gt;</code> and <code>&lt;/&gt;</code>.
+         */
+        String getTagStyle()
+        {
+            return mTagStyle;
+        }
+
+        boolean isClosingTag()
+        {
+            return mTagClosing;
+        }
+
+        int getRunStart()
+        {
+            return mRunStart;
+        }
+
+        int getRunEnd()
+        {
+            return mRunEnd;
+        }
+
+        /**
+         * Matches the same tags as <code>&lt;(/?(b|i|u|sub|sup)?)&gt;</code>.
+         *
+         * @return the offset after the tag or -1 if there is no style tag at
+         * given offset.
+         */
+        private int matchStyleTag(int start)
+        {
+            int i = start + 1;
+            boolean closing = i < mText.length() && mText.charAt(i) == '/';
+            if (closing)
+                i++;
+
+            String style = null;
+            if (mText.startsWith("b>", i))
+                style = "b";
+            else if (mText.startsWith("i>", i))
+                style = "i";
+            else if (mText.startsWith("u>", i))
+                style = "u";
+            else if (mText.startsWith("sub>", i))
+                style = "sub";
+            else if (mText.startsWith("sup>", i))
+                style = "sup";
+            else if (!mText.startsWith(">", i))
+                return -1;
+
+            mTagStyle = style;
+            mTagClosing = closing;
+            return i + (style != null ? style.length() : 0) + 1;
+        }
     }
+
     public static FormattedText formatted(String formatted)
     {
         FormattedText text = new FormattedText();
         text.mFormattedText = formatted;
-        text.mUnformattedText = unescape(formatted.replaceAll(TAGS, "").replaceAll("<img .*?/>", ""));
 
         return text;
     }
 
     public static FormattedText formatted(StyledDocument document)
     {
-        Element root = document.getDefaultRootElement();
-        String fText = removeRedundantTags(getFormattedText(
-                root, 0, document.getLength()));
-
-        return FormattedText.formatted(fText);
+        return formatted(document, 0, document.getLength());
     }
 
     public static FormattedText formatted(StyledDocument document,
                                           int start, int end)
     {
         Element root = document.getDefaultRootElement();
-        String fText = removeRedundantTags(getFormattedText(
-                root, start, end));
+        StringBuilder sb = new StringBuilder(end - start + 16);
+        Segment segment = new Segment();
 
-        return FormattedText.formatted(fText);
+        appendFormattedText(sb, segment, root, start, end);
+        return FormattedText.formatted(removeRedundantTags(sb));
     }
 
     public static FormattedText unformatted(String unformatted)
@@ -152,9 +288,96 @@ public class FormattedText {
 
     public String getUnformatted()
     {
+        // benign race: all threads compute the same immutable string
+        if (mUnformattedText == null)
+            mUnformattedText = stripTags(mFormattedText);
+
         return mUnformattedText;
     }
 
+    /**
+     * @return the case folded unformatted text, see {@link #fold(String,
+     * boolean)}. It is computed once and cached, so use it for all case
+     * insensitive comparisons of card texts.
+     */
+    public String getFolded(boolean stripAccents)
+    {
+        // benign race like in getUnformatted
+        if (stripAccents)
+        {
+            if (mStrippedText == null)
+                mStrippedText = fold(getUnformatted(), true);
+
+            return mStrippedText;
+        }
+
+        if (mFoldedText == null)
+            mFoldedText = fold(getUnformatted(), false);
+
+        return mFoldedText;
+    }
+
+    /**
+     * Folds the case of given text by mapping every char to the lower case of
+     * its upper case, e.g. both <i>Stra&szlig;e</i> and <i>STRASSE</i> become
+     * <i>strasse</i>. Every char is folded on its own, so the folded form of
+     * a substring is always a substring of the folded text.
+     *
+     * @param stripAccents if <code>true</code> accents and other combining
+     * marks are removed as well, e.g. <i>&eacute;t&eacute;</i> becomes <i>ete</i>.
+     * @return the given string itself if there is nothing to fold.
+     */
+    public static String fold(String text, boolean stripAccents)
+    {
+        int length = text.length();
+
+        // most texts are plain lower case ASCII for the most part
+        int i = 0;
+        while (i < length)
+        {
+            char c = text.charAt(i);
+            if (c >= 0x80 || (c >= 'A' && c <= 'Z'))
+                break;
+
+            i++;
+        }
+
+        if (i == length)
+            return text;
+
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(text, 0, i);
+
+        while (i < length)
+        {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+
+            if (c < 0x80)
+            {
+                sb.append((char)(c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c));
+            }
+            else if (stripAccents)
+            {
+                String decomposed = Normalizer.normalize(
+                    new String(Character.toChars(c)), Normalizer.Form.NFD);
+
+                for (int j = 0; j < decomposed.length(); j++)
+                {
+                    char d = decomposed.charAt(j);
+                    if (Character.getType(d) != Character.NON_SPACING_MARK)
+                        appendFolded(sb, d);
+                }
+            }
+            else
+            {
+                appendFolded(sb, c);
+            }
+        }
+
+        return sb.toString();
+    }
+
     public StyledDocument getDocument()
     {
         DefaultStyledDocument doc = new DefaultStyledDocument();
@@ -190,7 +413,7 @@ public class FormattedText {
      */
     public String toString()
     {
-        return mUnformattedText;
+        return getUnformatted();
     }
 
     /* (non-Javadoc)
@@ -199,16 +422,7 @@ public class FormattedText {
 
     public Object clone()
     {
-        try
-        {
-            return super.clone();
-        }
-        catch (CloneNotSupportedException e)
-        {
-            assert false;
-        }
-
-        return null;
+        return new FormattedText(this);
     }
 
     /* (non-Javadoc)
@@ -228,7 +442,13 @@ public class FormattedText {
         return mFormattedText.hashCode();
     }
 
-    private static String removeRedundantTags(String formattedText)
+    /**
+     * Removes every <code>&lt;/k&gt;&lt;k&gt;</code> pair from the encoding,
+     * one style key after the other in {@link #STYLE_NAMES} order and without
+     * rescanning removed positions. This matches the results of the former
+     * replaceAll calls exactly, but compacts a single char buffer in place.
+     */
+    private static String removeRedundantTags(StringBuilder sb)
     {
         /*
          * StyledDocument merges styles in certain situations. To avoid that
@@ -236,31 +456,72 @@ public class FormattedText {
          * StyledDocument and back to an encoding again, we remove redundant
          * tags by ourselves.
          */
-        for (String key : stylesMap.keySet()) {
-            formattedText = formattedText.replaceAll("</" + key + "><" + key + ">", "");
+        int length = sb.length();
+        char[] chars = new char[length];
+        sb.getChars(0, length, chars, 0);
+
+        for (char[] tags : REDUNDANT_TAGS) {
+            int write = 0;
+            int read = 0;
+            while (read < length) {
+                if (chars[read] == '<' && matches(chars, read, length, tags)) {
+                    read += tags.length;
+                    continue;
+                }
+
+                chars[write++] = chars[read++];
+            }
+            length = write;
         }
-        return formattedText;
+
+        return new String(chars, 0, length);
     }
 
-    private static String getFormattedText(Element e,
-                                           int startSelection,
-                                           int endSelection) {
-        StringBuilder sb = new StringBuilder();
-        if (e.getName().equals(CONTENT_ELEMENT_NAME)) {
-            Document doc = e.getDocument();
+    private static boolean matches(char[] text, int offset, int length,
+                                   char[] chars) {
+        if (offset + chars.length > length)
+            return false;
 
-            int start = e.getStartOffset();
-            int end = Math.min(e.getEndOffset(), doc.getLength());
+        for (int i = 1; i < chars.length; i++) {
+            if (text[offset + i] != chars[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the given element and its children into given builder in a
+     * single depth-first pass. The style tags of an element enclose its text
+     * or its child elements. Tags of styles that come later in
+     * {@link #STYLE_NAMES} are placed outside of earlier ones.
+     */
+    private static void appendFormattedText(StringBuilder sb, Segment segment,
+                                            Element e, int startSelection,
+                                            int endSelection) {
+        boolean isContent = e.getName().equals(CONTENT_ELEMENT_NAME);
+        int start = e.getStartOffset();
+        int end = e.getEndOffset();
+
+        if (isContent) {
+            end = Math.min(end, e.getDocument().getLength());
 
             if (start > endSelection || end < startSelection)
-                return sb.toString();
+                return;
+        }
 
+        int styles = getStyles(e.getAttributes());
+        for (int i = STYLE_NAMES.length - 1; i >= 0; i--) {
+            if ((styles & (1 << i)) != 0)
+                sb.append('<').append(STYLE_NAMES[i]).append('>');
+        }
+
+        if (isContent) {
             try {
                 start = Math.max(start, startSelection);
                 end = Math.min(end, endSelection);
 
-                String text = doc.getText(start, end - start);
-                sb.append(escape(text));
+                e.getDocument().getText(start, end - start, segment);
+                appendEscaped(sb, segment);
             } catch (BadLocationException e1) {
                 e1.printStackTrace();
                 Main.logThrowable("Error formatting text", e1);
@@ -268,33 +529,40 @@ public class FormattedText {
         } else {
             for (int i = 0; i < e.getElementCount(); i++)
             {
-                sb.append(getFormattedText(e.getElement(i),
-                        startSelection, endSelection));
+                appendFormattedText(sb, segment, e.getElement(i),
+                        startSelection, endSelection);
             }
         }
 
-        for (Map.Entry<String, Object> entry : stylesMap.entrySet()) {
-            String name = entry.getKey();
-            Object styleId = entry.getValue();
-
-            if (hasStyle(e.getAttributes(), styleId)) {
-                sb.insert(0, "<" + name + ">");
-                sb.append("</" + name + ">");
-            }
+        for (int i = 0; i < STYLE_NAMES.length; i++) {
+            if ((styles & (1 << i)) != 0)
+                sb.append("</").append(STYLE_NAMES[i]).append('>');
         }
-
-
-        return sb.toString();
     }
 
-    private static String escape(String text)
-    {
-        return text.replace("<", "&lt;").replace(">", "&gt;");
+    /**
+     * @return a bit mask with the bits of all {@link #STYLE_IDS} set, which
+     * are active in given attributes.
+     */
+    private static int getStyles(AttributeSet attr) {
+        int styles = 0;
+        for (int i = 0; i < STYLE_IDS.length; i++) {
+            if (hasStyle(attr, STYLE_IDS[i]))
+                styles |= 1 << i;
+        }
+        return styles;
     }
 
-    private static String unescape(String text)
-    {
-        return text.replace("&lt;", "<").replace("&gt;", ">");
+    private static void appendEscaped(StringBuilder sb, Segment segment) {
+        for (int i = segment.offset; i < segment.offset + segment.count; i++) {
+            char c = segment.array[i];
+            if (c == '<')
+                sb.append("&lt;");
+            else if (c == '>')
+                sb.append("&gt;");
+            else
+                sb.append(c);
+        }
     }
 
     private static void setupStylesMap()
@@ -306,36 +574,153 @@ public class FormattedText {
         stylesMap.put("sup", StyleConstants.Superscript);
     }
 
+    /**
+     * Appends the folded form of a single code point. The upper case can be
+     * longer than the code point itself, e.g. for <i>&szlig;</i>.
+     */
+    private static void appendFolded(StringBuilder sb, int c)
+    {
+        String upper = new String(Character.toChars(c)).toUpperCase(Locale.ROOT);
+
+        for (int i = 0; i < upper.length(); )
+        {
+            int u = upper.codePointAt(i);
+            sb.appendCodePoint(Character.toLowerCase(u));
+            i += Character.charCount(u);
+        }
+    }
+
+    /**
+     * Removes all style tags and legacy image tags from given formatted text
+     * and unescapes it. Returns the given string itself if there is nothing
+     * to remove.
+     */
+    private static String stripTags(String formatted)
+    {
+        if (formatted.indexOf('<') < 0 && formatted.indexOf('&') < 0)
+            return formatted;
+
+        StringBuilder sb = new StringBuilder(formatted.length());
+        TagScanner scanner = new TagScanner(formatted);
+        while (scanner.next())
+        {
+            appendStripped(sb, formatted,
+                scanner.getRunStart(), scanner.getRunEnd());
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Appends the given text run without image tags and unescaped.
+     */
+    private static void appendStripped(StringBuilder sb, String text,
+        int start, int end)
+    {
+        int i = start;
+        while (i < end)
+        {
+            if (text.startsWith(IMG_TAG_START, i))
+            {
+                int imgEnd = findImageTagEnd(text, i + IMG_TAG_START.length(), end);
+                if (imgEnd >= 0)
+                {
+                    i = imgEnd;
+                    continue;
+                }
+            }
+
+            i = appendUnescapedChar(sb, text, i, end);
+        }
+    }
+
+    /**
+     * Behaves like the former <code>&lt;img .*?/&gt;</code> expression, which
+     * doesn't match across line breaks.
+     *
+     * @return the offset after the image tag or -1 if it isn't closed.
+     */
+    private static int findImageTagEnd(String text, int from, int end)
+    {
+        for (int i = from; i < end; i++)
+        {
+            if (i + IMG_TAG_END.length() <= end && text.startsWith(IMG_TAG_END, i))
+                return i + IMG_TAG_END.length();
+
+            char c = text.charAt(i);
+
+            if (c == '\n' || c == '\r' || c == '\u0085' ||
+                c == '\u2028' || c == '\u2029')
+            {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static void appendUnescaped(StringBuilder sb, String text,
+        int start, int end)
+    {
+        int i = start;
+        while (i < end)
+        {
+            i = appendUnescapedChar(sb, text, i, end);
+        }
+    }
+
+    /**
+     * @return the offset of the next char that needs to be appended.
+     */
+    private static int appendUnescapedChar(StringBuilder sb, String text,
+        int i, int end)
+    {
+        char c = text.charAt(i);
+        if (c == '&' && i + 4 <= end && text.charAt(i + 2) == 't' &&
+            text.charAt(i + 3) == ';')
+        {
+            char entity = text.charAt(i + 1);
+            if (entity == 'l')
+            {
+                sb.append('<');
+                return i + 4;
+            }
+            if (entity == 'g')
+            {
+                sb.append('>');
+                return i + 4;
+            }
+        }
+
+        sb.append(c);
+        return i + 1;
+    }
+
     private void decode(StyledDocument doc, String text, int offset)
             throws BadLocationException {
-        StringBuilder sb = new StringBuilder(text);
-
-        Matcher m = TEXT_PATTERN.matcher(sb);
-        int end = 0;
+        StringBuilder sb = new StringBuilder();
+        TagScanner scanner = new TagScanner(text);
 
         SimpleAttributeSet attr = new SimpleAttributeSet();
-        while (m.find()) {
-            String pretext = m.group(1);
-            String tag = m.group(2);
-
-            String unescapedPretext = unescape(pretext);
-            doc.insertString(offset, unescapedPretext, attr);
-            offset += unescapedPretext.length();
-
-            boolean style = true;
-            if (tag.startsWith("/")) {
-                tag = tag.substring(1);
-                style = false;
+        while (scanner.next()) {
+            sb.setLength(0);
+            appendUnescaped(sb, text, scanner.getRunStart(), scanner.getRunEnd());
+
+            String style = scanner.getTagStyle();
+            if (style == null && scanner.getRunEnd() == text.length()) {
+                // the rest of the text is never styled
+                doc.insertString(offset, sb.toString(), new SimpleAttributeSet());
+                break;
             }
 
-            Object styleId = stylesMap.get(tag);
-            attr.addAttribute(styleId, Boolean.valueOf(style));
+            doc.insertString(offset, sb.toString(), attr);
+            offset += sb.length();
 
-            end = m.end();
+            if (style != null) {
+                attr.addAttribute(stylesMap.get(style),
+                        Boolean.valueOf(!scanner.isClosingTag()));
+            }
         }
-
-        String restText = unescape(sb.substring(end));
-        doc.insertString(offset, restText, new SimpleAttributeSet());
     }
     private static boolean hasStyle(AttributeSet attr, Object styleId)
     {
@@ -45,6 +45,7 @@ public class ImageRepository
     
     private static ImageRepository m_instance;
 
+    // images are also looked up by the document prefetch thread
     private Map<String, ImageItem> m_imageMap    = new HashMap<String, ImageItem>();
     private LinkedList<ImageIcon>  m_imageCache  = new LinkedList<ImageIcon>();
 
@@ -154,7 +155,7 @@ public class ImageRepository
         return m_imageMap.values();
     }
     
-    public ImageIcon getImage(String imageId)
+    public synchronized ImageIcon getImage(String imageId)
     {
         for (ImageIcon icon : m_imageCache)
         {
@@ -181,7 +182,7 @@ public class ImageRepository
         return icon;
     }
     
-    public String addImage(InputStream in, String filename) throws IOException
+    public synchronized String addImage(InputStream in, String filename) throws IOException
     {
         // TOOD check if image already in our map
 //        for (ImageItem item : m_imageMap.values())
@@ -260,7 +261,7 @@ public class ImageRepository
     /**
      * Retains all images with given IDs. All other images are removed.
      */
-    public void retain(Set<String> retainIDs)
+    public synchronized void retain(Set<String> retainIDs)
     {
         Set<String> toBeRemoved = new HashSet<String>(m_imageMap.keySet());
         
@@ -321,7 +322,7 @@ public class ImageRepository
         return images;
     }
     
-    public void clear()
+    public synchronized void clear()
     {
         m_imageMap.clear();        
     }
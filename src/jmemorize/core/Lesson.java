@@ -19,22 +19,30 @@
 package jmemorize.core;
 
 import java.io.File;
+import java.util.List;
 
 import jmemorize.core.learn.LearnHistory;
+import jmemorize.core.learn.ReviewLog;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
 
 /**
  * @author djemili
  */
-public class Lesson implements CategoryObserver 
+public class Lesson implements CardBatchObserver 
 {
     /** True if this lesson has been modified since last save or load process */
     private boolean           m_canSave = false;
     private File              m_file;
     
+    /** True while the cards of this lesson are still being loaded */
+    private boolean           m_loading;
+    private boolean           m_loaderChange;
+    
     private Category          m_rootCategory;
     private LearnHistory      m_learnHistory = new LearnHistory();
+    private ReviewLog         m_reviewLog    = new ReviewLog();
+    private SearchIndex       m_searchIndex;
     
     public Lesson(boolean canSave)
     {
@@ -59,11 +67,13 @@ public class Lesson implements CategoryObserver
     }
     
     /**
-     * @param file The file to set.
+     * @param file The file to set. The review log that is stored next to it
+     * is continued, unless the review log of this lesson is already stored.
      */
     public void setFile(File file)
     {
         m_file = file;
+        m_reviewLog.open(ReviewLog.getDirectory(file));
     }
     
     public LearnHistory getLearnHistory()
@@ -71,6 +81,14 @@ public class Lesson implements CategoryObserver
         return m_learnHistory;
     }
     
+    /**
+     * @return the log of all reviews of the cards of this lesson.
+     */
+    public ReviewLog getReviewLog()
+    {
+        return m_reviewLog;
+    }
+    
     /**
      * @return <code>true</code> if saving is needed for this lesson.
      */
@@ -79,6 +97,41 @@ public class Lesson implements CategoryObserver
         return m_canSave;
     }
     
+    /**
+     * @return <code>true</code> while the cards of this lesson are still being
+     * loaded. A lesson that is loading is incomplete and must not be saved.
+     */
+    public boolean isLoading()
+    {
+        return m_loading;
+    }
+    
+    /**
+     * Marks this lesson as being loaded or as fully loaded. Changes that the
+     * user makes while the lesson is loading still mark it as modified.
+     */
+    public void setLoading(boolean loading)
+    {
+        m_loading = loading;
+    }
+    
+    /**
+     * Runs a change of the loader of this lesson, e.g. a batch of inserted
+     * cards, without marking the lesson as modified.
+     */
+    public void runLoaderChange(Runnable change)
+    {
+        m_loaderChange = true;
+        try
+        {
+            change.run();
+        }
+        finally
+        {
+            m_loaderChange = false;
+        }
+    }
+    
     /**
      * @return Returns the root rategory.
      */
@@ -87,12 +140,47 @@ public class Lesson implements CategoryObserver
         return m_rootCategory;
     }
     
+    /**
+     * @return the search index for the cards of this lesson. It is built on
+     * the first call and kept up to date afterwards.
+     */
+    public SearchIndex getSearchIndex()
+    {
+        if (m_searchIndex == null)
+        {
+            m_searchIndex = new SearchIndex(m_rootCategory);
+        }
+        
+        return m_searchIndex;
+    }
+    
+    /**
+     * Unloads the unchanged cards of all categories whose cards are stored
+     * in chunks. They are loaded again when they are needed.
+     * 
+     * @return the number of categories whose cards were unloaded.
+     */
+    public int unloadCards()
+    {
+        int unloaded = 0;
+        for (Category category : m_rootCategory.getSubtreeList())
+        {
+            if (category.unloadCards())
+                unloaded++;
+        }
+        
+        return unloaded;
+    }
+    
     /*
      * @see jmemorize.core.CategoryObserver
      */
     public void onCategoryEvent(int type, Category category)
     {
-        setCanSave(true);
+        if (!m_loaderChange)
+        {
+            setCanSave(true);
+        }
     }
 
     /*
@@ -100,7 +188,18 @@ public class Lesson implements CategoryObserver
      */
     public void onCardEvent(int type, Card card, Category category, int deck)
     {
-        if (type != EXPIRED_EVENT)
+        if (type != EXPIRED_EVENT && !m_loaderChange)
+        {
+            setCanSave(true);
+        }
+    }
+
+    /*
+     * @see jmemorize.core.CardBatchObserver
+     */
+    public void onCardsEvent(int type, List<Card> cards, Category category)
+    {
+        if (type != EXPIRED_EVENT && !m_loaderChange)
         {
             setCanSave(true);
         }
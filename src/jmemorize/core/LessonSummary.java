@@ -0,0 +1,248 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The numbers of cards, learned cards and expired cards per category and
+ * deck of a lesson. A summary is saved along with the lesson, so that the
+ * views can show these numbers before the cards are loaded.
+ *
+ * Learned cards expire over time, so the numbers of learned and expired cards
+ * are only right as long as no learned card has expired since the summary was
+ * made. This is the case until the next expiry date of the summary.
+ */
+public class LessonSummary
+{
+    // indices into the counts of a deck
+    public static final int           CARDS    = 0;
+    public static final int           LEARNED  = 1;
+    public static final int           EXPIRED  = 2;
+
+    private static final int[][]      NO_DECKS = new int[0][];
+
+    // the counts of the local cards of a category per deck
+    private final Map<Category, int[][]> m_counts =
+        new IdentityHashMap<Category, int[][]>();
+
+    private long                      m_nextExpiry;
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param nextExpiry the time in milliseconds at which the first learned
+     * card expires.
+     */
+    public LessonSummary(long nextExpiry)
+    {
+        m_nextExpiry = nextExpiry;
+    }
+
+    /**
+     * Counts the cards of given category and all of its child categories.
+     */
+    public static LessonSummary create(Category rootCategory)
+    {
+        LessonSummary summary = new LessonSummary(Long.MAX_VALUE);
+        for (Category category : rootCategory.getSubtreeList())
+        {
+            summary.addCards(category);
+        }
+
+        return summary;
+    }
+
+    /**
+     * Counts the local cards of given category.
+     */
+    public void addCards(Category category)
+    {
+        addCategory(category);
+        for (int level = 0; level < category.getNumberOfDecks(); level++)
+        {
+            int learned = 0;
+            int expired = 0;
+
+            List<Card> cards = category.getLocalCards(level);
+            for (Card card : cards)
+            {
+                if (card.isLearned())
+                {
+                    learned++;
+                    addExpiry(card.getDateExpired().getTime());
+                }
+                else if (card.isExpired())
+                {
+                    expired++;
+                }
+            }
+
+            addCounts(category, level, cards.size(), learned, expired);
+        }
+    }
+
+    /**
+     * Adds a category without any cards, unless it is already in the summary.
+     */
+    public void addCategory(Category category)
+    {
+        if (!m_counts.containsKey(category))
+            m_counts.put(category, NO_DECKS);
+    }
+
+    /**
+     * @return the categories of the summary.
+     */
+    public Set<Category> getCategories()
+    {
+        return Collections.unmodifiableSet(m_counts.keySet());
+    }
+
+    /**
+     * Adds to the numbers of the local cards of given deck.
+     */
+    public void addCounts(Category category, int level, int cards, int learned,
+        int expired)
+    {
+        int[][] decks = m_counts.get(category);
+        if (decks == null || decks.length <= level)
+        {
+            int[][] newDecks = new int[level + 1][];
+            for (int i = 0; i < newDecks.length; i++)
+            {
+                newDecks[i] = decks != null && i < decks.length ?
+                    decks[i] : new int[3];
+            }
+
+            decks = newDecks;
+            m_counts.put(category, decks);
+        }
+
+        decks[level][CARDS] += cards;
+        decks[level][LEARNED] += learned;
+        decks[level][EXPIRED] += expired;
+    }
+
+    /**
+     * Takes the expiry date of a learned card into account, which becomes the
+     * next expiry date if it is earlier than the current one.
+     */
+    public void addExpiry(long time)
+    {
+        m_nextExpiry = Math.min(m_nextExpiry, time);
+    }
+
+    /**
+     * @return the numbers of the local cards of given category per deck,
+     * indexed by {@link #CARDS}, {@link #LEARNED} and {@link #EXPIRED}.
+     */
+    public int[][] getLocalCounts(Category category)
+    {
+        int[][] decks = m_counts.get(category);
+        return decks != null ? decks : NO_DECKS;
+    }
+
+    /**
+     * @return the numbers of the cards of given category and its child
+     * categories per deck, indexed by {@link #CARDS}, {@link #LEARNED} and
+     * {@link #EXPIRED}.
+     */
+    public int[][] getCounts(Category category)
+    {
+        int decks = 0;
+        List<Category> categories = category.getSubtreeList();
+        for (Category child : categories)
+            decks = Math.max(decks, getLocalCounts(child).length);
+
+        int[][] counts = new int[decks][3];
+        for (Category child : categories)
+        {
+            int[][] localCounts = getLocalCounts(child);
+            for (int level = 0; level < localCounts.length; level++)
+            {
+                for (int i = 0; i < 3; i++)
+                    counts[level][i] += localCounts[level][i];
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return the time in milliseconds at which the first learned card
+     * expires, or {@link Long#MAX_VALUE} if there are no learned cards.
+     */
+    public long getNextExpiry()
+    {
+        return m_nextExpiry;
+    }
+
+    /**
+     * @return <code>true</code> if no learned card has expired since the
+     * summary was made, so that all of its numbers are still right.
+     */
+    public boolean isCurrent()
+    {
+        return Main.getNow().getTime() < m_nextExpiry;
+    }
+
+    /**
+     * Checks this summary against another one, usually one that was made from
+     * the loaded cards. The numbers of learned and expired cards are only
+     * compared if this summary is still current. Empty decks at the end of a
+     * category don't matter.
+     */
+    public boolean matches(LessonSummary other)
+    {
+        boolean current = isCurrent();
+
+        Map<Category, int[][]> categories = new IdentityHashMap<Category, int[][]>(m_counts);
+        categories.putAll(other.m_counts);
+
+        // the values don't matter, the map is a set of both key sets
+        for (Category category : categories.keySet())
+        {
+            int[][] counts = getLocalCounts(category);
+            int[][] otherCounts = other.getLocalCounts(category);
+
+            for (int level = 0; level < Math.max(counts.length, otherCounts.length); level++)
+            {
+                int[] deck = level < counts.length ? counts[level] : new int[3];
+                int[] otherDeck = level < otherCounts.length ?
+                    otherCounts[level] : new int[3];
+
+                if (deck[CARDS] != otherDeck[CARDS])
+                    return false;
+
+                if (current && (deck[LEARNED] != otherDeck[LEARNED] ||
+                    deck[EXPIRED] != otherDeck[EXPIRED]))
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+}
@@ -25,6 +25,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.net.URL;
 import java.nio.channels.FileChannel;
 import java.util.Date;
@@ -32,6 +36,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Observable;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -39,13 +44,22 @@ import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 import java.util.prefs.Preferences;
 
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.swing.SwingUtilities;
+
+import jmemorize.core.io.LessonLoader;
 import jmemorize.core.io.XmlBuilder;
 import jmemorize.core.learn.DefaultLearnSession;
 import jmemorize.core.learn.LearnHistory;
+import jmemorize.core.learn.LearnQueue;
+import jmemorize.core.learn.LearnQueueService;
 import jmemorize.core.learn.LearnSession;
 import jmemorize.core.learn.LearnSessionObserver;
 import jmemorize.core.learn.LearnSessionProvider;
 import jmemorize.core.learn.LearnSettings;
+import jmemorize.core.learn.ReviewLog;
 import jmemorize.gui.swing.frames.MainFrame;
 import jmemorize.util.RecentItems;
 
@@ -55,7 +69,7 @@ import jmemorize.util.RecentItems;
  * @author djemili
  */
 public class Main extends Observable implements LearnSessionProvider, 
-    LessonProvider, CategoryObserver
+    LessonProvider, CardBatchObserver
 {
     public interface ProgramEndObserver
     {
@@ -72,6 +86,10 @@ public class Main extends Observable implements LearnSessionProvider,
     private static final String         PROPERTIES_PATH         = 
         "/resource/jMemorize.properties"; //$NON-NLS-1$
 
+    // share of the heap that is still used after a garbage collection, from
+    // which on unchanged cards are unloaded
+    private static final double         MEMORY_THRESHOLD        = 0.8;
+
     public static final File            STATS_FILE               = 
         new File(System.getProperty("user.home")+"/.jmemorize-stats.xml"); //$NON-NLS-1$ //$NON-NLS-2$
 
@@ -85,6 +103,16 @@ public class Main extends Observable implements LearnSessionProvider,
     private LearnSettings               m_learnSettings;
     private LearnHistory                m_globalLearnHistory;
     private int                         m_runningSessions       = 0;
+    
+    // builds the learn sessions and the learn queues in the background
+    private LearnQueueService           m_learnQueues           = 
+        new LearnQueueService(new Executor() {
+            public void execute(Runnable command)
+            {
+                SwingUtilities.invokeLater(command);
+            }
+        });
+    private LearnQueueService.SessionTask m_sessionTask;
 
     // observers
     private List<LessonObserver>        m_lessonObservers       = 
@@ -143,6 +171,11 @@ public class Main extends Observable implements LearnSessionProvider,
             fireLessonClosed(oldLesson);
         }
         
+        if (m_sessionTask != null)
+            m_sessionTask.cancel();
+        
+        m_learnQueues.setRootCategory(lesson.getRootCategory());
+        
         if (m_frame != null) // TODO remove call
         {
             m_frame.setLesson(m_lesson);
@@ -177,6 +210,38 @@ public class Main extends Observable implements LearnSessionProvider,
         }
     }
     
+    /**
+     * Sets a lesson whose cards are still being inserted by a
+     * {@link LessonLoader}, so that it can be shown before it is fully
+     * loaded. The loader has to insert the cards through
+     * {@link Lesson#runLoaderChange} and {@link #finishLoadingLesson} has to
+     * be called when it is done. Until then the lesson can't be saved.
+     */
+    public void setLoadingLesson(Lesson lesson)
+    {
+        ImageRepository.getInstance().clear();
+        
+        // the changes of the loader so far happened before it was shown
+        lesson.setCanSave(false);
+        lesson.setLoading(true);
+        setLesson(lesson);
+    }
+    
+    /**
+     * Marks a lesson that was set by {@link #setLoadingLesson} as loaded. It
+     * stays modified if the user changed it while it was loading.
+     */
+    public void finishLoadingLesson(Lesson lesson)
+    {
+        lesson.setLoading(false);
+        m_recentFiles.push(lesson.getFile().getAbsolutePath());
+        
+        for (LessonObserver observer : m_lessonObservers)
+        {
+            observer.lessonModified(lesson);
+        }
+    }
+    
     /* (non-Javadoc)
      * Declared in jmemorize.core.LessonProvider
      */
@@ -189,6 +254,10 @@ public class Main extends Observable implements LearnSessionProvider,
             
             file.delete();
             copyFile(tempFile, file);
+            XmlBuilder.attachCardChunks(file, lesson.getRootCategory());
+            ReviewLog reviewLog = lesson.getReviewLog();
+            reviewLog.setSavedCardIds(lesson.getRootCategory().getNextCardId());
+            reviewLog.saveTo(ReviewLog.getDirectory(file));
             
             lesson.setFile(file); // note: sets file only if no exception
             lesson.setCanSave(false);
@@ -265,6 +334,7 @@ public class Main extends Observable implements LearnSessionProvider,
             observer.onProgramEnd();
         }
         
+        flushReviewLog();
         System.exit(0);
     }
 
@@ -274,8 +344,62 @@ public class Main extends Observable implements LearnSessionProvider,
     public void startLearnSession(LearnSettings settings, List<Card> selectedCards, 
         Category category,boolean learnUnlearned, boolean learnExpired) 
     {
-        LearnSession session = new DefaultLearnSession(category, settings, 
-            selectedCards, learnUnlearned, learnExpired, this);
+        buildLearnSession(settings, selectedCards, category, learnUnlearned, 
+            learnExpired, null, null);
+    }
+    
+    /**
+     * Builds a learn session in the background and starts it when it is
+     * built. A session that is still being built is cancelled.
+     * 
+     * @param progress receives the progress of the build on the background
+     * thread. Can be <code>null</code>.
+     * @param listener is called when the session was started or the build was
+     * cancelled. Can be <code>null</code>.
+     * @return the build, which can be cancelled.
+     * 
+     * @see #startLearnSession(LearnSettings, List, Category, boolean, boolean)
+     */
+    public LearnQueueService.SessionTask buildLearnSession(LearnSettings settings, 
+        List<Card> selectedCards, Category category, boolean learnUnlearned, 
+        boolean learnExpired, LearnQueue.ProgressListener progress, 
+        final LearnQueueService.SessionListener listener)
+    {
+        if (m_sessionTask != null)
+            m_sessionTask.cancel();
+        
+        final LearnQueueService.SessionTask[] task = new LearnQueueService.SessionTask[1];
+        task[0] = m_learnQueues.buildSession(settings, selectedCards, 
+            category, learnUnlearned, learnExpired, this, progress, 
+            new LearnQueueService.SessionListener() {
+                public void onSessionBuilt(DefaultLearnSession session)
+                {
+                    if (m_sessionTask == task[0])
+                        m_sessionTask = null;
+                    
+                    if (session != null)
+                        startLearnSession(session);
+                    
+                    if (listener != null)
+                        listener.onSessionBuilt(session);
+                }
+            });
+        
+        m_sessionTask = task[0];
+        return m_sessionTask;
+    }
+    
+    /**
+     * @return the service that builds the learn queues of the lesson.
+     */
+    public LearnQueueService getLearnQueueService()
+    {
+        return m_learnQueues;
+    }
+    
+    private void startLearnSession(DefaultLearnSession session)
+    {
+        session.setReviewLog(m_lesson.getReviewLog());
         
         m_runningSessions++;
         
@@ -308,10 +432,14 @@ public class Main extends Observable implements LearnSessionProvider,
                 session.getRelearnedCards().size());
         }
         
+        flushReviewLog();
+        
         for (LearnSessionObserver observer : m_learnSessionObservers)
         {
             observer.sessionEnded(session);
         }
+        
+        m_learnQueues.prefetch();
     }
 
     /* (non-Javadoc)
@@ -370,6 +498,14 @@ public class Main extends Observable implements LearnSessionProvider,
         fireLessonModified(m_lesson);
     }
 
+    /* (non-Javadoc)
+     * Declared in jmemorize.core.CardBatchObserver
+     */
+    public void onCardsEvent(int type, List<Card> cards, Category category)
+    {
+        fireLessonModified(m_lesson);
+    }
+
     /* (non-Javadoc)
      * Declared in jmemorize.core.CategoryObserver
      */
@@ -495,6 +631,7 @@ public class Main extends Observable implements LearnSessionProvider,
     {
         createNewLesson();
         startStats();
+        startMemoryWatcher();
         
         m_frame = new MainFrame();
         m_learnSettings = Settings.loadStrategy(m_frame);
@@ -511,6 +648,71 @@ public class Main extends Observable implements LearnSessionProvider,
         m_globalLearnHistory = new LearnHistory(STATS_FILE);
     }
     
+    /**
+     * Writes the reviews of the lesson that were logged since the last flush,
+     * so that they don't have to wait for the background flush.
+     */
+    private void flushReviewLog()
+    {
+        if (m_lesson == null)
+            return;
+        
+        try
+        {
+            m_lesson.getReviewLog().flush();
+        }
+        catch (IOException e)
+        {
+            logThrowable("Could not write the review log", e); //$NON-NLS-1$
+        }
+    }
+    
+    /**
+     * Unloads the cards of the lesson that can be loaded from their chunks
+     * again, when the heap is still nearly full after a garbage collection.
+     */
+    private void startMemoryWatcher()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && max > 0 &&
+                pool.isCollectionUsageThresholdSupported())
+            {
+                pool.setCollectionUsageThreshold((long)(max * MEMORY_THRESHOLD));
+            }
+        }
+        
+        NotificationEmitter emitter = 
+            (NotificationEmitter)ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener(new NotificationListener() {
+            public void handleNotification(Notification notification, Object handback)
+            {
+                if (!notification.getType().equals(
+                    MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED))
+                {
+                    return;
+                }
+                
+                // the lesson is only changed on the event dispatch thread
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        int unloaded = m_lesson.unloadCards();
+                        if (unloaded > 0)
+                        {
+                            // the queue holds the cards that were unloaded
+                            m_learnQueues.invalidate();
+                            
+                            logger.info("Low memory, unloaded the cards of " + //$NON-NLS-1$
+                                unloaded + " categories"); //$NON-NLS-1$
+                        }
+                    }
+                });
+            }
+        }, null, null);
+    }
+    
     private void fireLessonLoaded(Lesson lesson)
     {
         lesson.getRootCategory().addObserver(this);
@@ -0,0 +1,515 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+import jmemorize.util.LongHashMap;
+
+/**
+ * An inverted index over the card texts of a lesson. Every card side is split
+ * into trigrams of its case folded text and for every trigram a posting
+ * list of the cards that contain it is kept. A search only has to look at the
+ * cards that contain all trigrams of the search text. These candidates are
+ * then checked with the same rules as {@link SearchTool} uses, so that both
+ * return the same cards.
+ *
+ * The index observes the root category and is kept current by the card and
+ * category events, which also cover text changes of the card sides. Edited
+ * and removed cards just leave stale entries behind, which are dropped by
+ * rebuilding the index once they outnumber the live cards.
+ *
+ * All methods are synchronized, so that searches can run on another thread
+ * than the one that modifies the lesson.
+ */
+public class SearchIndex implements CardBatchObserver
+{
+    // the trigrams at the end of a text are padded with this char
+    private final static char PADDING      = '\0';
+
+    // the side is stored above the 3 chars of a trigram key
+    private final static long BACK_SIDE    = 1L << 48;
+
+    private final static int  MIN_COMPACT  = 1024;
+
+    /**
+     * Receives the cards found by a search.
+     */
+    public interface HitCollector
+    {
+        /**
+         * Called with the lock of the index held, so this must not wait for
+         * the thread that modifies the lesson.
+         *
+         * @return <code>false</code> to stop the search.
+         */
+        boolean onHit(Card card);
+    }
+
+    /**
+     * A growable, ascending list of card ids.
+     */
+    private static class PostingList
+    {
+        private int[] m_ids = new int[2];
+        private int   m_size;
+
+        public void add(int id)
+        {
+            // a trigram can occur several times in the same text
+            if (m_size > 0 && m_ids[m_size - 1] == id)
+                return;
+
+            if (m_size == m_ids.length)
+                m_ids = Arrays.copyOf(m_ids, 2 * m_size);
+
+            m_ids[m_size++] = id;
+        }
+
+        public boolean contains(int id)
+        {
+            return Arrays.binarySearch(m_ids, 0, m_size, id) >= 0;
+        }
+    }
+
+    private final Category                 m_root;
+
+    // open addressing table from trigram keys to their posting lists
+    private long[]                         m_keys;
+    private PostingList[]                  m_postings;
+    private int                            m_keyCount;
+
+    // all trigram keys in ascending order. null if keys were added since
+    private long[]                         m_sortedKeys;
+
+    // the index ids of the cards by their card ids
+    private final LongHashMap<Integer>     m_ids      =
+        new LongHashMap<Integer>();
+    private Card[]                         m_cards    = new Card[64];
+    private int                            m_nextId;
+
+    // incremented whenever the indexed cards change
+    private int                            m_modificationCount;
+
+    /**
+     * Builds the index for all cards below given root category and keeps it
+     * current until {@link #dispose()} is called.
+     */
+    public SearchIndex(Category root)
+    {
+        m_root = root;
+
+        clear();
+        addCards(root);
+        root.addObserver(this);
+    }
+
+    /**
+     * Stops updating this index.
+     */
+    public synchronized void dispose()
+    {
+        m_root.removeObserver(this);
+    }
+
+    /**
+     * Finds all cards in given category and its child categories that contain
+     * the search text. Returns the same cards as
+     * {@link SearchTool#search(String, int, boolean, int, List)} for the cards
+     * of the category, but in the order the cards were indexed.
+     *
+     * @param side one of {@link SearchTool#FRONT_SIDE},
+     * {@link SearchTool#FLIP_SIDE} or {@link SearchTool#BOTH_SIDES}.
+     * @param mode one of {@link SearchTool#SUBSTRING},
+     * {@link SearchTool#PREFIX} or {@link SearchTool#WHOLE_WORD}.
+     */
+    public List<Card> search(String text, int side, boolean matchCase,
+        int mode, Category category)
+    {
+        final List<Card> foundCards = new ArrayList<Card>();
+        search(text, side, matchCase, mode, category, new HitCollector() {
+            public boolean onHit(Card card)
+            {
+                return foundCards.add(card);
+            }
+        });
+
+        return foundCards;
+    }
+
+    /**
+     * Like {@link #search(String, int, boolean, int, Category)}, but hands
+     * the cards to given collector as soon as they are found.
+     */
+    public synchronized void search(String text, int side, boolean matchCase,
+        int mode, Category category, HitCollector collector)
+    {
+        // a text that matches also matches when folded, see FormattedText.fold
+        String folded = FormattedText.fold(text, false);
+        BitSet candidates = new BitSet(m_nextId);
+
+        if (side == SearchTool.FRONT_SIDE || side == SearchTool.BOTH_SIDES)
+            addCandidates(folded, 0, candidates);
+
+        if (side == SearchTool.FLIP_SIDE || side == SearchTool.BOTH_SIDES)
+            addCandidates(folded, BACK_SIDE, candidates);
+
+        if (!matchCase)
+            text = folded;
+
+        for (int id = candidates.nextSetBit(0); id >= 0;
+            id = candidates.nextSetBit(id + 1))
+        {
+            Card card = m_cards[id];
+
+            if (card != null && contains(category, card.getCategory()) &&
+                SearchTool.matches(card, text, side, matchCase, mode))
+            {
+                if (!collector.onHit(card))
+                    return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of cards in this index.
+     */
+    public synchronized int size()
+    {
+        return m_ids.size();
+    }
+
+    /**
+     * @return a number that changes whenever the indexed cards or their texts
+     * change. Results of earlier searches are only valid as long as it stays
+     * the same.
+     */
+    public synchronized int getModificationCount()
+    {
+        return m_modificationCount;
+    }
+
+    /*
+     * @see jmemorize.core.CategoryObserver
+     */
+    public synchronized void onCardEvent(int type, Card card, Category category, int deck)
+    {
+        switch (type)
+        {
+        case ADDED_EVENT:
+            addCard(card);
+            break;
+
+        case REMOVED_EVENT:
+            removeCard(card);
+            break;
+
+        case EDITED_EVENT:
+            removeCard(card);
+            addCard(card);
+            break;
+
+        case MOVED_EVENT:
+            // the card can now be in the category of an earlier search
+            m_modificationCount++;
+            break;
+        }
+
+        compactIfNeeded();
+    }
+
+    /*
+     * @see jmemorize.core.CardBatchObserver
+     */
+    public synchronized void onCardsEvent(int type, List<Card> cards, Category category)
+    {
+        for (Card card : cards)
+        {
+            onCardEvent(type, card, category, card.getLevel());
+        }
+    }
+
+    /*
+     * @see jmemorize.core.CategoryObserver
+     */
+    public synchronized void onCategoryEvent(int type, Category category)
+    {
+        // added and removed categories can already contain cards
+        if (type == ADDED_EVENT)
+        {
+            addCards(category);
+        }
+        else if (type == REMOVED_EVENT)
+        {
+            for (Iterator<Card> it = category.getCardIterator(); it.hasNext();)
+            {
+                removeCard(it.next());
+            }
+
+            compactIfNeeded();
+        }
+    }
+
+    private void addCards(Category category)
+    {
+        for (Iterator<Card> it = category.getCardIterator(); it.hasNext();)
+        {
+            addCard(it.next());
+        }
+    }
+
+    private void addCard(Card card)
+    {
+        if (m_ids.containsKey(card.getId()))
+            return;
+
+        m_modificationCount++;
+
+        // ids are only handed out once, which keeps the posting lists sorted
+        int id = m_nextId++;
+        if (id == m_cards.length)
+            m_cards = Arrays.copyOf(m_cards, 2 * id);
+
+        m_cards[id] = card;
+        m_ids.put(card.getId(), id);
+
+        addTrigrams(card.getFrontSide().getText().getFolded(false), 0, id);
+        addTrigrams(card.getBackSide().getText().getFolded(false), BACK_SIDE, id);
+    }
+
+    private void removeCard(Card card)
+    {
+        Integer id = m_ids.remove(card.getId());
+        if (id != null)
+        {
+            m_cards[id] = null;
+            m_modificationCount++;
+        }
+    }
+
+    /**
+     * Rebuilds the index if there are more stale ids than indexed cards.
+     */
+    private void compactIfNeeded()
+    {
+        int stale = m_nextId - m_ids.size();
+        if (stale < MIN_COMPACT || stale < m_ids.size())
+            return;
+
+        clear();
+        addCards(m_root);
+    }
+
+    private void clear()
+    {
+        m_keys = new long[1024];
+        m_postings = new PostingList[1024];
+        m_keyCount = 0;
+        m_sortedKeys = null;
+
+        m_ids.clear();
+        m_cards = new Card[64];
+        m_nextId = 0;
+    }
+
+    /**
+     * Adds one trigram for every char of the text. The last two trigrams are
+     * padded, so that every substring of up to three chars is the beginning
+     * of a trigram.
+     */
+    private void addTrigrams(String text, long side, int id)
+    {
+        int length = text.length();
+        char c1 = length > 0 ? text.charAt(0) : PADDING;
+        char c2 = length > 1 ? text.charAt(1) : PADDING;
+
+        for (int i = 0; i < length; i++)
+        {
+            char c0 = c1;
+            c1 = c2;
+            c2 = i + 2 < length ? text.charAt(i + 2) : PADDING;
+
+            long key = side | key(c0, c1, c2);
+            int slot = slot(key);
+            if (m_postings[slot] == null)
+            {
+                m_keys[slot] = key;
+                m_postings[slot] = new PostingList();
+                m_sortedKeys = null;
+
+                if (++m_keyCount > m_keys.length / 2)
+                {
+                    growTable();
+                    slot = slot(key);
+                }
+            }
+
+            m_postings[slot].add(id);
+        }
+    }
+
+    /**
+     * Marks all cards that contain every trigram of the search text on given
+     * side.
+     */
+    private void addCandidates(String text, long side, BitSet candidates)
+    {
+        int length = text.length();
+
+        // every card contains the empty string
+        if (length == 0)
+        {
+            for (int id = 0; id < m_nextId; id++)
+                candidates.set(id);
+            return;
+        }
+
+        // short texts can be the beginning of many trigrams
+        if (length < 3)
+        {
+            long from = key(text.charAt(0),
+                length > 1 ? text.charAt(1) : 0, (char)0);
+            long to = key(text.charAt(0),
+                length > 1 ? text.charAt(1) : Character.MAX_VALUE,
+                Character.MAX_VALUE);
+
+            long[] keys = getSortedKeys();
+            int index = Arrays.binarySearch(keys, side | from);
+            for (int i = index < 0 ? -index - 1 : index;
+                i < keys.length && keys[i] <= (side | to); i++)
+            {
+                PostingList postings = m_postings[slot(keys[i])];
+                for (int j = 0; j < postings.m_size; j++)
+                {
+                    candidates.set(postings.m_ids[j]);
+                }
+            }
+
+            return;
+        }
+
+        // intersect the posting lists, starting with the shortest one
+        PostingList[] lists = new PostingList[length - 2];
+        for (int i = 0; i < lists.length; i++)
+        {
+            lists[i] = m_postings[slot(side | key(text.charAt(i),
+                text.charAt(i + 1), text.charAt(i + 2)))];
+
+            if (lists[i] == null)
+                return;
+        }
+
+        PostingList shortest = lists[0];
+        for (PostingList list : lists)
+        {
+            if (list.m_size < shortest.m_size)
+                shortest = list;
+        }
+
+        next:
+        for (int j = 0; j < shortest.m_size; j++)
+        {
+            int id = shortest.m_ids[j];
+            for (PostingList list : lists)
+            {
+                if (list != shortest && !list.contains(id))
+                    continue next;
+            }
+
+            candidates.set(id);
+        }
+    }
+
+    private long[] getSortedKeys()
+    {
+        if (m_sortedKeys == null)
+        {
+            long[] keys = new long[m_keyCount];
+            int i = 0;
+            for (int slot = 0; slot < m_keys.length; slot++)
+            {
+                if (m_postings[slot] != null)
+                    keys[i++] = m_keys[slot];
+            }
+
+            Arrays.sort(keys);
+            m_sortedKeys = keys;
+        }
+
+        return m_sortedKeys;
+    }
+
+    /**
+     * @return the slot of given key or the empty slot where it belongs.
+     */
+    private int slot(long key)
+    {
+        int mask = m_keys.length - 1;
+        int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (m_postings[slot] != null && m_keys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void growTable()
+    {
+        long[] keys = m_keys;
+        PostingList[] postings = m_postings;
+
+        m_keys = new long[2 * keys.length];
+        m_postings = new PostingList[2 * keys.length];
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (postings[i] != null)
+            {
+                int slot = slot(keys[i]);
+                m_keys[slot] = keys[i];
+                m_postings[slot] = postings[i];
+            }
+        }
+    }
+
+    private static long key(char c0, char c1, char c2)
+    {
+        return ((long)c0 << 32) | ((long)c1 << 16) | c2;
+    }
+
+    /**
+     * @return <code>true</code> if the descendant is given category or one
+     * of its child categories.
+     */
+    static boolean contains(Category category, Category descendant)
+    {
+        for (Category c = descendant; c != null; c = c.getParent())
+        {
+            if (c == category)
+                return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs searches on a {@link SearchIndex} in a background thread. A new search
+ * cancels the one that is still running, so that searching while the user
+ * types never waits for results that are already outdated. If a search only
+ * narrows the previous one, e.g. because another char was typed, just the
+ * previous results are checked again.
+ */
+public class SearchService
+{
+    /**
+     * The number of hits that are reported before the search is complete.
+     */
+    public final static int FIRST_HITS = 100;
+
+    /**
+     * The parameters of a search.
+     */
+    public static class Query
+    {
+        private final String   m_text;
+        private final int      m_side;
+        private final boolean  m_matchCase;
+        private final int      m_mode;
+        private final Category m_category;
+
+        /**
+         * @see SearchIndex#search(String, int, boolean, int, Category)
+         */
+        public Query(String text, int side, boolean matchCase, int mode,
+            Category category)
+        {
+            m_text = text;
+            m_side = side;
+            m_matchCase = matchCase;
+            m_mode = mode;
+            m_category = category;
+        }
+
+        public String getText()
+        {
+            return m_text;
+        }
+
+        public Category getCategory()
+        {
+            return m_category;
+        }
+
+        /**
+         * @return <code>true</code> if every card that matches this query
+         * also matches the given query.
+         */
+        public boolean narrows(Query query)
+        {
+            if (m_side != query.m_side || m_matchCase != query.m_matchCase ||
+                m_mode != query.m_mode ||
+                !SearchIndex.contains(query.m_category, m_category))
+            {
+                return false;
+            }
+
+            String text = m_matchCase ? m_text : FormattedText.fold(m_text, false);
+            String other = m_matchCase ? query.m_text : 
+                FormattedText.fold(query.m_text, false);
+
+            switch (m_mode)
+            {
+            case SearchTool.SUBSTRING:
+                return text.contains(other);
+
+            case SearchTool.PREFIX:
+                return text.startsWith(other);
+
+            default:
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Receives the results of searches.
+     */
+    public interface ResultListener
+    {
+        /**
+         * Called on the search thread, first with the first
+         * {@link SearchService#FIRST_HITS} cards and then with all cards
+         * when the search is complete. Results of cancelled searches are
+         * not reported.
+         */
+        void onResults(Query query, List<Card> cards, boolean complete);
+    }
+
+    private final SearchIndex     m_index;
+    private final ResultListener  m_listener;
+    private final ExecutorService m_executor;
+
+    private Future<?>             m_running;
+    private volatile Query        m_currentQuery;
+
+    // the last complete search, only used by the search thread
+    private Query                 m_lastQuery;
+    private List<Card>            m_lastResults;
+    private int                   m_lastModificationCount;
+
+    private volatile long         m_firstResultLatency = -1;
+
+    public SearchService(SearchIndex index, ResultListener listener)
+    {
+        m_index = index;
+        m_listener = listener;
+
+        m_executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Search"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts a new search and cancels the current one.
+     */
+    public synchronized void search(final Query query)
+    {
+        cancel();
+        m_currentQuery = query;
+
+        final long start = System.nanoTime();
+        m_running = m_executor.submit(new Runnable() {
+            public void run()
+            {
+                runQuery(query, start);
+            }
+        });
+    }
+
+    /**
+     * Cancels the current search, if any.
+     */
+    public synchronized void cancel()
+    {
+        m_currentQuery = null;
+
+        if (m_running != null)
+        {
+            m_running.cancel(false);
+            m_running = null;
+        }
+    }
+
+    /**
+     * Stops the search thread. The service can't be used afterwards.
+     */
+    public synchronized void shutdown()
+    {
+        cancel();
+        m_executor.shutdown();
+    }
+
+    /**
+     * @return the nanoseconds from starting the most recent search that
+     * reported results until its first results were reported. -1 if no
+     * results were reported yet.
+     */
+    public long getFirstResultLatency()
+    {
+        return m_firstResultLatency;
+    }
+
+    private void runQuery(final Query query, final long start)
+    {
+        final List<Card> hits = new ArrayList<Card>();
+        SearchIndex.HitCollector collector = new SearchIndex.HitCollector() {
+            public boolean onHit(Card card)
+            {
+                if (m_currentQuery != query)
+                    return false;
+
+                hits.add(card);
+                if (hits.size() == FIRST_HITS)
+                    report(query, new ArrayList<Card>(hits), false, start);
+
+                return true;
+            }
+        };
+
+        // changes that are made during the search make it count as outdated
+        int modificationCount = m_index.getModificationCount();
+
+        if (m_lastQuery != null && query.narrows(m_lastQuery) &&
+            m_lastModificationCount == modificationCount)
+        {
+            String text = query.m_matchCase ? query.m_text :
+                FormattedText.fold(query.m_text, false);
+
+            for (Card card : m_lastResults)
+            {
+                if (SearchIndex.contains(query.m_category, card.getCategory()) &&
+                    SearchTool.matches(card, text, query.m_side,
+                        query.m_matchCase, query.m_mode) &&
+                    !collector.onHit(card))
+                {
+                    return;
+                }
+            }
+        }
+        else
+        {
+            m_index.search(query.m_text, query.m_side, query.m_matchCase,
+                query.m_mode, query.m_category, collector);
+        }
+
+        if (m_currentQuery != query)
+            return;
+
+        m_lastQuery = query;
+        m_lastResults = hits;
+        m_lastModificationCount = modificationCount;
+
+        report(query, new ArrayList<Card>(hits), true, start);
+    }
+
+    private void report(Query query, List<Card> cards, boolean complete,
+        long start)
+    {
+        if (!complete || cards.size() < FIRST_HITS)
+            m_firstResultLatency = System.nanoTime() - start;
+
+        m_listener.onResults(query, cards, complete);
+    }
+}
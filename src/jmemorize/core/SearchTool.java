@@ -31,42 +31,42 @@ public class SearchTool
     public final static int FLIP_SIDE  = 1;
     public final static int BOTH_SIDES = 2;
     
+    /** The search text can occur anywhere in the card side. */
+    public final static int SUBSTRING  = 0;
+    
+    /** The search text has to be the beginning of a word. */
+    public final static int PREFIX     = 1;
+    
+    /** The search text has to be a complete word. */
+    public final static int WHOLE_WORD = 2;
+    
     public static List<Card> search(String text, int side, boolean matchCase, List<Card> cards)
     {
+        return search(text, side, matchCase, SUBSTRING, cards);
+    }
+    
+    /**
+     * Searches the given cards one after another. Use {@link SearchIndex} for
+     * searching all cards of a lesson.
+     * 
+     * @param mode one of {@link #SUBSTRING}, {@link #PREFIX} or
+     * {@link #WHOLE_WORD}.
+     */
+    public static List<Card> search(String text, int side, boolean matchCase, 
+        int mode, List<Card> cards)
+    {
+        if (!matchCase)
+            text = FormattedText.fold(text, false);
+        
         List<Card> foundCards = new LinkedList<Card>();
         for (Card card : cards)
         {
-            String frontSide = card.getFrontSide().getText().getUnformatted();
-            String flipSide  = card.getBackSide().getText().getUnformatted();
-            
-            if (!matchCase)
-            {
-                text      = text.toLowerCase();
-                frontSide = frontSide.toLowerCase();
-                flipSide  = flipSide.toLowerCase();
-            }
-            
-            if (side == FRONT_SIDE || side == BOTH_SIDES)
-            {
-                if (frontSide.indexOf(text) > -1)
-                {
-                    foundCards.add(card);
-                    continue;
-                }
-            }
-            
-            if (side == FLIP_SIDE || side == BOTH_SIDES)
-            {
-                if (flipSide.indexOf(text) > -1)
-                {
-                    foundCards.add(card);
-                }
-            }
+            if (matches(card, text, side, matchCase, mode))
+                foundCards.add(card);
         }
         
         return foundCards;
     }
-    
     public static List<Integer> search(String text, String searchtext,
         int side, boolean ignoreCase)
     {
@@ -86,5 +86,59 @@ public class SearchTool
         
         return positions;
     }
-
+    
+    /**
+     * @param text the search text. Has to be folded already if
+     * <code>matchCase</code> is <code>false</code>.
+     */
+    static boolean matches(Card card, String text, int side, boolean matchCase, 
+        int mode)
+    {
+        if (side == FRONT_SIDE || side == BOTH_SIDES)
+        {
+            if (matches(card.getFrontSide(), text, matchCase, mode))
+                return true;
+        }
+        
+        if (side == FLIP_SIDE || side == BOTH_SIDES)
+        {
+            if (matches(card.getBackSide(), text, matchCase, mode))
+                return true;
+        }
+        
+        return false;
+    }
+    
+    private static boolean matches(CardSide cardSide, String text, 
+        boolean matchCase, int mode)
+    {
+        FormattedText formatted = cardSide.getText();
+        String sideText = matchCase ? formatted.getUnformatted() : 
+            formatted.getFolded(false);
+        
+        int pos = sideText.indexOf(text);
+        if (mode == SUBSTRING)
+            return pos > -1;
+        
+        while (pos > -1)
+        {
+            int end = pos + text.length();
+            
+            if ((pos == 0 || !isWordChar(sideText.charAt(pos - 1))) && 
+                (mode == PREFIX || end == sideText.length() || 
+                    !isWordChar(sideText.charAt(end))))
+            {
+                return true;
+            }
+            
+            pos = sideText.indexOf(text, pos + 1);
+        }
+        
+        return false;
+    }
+    
+    private static boolean isWordChar(char c)
+    {
+        return Character.isLetterOrDigit(c);
+    }
 }
@@ -104,6 +104,7 @@ public class Settings
     // etc keys
     private final static String LAST_DIRECTORY = "last-directory"; //$NON-NLS-1$
     private final static String SAVE_COMPRESSED = "gzip";          //$NON-NLS-1$
+    private final static String SAVE_CHUNKED = "save-chunked";     //$NON-NLS-1$
     private final static String CATEGORY_TREE_WIDTH = "category-tree.width"; //$NON-NLS-1$
     private final static String CATEGORY_TREE_VISIBLE = "category-tree.visible"; //$NON-NLS-1$
     private final static String MAIN_DIVIDER_LOCATION = "main-divider.location"; //$NON-NLS-1$
@@ -284,6 +285,21 @@ public class Settings
         return PREFS.getBoolean(SAVE_COMPRESSED, true);
     }
     
+    public static void storeSaveChunked(boolean saveChunked)
+    {
+        PREFS.putBoolean(SAVE_CHUNKED, saveChunked);
+    }
+    
+    /**
+     * @return <code>true</code> if compressed lesson files should store the
+     * cards of every category in a separate entry, so that they can be
+     * loaded when they are needed.
+     */
+    public static boolean loadIsSaveChunked()
+    {
+        return PREFS.getBoolean(SAVE_CHUNKED, false);
+    }
+    
     // TODO merge storeCategoryTreeWidth and storeCategoryTreeVisible
     public static void storeCategoryTreeWidth(int width)
     {
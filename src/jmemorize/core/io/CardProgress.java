@@ -0,0 +1,149 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.util.Date;
+
+import jmemorize.core.Card;
+
+/**
+ * The fields of a card that change while it is learned. Used for the cards
+ * of {@link CardStore}s, whose progress is saved apart from the store.
+ */
+class CardProgress
+{
+    int  m_level;
+
+    long m_created;
+    long m_modified;
+    long m_touched;
+    long m_tested    = CardStore.NO_DATE;
+    long m_expired   = CardStore.NO_DATE;
+
+    int  m_testsTotal;
+    int  m_testsPassed;
+    int  m_learnedFront;
+    int  m_learnedBack;
+
+    /**
+     * @return the progress of given card of given store.
+     */
+    public static CardProgress read(CardStore store, int card)
+    {
+        CardProgress progress = new CardProgress();
+        progress.m_level = store.getLevel(card);
+
+        progress.m_created = store.getTime(CardStore.CREATED, card);
+        progress.m_modified = store.getTime(CardStore.MODIFIED, card);
+        progress.m_touched = store.getTime(CardStore.TOUCHED, card);
+        progress.m_tested = store.getTime(CardStore.TESTED, card);
+        progress.m_expired = store.getTime(CardStore.EXPIRED, card);
+
+        progress.m_testsTotal = store.getStat(CardStore.TESTS_TOTAL, card);
+        progress.m_testsPassed = store.getStat(CardStore.TESTS_PASSED, card);
+        progress.m_learnedFront = store.getStat(CardStore.LEARNED_FRONT, card);
+        progress.m_learnedBack = store.getStat(CardStore.LEARNED_BACK, card);
+
+        return progress;
+    }
+
+    /**
+     * @return the current progress of given card.
+     */
+    public static CardProgress of(Card card)
+    {
+        CardProgress progress = new CardProgress();
+        progress.m_level = card.getLevel();
+
+        progress.m_created = toTime(card.getDateCreated());
+        progress.m_modified = toTime(card.getDateModified());
+        progress.m_touched = toTime(card.getDateTouched());
+        progress.m_tested = toTime(card.getDateTested());
+        progress.m_expired = toTime(card.getDateExpired());
+
+        progress.m_testsTotal = card.getTestsTotal();
+        progress.m_testsPassed = card.getTestsPassed();
+        progress.m_learnedFront = card.getLearnedAmount(true);
+        progress.m_learnedBack = card.getLearnedAmount(false);
+
+        return progress;
+    }
+
+    /**
+     * Sets the progress of given card, except for its level, which is given
+     * by its deck. The card must not belong to a category yet.
+     */
+    public void applyTo(Card card)
+    {
+        card.setDateCreated(new Date(m_created));
+        card.setDateModified(new Date(m_modified));
+        card.setDateTested(toDate(m_tested));
+        card.setDateExpired(toDate(m_expired));
+        card.setDateTouched(toDate(m_touched));
+
+        card.resetStats();
+        card.incStats(m_testsPassed, m_testsTotal);
+        card.setLearnedAmount(true, m_learnedFront);
+        card.setLearnedAmount(false, m_learnedBack);
+    }
+
+    /*
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof CardProgress))
+            return false;
+
+        CardProgress other = (CardProgress)obj;
+        return m_level == other.m_level &&
+            m_created == other.m_created &&
+            m_modified == other.m_modified &&
+            m_touched == other.m_touched &&
+            m_tested == other.m_tested &&
+            m_expired == other.m_expired &&
+            m_testsTotal == other.m_testsTotal &&
+            m_testsPassed == other.m_testsPassed &&
+            m_learnedFront == other.m_learnedFront &&
+            m_learnedBack == other.m_learnedBack;
+    }
+
+    /*
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode()
+    {
+        long hash = m_level;
+        hash = 31 * hash + m_touched;
+        hash = 31 * hash + m_expired;
+        hash = 31 * hash + m_testsTotal;
+
+        return (int)(hash ^ (hash >>> 32));
+    }
+
+    private static long toTime(Date date)
+    {
+        return date != null ? date.getTime() : CardStore.NO_DATE;
+    }
+
+    private static Date toDate(long time)
+    {
+        return time != CardStore.NO_DATE ? new Date(time) : null;
+    }
+}
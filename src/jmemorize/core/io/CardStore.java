@@ -0,0 +1,571 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+
+/**
+ * A read-only file of cards for large reference decks, e.g. vocabularies
+ * with millions of cards that are hardly ever edited. Every field of the
+ * cards is stored as a column, which is mapped into memory instead of being
+ * read. So opening a store only reads its categories, and a scan over one
+ * field of all cards only touches the pages of that column.
+ *
+ * The categories of a store are added to a lesson with
+ * {@link #attach(Category, String)}. They load their cards when they are
+ * first needed, as thin cards whose sides are only read from the store when
+ * they are first shown. The progress that is made on these cards is saved in
+ * the lesson file, for the cards whose progress differs from the store. The
+ * store itself is never written when the lesson is saved.
+ *
+ * The file layout, with all numbers in big-endian order:
+ *
+ * <pre>
+ * int magic, int version, long offset of the columns
+ * int cards, int categories, long chars of all texts
+ * per category in pre-order: UTF name, int parent, int first card,
+ *   int decks, int cards per deck
+ * long columns: created, modified, touched, tested, expired
+ * int columns: tests total, tests passed, front learned, back learned
+ * byte column: level
+ * int column: offset of the front and back text of every card, and the end
+ * char column: texts
+ * </pre>
+ *
+ * The cards are ordered by category and deck. Every column starts at a
+ * multiple of 8 bytes.
+ */
+public class CardStore
+{
+    public static final String EXTENSION     = "jmcs";      //$NON-NLS-1$
+
+    // the long columns
+    public static final int    CREATED       = 0;
+    public static final int    MODIFIED      = 1;
+    public static final int    TOUCHED       = 2;
+    public static final int    TESTED        = 3;
+    public static final int    EXPIRED       = 4;
+
+    // the int columns
+    public static final int    TESTS_TOTAL   = 0;
+    public static final int    TESTS_PASSED  = 1;
+    public static final int    LEARNED_FRONT = 2;
+    public static final int    LEARNED_BACK  = 3;
+
+    /**
+     * The value of dates that aren't set.
+     */
+    public static final long   NO_DATE       = Long.MIN_VALUE;
+
+    private static final int   MAGIC         = 0x4a4d4353;  // "JMCS"
+    private static final int   VERSION       = 1;
+    private static final int   LONG_COLUMNS  = 5;
+    private static final int   INT_COLUMNS   = 4;
+    private static final int   MAX_LEVEL     = 255;
+
+    // the parts of the file after the header, see getLayout
+    private static final int   LONGS         = 0;
+    private static final int   INTS          = 1;
+    private static final int   LEVELS        = 2;
+    private static final int   TEXT_OFFSETS  = 3;
+    private static final int   TEXTS         = 4;
+
+    private static final Map<Integer, CardProgress> NO_PROGRESS =
+        Collections.emptyMap();
+
+    private final File         m_file;
+    private final int          m_cards;
+
+    // the categories in pre-order
+    private final String[]     m_names;
+    private final int[]        m_parents;
+    private final int[]        m_firstCards;
+    private final int[][]      m_deckSizes;
+
+    private final LongBuffer[] m_longColumns = new LongBuffer[LONG_COLUMNS];
+    private final IntBuffer[]  m_intColumns  = new IntBuffer[INT_COLUMNS];
+    private final ByteBuffer   m_levels;
+    private final IntBuffer    m_textOffsets;
+    private final CharBuffer   m_texts;
+
+    /**
+     * Maps the columns of given store file into memory.
+     */
+    public static CardStore open(File file) throws IOException
+    {
+        return new CardStore(file);
+    }
+
+    /**
+     * Writes the cards of given category and its child categories to a new
+     * store file. An existing file is replaced, not overwritten, so that
+     * stores which are still open keep their contents.
+     *
+     * @throws IOException if a card has images, which can't be stored.
+     */
+    public static void write(File file, Category rootCategory) throws IOException
+    {
+        List<Category> categories = rootCategory.getSubtreeList();
+        Map<Category, Integer> indices = new IdentityHashMap<Category, Integer>();
+
+        List<Card> cards = new ArrayList<Card>();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        for (int i = 0; i < categories.size(); i++)
+        {
+            Category category = categories.get(i);
+            indices.put(category, i);
+
+            headerOut.writeUTF(category.getName());
+            headerOut.writeInt(i == 0 ? -1 : indices.get(category.getParent()));
+            headerOut.writeInt(cards.size());
+            headerOut.writeInt(category.getNumberOfDecks());
+            for (int level = 0; level < category.getNumberOfDecks(); level++)
+            {
+                List<Card> deck = category.getLocalCards(level);
+                headerOut.writeInt(deck.size());
+                cards.addAll(deck);
+            }
+        }
+
+        int n = cards.size();
+        String[] texts = new String[2 * n];
+        long textChars = 0;
+        for (int i = 0; i < n; i++)
+        {
+            Card card = cards.get(i);
+            if (!card.getFrontSide().getImages().isEmpty() ||
+                !card.getBackSide().getImages().isEmpty())
+            {
+                throw new IOException("Cards with images can't be stored: " + card);
+            }
+            if (card.getLevel() > MAX_LEVEL)
+                throw new IOException("Deck level too high: " + card.getLevel());
+
+            texts[2 * i] = card.getFrontSide().getText().getFormatted();
+            texts[2 * i + 1] = card.getBackSide().getText().getFormatted();
+            textChars += texts[2 * i].length() + texts[2 * i + 1].length();
+        }
+
+        // the columns and the texts are mapped into one buffer each
+        if (getLayout(n)[TEXTS] > Integer.MAX_VALUE ||
+            2 * textChars > Integer.MAX_VALUE)
+        {
+            throw new IOException("Too many cards for a card store");
+        }
+
+        // a store that is replaced might still be open, so a new file is
+        // written and renamed
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmpFile = File.createTempFile("cards", ".tmp", dir); //$NON-NLS-1$ //$NON-NLS-2$
+        try
+        {
+            writeFile(tmpFile, header.toByteArray(), categories.size(),
+                cards, texts, textChars);
+        }
+        catch (IOException e)
+        {
+            tmpFile.delete();
+            throw e;
+        }
+
+        if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file)))
+        {
+            tmpFile.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * @return the file of this store.
+     */
+    public File getFile()
+    {
+        return m_file;
+    }
+
+    /**
+     * @return the number of cards in this store.
+     */
+    public int getCardCount()
+    {
+        return m_cards;
+    }
+
+    /**
+     * @return the number of categories in this store. The categories are
+     * numbered in pre-order, so that the root category is 0 and parents come
+     * before their children.
+     */
+    public int getCategoryCount()
+    {
+        return m_names.length;
+    }
+
+    public String getCategoryName(int category)
+    {
+        return m_names[category];
+    }
+
+    /**
+     * @return the parent of given category or -1 for the root category.
+     */
+    public int getParentCategory(int category)
+    {
+        return m_parents[category];
+    }
+
+    /**
+     * @return the index of the first local card of given category. The local
+     * cards of a category follow each other, ordered by their decks.
+     */
+    public int getFirstCard(int category)
+    {
+        return m_firstCards[category];
+    }
+
+    /**
+     * @return the number of local cards of given category.
+     */
+    public int getCardCount(int category)
+    {
+        int cards = 0;
+        for (int size : m_deckSizes[category])
+            cards += size;
+
+        return cards;
+    }
+
+    /**
+     * @return the number of decks of given category when it was stored.
+     */
+    public int getNumberOfDecks(int category)
+    {
+        return m_deckSizes[category].length;
+    }
+
+    public int getLevel(int card)
+    {
+        return m_levels.get(card) & 0xff;
+    }
+
+    /**
+     * @param column one of {@link #CREATED}, {@link #MODIFIED},
+     * {@link #TOUCHED}, {@link #TESTED} or {@link #EXPIRED}.
+     * @return the time in milliseconds or {@link #NO_DATE}.
+     */
+    public long getTime(int column, int card)
+    {
+        return m_longColumns[column].get(card);
+    }
+
+    /**
+     * @param column one of {@link #TESTS_TOTAL}, {@link #TESTS_PASSED},
+     * {@link #LEARNED_FRONT} or {@link #LEARNED_BACK}.
+     */
+    public int getStat(int column, int card)
+    {
+        return m_intColumns[column].get(card);
+    }
+
+    /**
+     * @return the formatted text of given side of given card.
+     */
+    public String getText(int card, boolean frontside)
+    {
+        int index = 2 * card + (frontside ? 0 : 1);
+        int start = m_textOffsets.get(index);
+        char[] chars = new char[m_textOffsets.get(index + 1) - start];
+
+        // the buffer is shared between threads, so its position isn't used
+        CharBuffer texts = m_texts.duplicate();
+        texts.position(start);
+        texts.get(chars);
+
+        return new String(chars);
+    }
+
+    /**
+     * Adds the categories of this store to given category, below a new
+     * category with given name that takes the place of the root category of
+     * the store. Their cards are loaded when they are first needed. The ids
+     * of the cards are reserved in the lesson of given category at once.
+     *
+     * @return the new category.
+     */
+    public Category attach(Category parent, String name)
+    {
+        long firstCardId = parent.reserveCardIds(getCardCount());
+
+        Category[] categories = new Category[m_names.length];
+        for (int i = 0; i < categories.length; i++)
+        {
+            Category category = new Category(i == 0 ? name : m_names[i]);
+            category.setCardChunk(new StoreCardChunk(this, i, 
+                firstCardId + getFirstCard(i), NO_PROGRESS, null), false);
+
+            categories[i] = category;
+            (i == 0 ? parent : categories[m_parents[i]]).addCategoryChild(category);
+        }
+
+        return categories[0];
+    }
+
+    private CardStore(File file) throws IOException
+    {
+        m_file = file;
+
+        long columnsOffset;
+        long textChars;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(file)));
+        try
+        {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a card store: " + file);
+
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unknown card store version " + version);
+
+            columnsOffset = in.readLong();
+            m_cards = in.readInt();
+            int categories = in.readInt();
+            textChars = in.readLong();
+
+            m_names = new String[categories];
+            m_parents = new int[categories];
+            m_firstCards = new int[categories];
+            m_deckSizes = new int[categories][];
+            for (int i = 0; i < categories; i++)
+            {
+                m_names[i] = in.readUTF();
+                m_parents[i] = in.readInt();
+                m_firstCards[i] = in.readInt();
+                m_deckSizes[i] = new int[in.readInt()];
+                for (int level = 0; level < m_deckSizes[i].length; level++)
+                    m_deckSizes[i][level] = in.readInt();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        long[] layout = getLayout(m_cards);
+        RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+        try
+        {
+            // the mappings stay valid when the file is closed
+            FileChannel channel = raf.getChannel();
+            ByteBuffer columns = map(channel, columnsOffset, layout[TEXTS]);
+            m_texts = map(channel, columnsOffset + layout[TEXTS], 2 * textChars)
+                .asCharBuffer();
+
+            for (int i = 0; i < LONG_COLUMNS; i++)
+            {
+                m_longColumns[i] = slice(columns,
+                    layout[LONGS] + 8L * i * m_cards, 8L * m_cards).asLongBuffer();
+            }
+            for (int i = 0; i < INT_COLUMNS; i++)
+            {
+                m_intColumns[i] = slice(columns,
+                    layout[INTS] + 4L * i * m_cards, 4L * m_cards).asIntBuffer();
+            }
+            m_levels = slice(columns, layout[LEVELS], m_cards);
+            m_textOffsets = slice(columns, layout[TEXT_OFFSETS],
+                4L * (2 * m_cards + 1)).asIntBuffer();
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] header, int categories,
+        List<Card> cards, String[] texts, long textChars) throws IOException
+    {
+        int n = cards.size();
+        // the fixed fields before the categories take 32 bytes
+        long columnsOffset = align(32 + header.length);
+        long[] layout = getLayout(n);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(file), 1 << 16));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(columnsOffset);
+            out.writeInt(n);
+            out.writeInt(categories);
+            out.writeLong(textChars);
+            out.write(header);
+            pad(out, columnsOffset);
+
+            for (int column = 0; column < LONG_COLUMNS; column++)
+            {
+                for (Card card : cards)
+                    out.writeLong(getTime(card, column));
+            }
+
+            for (int column = 0; column < INT_COLUMNS; column++)
+            {
+                for (Card card : cards)
+                    out.writeInt(getStat(card, column));
+            }
+
+            for (Card card : cards)
+                out.writeByte(card.getLevel());
+            pad(out, columnsOffset + layout[TEXT_OFFSETS]);
+
+            int offset = 0;
+            out.writeInt(offset);
+            for (String text : texts)
+            {
+                offset += text.length();
+                out.writeInt(offset);
+            }
+            pad(out, columnsOffset + layout[TEXTS]);
+
+            for (String text : texts)
+                out.writeChars(text);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the offsets of the parts of a store with given number of cards,
+     * relative to the offset of the columns and indexed by {@link #LONGS},
+     * {@link #INTS}, {@link #LEVELS}, {@link #TEXT_OFFSETS} and
+     * {@link #TEXTS}.
+     */
+    private static long[] getLayout(int cards)
+    {
+        long[] layout = new long[TEXTS + 1];
+        layout[LONGS] = 0;
+        layout[INTS] = layout[LONGS] + 8L * LONG_COLUMNS * cards;
+        layout[LEVELS] = layout[INTS] + 4L * INT_COLUMNS * cards;
+        layout[TEXT_OFFSETS] = align(layout[LEVELS] + cards);
+        layout[TEXTS] = align(layout[TEXT_OFFSETS] + 4L * (2 * cards + 1));
+
+        return layout;
+    }
+
+    private static long getTime(Card card, int column)
+    {
+        Date date;
+        switch (column)
+        {
+        case CREATED:
+            date = card.getDateCreated();
+            break;
+
+        case MODIFIED:
+            date = card.getDateModified();
+            break;
+
+        case TOUCHED:
+            date = card.getDateTouched();
+            break;
+
+        case TESTED:
+            date = card.getDateTested();
+            break;
+
+        default:
+            date = card.getDateExpired();
+        }
+
+        return date != null ? date.getTime() : NO_DATE;
+    }
+
+    private static int getStat(Card card, int column)
+    {
+        switch (column)
+        {
+        case TESTS_TOTAL:
+            return card.getTestsTotal();
+
+        case TESTS_PASSED:
+            return card.getTestsPassed();
+
+        case LEARNED_FRONT:
+            return card.getLearnedAmount(true);
+
+        default:
+            return card.getLearnedAmount(false);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size)
+        throws IOException
+    {
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Card store too large");
+
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long offset, long size)
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position((int)offset);
+        slice.limit((int)(offset + size));
+
+        return slice.slice();
+    }
+
+    private static void pad(DataOutputStream out, long offset) throws IOException
+    {
+        while (out.size() < offset)
+            out.writeByte(0);
+    }
+
+    private static long align(long offset)
+    {
+        return (offset + 7) & ~7L;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes that were read from the wrapped stream.
+ */
+class CountingInputStream extends FilterInputStream
+{
+    private volatile long m_count;
+
+    public CountingInputStream(InputStream in)
+    {
+        super(in);
+    }
+
+    public int read() throws IOException
+    {
+        int b = super.read();
+        if (b >= 0)
+            bytesRead(1);
+
+        return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int n = super.read(b, off, len);
+        if (n > 0)
+            bytesRead(n);
+
+        return n;
+    }
+
+    public long getCount()
+    {
+        return m_count;
+    }
+
+    /**
+     * Is called after bytes were read. Subclasses can override this to
+     * report progress or to abort reading by throwing an exception.
+     */
+    protected void bytesRead(int n) throws IOException
+    {
+        m_count += n;
+    }
+}
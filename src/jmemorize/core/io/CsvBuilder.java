@@ -18,23 +18,20 @@
  */
 package jmemorize.core.io;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Iterator;
 
 import jmemorize.core.Card;
 import jmemorize.core.Category;
-import jmemorize.core.FormattedText;
 import jmemorize.core.Lesson;
 
-import com.csvreader.CsvReader;
 import com.csvreader.CsvWriter;
-import com.csvreader.CsvReader.CatastrophicException;
-import com.csvreader.CsvReader.FinalizedException;
 
 /**
  * A class for importing and exporting character-separated-values (CSV).
@@ -59,6 +56,9 @@ public class CsvBuilder
         }
     }
     
+    private static final int PROGRESS_INTERVAL = 1000; // cards
+    private static final int BUFFER_SIZE       = 64 * 1024;
+    
     /**
      * Exports the given lesson to a CSV-file with given delimiter and given
      * character set.
@@ -66,27 +66,54 @@ public class CsvBuilder
     public static void exportLesson(OutputStream out, Lesson lesson, 
         char delimiter, Charset charset) throws IOException
     {
+        exportLesson(out, lesson, delimiter, charset, null);
+    }
+    
+    /**
+     * Exports the given lesson to a CSV-file with given delimiter and given
+     * character set. The cards are streamed from the category tree into a
+     * buffered writer, deck after deck, without collecting them first.
+     * 
+     * @param listener is notified every couple of cards. Can be
+     * <code>null</code>.
+     */
+    public static void exportLesson(OutputStream out, Lesson lesson, 
+        char delimiter, Charset charset, ExportProgressListener listener) 
+        throws IOException
+    {
+        Category rootCategory = lesson.getRootCategory();
+        int total = listener != null ? rootCategory.getCardCount() : 0;
+        
         try
         {
-            CsvWriter writer = new CsvWriter(out, delimiter, charset);
+            Writer bufferedOut = new BufferedWriter(
+                new OutputStreamWriter(out, charset), BUFFER_SIZE);
+            CsvWriter writer = new CsvWriter(bufferedOut, delimiter);
             writeHeader(writer);
             
-            List<Card> cards = lesson.getRootCategory().getCards();
-            for (Card card : cards)
+            int written = 0;
+            for (Iterator<Card> it = rootCategory.getCardIterator(); it.hasNext();)
             {
+                Card card = it.next();
                 writer.write(card.getFrontSide().getText().getFormatted());
                 writer.write(card.getBackSide().getText().getFormatted());
                 
-                if (lesson.getRootCategory() == card.getCategory())
+                if (rootCategory == card.getCategory())
                     writer.write("");
                 else
                     writer.write(card.getCategory().getName());
                 
                 writer.write(Integer.toString(card.getLevel()));
                 writer.endRecord();
+                
+                if (listener != null && ++written % PROGRESS_INTERVAL == 0)
+                    listener.onProgress(written, total);
             }
             
             writer.close();
+            
+            if (listener != null)
+                listener.onProgress(total, total);
         }
         catch (com.csvreader.CsvWriter.FinalizedException e)
         {
@@ -94,7 +121,6 @@ public class CsvBuilder
         }
     }
     
-    
     /**
      * Parses the given file that holds text values that are delimited by given
      * delimiter. The values are used to contruct a lesson.
@@ -112,77 +138,7 @@ public class CsvBuilder
     public static void importLesson(InputStream in, char delimiter, 
         Charset charset, Lesson lesson) throws IOException, BadHeaderException 
     {
-        CsvReader reader = new CsvReader(in, delimiter, charset);
-        
-        Category rootCategory = lesson.getRootCategory();
-        Map<String, Category> categories = new HashMap<String, Category>();
-        
-        List<Category> childCategories = rootCategory.getChildCategories();
-        for (Category category : childCategories)
-        {
-            categories.put(category.getName(), category);
-        }
-        
-        try
-        {
-            reader.readHeaders();
-            
-            String[] headers = reader.getHeaders();
-            validateHeader(headers);
-            
-            while (reader.readRecord())
-            {
-                FormattedText frontSide = FormattedText.formatted(reader.get(FRONTSIDE_COL));
-                FormattedText flipSide = FormattedText.formatted(reader.get(FLISIDE_COL));
-                
-                if (frontSide.getUnformatted().length() == 0 || flipSide.getUnformatted().length() == 0)
-                    throw new IOException("You have to specify at least a front " +
-                        "side and flip side for every card "+getLineString(reader)+".");
-                
-                Card card = new Card(frontSide, flipSide);
-                
-                Category category;
-                String categoryName = reader.get(CATEGORY_COL);
-                if (categoryName.length() == 0 || 
-                    categoryName.equalsIgnoreCase(rootCategory.getName()))
-                {
-                    category = rootCategory;
-                }
-                else
-                {
-                    if (categories.containsKey(categoryName))
-                    {
-                        category = (Category)categories.get(categoryName);
-                    }
-                    else
-                    {
-                        category = new Category(categoryName);
-                        rootCategory.addCategoryChild(category);
-                        categories.put(categoryName, category);
-                    }
-                }
-                
-                String level = reader.get(LEVEL_COL);
-                if (level.length() > 0)
-                {
-                    category.addCard(card, Integer.parseInt(level));
-                }
-                else
-                {
-                    category.addCard(card);
-                }
-            }
-
-            reader.close();
-        } 
-        catch (FinalizedException e)
-        {
-            throw new IOException(e.toString());
-        } 
-        catch (CatastrophicException e)
-        {
-            throw new IOException(e.toString());
-        }
+        new CsvImporter(delimiter, charset).importLesson(in, lesson);
     }
 
     private static void writeHeader(CsvWriter writer) throws IOException, 
@@ -196,7 +152,7 @@ public class CsvBuilder
     }
 
 
-    private static void validateHeader(String[] headers) throws BadHeaderException
+    static void validateHeader(String[] headers) throws BadHeaderException
     {
         boolean hasFront = false;
         boolean hasFlip = false;
@@ -225,9 +181,4 @@ public class CsvBuilder
                 FRONTSIDE_COL+ "' and '"+FLISIDE_COL+"'.");
 
     }
-    
-    private static String getLineString(CsvReader reader)
-    {
-        return "(line "+ reader.getCurrentRecord() +")";
-    }
 }
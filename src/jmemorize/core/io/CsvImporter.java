@@ -0,0 +1,509 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.FormattedText;
+import jmemorize.core.Lesson;
+import jmemorize.core.io.CsvBuilder.BadHeaderException;
+
+import com.csvreader.CsvReader;
+import com.csvreader.CsvReader.CatastrophicException;
+import com.csvreader.CsvReader.FinalizedException;
+
+/**
+ * Imports character-separated-values into a lesson with a staged pipeline. A
+ * reader thread splits the file into chunks of raw records, a pool of parser
+ * threads turns these chunks into cards and a single writer inserts the cards
+ * chunk after chunk, in file order, into the categories of the lesson.
+ *
+ * The writer runs on the thread that calls {@link #importLesson}, unless an
+ * insert executor is set. Inserted cards are collected for a short while, so
+ * that the observers of the lesson only see a few coalesced batches instead of
+ * an event per card.
+ */
+public class CsvImporter
+{
+    /**
+     * Gets notified about the progress of the import.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * Is called on the writing thread after each inserted batch.
+         *
+         * @param cards the number of cards that were inserted so far.
+         * @param bytes the number of bytes that were read so far.
+         */
+        void onProgress(int cards, long bytes);
+    }
+
+    private static final int     CHUNK_SIZE      = 1024;
+    private static final long    BATCH_INTERVAL  = 250; // ms
+
+    private final char           m_delimiter;
+    private final Charset        m_charset;
+
+    private ProgressListener     m_progressListener;
+    private Executor             m_insertExecutor;
+    private volatile boolean     m_cancelled;
+
+    /**
+     * A number of records as read from the file.
+     */
+    private static class RawChunk
+    {
+        private final List<String[]> m_records = new ArrayList<String[]>(CHUNK_SIZE);
+        private final List<Long>     m_lines   = new ArrayList<Long>(CHUNK_SIZE);
+    }
+
+    /**
+     * The cards of a raw chunk. If a record of the chunk is invalid, the chunk
+     * only holds the cards of the records before it, along with the error.
+     */
+    private static class CardChunk
+    {
+        private final List<Card>     m_cards      = new ArrayList<Card>(CHUNK_SIZE);
+        private final List<String>   m_categories = new ArrayList<String>(CHUNK_SIZE);
+        private final List<Integer>  m_levels     = new ArrayList<Integer>(CHUNK_SIZE);
+
+        private Exception            m_error;
+    }
+
+    // marks the end of the file in the chunk queue
+    private static final Future<CardChunk> END_OF_FILE =
+        new FutureTask<CardChunk>(new Callable<CardChunk>() {
+            public CardChunk call()
+            {
+                return null;
+            }
+        });
+
+    /**
+     * @param delimiter the delimiter that is used to separate values.
+     * @param charset the character set of the input. Use <code>null</code> to
+     * use the default charset.
+     */
+    public CsvImporter(char delimiter, Charset charset)
+    {
+        m_delimiter = delimiter;
+        m_charset = charset != null ? charset : Charset.defaultCharset();
+    }
+
+    public void setProgressListener(ProgressListener listener)
+    {
+        m_progressListener = listener;
+    }
+
+    /**
+     * Sets the executor that inserts the cards into the lesson, e.g. one that
+     * runs the inserts on the event dispatch thread. The executor needs to
+     * run the given task before returning. By default the cards are inserted
+     * on the thread that runs the import.
+     */
+    public void setInsertExecutor(Executor executor)
+    {
+        m_insertExecutor = executor;
+    }
+
+    /**
+     * Stops the import as soon as possible. Cards of batches that were already
+     * inserted stay in the lesson. Can be called from any thread.
+     */
+    public void cancel()
+    {
+        m_cancelled = true;
+    }
+
+    /**
+     * @return <code>true</code> if the import was cancelled.
+     */
+    public boolean isCancelled()
+    {
+        return m_cancelled;
+    }
+
+    /**
+     * Parses the given stream and adds its cards to given lesson. The stream
+     * is closed afterwards.
+     *
+     * @return the number of cards that were inserted.
+     *
+     * @throws IOException if the stream couldn't be read or the values are
+     * malformatted. The cards of all records before the malformatted one are
+     * inserted nevertheless.
+     * @throws BadHeaderException if the header is missing or malformatted.
+     */
+    public int importLesson(InputStream in, Lesson lesson)
+        throws IOException, BadHeaderException
+    {
+        CountingInputStream countingIn = new CountingInputStream(in);
+        final CsvReader reader = new CsvReader(countingIn, m_delimiter, m_charset);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService parsers = Executors.newFixedThreadPool(threads,
+            new ThreadFactory() {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "CSV parser"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // bounded, so that a slow writer limits the memory used by the reader
+        BlockingQueue<Future<CardChunk>> chunks =
+            new ArrayBlockingQueue<Future<CardChunk>>(threads * 4);
+
+        Thread readerThread = null;
+        try
+        {
+            int[] columns = readHeader(reader);
+
+            readerThread = startReader(reader, columns, parsers, chunks);
+
+            return writeChunks(chunks, lesson, countingIn);
+        }
+        catch (FinalizedException e)
+        {
+            throw new IOException(e.toString());
+        }
+        catch (CatastrophicException e)
+        {
+            throw new IOException(e.toString());
+        }
+        finally
+        {
+            if (readerThread != null)
+            {
+                readerThread.interrupt();
+                try
+                {
+                    readerThread.join();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            parsers.shutdownNow();
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the indices of the front, flip, category and level columns.
+     * Missing columns have an index of -1.
+     */
+    private int[] readHeader(CsvReader reader) throws IOException,
+        FinalizedException, CatastrophicException, BadHeaderException
+    {
+        reader.readHeaders();
+        CsvBuilder.validateHeader(reader.getHeaders());
+
+        return new int[] {
+            reader.getIndex(CsvBuilder.FRONTSIDE_COL),
+            reader.getIndex(CsvBuilder.FLISIDE_COL),
+            reader.getIndex(CsvBuilder.CATEGORY_COL),
+            reader.getIndex(CsvBuilder.LEVEL_COL)
+        };
+    }
+
+    private Thread startReader(final CsvReader reader, final int[] columns,
+        final ExecutorService parsers, final BlockingQueue<Future<CardChunk>> chunks)
+    {
+        Thread thread = new Thread("CSV reader") { //$NON-NLS-1$
+            public void run()
+            {
+                try
+                {
+                    readChunks(reader, columns, parsers, chunks);
+                    chunks.put(END_OF_FILE);
+                }
+                catch (InterruptedException e)
+                {
+                    // the writer has stopped
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+
+        return thread;
+    }
+
+    /**
+     * Reads the records of the file and hands them in chunks over to the
+     * parsers. A read error is handed over as a failed chunk.
+     */
+    private void readChunks(CsvReader reader, int[] columns,
+        ExecutorService parsers, BlockingQueue<Future<CardChunk>> chunks)
+        throws InterruptedException
+    {
+        RawChunk chunk = new RawChunk();
+        try
+        {
+            while (!m_cancelled && reader.readRecord())
+            {
+                String[] record = new String[columns.length];
+                for (int i = 0; i < columns.length; i++)
+                {
+                    record[i] = columns[i] >= 0 ? reader.get(columns[i]) : ""; //$NON-NLS-1$
+                }
+
+                chunk.m_records.add(record);
+                chunk.m_lines.add(reader.getCurrentRecord());
+
+                if (chunk.m_records.size() == CHUNK_SIZE)
+                {
+                    chunks.put(parsers.submit(createParser(chunk)));
+                    chunk = new RawChunk();
+                }
+            }
+
+            if (!chunk.m_records.isEmpty())
+                chunks.put(parsers.submit(createParser(chunk)));
+        }
+        catch (IOException e)
+        {
+            putError(chunks, e);
+        }
+        catch (FinalizedException e)
+        {
+            putError(chunks, new IOException(e.toString()));
+        }
+        catch (CatastrophicException e)
+        {
+            putError(chunks, new IOException(e.toString()));
+        }
+    }
+
+    /**
+     * Hands a read error over to the writer as a failed chunk.
+     */
+    private static void putError(BlockingQueue<Future<CardChunk>> chunks,
+        IOException error) throws InterruptedException
+    {
+        final CardChunk failed = new CardChunk();
+        failed.m_error = error;
+
+        FutureTask<CardChunk> task = new FutureTask<CardChunk>(
+            new Callable<CardChunk>() {
+            public CardChunk call()
+            {
+                return failed;
+            }
+        });
+        task.run();
+        chunks.put(task);
+    }
+
+    private static Callable<CardChunk> createParser(final RawChunk rawChunk)
+    {
+        return new Callable<CardChunk>() {
+            public CardChunk call()
+            {
+                return parseChunk(rawChunk);
+            }
+        };
+    }
+
+    /**
+     * Turns the records of given chunk into cards. Stops at the first invalid
+     * record.
+     */
+    private static CardChunk parseChunk(RawChunk rawChunk)
+    {
+        CardChunk chunk = new CardChunk();
+        for (int i = 0; i < rawChunk.m_records.size(); i++)
+        {
+            String[] record = rawChunk.m_records.get(i);
+
+            FormattedText frontSide = FormattedText.formatted(record[0]);
+            FormattedText flipSide = FormattedText.formatted(record[1]);
+
+            if (frontSide.getUnformatted().length() == 0 ||
+                flipSide.getUnformatted().length() == 0)
+            {
+                chunk.m_error = new IOException("You have to specify at least a front " +
+                    "side and flip side for every card " +
+                    "(line " + rawChunk.m_lines.get(i) + ").");
+                break;
+            }
+
+            int level;
+            try
+            {
+                level = record[3].length() > 0 ? Integer.parseInt(record[3]) : 0;
+            }
+            catch (NumberFormatException e)
+            {
+                chunk.m_error = e;
+                break;
+            }
+
+            chunk.m_cards.add(new Card(frontSide, flipSide));
+            chunk.m_categories.add(record[2]);
+            chunk.m_levels.add(level);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Takes the parsed chunks in file order and inserts their cards into the
+     * lesson.
+     */
+    private int writeChunks(BlockingQueue<Future<CardChunk>> chunks,
+        Lesson lesson, CountingInputStream in) throws IOException
+    {
+        Category rootCategory = lesson.getRootCategory();
+        List<CardChunk> pending = new ArrayList<CardChunk>();
+
+        int[] cards = new int[1];
+        long lastInsert = System.currentTimeMillis();
+        try
+        {
+            while (!m_cancelled)
+            {
+                Future<CardChunk> future = chunks.take();
+                if (future == END_OF_FILE)
+                    break;
+
+                CardChunk chunk = future.get();
+                pending.add(chunk);
+
+                if (chunk.m_error != null)
+                    break;
+
+                long now = System.currentTimeMillis();
+                if (now - lastInsert >= BATCH_INTERVAL)
+                {
+                    insert(pending, rootCategory, in, cards);
+                    lastInsert = now;
+                }
+            }
+
+            if (!m_cancelled)
+                insert(pending, rootCategory, in, cards);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import was interrupted.");
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException(e.getCause().toString());
+        }
+
+        return cards[0];
+    }
+
+    /**
+     * Inserts the cards of all pending chunks in one batch update, adds their
+     * number to given counter and clears the pending chunks. Throws the error
+     * of the last chunk, if there is any.
+     */
+    private void insert(final List<CardChunk> pending, final Category rootCategory,
+        CountingInputStream in, int[] counter) throws IOException
+    {
+        Runnable inserter = new Runnable() {
+            public void run()
+            {
+                rootCategory.beginUpdate();
+                try
+                {
+                    for (CardChunk chunk : pending)
+                    {
+                        insertChunk(chunk, rootCategory);
+                    }
+                }
+                finally
+                {
+                    rootCategory.endUpdate();
+                }
+            }
+        };
+
+        if (m_insertExecutor != null)
+            m_insertExecutor.execute(inserter);
+        else
+            inserter.run();
+
+        Exception error = null;
+        for (CardChunk chunk : pending)
+        {
+            counter[0] += chunk.m_cards.size();
+            error = chunk.m_error;
+        }
+        pending.clear();
+
+        if (m_progressListener != null)
+            m_progressListener.onProgress(counter[0], in.getCount());
+
+        if (error instanceof IOException)
+            throw (IOException)error;
+        if (error instanceof RuntimeException)
+            throw (RuntimeException)error;
+    }
+
+    private static void insertChunk(CardChunk chunk, Category rootCategory)
+    {
+        for (int i = 0; i < chunk.m_cards.size(); i++)
+        {
+            Category category;
+            String categoryName = chunk.m_categories.get(i);
+            if (categoryName.length() == 0 ||
+                categoryName.equalsIgnoreCase(rootCategory.getName()))
+            {
+                category = rootCategory;
+            }
+            else
+            {
+                category = rootCategory.getChildCategory(categoryName);
+                if (category == null)
+                {
+                    category = new Category(categoryName);
+                    rootCategory.addCategoryChild(category);
+                }
+            }
+
+            category.addCard(chunk.m_cards.get(i), chunk.m_levels.get(i));
+        }
+    }
+}
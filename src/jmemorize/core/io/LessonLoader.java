@@ -0,0 +1,854 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardChunk;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.LessonSummary;
+import jmemorize.core.Main;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Loads a lesson file in stages, so that the lesson can be shown before it
+ * is fully loaded. After the XML document is parsed, the categories and the
+ * learn history are created and the listener is told about the structure.
+ * Then the cards are created and inserted in batches and finally the images
+ * are loaded. Categories whose cards are stored in chunks or in card stores
+ * only get their chunk and load their cards when they are needed.
+ *
+ * Like with the {@link CsvImporter}, the inserts run on the thread that calls
+ * {@link #load}, unless an insert executor is set. This allows loading on a
+ * background thread while the lesson is changed on the event dispatch thread
+ * only.
+ */
+public class LessonLoader
+{
+    /**
+     * Gets notified about the progress of the load.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * Is called by the insert executor when the categories and the learn
+         * history of the lesson are loaded, before any card is inserted.
+         *
+         * @param totalCards the number of cards in the file.
+         */
+        void onStructureLoaded(Lesson lesson, int totalCards);
+
+        /**
+         * Is called by the insert executor before the file is parsed, if
+         * the file has a summary. The categories of the summary are already
+         * in the lesson.
+         */
+        void onSummaryLoaded(Lesson lesson, LessonSummary summary);
+
+        /**
+         * Is called on the loading thread while the file is read and after
+         * each inserted batch.
+         *
+         * @param cards the number of cards that were inserted so far.
+         * @param bytes the number of bytes that were read so far.
+         */
+        void onProgress(int cards, long bytes);
+    }
+
+    private static final long    BATCH_INTERVAL = 250;       // ms
+    private static final long    PROGRESS_STEP  = 64 * 1024; // bytes
+
+    private static final String  DEFER_NODE_EXPANSION =
+        "http://apache.org/xml/features/dom/defer-node-expansion"; //$NON-NLS-1$
+
+    private final File           m_file;
+
+    private ProgressListener     m_progressListener;
+    private Executor             m_insertExecutor;
+    private volatile boolean     m_cancelled;
+
+    private CountingInputStream  m_in;
+    private boolean              m_zipped;
+
+    // true if the file is loaded into a lesson that already has cards
+    private boolean              m_merge;
+
+    private LessonSummary        m_summary;
+    private boolean              m_summaryValid;
+
+    /**
+     * A deck tag and the category and level of its cards.
+     */
+    private static class DeckEntry
+    {
+        private final Category m_category;
+        private final int      m_level;
+        private final Node     m_deckTag;
+
+        // the numbers of loaded cards, learned and expired cards
+        private int            m_cards;
+        private int            m_learned;
+        private int            m_expired;
+
+        public DeckEntry(Category category, int level, Node deckTag)
+        {
+            m_category = category;
+            m_level = level;
+            m_deckTag = deckTag;
+        }
+    }
+
+    /**
+     * Reports the read bytes and stops reading when the load is cancelled.
+     */
+    private class ProgressInputStream extends CountingInputStream
+    {
+        private long m_reported;
+
+        public ProgressInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        protected void bytesRead(int n) throws IOException
+        {
+            super.bytesRead(n);
+
+            if (m_cancelled)
+                throw new InterruptedIOException("Loading was cancelled.");
+
+            if (m_progressListener != null &&
+                getCount() - m_reported >= PROGRESS_STEP)
+            {
+                m_reported = getCount();
+                m_progressListener.onProgress(0, m_reported);
+            }
+        }
+    }
+
+    public LessonLoader(File file)
+    {
+        m_file = file;
+    }
+
+    public void setProgressListener(ProgressListener listener)
+    {
+        m_progressListener = listener;
+    }
+
+    /**
+     * Sets the executor that changes the lesson, e.g. one that runs on the
+     * event dispatch thread. The executor needs to run the given task before
+     * returning. By default the lesson is changed on the thread that runs the
+     * load.
+     */
+    public void setInsertExecutor(Executor executor)
+    {
+        m_insertExecutor = executor;
+    }
+
+    /**
+     * Stops the load as soon as possible. The lesson keeps what was loaded so
+     * far. Can be called from any thread.
+     */
+    public void cancel()
+    {
+        m_cancelled = true;
+    }
+
+    /**
+     * @return <code>true</code> if the load was cancelled.
+     */
+    public boolean isCancelled()
+    {
+        return m_cancelled;
+    }
+
+    /**
+     * Loads the file into given lesson. The lesson must not be shown before
+     * the listener is told about its summary or its structure, because up to
+     * then it is changed on the calling thread. If the lesson already has
+     * cards, the file is merged into it and its cards get new ids.
+     *
+     * @return the number of cards that were inserted.
+     */
+    public int load(final Lesson lesson)
+        throws SAXException, IOException, ParserConfigurationException
+    {
+        if (m_cancelled)
+            return 0;
+
+        // every card that was ever added to the lesson took an id
+        m_merge = lesson.getRootCategory().getNextCardId() > 1;
+
+        m_summary = loadSummary(lesson.getRootCategory());
+        m_summaryValid = false;
+        if (m_summary != null && m_progressListener != null)
+        {
+            execute(new Runnable() {
+                public void run()
+                {
+                    m_progressListener.onSummaryLoaded(lesson, m_summary);
+                }
+            });
+        }
+
+        final Document doc;
+        try
+        {
+            doc = parse();
+        }
+        catch (InterruptedIOException e)
+        {
+            if (m_cancelled)
+                return 0;
+
+            throw e;
+        }
+
+        // there must be a root category
+        final Element categoryTag = (Element)doc.getElementsByTagName(
+            XmlBuilder.CATEGORY).item(0);
+
+        // the categories might be created on another thread
+        final Map<String, CardStore> stores = openCardStores(doc);
+
+        final List<DeckEntry> decks = new ArrayList<DeckEntry>();
+        final Set<Category> categories = new HashSet<Category>();
+        final boolean[] validStructure = new boolean[1];
+        Runnable structureLoader = new Runnable() {
+            public void run()
+            {
+                Category rootCategory = lesson.getRootCategory();
+
+                // files without card ids give all cards new ones. so do
+                // files that are merged, because their ids might be taken
+                if (!m_merge)
+                {
+                    long nextCardId = XmlBuilder.readLong(
+                        doc.getDocumentElement().getAttributes(),
+                        XmlBuilder.NEXT_CARD_ID);
+                    rootCategory.setNextCardId(nextCardId);
+                    lesson.getReviewLog().setSavedCardIds(nextCardId);
+                }
+
+                loadCategory(m_file, rootCategory, categoryTag, decks, categories,
+                    stores, m_merge);
+                validStructure[0] = m_summary == null ||
+                    removeMissingCategories(m_summary, categories);
+
+                XmlBuilder.loadLearnHistory(doc, lesson.getLearnHistory());
+            }
+        };
+
+        // once the categories of the summary are shown, only the insert
+        // executor may change them
+        if (m_summary != null && m_progressListener != null)
+            execute(structureLoader);
+        else
+            structureLoader.run();
+
+        if (m_progressListener != null)
+        {
+            final int totalCards = countCards(decks);
+            execute(new Runnable() {
+                public void run()
+                {
+                    m_progressListener.onStructureLoaded(lesson, totalCards);
+                }
+            });
+        }
+
+        int cards = loadCards(decks, lesson.getRootCategory());
+
+        // the cards of chunks aren't loaded and so can't be checked
+        if (!m_cancelled && m_summary != null && validStructure[0] &&
+            !hasChunks(categories))
+        {
+            validateSummary(categories, decks);
+        }
+
+        if (!m_cancelled)
+            loadImages();
+
+        return cards;
+    }
+
+    /**
+     * @return the summary that was stored in the file, or <code>null</code>
+     * if there is none.
+     */
+    public LessonSummary getSummary()
+    {
+        return m_summary;
+    }
+
+    /**
+     * @return <code>true</code> if the file had a summary and it matched the
+     * cards that were loaded. Summaries of lessons with chunks are not
+     * checked.
+     */
+    public boolean isSummaryValid()
+    {
+        return m_summaryValid;
+    }
+
+    /**
+     * Reads the summary of a compressed lesson and creates its categories.
+     *
+     * @return the summary or <code>null</code> if there is none.
+     */
+    private LessonSummary loadSummary(Category rootCategory)
+    {
+        ZipFile zipFile;
+        try
+        {
+            zipFile = new ZipFile(m_file);
+        }
+        catch (IOException e)
+        {
+            return null; // expected when the file is not zipped
+        }
+
+        try
+        {
+            ZipEntry entry = zipFile.getEntry(XmlBuilder.SUMMARY_ZIP_ENTRY_NAME);
+            if (entry == null)
+                return null;
+
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            Document doc = factory.newDocumentBuilder().parse(
+                zipFile.getInputStream(entry));
+
+            Element summaryTag = doc.getDocumentElement();
+            LessonSummary summary = new LessonSummary(Long.parseLong(
+                summaryTag.getAttribute(XmlBuilder.NEXT_EXPIRY)));
+
+            Element categoryTag = (Element)summaryTag.getElementsByTagName(
+                XmlBuilder.CATEGORY).item(0);
+            loadSummaryCategory(rootCategory, categoryTag, summary);
+
+            return summary;
+        }
+        catch (Exception e)
+        {
+            Main.logThrowable("Could not read the summary of " + m_file, e);
+            return null;
+        }
+        finally
+        {
+            try
+            {
+                zipFile.close();
+            }
+            catch (IOException e)
+            {
+                Main.logThrowable("Could not close " + m_file, e);
+            }
+        }
+    }
+
+    private static void loadSummaryCategory(Category category,
+        Element categoryTag, LessonSummary summary)
+    {
+        summary.addCategory(category);
+
+        int deckLevel = 0;
+        NodeList childs = categoryTag.getChildNodes();
+        for (int i = 0; i < childs.getLength(); i++)
+        {
+            Node child = childs.item(i);
+
+            if (child.getNodeName().equalsIgnoreCase(XmlBuilder.DECK))
+            {
+                NamedNodeMap attributes = child.getAttributes();
+                summary.addCounts(category, deckLevel++,
+                    XmlBuilder.readInt(attributes, XmlBuilder.CARDS),
+                    XmlBuilder.readInt(attributes, XmlBuilder.LEARNED),
+                    XmlBuilder.readInt(attributes, XmlBuilder.EXPIRED));
+            }
+            else if (child.getNodeName().equalsIgnoreCase(XmlBuilder.CATEGORY))
+            {
+                Element catTag = (Element)child;
+                String name = catTag.getAttribute(XmlBuilder.NAME);
+
+                Category childCategory = category.getChildCategory(name);
+                if (childCategory == null)
+                {
+                    childCategory = new Category(name);
+                    category.addCategoryChild(childCategory);
+                }
+
+                loadSummaryCategory(childCategory, catTag, summary);
+            }
+        }
+    }
+
+    /**
+     * Removes the categories that were created from the summary, but aren't
+     * in the lesson.
+     *
+     * @param categories the categories of the lesson.
+     * @return <code>true</code> if no category had to be removed.
+     */
+    private static boolean removeMissingCategories(LessonSummary summary,
+        Set<Category> categories)
+    {
+        List<Category> missing = new ArrayList<Category>();
+        for (Category category : summary.getCategories())
+        {
+            // removing the topmost missing category removes its children too
+            if (!categories.contains(category) &&
+                categories.contains(category.getParent()))
+            {
+                missing.add(category);
+            }
+        }
+
+        for (Category category : missing)
+            category.remove();
+
+        return missing.isEmpty();
+    }
+
+    /**
+     * Compares the summary with the numbers of the loaded cards.
+     */
+    private void validateSummary(Set<Category> categories, List<DeckEntry> decks)
+    {
+        LessonSummary actual = new LessonSummary(Long.MAX_VALUE);
+        for (Category category : categories)
+            actual.addCategory(category);
+
+        for (DeckEntry deck : decks)
+        {
+            actual.addCounts(deck.m_category, deck.m_level, deck.m_cards,
+                deck.m_learned, deck.m_expired);
+        }
+
+        m_summaryValid = m_summary.matches(actual);
+        if (!m_summaryValid)
+        {
+            Main.getLogger().warning("The summary of " + m_file + //$NON-NLS-1$
+                " doesn't match its cards."); //$NON-NLS-1$
+        }
+    }
+
+    private Document parse()
+        throws SAXException, IOException, ParserConfigurationException
+    {
+        InputStream in = open();
+        try
+        {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            try
+            {
+                // build the whole tree here instead of when it is first
+                // walked, which might be on the thread of the views
+                factory.setFeature(DEFER_NODE_EXPANSION, false);
+            }
+            catch (ParserConfigurationException e)
+            {
+                // not supported by this parser
+            }
+
+            return factory.newDocumentBuilder().parse(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens the file, which can be gzipped, zipped or plain XML.
+     */
+    private InputStream open() throws IOException
+    {
+        m_in = new ProgressInputStream(new FileInputStream(m_file));
+        try
+        {
+            return new GZIPInputStream(m_in);
+        }
+        catch (IOException e)
+        {
+            m_in.close();
+
+            if (e instanceof InterruptedIOException)
+                throw e;
+        }
+
+        m_in = new ProgressInputStream(new FileInputStream(m_file));
+        ZipInputStream zipIn = new ZipInputStream(m_in);
+        ZipEntry zipEntry;
+        try
+        {
+            zipEntry = zipIn.getNextEntry();
+        }
+        catch (IOException e)
+        {
+            zipIn.close();
+            throw e;
+        }
+
+        // file might not be compressed. try loading it directly
+        if (zipEntry == null) // expected when the file is not zipped
+        {
+            zipIn.close();
+            m_in = new ProgressInputStream(new FileInputStream(m_file));
+            return m_in;
+        }
+
+        if (!zipEntry.getName().equals(XmlBuilder.LESSON_ZIP_ENTRY_NAME))
+        {
+            zipIn.close();
+            throw new IOException("Unexpected zip entry.");
+        }
+
+        m_zipped = true;
+        return zipIn;
+    }
+
+    /**
+     * Opens the card stores that the category tags of given document refer
+     * to.
+     *
+     * @return the stores by their paths as given in the tags.
+     */
+    private Map<String, CardStore> openCardStores(Document doc) throws IOException
+    {
+        Map<String, CardStore> stores = new HashMap<String, CardStore>();
+
+        NodeList categoryTags = doc.getElementsByTagName(XmlBuilder.CATEGORY);
+        for (int i = 0; i < categoryTags.getLength(); i++)
+        {
+            String path = ((Element)categoryTags.item(i)).getAttribute(XmlBuilder.STORE);
+            if (path.length() == 0 || stores.containsKey(path))
+                continue;
+
+            // relative paths start at the folder of the lesson
+            File file = new File(path);
+            if (!file.isAbsolute())
+                file = new File(m_file.getAbsoluteFile().getParentFile(), path);
+
+            stores.put(path, CardStore.open(file));
+        }
+
+        return stores;
+    }
+
+    /**
+     * Creates the child categories of given tag and collects its deck tags
+     * and the ones of its children, along with the categories. Categories
+     * with chunks or card stores get chunks instead.
+     *
+     * @param merge <code>true</code> if the cards of the chunks need new ids.
+     */
+    private static void loadCategory(File file, Category category,
+        Element categoryTag, List<DeckEntry> decks, Set<Category> categories,
+        Map<String, CardStore> stores, boolean merge)
+    {
+        categories.add(category);
+
+        if (categoryTag.hasAttribute(XmlBuilder.CHUNK))
+        {
+            setCardChunk(category, new ZipCardChunk(file,
+                categoryTag.getAttribute(XmlBuilder.CHUNK),
+                XmlBuilder.readInt(categoryTag.getAttributes(), XmlBuilder.CARDS),
+                XmlBuilder.readInt(categoryTag.getAttributes(), XmlBuilder.DECKS)),
+                merge);
+
+            if (merge)
+                category.renumberCardsOnLoad();
+        }
+        else if (categoryTag.hasAttribute(XmlBuilder.STORE))
+        {
+            NamedNodeMap attributes = categoryTag.getAttributes();
+            CardStore store = stores.get(categoryTag.getAttribute(XmlBuilder.STORE));
+            int storeCategory = XmlBuilder.readInt(attributes, XmlBuilder.STORE_CATEGORY);
+
+            long firstCardId = !merge &&
+                categoryTag.hasAttribute(XmlBuilder.FIRST_CARD_ID) ?
+                XmlBuilder.readLong(attributes, XmlBuilder.FIRST_CARD_ID) :
+                category.reserveCardIds(store.getCardCount(storeCategory));
+
+            setCardChunk(category, new StoreCardChunk(store, storeCategory,
+                firstCardId, XmlBuilder.loadProgress(categoryTag), null), merge);
+        }
+
+        // for all child tags in category tag
+        int deckLevel = 0;
+        NodeList childs = categoryTag.getChildNodes();
+        for (int i = 0; i < childs.getLength(); i++)
+        {
+            Node child = childs.item(i);
+
+            // if deck tag
+            if (child.getNodeName().equalsIgnoreCase(XmlBuilder.DECK))
+            {
+                decks.add(new DeckEntry(category, deckLevel, child));
+                deckLevel++;
+            }
+            // if category tag
+            else if (child.getNodeName().equalsIgnoreCase(XmlBuilder.CATEGORY))
+            {
+                Element catTag = (Element)child;
+                String name = catTag.getAttribute(XmlBuilder.NAME);
+
+                Category childCategory = category.getChildCategory(name);
+                if (childCategory == null)
+                {
+                    childCategory = new Category(name);
+                    category.addCategoryChild(childCategory);
+                }
+
+                loadCategory(file, childCategory, catTag, decks, categories,
+                    stores, merge);
+            }
+        }
+    }
+
+    /**
+     * Lets given category load its cards from given chunk when they are
+     * needed. A category that already has cards, which can only happen when
+     * a file is merged, gets the cards of the chunk with new ids right away,
+     * because a chunk holds all local cards of its category.
+     */
+    private static void setCardChunk(Category category, CardChunk chunk,
+        boolean merge)
+    {
+        if (!merge || category.getLocalCards().isEmpty())
+        {
+            category.setCardChunk(chunk, false);
+            return;
+        }
+
+        List<List<Card>> decks;
+        try
+        {
+            decks = chunk.loadDecks();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(
+                "Could not load the cards of " + category.getPath(), e); //$NON-NLS-1$
+        }
+
+        for (int level = 0; level < decks.size(); level++)
+        {
+            for (Card card : decks.get(level))
+            {
+                card.setId(0);
+                category.addCard(card, level);
+            }
+        }
+    }
+
+    private static boolean hasChunks(Set<Category> categories)
+    {
+        for (Category category : categories)
+        {
+            if (!category.isCardsLoaded())
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of card tags in given decks.
+     */
+    private static int countCards(List<DeckEntry> decks)
+    {
+        int cards = 0;
+        for (DeckEntry deck : decks)
+        {
+            NodeList childTags = deck.m_deckTag.getChildNodes();
+            for (int j = 0; j < childTags.getLength(); j++)
+            {
+                if (childTags.item(j).getNodeName().equalsIgnoreCase(XmlBuilder.CARD))
+                    cards++;
+            }
+        }
+
+        return cards;
+    }
+
+    /**
+     * Creates the cards of all decks and inserts them in batches.
+     */
+    private int loadCards(List<DeckEntry> decks, Category rootCategory)
+    {
+        List<Card> cards = new ArrayList<Card>();
+        List<DeckEntry> cardDecks = new ArrayList<DeckEntry>();
+
+        int count = 0;
+        long lastInsert = System.currentTimeMillis();
+        for (DeckEntry deck : decks)
+        {
+            NodeList childTags = deck.m_deckTag.getChildNodes();
+            for (int j = 0; j < childTags.getLength() && !m_cancelled; j++)
+            {
+                Node childTag = childTags.item(j);
+
+                // if its a card child tag
+                if (!childTag.getNodeName().equalsIgnoreCase(XmlBuilder.CARD))
+                    continue;
+
+                Card card = XmlBuilder.loadCard(childTag);
+                if (m_merge)
+                    card.setId(0);
+
+                cards.add(card);
+                cardDecks.add(deck);
+
+                deck.m_cards++;
+                if (card.isLearned())
+                    deck.m_learned++;
+                else if (card.isExpired())
+                    deck.m_expired++;
+
+                long now = System.currentTimeMillis();
+                if (now - lastInsert >= BATCH_INTERVAL)
+                {
+                    count += insert(cards, cardDecks, rootCategory, count);
+                    lastInsert = now;
+                }
+            }
+        }
+
+        if (!m_cancelled)
+            count += insert(cards, cardDecks, rootCategory, count);
+
+        return count;
+    }
+
+    /**
+     * Inserts the given cards in one batch update and clears the lists.
+     *
+     * @return the number of inserted cards.
+     */
+    private int insert(final List<Card> cards, final List<DeckEntry> decks,
+        final Category rootCategory, int count)
+    {
+        execute(new Runnable() {
+            public void run()
+            {
+                rootCategory.beginUpdate();
+                try
+                {
+                    for (int i = 0; i < cards.size(); i++)
+                    {
+                        DeckEntry deck = decks.get(i);
+                        deck.m_category.addCard(cards.get(i), deck.m_level);
+                    }
+                }
+                finally
+                {
+                    rootCategory.endUpdate();
+                }
+            }
+        });
+
+        int inserted = cards.size();
+        cards.clear();
+        decks.clear();
+
+        if (m_progressListener != null)
+            m_progressListener.onProgress(count + inserted, m_in.getCount());
+
+        return inserted;
+    }
+
+    private void loadImages() throws IOException
+    {
+        ZipFile zipFile = null;
+        try
+        {
+            if (!m_zipped)
+            {
+                XmlBuilder.loadImageRepositoryFromDisk(m_file);
+            }
+            else
+            {
+                // unlike a zip stream, this doesn't inflate the other entries
+                zipFile = new ZipFile(m_file);
+
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (!m_cancelled && entries.hasMoreElements())
+                {
+                    ZipEntry entry = entries.nextElement();
+                    InputStream in = zipFile.getInputStream(entry);
+                    try
+                    {
+                        XmlBuilder.loadImageFromZipEntry(in, entry);
+                    }
+                    finally
+                    {
+                        in.close();
+                    }
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            Main.logThrowable("Exception while loading lesson " + m_file, e);
+        }
+        finally
+        {
+            if (zipFile != null)
+                zipFile.close();
+        }
+    }
+
+    private void execute(Runnable task)
+    {
+        if (m_insertExecutor != null)
+            m_insertExecutor.execute(task);
+        else
+            task.run();
+    }
+}
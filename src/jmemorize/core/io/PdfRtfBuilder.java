@@ -22,7 +22,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import jmemorize.core.Card;
@@ -46,6 +49,10 @@ import com.lowagie.text.pdf.PdfWriter;
 import com.lowagie.text.rtf.RtfWriter2;
 
 /**
+ * Exports the cards of a lesson to PDF or RTF. Creating a builder takes a
+ * snapshot of the card texts, so that the document itself can be written on
+ * a worker thread while the lesson is still used.
+ * 
  * @author jan stamer
  * @author djemili
  */
@@ -53,11 +60,34 @@ public class PdfRtfBuilder
 {
     private final static int PDF_MODE = 0;
     private final static int RTF_MODE = 1;
+    
+    // the number of cards that are written between two progress reports
+    private final static int CARDS_PER_STEP = 50;
+    
+    private final static Font HEADER_FONT = new Font(Font.HELVETICA, 12, Font.BOLD);
 
-    // These get set in export() prior to building the pdf/rtf
-    private static Logger logger;
-    private static Font frontFont;
-    private static Font backFont;
+    // scanning the font directories is expensive, so fonts are cached
+    private static boolean           s_fontsRegistered;
+    private static Map<String, Font> s_fonts = new HashMap<String, Font>();
+    
+    /**
+     * The texts of the local cards of a category.
+     */
+    private static class CategoryPage
+    {
+        private final String       m_path;
+        private final List<String> m_texts; // front and back side alternating
+        
+        public CategoryPage(String path, List<String> texts)
+        {
+            m_path = path;
+            m_texts = texts;
+        }
+    }
+    
+    private final List<CategoryPage> m_pages = new ArrayList<CategoryPage>();
+    private final int                m_cardCount;
+    private volatile boolean         m_cancelled;
     
     /**
      * Export lesson to pdf
@@ -65,39 +95,89 @@ public class PdfRtfBuilder
      * @param lesson given lesson
      * @param file resulting pdf file
      * @throws IOException writing to file fails
-     * @throws DocumentException 
      */
     public static void exportLessonToPDF(Lesson lesson, File file) throws IOException
     {
-        export(lesson, PDF_MODE, file);
+        new PdfRtfBuilder(lesson).writePDF(file, null);
     }
 
     public static void exportLessonToRTF(Lesson lesson, File file) throws IOException
     {
-        export(lesson, RTF_MODE, file);
+        new PdfRtfBuilder(lesson).writeRTF(file, null);
     }
     
-    private static void export(Lesson lesson, int mode, File file) throws IOException 
+    /**
+     * Takes a snapshot of the card texts of given lesson. Must be called on
+     * the thread that modifies the lesson.
+     */
+    public PdfRtfBuilder(Lesson lesson)
     {
-        logger = Main.getLogger();
-
-        FontFactory.registerDirectories();
-        // set up the fonts we will use to write the front and back of cards
-        String frontFontName = Settings.loadFont(FontType.CARD_FRONT).getFont().getFamily();
-        frontFont = FontFactory.getFont(frontFontName, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
-        
-        if (frontFont == null) 
+        int cards = 0;
+        for (Category category : lesson.getRootCategory().getSubtreeList())
         {
-            logger.warning("FontFactory returned null (front) font for: " + frontFontName);
+            // ignore empty categories
+            List<Card> localCards = category.getLocalCards();
+            if (localCards.size() == 0)
+                continue;
+            
+            List<String> texts = new ArrayList<String>(2 * localCards.size());
+            for (Card card : localCards)
+            {
+                texts.add(card.getFrontSide().getText().getUnformatted());
+                texts.add(card.getBackSide().getText().getUnformatted());
+            }
+            
+            m_pages.add(new CategoryPage(category.getPath(), texts));
+            cards += localCards.size();
         }
         
-        String backFontName = Settings.loadFont(FontType.CARD_FLIP).getFont().getFamily();
-        backFont = FontFactory.getFont(backFontName, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
-        
-        if (backFont == null) 
-        {
-            logger.warning("FontFactory returned null (back) font for: " + backFontName);
-        }
+        m_cardCount = cards;
+    }
+    
+    /**
+     * Writes the snapshot to given PDF file. Can be called on any thread.
+     * 
+     * @param listener is notified after every few cards. Can be
+     * <code>null</code>.
+     */
+    public void writePDF(File file, ExportProgressListener listener) 
+        throws IOException
+    {
+        write(PDF_MODE, file, listener);
+    }
+    
+    /**
+     * Writes the snapshot to given RTF file. Can be called on any thread.
+     * 
+     * @param listener is notified after every few cards. Can be
+     * <code>null</code>.
+     */
+    public void writeRTF(File file, ExportProgressListener listener) 
+        throws IOException
+    {
+        write(RTF_MODE, file, listener);
+    }
+    
+    /**
+     * Stops a running export after the current few cards. The partially
+     * written file is deleted.
+     */
+    public void cancel()
+    {
+        m_cancelled = true;
+    }
+    
+    public boolean isCancelled()
+    {
+        return m_cancelled;
+    }
+    
+    private void write(int mode, File file, ExportProgressListener listener) 
+        throws IOException 
+    {
+        // set up the fonts we will use to write the front and back of cards
+        Font frontFont = getFont(Settings.loadFont(FontType.CARD_FRONT).getFont().getFamily());
+        Font backFont = getFont(Settings.loadFont(FontType.CARD_FLIP).getFont().getFamily());
 
         try
         {
@@ -118,15 +198,31 @@ public class PdfRtfBuilder
             doc.setHeader(new HeaderFooter(new Phrase(file.getName()), false));
             doc.open();
 
-            // add cards in subtrees
-            List<Category> subtree = lesson.getRootCategory().getSubtreeList();
-            for (Category category : subtree)
+            int written = 0;
+            for (CategoryPage page : m_pages)
             {
-                writeCategory(doc, category);
+                if (m_cancelled)
+                    break;
+                
+                writeCategoryHeader(doc, page.m_path);
+                
+                List<String> texts = page.m_texts;
+                for (int i = 0; i < texts.size() && !m_cancelled; 
+                    i += 2 * CARDS_PER_STEP)
+                {
+                    int end = Math.min(texts.size(), i + 2 * CARDS_PER_STEP);
+                    writeCards(doc, texts.subList(i, end), frontFont, backFont);
+                    
+                    written += (end - i) / 2;
+                    if (listener != null)
+                        listener.onProgress(written, m_cardCount);
+                }
             }
 
             doc.close();
-
+            
+            if (m_cancelled)
+                file.delete();
         }
         catch (Throwable t)
         {
@@ -135,33 +231,36 @@ public class PdfRtfBuilder
     }
 
     /**
-     * Adds given category to document
-     * 
-     * @param doc document to add to
-     * @param category given category
+     * @return the cached font for given family. Registers the font
+     * directories on first use. Can return <code>null</code>.
      */
-    private static void writeCategory(Document doc, Category category) 
-        throws DocumentException
+    private static synchronized Font getFont(String family)
     {
-        // ignore empty categories
-        if (category.getLocalCards().size() == 0)
+        if (s_fonts.containsKey(family))
+            return s_fonts.get(family);
+        
+        if (!s_fontsRegistered)
         {
-            return;
+            FontFactory.registerDirectories();
+            s_fontsRegistered = true;
         }
-    
-        writeCategoryHeader(doc, category);
         
-        for (Card card : category.getLocalCards())
+        Font font = FontFactory.getFont(family, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+        if (font == null) 
         {
-            writeCard(doc, card);
+            Logger logger = Main.getLogger();
+            logger.warning("FontFactory returned null font for: " + family);
         }
+        
+        s_fonts.put(family, font);
+        return font;
     }
 
-    private static void writeCategoryHeader(Document doc, Category category) 
+    private static void writeCategoryHeader(Document doc, String path) 
         throws DocumentException
     {
-        Chunk chunk = new Chunk(category.getPath());
-        chunk.setFont(new Font(Font.HELVETICA, 12, Font.BOLD));
+        Chunk chunk = new Chunk(path);
+        chunk.setFont(HEADER_FONT);
     
         Paragraph paragraph = new Paragraph(chunk);
         paragraph.setSpacingBefore(1f);
@@ -170,13 +269,24 @@ public class PdfRtfBuilder
     }
 
     /**
-     * Adds given card to document
+     * Adds the given cards to the document, each as a table of its own.
      * 
-     * @param doc document to add to
-     * @param card given card
+     * @param texts the front and back sides of the cards alternating.
      */
-    private static void writeCard(Document doc, Card card) 
-        throws DocumentException
+    private static void writeCards(Document doc, List<String> texts, 
+        Font frontFont, Font backFont) throws DocumentException
+    {
+        for (int i = 0; i < texts.size(); i += 2)
+        {
+            writeCard(doc, texts.get(i), texts.get(i + 1), frontFont, backFont);
+        }
+    }
+
+    /**
+     * Adds a card to the document.
+     */
+    private static void writeCard(Document doc, String front, String back, 
+        Font frontFont, Font backFont) throws DocumentException
     {
         Table table = new Table(2);
     
@@ -185,11 +295,9 @@ public class PdfRtfBuilder
         table.setTableFitsPage(true);
         table.complete();
     
-        Phrase front = new Phrase(card.getFrontSide().getText().getUnformatted(), frontFont);
-        table.addCell(front);
-        Phrase back = new Phrase(card.getBackSide().getText().getUnformatted(), backFont);
-        table.addCell(back);
+        table.addCell(new Phrase(front, frontFont));
+        table.addCell(new Phrase(back, backFont));
     
         doc.add(table);
     }
-}
\ No newline at end of file
+}
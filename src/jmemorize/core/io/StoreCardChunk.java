@@ -0,0 +1,275 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardChunk;
+import jmemorize.core.Category;
+import jmemorize.core.LessonSummary;
+import jmemorize.core.Main;
+
+/**
+ * The cards of a category of a {@link CardStore}, together with the progress
+ * of the ones that were learned since the store was written. Unlike other
+ * chunks, the chunk of a category is replaced when the lesson is saved, so
+ * that it holds the current progress.
+ */
+class StoreCardChunk implements CardChunk
+{
+    private final CardStore                 m_store;
+    private final int                       m_category;
+    private final long                      m_firstCardId;
+    private final Map<Integer, CardProgress> m_progress;
+    private final int                       m_decks;
+
+    // the order of the cards per deck, or null for the order of the store
+    private final int[][]                   m_order;
+
+    /**
+     * @param firstCardId the id of the first card of the category. The other
+     * cards get the following ids in the order of the store.
+     * @param progress the progress of the cards whose progress differs from
+     * the store, by their index in the store.
+     * @param order the indices of the cards of every deck in the order in
+     * which they should be loaded, or <code>null</code> if they should be
+     * loaded in the order of the store.
+     */
+    public StoreCardChunk(CardStore store, int category, long firstCardId,
+        Map<Integer, CardProgress> progress, int[][] order)
+    {
+        m_store = store;
+        m_category = category;
+        m_firstCardId = firstCardId;
+        m_progress = progress;
+        m_order = order;
+
+        int decks = store.getNumberOfDecks(category);
+        for (CardProgress cardProgress : progress.values())
+            decks = Math.max(decks, cardProgress.m_level + 1);
+
+        m_decks = order != null ? Math.max(decks, order.length) : decks;
+    }
+
+    public CardStore getStore()
+    {
+        return m_store;
+    }
+
+    /**
+     * @return the index of the category of this chunk in its store.
+     */
+    public int getStoreCategory()
+    {
+        return m_category;
+    }
+
+    /**
+     * @return the id of the first card of the category of this chunk.
+     */
+    public long getFirstCardId()
+    {
+        return m_firstCardId;
+    }
+
+    /**
+     * @return the progress of the cards whose progress differs from the
+     * store, by their index in the store.
+     */
+    public Map<Integer, CardProgress> getProgress()
+    {
+        return m_progress;
+    }
+
+    /*
+     * @see jmemorize.core.CardChunk
+     */
+    public int getCardCount()
+    {
+        return m_store.getCardCount(m_category);
+    }
+
+    /*
+     * @see jmemorize.core.CardChunk
+     */
+    public int getNumberOfDecks()
+    {
+        return m_decks;
+    }
+
+    /*
+     * @see jmemorize.core.CardChunk
+     */
+    public List<List<Card>> loadDecks()
+    {
+        List<List<Card>> decks = new ArrayList<List<Card>>(m_decks);
+        for (int level = 0; level < m_decks; level++)
+            decks.add(new ArrayList<Card>());
+
+        if (m_order != null)
+        {
+            for (int[] deck : m_order)
+            {
+                for (int index : deck)
+                    addCard(decks, index);
+            }
+        }
+        else
+        {
+            int first = m_store.getFirstCard(m_category);
+            int end = first + getCardCount();
+            for (int index = first; index < end; index++)
+                addCard(decks, index);
+        }
+
+        return decks;
+    }
+
+    /**
+     * @return <code>true</code> if the local cards of given category, which
+     * has this chunk, are still the cards of this chunk. That is if none of
+     * them were edited, removed or added, while any progress is allowed.
+     */
+    public boolean matches(Category category)
+    {
+        if (!category.isCardsLoaded())
+            return true;
+
+        List<Card> cards = category.getLocalCards();
+        if (cards.size() != getCardCount())
+            return false;
+
+        int first = m_store.getFirstCard(m_category);
+        BitSet seen = new BitSet(cards.size());
+        for (Card card : cards)
+        {
+            if (!(card instanceof StoredCard))
+                return false;
+
+            StoredCard storedCard = (StoredCard)card;
+            int index = storedCard.getIndex() - first;
+            if (storedCard.getStore() != m_store || index < 0 ||
+                index >= cards.size() || seen.get(index) || storedCard.isEdited())
+            {
+                return false;
+            }
+
+            seen.set(index);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return a chunk with the current progress and order of the local cards
+     * of given category, which must match this chunk.
+     */
+    public StoreCardChunk update(Category category)
+    {
+        Map<Integer, CardProgress> progress = new TreeMap<Integer, CardProgress>();
+        int[][] order = new int[category.getNumberOfDecks()][];
+
+        for (int level = 0; level < order.length; level++)
+        {
+            List<Card> deck = category.getLocalCards(level);
+            order[level] = new int[deck.size()];
+
+            for (int i = 0; i < deck.size(); i++)
+            {
+                int index = ((StoredCard)deck.get(i)).getIndex();
+                order[level][i] = index;
+
+                CardProgress cardProgress = CardProgress.of(deck.get(i));
+                if (!cardProgress.equals(CardProgress.read(m_store, index)))
+                    progress.put(index, cardProgress);
+            }
+        }
+
+        return new StoreCardChunk(m_store, m_category, m_firstCardId, progress, 
+            order);
+    }
+
+    /**
+     * Adds the numbers of cards of this chunk to given summary without
+     * loading them.
+     */
+    public void addCounts(LessonSummary summary, Category category)
+    {
+        long now = Main.getNow().getTime();
+        int[][] counts = new int[m_decks][3];
+
+        int first = m_store.getFirstCard(m_category);
+        int end = first + getCardCount();
+        for (int index = first; index < end; index++)
+        {
+            CardProgress progress = m_progress.isEmpty() ?
+                null : m_progress.get(index);
+
+            int level;
+            long expired;
+            if (progress != null)
+            {
+                level = progress.m_level;
+                expired = progress.m_expired;
+            }
+            else
+            {
+                level = m_store.getLevel(index);
+                expired = m_store.getTime(CardStore.EXPIRED, index);
+            }
+
+            counts[level][LessonSummary.CARDS]++;
+            if (expired == CardStore.NO_DATE)
+                continue;
+
+            if (expired > now)
+            {
+                counts[level][LessonSummary.LEARNED]++;
+                summary.addExpiry(expired);
+            }
+            else
+            {
+                counts[level][LessonSummary.EXPIRED]++;
+            }
+        }
+
+        summary.addCategory(category);
+        for (int level = 0; level < m_decks; level++)
+        {
+            summary.addCounts(category, level, counts[level][LessonSummary.CARDS],
+                counts[level][LessonSummary.LEARNED],
+                counts[level][LessonSummary.EXPIRED]);
+        }
+    }
+
+    private void addCard(List<List<Card>> decks, int index)
+    {
+        CardProgress progress = m_progress.isEmpty() ? null : m_progress.get(index);
+        if (progress == null)
+            progress = CardProgress.read(m_store, index);
+
+        long id = m_firstCardId + index - m_store.getFirstCard(m_category);
+        decks.get(progress.m_level).add(new StoredCard(m_store, index, id, progress));
+    }
+}
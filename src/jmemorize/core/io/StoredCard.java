@@ -0,0 +1,89 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.util.Date;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardSide;
+import jmemorize.core.FormattedText;
+
+/**
+ * A card of a {@link CardStore}. Its sides are only read from the store when
+ * they are first needed, so that a card which is never shown doesn't hold
+ * any texts.
+ */
+class StoredCard extends Card
+{
+    private final CardStore  m_store;
+    private final int        m_index;
+
+    private volatile boolean m_sidesLoaded;
+
+    public StoredCard(CardStore store, int index, long id, CardProgress progress)
+    {
+        super(new Date(progress.m_created));
+
+        m_store = store;
+        m_index = index;
+        setId(id);
+        progress.applyTo(this);
+    }
+
+    public CardStore getStore()
+    {
+        return m_store;
+    }
+
+    /**
+     * @return the index of this card in its store.
+     */
+    public int getIndex()
+    {
+        return m_index;
+    }
+
+    /**
+     * @return <code>true</code> if the sides of this card differ from the
+     * ones in the store.
+     */
+    public boolean isEdited()
+    {
+        if (!m_sidesLoaded)
+            return false;
+
+        return isEdited(getFrontSide(), true) || isEdited(getBackSide(), false);
+    }
+
+    /*
+     * @see jmemorize.core.Card#loadSide(boolean)
+     */
+    protected CardSide loadSide(boolean frontside)
+    {
+        m_sidesLoaded = true;
+        return new CardSide(FormattedText.formatted(
+            m_store.getText(m_index, frontside)));
+    }
+
+    private boolean isEdited(CardSide side, boolean frontside)
+    {
+        return !side.getImages().isEmpty() || !side.getText().getFormatted()
+            .equals(m_store.getText(m_index, frontside));
+    }
+}
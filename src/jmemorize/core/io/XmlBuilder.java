@@ -33,10 +33,11 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
+import java.util.TreeMap;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -49,10 +50,12 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardChunk;
 import jmemorize.core.CardSide;
 import jmemorize.core.Category;
 import jmemorize.core.ImageRepository;
 import jmemorize.core.Lesson;
+import jmemorize.core.LessonSummary;
 import jmemorize.core.LessonProvider;
 import jmemorize.core.Main;
 import jmemorize.core.Settings;
@@ -74,13 +77,15 @@ public class XmlBuilder
 {
     private static final String SESSION              = "session";            //$NON-NLS-1$
     private static final String LESSON               = "Lesson";             //$NON-NLS-1$
-    private static final String DECK                 = "Deck";               //$NON-NLS-1$
-    private static final String CARD                 = "Card";               //$NON-NLS-1$
+    static final String DECK                         = "Deck";               //$NON-NLS-1$
+    static final String CARD                         = "Card";               //$NON-NLS-1$
+    private static final String CARD_ID              = "id";                 //$NON-NLS-1$
+    static final String NEXT_CARD_ID                 = "nextCardId";         //$NON-NLS-1$
     private static final String SIDE                 = "Side";               //$NON-NLS-1$
     private static final String IMG                  = "image";              //$NON-NLS-1$
     private static final String IMG_ID               = "id";                 //$NON-NLS-1$
-    private static final String NAME                 = "name";               //$NON-NLS-1$
-    private static final String CATEGORY             = "Category";           //$NON-NLS-1$
+    static final String NAME                         = "name";               //$NON-NLS-1$
+    static final String CATEGORY                     = "Category";           //$NON-NLS-1$
     private static final String TESTS_HIT            = "TestsHit";           //$NON-NLS-1$
     private static final String TESTS_TOTAL          = "TestsTotal";         //$NON-NLS-1$
     private static final String AMOUNT_LEARNED_BACK  = "AmountLearnedBack";  //$NON-NLS-1$
@@ -101,8 +106,24 @@ public class XmlBuilder
     private static final String STATS_END            = "end";                //$NON-NLS-1$
     private static final String STATS_START          = "start";              //$NON-NLS-1$
     
-    private static final String LESSON_ZIP_ENTRY_NAME = "lesson.xml";        //$NON-NLS-1$
+    static final String SUMMARY                      = "Summary";            //$NON-NLS-1$
+    static final String NEXT_EXPIRY                  = "nextExpiry";         //$NON-NLS-1$
+    static final String CARDS                        = "cards";              //$NON-NLS-1$
+    static final String LEARNED                      = "learned";            //$NON-NLS-1$
+    static final String EXPIRED                      = "expired";            //$NON-NLS-1$
+    static final String DECKS                        = "decks";              //$NON-NLS-1$
+    static final String CHUNK                        = "chunk";              //$NON-NLS-1$
+    static final String STORE                        = "store";              //$NON-NLS-1$
+    static final String STORE_CATEGORY               = "storeCategory";      //$NON-NLS-1$
+    static final String FIRST_CARD_ID                = "firstCardId";        //$NON-NLS-1$
+    static final String PROGRESS                     = "Progress";           //$NON-NLS-1$
+    private static final String INDEX                = "index";              //$NON-NLS-1$
+    private static final String LEVEL                = "level";              //$NON-NLS-1$
+    
+    static final String LESSON_ZIP_ENTRY_NAME        = "lesson.xml";         //$NON-NLS-1$
+    static final String SUMMARY_ZIP_ENTRY_NAME       = "summary.xml";        //$NON-NLS-1$
     private static final String IMAGE_FOLDER         = "images";             //$NON-NLS-1$
+    private static final String CHUNK_FOLDER         = "cards";              //$NON-NLS-1$
     
     // we need a fixed formatter in file (not locale depent)
     private final static DateFormat DATE_FORMAT = DateFormat.getDateTimeInstance(
@@ -118,11 +139,22 @@ public class XmlBuilder
      * 
      * XML-Schema:
      * 
-     * <lesson> 
+     * <lesson nextCardId="3"> 
      *   <deck> 
-     *     <card frontside="bla" backside="bla"/> .. 
+     *     <card id="1" frontside="bla" backside="bla"/> .. 
      *   </deck> ..
      * </lesson>
+     * 
+     * The ids of the cards are kept across saves. Files without them get
+     * new ones when they are loaded.
+     * 
+     * If compressed lessons are saved in chunks, the category tags only hold
+     * the name of the zip entry with their deck tags and the numbers of
+     * their cards and decks.
+     * 
+     * Categories whose cards are still the ones of a {@link CardStore} only
+     * hold the path of the store and progress tags for the cards whose
+     * progress differs from the store.
      */
     public static void saveAsXMLFile(File file, Lesson lesson) throws IOException, 
         TransformerException, ParserConfigurationException
@@ -130,6 +162,18 @@ public class XmlBuilder
         OutputStream out;
         ZipOutputStream zipOut = null;
         
+        // the cards might be stored in the file that is overwritten, unlike
+        // the cards of card stores
+        for (Category category : lesson.getRootCategory().getSubtreeList())
+        {
+            if (!(category.getCardChunk() instanceof StoreCardChunk))
+                category.getLocalCards();
+        }
+        
+        List<Category> chunks = null;
+        if (Settings.loadIsSaveCompressed() && Settings.loadIsSaveChunked())
+            chunks = new ArrayList<Category>();
+        
         if (Settings.loadIsSaveCompressed())
         {
             out = zipOut = new ZipOutputStream(new FileOutputStream(file));
@@ -147,10 +191,13 @@ public class XmlBuilder
 
             // add lesson tag as root
             Element lessonTag = document.createElement(LESSON);
+            lessonTag.setAttribute(NEXT_CARD_ID, 
+                Long.toString(lesson.getRootCategory().getNextCardId()));
             document.appendChild(lessonTag);
 
             // add category tags
-            writeCategory(document, lessonTag, lesson.getRootCategory());
+            writeCategory(document, lessonTag, lesson.getRootCategory(), chunks, 
+                file);
             writeLearnHistory(document, lesson.getLearnHistory());
 
             // transform document for file output
@@ -171,6 +218,18 @@ public class XmlBuilder
         
         try
         {
+            // compressed lessons carry the numbers of their cards, which can
+            // be shown while the cards are still loading
+            if (zipOut != null)
+            {
+                zipOut.putNextEntry(new ZipEntry(SUMMARY_ZIP_ENTRY_NAME));
+                writeSummary(zipOut, lesson.getRootCategory());
+                zipOut.closeEntry();
+            }
+            
+            if (chunks != null)
+                writeChunks(zipOut, chunks);
+            
             removeUnusedImagesFromRepository(lesson);
             
             if (zipOut == null)
@@ -186,93 +245,65 @@ public class XmlBuilder
     }
 
     /**
-     * Loads a lesson from an XML document that is contained within a file.
-     * 
-     * Don't use this method directly. Use the {@link LessonProvider} instead.
-     * 
-     * @param File xmlFile the file that containt the XML document which
-     * represents the lesson.
+     * Lets the categories of a lesson that was saved to given file load
+     * their cards from the chunks of the file from now on, if it has any.
+     * Otherwise the categories keep their cards in memory, because the file
+     * that they were loaded from might have been overwritten. Categories of
+     * card stores keep their chunks.
      */
-    public static void loadFromXMLFile(File xmlFile, Lesson lesson) 
-        throws SAXException, IOException, ParserConfigurationException
+    public static void attachCardChunks(File file, Category rootCategory)
     {
-        InputStream in;
-        ZipInputStream zipIn = null;
-        
+        boolean chunked = false;
         try
         {
-            in = new GZIPInputStream(new FileInputStream(xmlFile));
+            ZipFile zipFile = new ZipFile(file);
+            chunked = zipFile.getEntry(getChunkEntryName(0)) != null;
+            zipFile.close();
         }
-        catch (IOException ex)
+        catch (IOException e)
         {
-            in = zipIn = new ZipInputStream(new FileInputStream(xmlFile));
-            ZipEntry zipEntry = zipIn.getNextEntry();
-            
-            // file might not be compressed. try loading it directly
-            if (zipEntry == null) // expected when the file is not zipped
-            {
-                in = new FileInputStream(xmlFile);
-                zipIn = null;
-            }
-            else
-            {
-                if (!zipEntry.getName().equals(LESSON_ZIP_ENTRY_NAME))
-                    throw new IOException("Unexpected zip entry.");
-            }
+            // expected when the file is not zipped
         }
         
-        // get lesson tag
-        try
+        // the chunks are numbered in the order of the category tags
+        int index = 0;
+        for (Category category : rootCategory.getSubtreeList())
         {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            Document doc = factory.newDocumentBuilder().parse(in);
-    
-            // there must be a root category
-            Element categoryTag = (Element)doc.getElementsByTagName(CATEGORY).item(0);
-            loadCategory(lesson.getRootCategory(), null, categoryTag, 0);
-            loadLearnHistory(doc, lesson.getLearnHistory());
-        }
-        finally
-        {
-            if (zipIn == null)
-                in.close();
-        }
-        
-        try  
-        {
-            if (zipIn == null)
-                loadImageRepositoryFromDisk(xmlFile);
+            if (category.getCardChunk() instanceof StoreCardChunk)
+                continue;
             
-            else
+            CardChunk chunk = null;
+            if (chunked)
             {
-                zipIn = new ZipInputStream(new FileInputStream(xmlFile));
-                
-                ZipEntry entry;
-                while ((entry = zipIn.getNextEntry()) != null)
-                {
-                    loadImageFromZipEntry(zipIn, entry);
-                }
+                chunk = new ZipCardChunk(file, getChunkEntryName(index), 
+                    category.getLocalCards().size(), category.getNumberOfDecks());
             }
-        }
-        catch (Exception e)
-        {
-            Main.logThrowable("Exception while loading lesson "+xmlFile, e);
-        }
-        finally
-        {
-            if (zipIn != null)
-                zipIn.close();
+            index++;
+            
+            category.setCardChunk(chunk, true);
         }
     }
+
+    /**
+     * Loads a lesson from an XML document that is contained within a file.
+     * 
+     * Don't use this method directly. Use the {@link LessonProvider} instead.
+     * 
+     * @param File xmlFile the file that containt the XML document which
+     * represents the lesson.
+     */
+    public static void loadFromXMLFile(File xmlFile, Lesson lesson) 
+        throws SAXException, IOException, ParserConfigurationException
+    {
+        new LessonLoader(xmlFile).load(lesson);
+    }
     
     /**
      * @deprecated 
      */
     public static void loadLearnHistory(Document document, LearnHistory history)
     {
-        // there must be a root category
-        Element rootTag = (Element)document.getElementsByTagName(STATS_ROOT).item(0);
-
+        Element rootTag = findLearnHistory(document);
         if (rootTag == null)
             return;
         
@@ -300,6 +331,30 @@ public class XmlBuilder
         history.setIsLoaded(true);
     }
     
+    /**
+     * Finds the tag of the learn history, which is written as child of the
+     * lesson tag. Searching the whole document takes much longer for large
+     * lessons, so this is only done if it isn't found there.
+     */
+    private static Element findLearnHistory(Document document)
+    {
+        Element documentTag = document.getDocumentElement();
+        if (documentTag == null)
+            return null;
+        
+        if (documentTag.getNodeName().equals(STATS_ROOT))
+            return documentTag;
+        
+        NodeList childs = documentTag.getChildNodes();
+        for (int i = childs.getLength() - 1; i >= 0; i--)
+        {
+            if (childs.item(i).getNodeName().equals(STATS_ROOT))
+                return (Element)childs.item(i);
+        }
+        
+        return (Element)document.getElementsByTagName(STATS_ROOT).item(0);
+    }
+    
     /**
      * @deprecated 
      */
@@ -329,6 +384,45 @@ public class XmlBuilder
             document.appendChild(statsTag);
     }
 
+    /**
+     * Writes a {@link LessonSummary} of the cards of given category and its
+     * child categories as XML document.
+     * 
+     * <Summary nextExpiry="millis"> 
+     *   <Category name="bla"> 
+     *     <Deck cards="3" learned="1" expired="2"/> ..
+     *     <Category name="bla"> .. </Category> ..
+     *   </Category>
+     * </Summary>
+     */
+    public static void writeSummary(OutputStream out, Category rootCategory) 
+        throws TransformerException, ParserConfigurationException
+    {
+        // the cards of card stores are counted without loading them
+        LessonSummary summary = new LessonSummary(Long.MAX_VALUE);
+        for (Category category : rootCategory.getSubtreeList())
+        {
+            CardChunk chunk = category.getCardChunk();
+            if (chunk instanceof StoreCardChunk && !category.isCardsLoaded())
+                ((StoreCardChunk)chunk).addCounts(summary, category);
+            else
+                summary.addCards(category);
+        }
+        
+        Document document = DocumentBuilderFactory.newInstance()
+            .newDocumentBuilder().newDocument();
+        
+        Element summaryTag = document.createElement(SUMMARY);
+        summaryTag.setAttribute(NEXT_EXPIRY, Long.toString(summary.getNextExpiry()));
+        document.appendChild(summaryTag);
+        
+        writeSummaryCategory(document, summaryTag, rootCategory, summary);
+        
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
+        transformer.transform(new DOMSource(document), new StreamResult(out));
+    }
+
     /**
      * @return the folder where images were stored (usually a dedicated
      * subfolder of given dir argument).
@@ -375,12 +469,158 @@ public class XmlBuilder
         }
     }
     
-    private static void writeCategory(Document document, Element father, Category category)
+    /**
+     * @param chunks if not <code>null</code>, the decks are not written and
+     * the category is added to this list instead.
+     * @param file the lesson file, which paths to card stores are relative to.
+     */
+    private static void writeCategory(Document document, Element father, 
+        Category category, List<Category> chunks, File file)
     {
         Element categoryTag = document.createElement(CATEGORY);
         categoryTag.setAttribute(NAME, category.getName());
         father.appendChild(categoryTag);
         
+        StoreCardChunk storeChunk = updateStoreChunk(category);
+        if (storeChunk != null)
+        {
+            writeStoreChunk(document, categoryTag, storeChunk, file);
+        }
+        else if (chunks != null)
+        {
+            categoryTag.setAttribute(CHUNK, getChunkEntryName(chunks.size()));
+            categoryTag.setAttribute(CARDS, 
+                Integer.toString(category.getLocalCards().size()));
+            categoryTag.setAttribute(DECKS, 
+                Integer.toString(category.getNumberOfDecks()));
+            chunks.add(category);
+        }
+        else
+        {
+            writeDecks(document, categoryTag, category);
+        }
+        
+        // now add child categories
+        for (Category child : category.getChildCategories())
+        {
+            writeCategory(document, categoryTag, child, chunks, file);
+        }
+    }
+    
+    /**
+     * Gives a category of a card store a chunk with the current progress of
+     * its cards. Categories whose cards were edited, added or removed are
+     * detached from their stores.
+     * 
+     * @return the new chunk or <code>null</code> if the category isn't a
+     * category of a card store (anymore).
+     */
+    private static StoreCardChunk updateStoreChunk(Category category)
+    {
+        if (!(category.getCardChunk() instanceof StoreCardChunk))
+            return null;
+        
+        StoreCardChunk chunk = (StoreCardChunk)category.getCardChunk();
+        if (!chunk.matches(category))
+        {
+            category.setCardChunk(null, true);
+            return null;
+        }
+        
+        // unloaded cards still have the progress of the chunk
+        if (category.isCardsLoaded())
+        {
+            chunk = chunk.update(category);
+            category.setCardChunk(chunk, true);
+        }
+        
+        return chunk;
+    }
+    
+    private static void writeStoreChunk(Document document, Element categoryTag, 
+        StoreCardChunk chunk, File file)
+    {
+        File storeFile = chunk.getStore().getFile().getAbsoluteFile();
+        File dir = file.getAbsoluteFile().getParentFile();
+        
+        categoryTag.setAttribute(STORE, storeFile.getParentFile().equals(dir) ? 
+            storeFile.getName() : storeFile.getPath());
+        categoryTag.setAttribute(STORE_CATEGORY, 
+            Integer.toString(chunk.getStoreCategory()));
+        categoryTag.setAttribute(FIRST_CARD_ID, 
+            Long.toString(chunk.getFirstCardId()));
+        
+        for (Map.Entry<Integer, CardProgress> entry : chunk.getProgress().entrySet())
+        {
+            Element progressTag = document.createElement(PROGRESS);
+            progressTag.setAttribute(INDEX, entry.getKey().toString());
+            writeProgress(progressTag, entry.getValue());
+            categoryTag.appendChild(progressTag);
+        }
+    }
+    
+    private static void writeProgress(Element tag, CardProgress progress)
+    {
+        tag.setAttribute(LEVEL, Integer.toString(progress.m_level));
+        
+        tag.setAttribute(DATE_CREATED, formatDate(progress.m_created));
+        tag.setAttribute(DATE_MODIFIED, formatDate(progress.m_modified));
+        tag.setAttribute(DATE_TOUCHED, formatDate(progress.m_touched));
+        
+        if (progress.m_tested != CardStore.NO_DATE)
+            tag.setAttribute(DATE_TESTED, formatDate(progress.m_tested));
+        
+        if (progress.m_expired != CardStore.NO_DATE)
+            tag.setAttribute(DATE_EXPIRED, formatDate(progress.m_expired));
+        
+        tag.setAttribute(AMOUNT_LEARNED_FRONT, Integer.toString(progress.m_learnedFront));
+        tag.setAttribute(AMOUNT_LEARNED_BACK, Integer.toString(progress.m_learnedBack));
+        
+        tag.setAttribute(TESTS_TOTAL, Integer.toString(progress.m_testsTotal));
+        tag.setAttribute(TESTS_HIT, Integer.toString(progress.m_testsPassed));
+    }
+    
+    /**
+     * Reads the progress tags of a category of a card store.
+     * 
+     * @return the progress by the index of the card in the store.
+     */
+    static Map<Integer, CardProgress> loadProgress(Element categoryTag)
+    {
+        Map<Integer, CardProgress> progressByIndex = 
+            new TreeMap<Integer, CardProgress>();
+        
+        NodeList childs = categoryTag.getChildNodes();
+        for (int i = 0; i < childs.getLength(); i++)
+        {
+            Node tag = childs.item(i);
+            if (!tag.getNodeName().equalsIgnoreCase(PROGRESS))
+                continue;
+            
+            NamedNodeMap attributes = tag.getAttributes();
+            CardProgress progress = new CardProgress();
+            progress.m_level = readInt(attributes, LEVEL);
+            
+            progress.m_created = readTime(attributes, DATE_CREATED);
+            progress.m_modified = readTime(attributes, DATE_MODIFIED);
+            progress.m_touched = readTime(attributes, DATE_TOUCHED);
+            progress.m_tested = readTime(attributes, DATE_TESTED);
+            progress.m_expired = readTime(attributes, DATE_EXPIRED);
+            
+            progress.m_learnedFront = readInt(attributes, AMOUNT_LEARNED_FRONT);
+            progress.m_learnedBack = readInt(attributes, AMOUNT_LEARNED_BACK);
+            progress.m_testsTotal = readInt(attributes, TESTS_TOTAL);
+            progress.m_testsPassed = readInt(attributes, TESTS_HIT);
+            
+            progressByIndex.put(readInt(attributes, INDEX), progress);
+        }
+        
+        return progressByIndex;
+    }
+    
+    private static void writeDecks(Document document, Element categoryTag, 
+        Category category)
+    {
         // for all decks add a deck tag
         for (int i = 0; i < category.getNumberOfDecks(); i++)
         {
@@ -394,17 +634,65 @@ public class XmlBuilder
                 deckTag.appendChild(cardTag);
             }
         }
+    }
+    
+    /**
+     * Writes a zip entry with the decks of every given category. 
+     */
+    private static void writeChunks(ZipOutputStream zipOut, List<Category> chunks) 
+        throws IOException, TransformerException, ParserConfigurationException
+    {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
+        
+        for (int i = 0; i < chunks.size(); i++)
+        {
+            Category category = chunks.get(i);
+            
+            Document document = DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder().newDocument();
+            Element categoryTag = document.createElement(CATEGORY);
+            categoryTag.setAttribute(NAME, category.getName());
+            document.appendChild(categoryTag);
+            writeDecks(document, categoryTag, category);
+            
+            zipOut.putNextEntry(new ZipEntry(getChunkEntryName(i)));
+            transformer.transform(new DOMSource(document), new StreamResult(zipOut));
+            zipOut.closeEntry();
+        }
+    }
+    
+    static String getChunkEntryName(int index)
+    {
+        return CHUNK_FOLDER + "/" + index + ".xml"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static void writeSummaryCategory(Document document, Element father, 
+        Category category, LessonSummary summary)
+    {
+        Element categoryTag = document.createElement(CATEGORY);
+        categoryTag.setAttribute(NAME, category.getName());
+        father.appendChild(categoryTag);
+        
+        for (int[] deck : summary.getLocalCounts(category))
+        {
+            Element deckTag = document.createElement(DECK);
+            deckTag.setAttribute(CARDS, Integer.toString(deck[LessonSummary.CARDS]));
+            deckTag.setAttribute(LEARNED, Integer.toString(deck[LessonSummary.LEARNED]));
+            deckTag.setAttribute(EXPIRED, Integer.toString(deck[LessonSummary.EXPIRED]));
+            categoryTag.appendChild(deckTag);
+        }
         
-        // now add child categories
         for (Category child : category.getChildCategories())
         {
-            writeCategory(document, categoryTag, child);
+            writeSummaryCategory(document, categoryTag, child, summary);
         }
     }
 
     private static Element writeCard(Document document, Card card)
     {
         Element cardTag = document.createElement(CARD);
+        cardTag.setAttribute(CARD_ID, Long.toString(card.getId()));
         
         // save card sides
         cardTag.setAttribute(FRONTSIDE, card.getFrontSide().getText().getFormatted());
@@ -470,54 +758,7 @@ public class XmlBuilder
         }
     }
     
-    private static void loadCategory(Category category, Category father, 
-        Element categoryTag, int depth)
-    {
-        // for all child tags in category tag
-        int deckLevel = 0;
-        NodeList childs  = categoryTag.getChildNodes();
-        for (int i = 0; i < childs.getLength(); i++)
-        { 
-            Node child = childs.item(i);
-            
-            // if deck tag
-            if (child.getNodeName().equalsIgnoreCase(DECK))
-            {
-                // for all card tags in deck tag
-                NodeList childTags = child.getChildNodes();
-                for (int j = 0; j < childTags.getLength(); j++)
-                {
-                    Node childTag = childTags.item(j);
-                    
-                    // if its a card child tag
-                    if (!childTag.getNodeName().equalsIgnoreCase(CARD))
-                        continue;
-                    
-                    Card card = loadCard(childTag);
-                    category.addCard(card, deckLevel);
-                }
-                
-                deckLevel++;
-            }
-            // if category tag
-            else if (child.getNodeName().equalsIgnoreCase(CATEGORY))
-            {
-                Element catTag = (Element)child;
-                String name = catTag.getAttribute(NAME);
-                
-                Category childCategory = category.getChildCategory(name);
-                if (childCategory == null)
-                {
-                    childCategory = new Category(name);
-                    category.addCategoryChild(childCategory);
-                }
-                
-                loadCategory(childCategory, category, catTag, depth + 1);
-            }
-        }
-    }
-
-    private static Card loadCard(Node cardTag)
+    static Card loadCard(Node cardTag)
     {
         NamedNodeMap attributes = cardTag.getAttributes();
         
@@ -552,6 +793,8 @@ public class XmlBuilder
         
         // create card
         Card card = new Card(dateCreated, frontSide, backSide);
+        card.setId(readLong(attributes, CARD_ID));
+        
         if (dateModified != null)
             card.setDateModified(dateModified);
         
@@ -609,7 +852,7 @@ public class XmlBuilder
         return new ArrayList<String>();
     }
     
-    private static void loadImageRepositoryFromDisk(File dir)
+    static void loadImageRepositoryFromDisk(File dir)
     {
         ImageRepository repository = ImageRepository.getInstance();
         
@@ -637,7 +880,7 @@ public class XmlBuilder
         }
     }
     
-    private static void loadImageFromZipEntry(InputStream in, ZipEntry entry) 
+    static void loadImageFromZipEntry(InputStream in, ZipEntry entry) 
         throws IOException
     {
         ImageRepository repository = ImageRepository.getInstance();
@@ -653,11 +896,17 @@ public class XmlBuilder
     {
         Set<String> usedImageIDs = new HashSet<String>();
         
-        List<Card> allCards = lesson.getRootCategory().getCards();
-        for (Card card : allCards)
+        for (Category category : lesson.getRootCategory().getSubtreeList())
         {
-            usedImageIDs.addAll(card.getFrontSide().getImages());
-            usedImageIDs.addAll(card.getBackSide().getImages());
+            // the cards of card stores have no images
+            if (category.getCardChunk() instanceof StoreCardChunk)
+                continue;
+            
+            for (Card card : category.getLocalCards())
+            {
+                usedImageIDs.addAll(card.getFrontSide().getImages());
+                usedImageIDs.addAll(card.getBackSide().getImages());
+            }
         }
     
         ImageRepository.getInstance().retain(usedImageIDs);
@@ -668,12 +917,29 @@ public class XmlBuilder
         return Integer.toString((int)num);
     }
     
-    private static int readInt(NamedNodeMap attributes, String attributeItem)
+    static int readInt(NamedNodeMap attributes, String attributeItem)
     {
         Node num = attributes.getNamedItem(attributeItem);
         return (num != null) ? Integer.parseInt(num.getNodeValue()) : 0;
     }
     
+    static long readLong(NamedNodeMap attributes, String attributeItem)
+    {
+        Node num = attributes.getNamedItem(attributeItem);
+        return (num != null) ? Long.parseLong(num.getNodeValue()) : 0;
+    }
+    
+    private static String formatDate(long time)
+    {
+        return DATE_FORMAT.format(new Date(time));
+    }
+    
+    private static long readTime(NamedNodeMap attributes, String attributeItem)
+    {
+        Date date = readDate(attributes, attributeItem);
+        return date != null ? date.getTime() : CardStore.NO_DATE;
+    }
+    
     private static Date readDate(NamedNodeMap attributes, String attributeItem)
     {
         Node date = attributes.getNamedItem(attributeItem);
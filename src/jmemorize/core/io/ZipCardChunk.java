@@ -0,0 +1,131 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardChunk;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * The cards of a category that are stored in their own entry of a zipped
+ * lesson file. The entry holds a category tag with the deck tags of the
+ * category, but without its child categories. The zip file is only opened
+ * while the cards are loaded.
+ */
+class ZipCardChunk implements CardChunk
+{
+    private final File   m_file;
+    private final String m_entryName;
+    private final int    m_cards;
+    private final int    m_decks;
+
+    public ZipCardChunk(File file, String entryName, int cards, int decks)
+    {
+        m_file = file;
+        m_entryName = entryName;
+        m_cards = cards;
+        m_decks = decks;
+    }
+
+    /*
+     * @see jmemorize.core.CardChunk
+     */
+    public int getCardCount()
+    {
+        return m_cards;
+    }
+
+    /*
+     * @see jmemorize.core.CardChunk
+     */
+    public int getNumberOfDecks()
+    {
+        return m_decks;
+    }
+
+    /*
+     * @see jmemorize.core.CardChunk
+     */
+    public List<List<Card>> loadDecks() throws IOException
+    {
+        ZipFile zipFile = new ZipFile(m_file);
+        try
+        {
+            ZipEntry entry = zipFile.getEntry(m_entryName);
+            if (entry == null)
+                throw new IOException("Missing zip entry " + m_entryName);
+
+            Document doc = DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder().parse(zipFile.getInputStream(entry));
+
+            List<List<Card>> decks = new ArrayList<List<Card>>(m_decks);
+            NodeList childs = doc.getDocumentElement().getChildNodes();
+            for (int i = 0; i < childs.getLength(); i++)
+            {
+                Node deckTag = childs.item(i);
+                if (!deckTag.getNodeName().equalsIgnoreCase(XmlBuilder.DECK))
+                    continue;
+
+                List<Card> cards = new ArrayList<Card>();
+                NodeList cardTags = deckTag.getChildNodes();
+                for (int j = 0; j < cardTags.getLength(); j++)
+                {
+                    Node cardTag = cardTags.item(j);
+                    if (cardTag.getNodeName().equalsIgnoreCase(XmlBuilder.CARD))
+                        cards.add(XmlBuilder.loadCard(cardTag));
+                }
+                decks.add(cards);
+            }
+
+            return decks;
+        }
+        catch (SAXException e)
+        {
+            throw toIOException(e);
+        }
+        catch (ParserConfigurationException e)
+        {
+            throw toIOException(e);
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    private IOException toIOException(Exception e)
+    {
+        return (IOException)new IOException("Could not read " + m_entryName +
+            " of " + m_file).initCause(e);
+    }
+}
@@ -24,7 +24,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -36,9 +35,12 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardSet;
 import jmemorize.core.Category;
 import jmemorize.core.CategoryObserver;
+import jmemorize.core.Main;
 import jmemorize.util.EquivalenceClassSet;
+import jmemorize.util.LongHashMap;
 
 /**
  * A learn session is instantiated with a LearnSettings object which defines the
@@ -211,8 +213,8 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     // the list of all cards that have been checked in the order last seen. Does 
     // not include cards that were skipped and never passed/failed.
     private List<Card>                     m_cardsChecked = new ArrayList<Card>();
-    private Set<Card>                      m_cardsLearned = new HashSet<Card>();
-    private Map<Card, CardInfo>            m_cardsInfoMap = new HashMap<Card, CardInfo>();
+    private Set<Card>                      m_cardsLearned = new CardSet();
+    private LongHashMap<CardInfo>          m_cardsInfoMap = new LongHashMap<CardInfo>();
 
     // NOTE - m_cardsLearned is the set of all cards successfully learned
     // this session, which is the union of "passed" and "relearned".
@@ -224,15 +226,15 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     // These sets are non exclusive markers that indicate the status of a card
     // Note that these are Sets not Lists.  Two reasons:
     //  1)  The order is not important.
-    //  2)  Lookup efficiency is better.
+    //  2)  Lookup efficiency is better. They look up the cards by their ids.
     
     // Cards do not get removed from the EverFailed list.
-    private Set<Card>            m_cardsEverFailed  = new HashSet<Card>();
-    private Set<Card>            m_cardsSkipped     = new HashSet<Card>();
+    private Set<Card>            m_cardsEverFailed  = new CardSet();
+    private Set<Card>            m_cardsSkipped     = new CardSet();
 
     // NOTE - this is only the *active* cards which are partially learned -
     // there may be others in the reserve set.
-    private Set<Card>            m_cardsActivePartiallyLearned = new HashSet<Card>();
+    private Set<Card>            m_cardsActivePartiallyLearned = new CardSet();
      
     // Further invariants:
     //   - Learned intsersection Skipped = NULL
@@ -245,6 +247,11 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     private Date                 m_start;
     private Date                 m_end;
     
+    // the log of the reviews and the state of the current card that is logged
+    private ReviewLog            m_reviewLog;
+    private long                 m_cardShownTime;
+    private boolean              m_cardShownFlipped;
+    
     private Logger               m_logger = Logger.getLogger("jmemorize.session");
     
     /**
@@ -255,13 +262,26 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         LearnSettings settings, List<Card> selectedCards, 
         boolean learnUnlearned, boolean learnExpired, 
         LearnSessionProvider provider)
+    {
+        this(category, settings, 
+            fetchCards(category, selectedCards, learnUnlearned, learnExpired), 
+            provider);
+    }
+    
+    /**
+     * Creates a new learn session for given cards, e.g. the cards of a
+     * {@link LearnQueue}. The session doesn't observe the lesson before
+     * {@link #startLearning()} is called, so that it can be created on
+     * another thread.
+     */
+    public DefaultLearnSession(Category category, LearnSettings settings, 
+        List<Card> cards, LearnSessionProvider provider)
     {
         m_rootCategory = category;
         while (m_rootCategory.getParent() != null)
             m_rootCategory = m_rootCategory.getParent();
 
         m_category = category;
-        m_rootCategory.addObserver(this);
         
         m_settings = settings;
         m_provider = provider;
@@ -271,12 +291,21 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         Map<Category, Integer> order = m_settings.isGroupByCategory() ? 
             createCategoryGroupOrder() : null;
             
-        m_cardsActive = fetchCards(selectedCards, learnUnlearned, learnExpired, order);
+        m_cardsActive = createCardSet(cards, order);
         m_cardsReserve = new EquivalenceClassSet<CardInfo>(m_cardsActive.getComparator());
         // Note that EquivalenceClassSets always default to shuffle mode (any card
         // from the current class may be chosen next.)  This is what we want here. 
     }
 
+    /**
+     * Sets the log that the cards which are checked or skipped in this
+     * session are added to. Has to be called before the learning is started.
+     */
+    public void setReviewLog(ReviewLog reviewLog)
+    {
+        m_reviewLog = reviewLog;
+    }
+
     /* (non-Javadoc)
      * @see jmemorize.core.LearnSession
      */
@@ -287,6 +316,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         
         m_learningStarted = true;
         m_start = new Date();
+        m_rootCategory.addObserver(this);
         
         // move all cards to cardsPastLimit, then fetch exactly as many as needed
         if (m_settings.isCardLimitEnabled() && 
@@ -349,6 +379,21 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     {
         return Collections.unmodifiableSet(toCardSet(m_cardsActive));
     }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.LearnSession
+     */
+    public List<Card> getUpcomingCards(int max)
+    {
+        List<Card> cards = new ArrayList<Card>(max);
+        for (CardInfo cardInfo : m_cardsActive.peekLoop(max + 1))
+        {
+            if (cardInfo != m_currentCardInfo && cards.size() < max)
+                cards.add(cardInfo.getCard());
+        }
+        
+        return cards;
+    }
         
     public int getNCardsPartiallyLearned() 
     {
@@ -375,6 +420,11 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     {
         Card currentCard = m_currentCardInfo.getCard();
         
+        // the review is logged before the level is changed, because the
+        // change can already fetch the next card or end the session
+        int level = currentCard.getLevel();
+        int responseTime = getResponseTime();
+        
         m_logger.fine(String.format("cardChecked: %b %s", 
             passed, currentCard.getFrontSide().getText()));
         
@@ -412,6 +462,9 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
                     m_logger.fine("...partially passed.");
                     raiseLevel = false;
 
+                    logReview(currentCard, level, level, ReviewLog.PARTIALLY_PASSED, 
+                        responseTime, shownFlipped);
+                    
                     // incremenLearnedAmount fires a DECK_EVENT
                     currentCard.incrementLearnedAmount(!shownFlipped);
                 }
@@ -420,6 +473,8 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
             if (raiseLevel)
             {
                 m_logger.fine("...passed.");
+                logReview(currentCard, level, level + 1, ReviewLog.PASSED, 
+                    responseTime, shownFlipped);
                 raiseCardLevel(currentCard);
             }
         }
@@ -445,6 +500,8 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
              * but this should not be a problem for gotoNextCard.
              * We reset the equivalence class as soon as possible.
              */
+            logReview(currentCard, level, 0, ReviewLog.FAILED, responseTime, 
+                shownFlipped);
             Category.resetCardLevel(currentCard, m_start);
             
             m_currentCardInfo.setLevel(currentCard.getLevel());
@@ -469,6 +526,10 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         // Note that we do not remove the card from m_cardsChecked.
         m_logger.fine("cardSkipped: " + currentCard.getFrontSide());
         
+        int level = currentCard.getLevel();
+        logReview(currentCard, level, level, ReviewLog.SKIPPED, 
+            getResponseTime(), m_cardShownFlipped);
+        
         assert !m_cardsLearned.contains(currentCard);
         assert !m_cardsReserve.contains(m_currentCardInfo);
         assert m_cardsActive.contains(m_currentCardInfo);
@@ -510,7 +571,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     public Set<Card> getPassedCards()
     {
         // "passed" = Learned and not Failed
-        Set<Card> tempSet = new HashSet<Card>(m_cardsLearned);
+        Set<Card> tempSet = new CardSet(m_cardsLearned);
         tempSet.removeAll(m_cardsEverFailed);
         return Collections.unmodifiableSet(tempSet);
     }
@@ -520,7 +581,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
      */
     public Set<Card> getFailedCards()
     {
-        Set<Card> tempSet = new HashSet<Card>(m_cardsEverFailed);
+        Set<Card> tempSet = new CardSet(m_cardsEverFailed);
         tempSet.removeAll(m_cardsLearned);
         return Collections.unmodifiableSet(tempSet);
     }
@@ -538,7 +599,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
      */
     public Set<Card> getRelearnedCards()
     {
-        Set<Card> tempSet = new HashSet<Card>(m_cardsEverFailed);
+        Set<Card> tempSet = new CardSet(m_cardsEverFailed);
         tempSet.retainAll(m_cardsLearned);
         return Collections.unmodifiableSet(tempSet);
     }
@@ -710,6 +771,9 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
             m_cardsChecked.add(currentCard);
             
             boolean flippedMode = checkIfFlipped();
+            m_cardShownTime = System.currentTimeMillis();
+            m_cardShownFlipped = flippedMode;
+            
             for (LearnCardObserver observer : m_cardObservers)
             {
                 observer.nextCardFetched(currentCard, flippedMode);
@@ -717,6 +781,25 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
         }
     }
 
+    /**
+     * @return the milliseconds since the current card was shown.
+     */
+    private int getResponseTime()
+    {
+        long time = System.currentTimeMillis() - m_cardShownTime;
+        return (int)Math.min(time, Integer.MAX_VALUE);
+    }
+
+    private void logReview(Card card, int levelBefore, int levelAfter, 
+        int result, int responseTime, boolean shownFlipped)
+    {
+        if (m_reviewLog != null)
+        {
+            m_reviewLog.add(card.getId(), Main.getNow().getTime(), levelBefore, 
+                levelAfter, result, responseTime, shownFlipped);
+        }
+    }
+
     /**
      * Checks whether the card should be displayed as flipped or not.
      * 
@@ -764,32 +847,36 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
      * Fetch the cards that should be learned in this session according to given
      * params.
      */
-    private EquivalenceClassSet<CardInfo> fetchCards(List<Card> selectedCards, 
-        boolean learnUnlearnedCards, boolean learnExpiredCards, 
-        Map<Category, Integer> categoryGroupOrder)
+    private static List<Card> fetchCards(Category category, List<Card> selectedCards, 
+        boolean learnUnlearnedCards, boolean learnExpiredCards)
     {
         List<Card> cards = new ArrayList<Card>();
         
         if (learnUnlearnedCards)
-            cards.addAll(m_category.getUnlearnedCards());
+            cards.addAll(category.getUnlearnedCards());
         
         if (learnExpiredCards)
-            cards.addAll(m_category.getExpiredCards());
+            cards.addAll(category.getExpiredCards());
         
         if (!learnUnlearnedCards && !learnExpiredCards)
             cards.addAll(selectedCards);
         
-        
+        return cards;
+    }
+    
+    private EquivalenceClassSet<CardInfo> createCardSet(List<Card> cards, 
+        Map<Category, Integer> categoryGroupOrder)
+    {
         List<Integer> levels = new LinkedList<Integer>();
         List<CardInfo> cardInfos = new ArrayList<CardInfo>(cards.size());
-        m_cardsInfoMap.clear();
+        m_cardsInfoMap = new LongHashMap<CardInfo>(cards.size());
         
         for (Card card : cards)
         {
             CardInfo cardInfo = new CardInfo(card);
             cardInfos.add(cardInfo);
             
-            m_cardsInfoMap.put(card, cardInfo);
+            m_cardsInfoMap.put(card.getId(), cardInfo);
             
             if (!levels.contains(card.getLevel()))
                 levels.add(card.getLevel());
@@ -832,7 +919,7 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     
     private Set<Card> toCardSet(Collection<CardInfo> cardInfos)
     {
-        HashSet<Card> set = new HashSet<Card>();
+        Set<Card> set = new CardSet();
         for (CardInfo cardInfo : cardInfos)
         {
             set.add(cardInfo.getCard());
@@ -843,7 +930,8 @@ public class DefaultLearnSession implements CategoryObserver, LearnSession
     
     private CardInfo getCardInfo(Card card)
     {
-        return m_cardsInfoMap.get(card); 
+        CardInfo cardInfo = m_cardsInfoMap.get(card.getId());
+        return cardInfo != null && cardInfo.getCard() == card ? cardInfo : null; 
     }
 
     /**
@@ -0,0 +1,286 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.learn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardSet;
+import jmemorize.core.Category;
+import jmemorize.core.Main;
+
+/**
+ * The cards that a learn session of a category can start with, i.e. the
+ * unlearned and expired cards of the category and its child categories.
+ * Building a queue looks at all cards of the category and loads the ones
+ * that aren't loaded yet, so it is done in the background by the
+ * {@link LearnQueueService}. A queue that was built is kept up to date by
+ * calling {@link #update(Card)} for every card event, until the next learned
+ * card expires.
+ *
+ * The lesson is only read on the thread that changes it. A build in the
+ * background first loads the cards of the categories with
+ * {@link #loadCards}, then copies the decks with {@link #takeSnapshot} on
+ * the thread of the lesson and collects the learnable cards of the copies
+ * with {@link #collectCards}.
+ */
+public class LearnQueue
+{
+    /**
+     * Receives the progress of building a queue.
+     */
+    public interface ProgressListener
+    {
+        /**
+         * Called on the thread that loads the cards of the categories.
+         */
+        void onProgress(int done, int total);
+    }
+
+    private final Category       m_category;
+    private final List<Category> m_categories;
+
+    // the copied decks, with the unlearned cards first
+    private List<Card[]>         m_snapshot;
+    private int                  m_unlearnedDecks;
+
+    private final Set<Card>      m_unlearned      = new CardSet();
+    private final Set<Card>      m_expired        = new CardSet();
+    private long                 m_nextExpiration = Long.MAX_VALUE;
+
+    private volatile boolean     m_cancelled;
+
+    /**
+     * Has to be called on the thread that changes the lesson.
+     */
+    public LearnQueue(Category category)
+    {
+        m_category = category;
+        m_categories = category.getSubtreeList();
+    }
+
+    /**
+     * Loads, collects and keeps the learnable cards of the category and its
+     * child categories on the thread that changes the lesson.
+     *
+     * @return <code>false</code> if the build was cancelled.
+     */
+    public boolean build(ProgressListener listener)
+    {
+        if (!loadCards(listener))
+            return false;
+
+        takeSnapshot();
+        return collectCards();
+    }
+
+    /**
+     * Loads the cards of the categories that aren't loaded yet, one category
+     * at a time. Can be called on any thread.
+     *
+     * @return <code>false</code> if the build was cancelled.
+     */
+    public boolean loadCards(ProgressListener listener)
+    {
+        for (int i = 0; i < m_categories.size(); i++)
+        {
+            if (m_cancelled)
+                return false;
+
+            Category category = m_categories.get(i);
+            if (!category.isCardsLoaded())
+                category.loadLocalCards();
+
+            if (listener != null)
+                listener.onProgress(i + 1, m_categories.size());
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies the decks of the categories. Has to be called on the thread that
+     * changes the lesson.
+     */
+    public void takeSnapshot()
+    {
+        List<Card[]> unlearned = new ArrayList<Card[]>(m_categories.size());
+        List<Card[]> learned = new ArrayList<Card[]>();
+        for (Category category : m_categories)
+        {
+            for (int level = 0; level < category.getNumberOfDecks(); level++)
+            {
+                List<Card> deck = category.getLocalCards(level);
+                Card[] cards = deck.toArray(new Card[deck.size()]);
+                
+                if (level == 0)
+                    unlearned.add(cards);
+                else
+                    learned.add(cards);
+            }
+        }
+
+        m_unlearnedDecks = unlearned.size();
+        m_snapshot = unlearned;
+        m_snapshot.addAll(learned);
+    }
+
+    /**
+     * Collects the learnable cards of the snapshot. Can be called on any
+     * thread, the snapshot is dropped afterwards.
+     *
+     * @return <code>false</code> if the build was cancelled.
+     */
+    public boolean collectCards()
+    {
+        List<Card[]> snapshot = m_snapshot;
+        m_snapshot = null;
+
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+            if (m_cancelled)
+                return false;
+
+            for (Card card : snapshot.get(i))
+            {
+                if (i < m_unlearnedDecks)
+                    m_unlearned.add(card);
+                else
+                    addLearned(card);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Cancels building this queue.
+     */
+    public void cancel()
+    {
+        m_cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return m_cancelled;
+    }
+
+    public Category getCategory()
+    {
+        return m_category;
+    }
+
+    /**
+     * @return the cards that a session with given settings would learn, the
+     * unlearned cards first.
+     */
+    public List<Card> getCards(boolean unlearned, boolean expired)
+    {
+        List<Card> cards = new ArrayList<Card>(
+            (unlearned ? m_unlearned.size() : 0) + (expired ? m_expired.size() : 0));
+
+        if (unlearned)
+            cards.addAll(m_unlearned);
+
+        if (expired)
+            cards.addAll(m_expired);
+
+        return cards;
+    }
+
+    /**
+     * @return the number of learnable cards.
+     */
+    public int size()
+    {
+        return m_unlearned.size() + m_expired.size();
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * @return the time when the first learned card of the queue expires or
+     * {@link Long#MAX_VALUE} if there is none. The queue is outdated from then
+     * on.
+     */
+    public long getNextExpiration()
+    {
+        return m_nextExpiration;
+    }
+
+    /**
+     * @return <code>true</code> if no learned card has expired since the
+     * queue was built.
+     */
+    public boolean isValid()
+    {
+        return Main.getNow().getTime() < m_nextExpiration;
+    }
+
+    /**
+     * Adds or removes given card after it was changed, added, moved or
+     * removed.
+     */
+    public void update(Card card)
+    {
+        m_unlearned.remove(card);
+        m_expired.remove(card);
+
+        if (contains(card.getCategory()))
+            add(card);
+    }
+
+    private void add(Card card)
+    {
+        if (card.getLevel() == 0)
+            m_unlearned.add(card);
+        else
+            addLearned(card);
+    }
+
+    private void addLearned(Card card)
+    {
+        if (card.isExpired())
+        {
+            m_expired.add(card);
+        }
+        else if (card.isLearned())
+        {
+            m_nextExpiration = Math.min(m_nextExpiration,
+                card.getDateExpired().getTime());
+        }
+    }
+
+    private boolean contains(Category category)
+    {
+        for (Category parent = category; parent != null; parent = parent.getParent())
+        {
+            if (parent == m_category)
+                return true;
+        }
+
+        return false;
+    }
+}
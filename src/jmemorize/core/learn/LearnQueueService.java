@@ -0,0 +1,548 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.learn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardBatchObserver;
+import jmemorize.core.Category;
+import jmemorize.core.Main;
+
+/**
+ * Builds learn sessions and the {@link LearnQueue}s that they start with on a
+ * background thread. After a session ended, when the selected category
+ * changed or when a learned card expired, the queue of the selected category
+ * is built in advance with low priority, so that the next session of the
+ * category starts without looking through its cards. The queue is kept up to
+ * date by the card events of the lesson.
+ *
+ * The lesson is changed on another thread than the one that builds. The
+ * builds only read copies of the decks and cards that were taken from the
+ * lesson, and a build is repeated when the lesson changed while it was
+ * running, also if it failed because of the change. All public
+ * methods have to be called on the thread that changes the lesson, which is
+ * also the thread that the results are reported on.
+ */
+public class LearnQueueService implements CardBatchObserver
+{
+    /**
+     * Receives the sessions that were built.
+     */
+    public interface SessionListener
+    {
+        /**
+         * Called with the session that was built, or with <code>null</code>
+         * if the build was cancelled.
+         */
+        void onSessionBuilt(DefaultLearnSession session);
+    }
+
+    /**
+     * The build of a session, which can be cancelled.
+     */
+    public class SessionTask
+    {
+        private final LearnSettings           m_settings;
+        private final List<Card>              m_selectedCards;
+        private final Category                m_category;
+        private final boolean                 m_learnUnlearned;
+        private final boolean                 m_learnExpired;
+        private final LearnSessionProvider    m_provider;
+        private final LearnQueue.ProgressListener m_progress;
+        private final SessionListener         m_listener;
+
+        private volatile boolean              m_cancelled;
+        private LearnQueue                    m_queue;
+
+        private SessionTask(LearnSettings settings, List<Card> selectedCards,
+            Category category, boolean learnUnlearned, boolean learnExpired,
+            LearnSessionProvider provider, LearnQueue.ProgressListener progress,
+            SessionListener listener)
+        {
+            m_settings = settings;
+            m_selectedCards = selectedCards;
+            m_category = category;
+            m_learnUnlearned = learnUnlearned;
+            m_learnExpired = learnExpired;
+            m_provider = provider;
+            m_progress = progress;
+            m_listener = listener;
+        }
+
+        /**
+         * Cancels the build. The listener is called with <code>null</code>.
+         */
+        public void cancel()
+        {
+            m_cancelled = true;
+            if (m_queue != null)
+                m_queue.cancel();
+        }
+
+        public boolean isCancelled()
+        {
+            return m_cancelled;
+        }
+    }
+
+    // the delay of builds in advance, so that e.g. browsing the categories
+    // doesn't start a build for every category on the way
+    private static final long              PREFETCH_DELAY = 500;
+
+    private final Executor                 m_dispatcher;
+    private final ScheduledExecutorService m_executor;
+
+    private Category                       m_rootCategory;
+    private Category                       m_category;
+
+    private LearnQueue                     m_queue;
+    private LearnQueue                     m_prefetching;
+    private Future<?>                      m_expiration;
+
+    // counts the changes of the lesson, so that a build can tell whether the
+    // lesson changed while it was running
+    private volatile int                   m_modificationCount;
+
+    /**
+     * @param dispatcher runs the results of the background builds on the
+     * thread that changes the lesson.
+     */
+    public LearnQueueService(Executor dispatcher)
+    {
+        m_dispatcher = dispatcher;
+        m_executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Learn queue"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sets the root category of the lesson, whose card events keep the
+     * queues up to date.
+     */
+    public void setRootCategory(Category rootCategory)
+    {
+        if (m_rootCategory != null)
+            m_rootCategory.removeObserver(this);
+
+        m_rootCategory = rootCategory;
+        m_category = null;
+        invalidate();
+
+        if (m_rootCategory != null)
+            m_rootCategory.addObserver(this);
+    }
+
+    /**
+     * Sets the category whose queue is built in advance.
+     */
+    public void setCategory(Category category)
+    {
+        if (category == m_category)
+            return;
+
+        m_category = category;
+        prefetch();
+    }
+
+    /**
+     * Builds the queue of the selected category with low priority, unless it
+     * is up to date.
+     */
+    public void prefetch()
+    {
+        if (m_category == null || getQueue(m_category) != null)
+            return;
+
+        if (m_prefetching != null)
+        {
+            if (m_prefetching.getCategory() == m_category)
+                return;
+
+            m_prefetching.cancel();
+        }
+
+        final LearnQueue queue = new LearnQueue(m_category);
+        m_prefetching = queue;
+        buildQueue(queue, null, Thread.MIN_PRIORITY, PREFETCH_DELAY, new Runnable() {
+            public void run()
+            {
+                if (m_prefetching != queue)
+                    return;
+                
+                // tries again if the lesson changed in the meantime
+                m_prefetching = null;
+                if (!queue.isCancelled())
+                    prefetch();
+            }
+        });
+    }
+
+    /**
+     * Drops the queue, e.g. after the cards of the lesson were unloaded.
+     */
+    public void invalidate()
+    {
+        m_queue = null;
+        m_modificationCount++;
+
+        if (m_prefetching != null)
+        {
+            m_prefetching.cancel();
+            m_prefetching = null;
+        }
+
+        if (m_expiration != null)
+        {
+            m_expiration.cancel(false);
+            m_expiration = null;
+        }
+    }
+
+    /**
+     * @return the up to date queue of given category or <code>null</code> if
+     * there is none.
+     */
+    public LearnQueue getQueue(Category category)
+    {
+        if (m_queue == null || m_queue.getCategory() != category)
+            return null;
+
+        return m_queue.isValid() ? m_queue : null;
+    }
+
+    /**
+     * Builds a learn session in the background. Its cards are taken from the
+     * queue of the category if it is up to date.
+     *
+     * @param progress receives the progress of building the queue, on the
+     * background thread. Can be <code>null</code>.
+     * @param listener receives the built session.
+     * @see DefaultLearnSession#DefaultLearnSession(Category, LearnSettings,
+     * List, boolean, boolean, LearnSessionProvider)
+     */
+    public SessionTask buildSession(LearnSettings settings,
+        List<Card> selectedCards, Category category, boolean learnUnlearned,
+        boolean learnExpired, LearnSessionProvider provider,
+        LearnQueue.ProgressListener progress, SessionListener listener)
+    {
+        SessionTask task = new SessionTask(settings, selectedCards, category,
+            learnUnlearned, learnExpired, provider, progress, listener);
+
+        // the prefetch would only hold up the session
+        if (m_prefetching != null)
+        {
+            m_prefetching.cancel();
+            m_prefetching = null;
+        }
+
+        startSession(task);
+        return task;
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.CategoryObserver
+     */
+    public void onCardEvent(int type, Card card, Category category, int deck)
+    {
+        m_modificationCount++;
+        if (m_queue != null)
+            m_queue.update(card);
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.CardBatchObserver
+     */
+    public void onCardsEvent(int type, List<Card> cards, Category category)
+    {
+        m_modificationCount++;
+        if (m_queue != null)
+        {
+            for (Card card : cards)
+            {
+                m_queue.update(card);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.CategoryObserver
+     */
+    public void onCategoryEvent(int type, Category category)
+    {
+        if (type == EDITED_EVENT)
+            return;
+
+        // the cards of added, moved or removed categories don't fire events
+        invalidate();
+        prefetch();
+    }
+
+    private void startSession(final SessionTask task)
+    {
+        if (task.isCancelled())
+        {
+            task.m_listener.onSessionBuilt(null);
+            return;
+        }
+
+        if (!task.m_learnUnlearned && !task.m_learnExpired)
+        {
+            buildSession(task, new ArrayList<Card>(task.m_selectedCards));
+            return;
+        }
+
+        LearnQueue queue = getQueue(task.m_category);
+        if (queue != null)
+        {
+            buildSession(task, queue.getCards(task.m_learnUnlearned, task.m_learnExpired));
+            return;
+        }
+
+        final LearnQueue newQueue = new LearnQueue(task.m_category);
+        task.m_queue = newQueue;
+        buildQueue(newQueue, task.m_progress, Thread.NORM_PRIORITY, 0, new Runnable() {
+            public void run()
+            {
+                task.m_queue = null;
+                
+                // a queue that couldn't be built is cancelled
+                if (newQueue.isCancelled())
+                    task.cancel();
+                
+                startSession(task);
+            }
+        });
+    }
+
+    /**
+     * Creates the session of given task on the background thread. The cards
+     * were already taken from the lesson, so the session only reads them and
+     * the category tree. A build that fails while the lesson changed is
+     * repeated.
+     */
+    private void buildSession(final SessionTask task, final List<Card> cards)
+    {
+        // the cards were taken from the lesson now
+        final int modificationCount = m_modificationCount;
+        
+        m_executor.execute(new Runnable() {
+            public void run()
+            {
+                Thread.currentThread().setPriority(Thread.NORM_PRIORITY);
+
+                DefaultLearnSession session = null;
+                RuntimeException error = null;
+                try
+                {
+                    if (!task.isCancelled())
+                    {
+                        session = new DefaultLearnSession(task.m_category,
+                            task.m_settings, cards, task.m_provider);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    error = e;
+                }
+
+                final DefaultLearnSession builtSession = session;
+                final RuntimeException buildError = error;
+                m_dispatcher.execute(new Runnable() {
+                    public void run()
+                    {
+                        boolean changed = modificationCount != m_modificationCount;
+                        if (buildError != null && !changed)
+                        {
+                            Main.logThrowable("Could not build the learn session", //$NON-NLS-1$
+                                buildError);
+                            task.cancel();
+                        }
+                        
+                        if (task.isCancelled())
+                        {
+                            task.m_listener.onSessionBuilt(null);
+                        }
+                        else if (builtSession == null || changed)
+                        {
+                            // the cards could have changed in the meantime
+                            startSession(task);
+                        }
+                        else
+                        {
+                            task.m_listener.onSessionBuilt(builtSession);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Builds given queue and runs given callback on the thread of the lesson
+     * afterwards, also when the build was cancelled. The cards of the
+     * categories are loaded on the background thread, then the decks are
+     * copied on the thread of the lesson and the learnable cards of the
+     * copies are collected on the background thread again. The queue is only
+     * kept if the lesson didn't change in the meantime.
+     */
+    private void buildQueue(final LearnQueue queue,
+        final LearnQueue.ProgressListener progress, final int priority,
+        long delay, final Runnable callback)
+    {
+        // the categories of the queue were taken from the lesson now
+        final int modificationCount = m_modificationCount;
+        
+        m_executor.schedule(new Runnable() {
+            public void run()
+            {
+                Thread.currentThread().setPriority(priority);
+
+                boolean loaded = false;
+                RuntimeException error = null;
+                try
+                {
+                    loaded = queue.loadCards(progress);
+                }
+                catch (RuntimeException e)
+                {
+                    error = e;
+                }
+
+                final boolean cardsLoaded = loaded;
+                final RuntimeException loadError = error;
+                m_dispatcher.execute(new Runnable() {
+                    public void run()
+                    {
+                        if (!checkQueueBuild(queue, modificationCount, loadError) ||
+                            !cardsLoaded)
+                        {
+                            callback.run();
+                            return;
+                        }
+
+                        queue.takeSnapshot();
+                        collectQueueCards(queue, modificationCount, callback);
+                    }
+                });
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Collects the learnable cards of the snapshot of given queue on the
+     * background thread.
+     */
+    private void collectQueueCards(final LearnQueue queue,
+        final int modificationCount, final Runnable callback)
+    {
+        m_executor.execute(new Runnable() {
+            public void run()
+            {
+                boolean complete = false;
+                RuntimeException error = null;
+                try
+                {
+                    complete = queue.collectCards();
+                }
+                catch (RuntimeException e)
+                {
+                    error = e;
+                }
+
+                final boolean collected = complete;
+                final RuntimeException collectError = error;
+                m_dispatcher.execute(new Runnable() {
+                    public void run()
+                    {
+                        if (checkQueueBuild(queue, modificationCount, collectError) &&
+                            collected)
+                        {
+                            setQueue(queue);
+                        }
+
+                        callback.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Checks a step of building given queue on the thread of the lesson. An
+     * error while the lesson didn't change cancels the queue, because
+     * building it again would fail again.
+     *
+     * @return <code>true</code> if the build can go on, <code>false</code>
+     * if it was cancelled or the lesson changed in the meantime.
+     */
+    private boolean checkQueueBuild(LearnQueue queue, int modificationCount,
+        RuntimeException error)
+    {
+        boolean changed = modificationCount != m_modificationCount;
+        if (error != null && !changed)
+        {
+            Main.logThrowable("Could not build the learn queue", error); //$NON-NLS-1$
+            queue.cancel();
+        }
+
+        return !changed && !queue.isCancelled();
+    }
+
+    /**
+     * Keeps given queue and builds the queue again in advance when its next
+     * learned card expires.
+     */
+    private void setQueue(LearnQueue queue)
+    {
+        m_queue = queue;
+
+        if (m_expiration != null)
+            m_expiration.cancel(false);
+
+        m_expiration = null;
+        if (queue.getNextExpiration() == Long.MAX_VALUE)
+            return;
+
+        long delay = queue.getNextExpiration() - Main.getNow().getTime();
+        m_expiration = m_executor.schedule(new Runnable() {
+            public void run()
+            {
+                m_dispatcher.execute(new Runnable() {
+                    public void run()
+                    {
+                        prefetch();
+                    }
+                });
+            }
+        }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+}
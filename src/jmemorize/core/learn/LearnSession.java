@@ -84,6 +84,16 @@ public interface LearnSession
      */
     public Set<Card> getCardsLeft();
 
+    /**
+     * Returns the cards that will most likely be shown after the current card.
+     * This is only a hint that views can use to prepare these cards in
+     * advance. The session is free to show other cards.
+     * 
+     * @param max the maximum number of cards to return.
+     * @return the upcoming cards, not including the current card. 
+     */
+    public List<Card> getUpcomingCards(int max);
+
     /** 
      * @return the category (subset of cards) that is currently being learned.
      */
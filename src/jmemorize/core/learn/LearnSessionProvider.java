@@ -36,7 +36,8 @@ import jmemorize.core.Main;
 public interface LearnSessionProvider
 {
     /**
-     * Creates a new learn session.
+     * Creates a new learn session. The session is built in the background and
+     * started when it is built, so the observers are notified later on.
      * 
      * @param settings the settings that should be used in this session.
      * @param the cards that were selected in the main card table when starting
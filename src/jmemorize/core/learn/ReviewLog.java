@@ -0,0 +1,452 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.learn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jmemorize.core.Category;
+import jmemorize.core.Main;
+
+/**
+ * An append-only log of every card that was checked or skipped in the learn
+ * sessions of a lesson. Unlike the {@link LearnHistory}, which only keeps a
+ * summary per session, the log allows to compute statistics per card and
+ * category later on, see {@link #query(Category, long, long)}.
+ *
+ * The log is stored in a directory next to the lesson file, with one file
+ * per column, so that queries only read the columns of fixed width that
+ * they need and the lesson file is never rewritten for a review. Reviews are
+ * queued without locking by the thread of the session and appended by a
+ * background thread a few seconds later. Every column is written at the
+ * position that follows the last complete row, so that a row that was only
+ * partially written when the program ended is overwritten.
+ *
+ * Cards that were added since the lesson was saved lose their ids when the
+ * changes of the lesson are discarded, and the ids are given to other cards
+ * later. So the reviews of cards whose ids aren't saved yet are only written
+ * when the lesson is saved, see {@link #setSavedCardIds(long)}.
+ */
+public class ReviewLog
+{
+    public static final int         PASSED           = 0;
+    public static final int         FAILED           = 1;
+    public static final int         SKIPPED          = 2;
+    public static final int         PARTIALLY_PASSED = 3;
+
+    // the columns
+    static final int                CARD             = 0;
+    static final int                TIME             = 1;
+    static final int                LEVEL_BEFORE     = 2;
+    static final int                LEVEL_AFTER      = 3;
+    static final int                RESULT           = 4;
+    static final int                RESPONSE_TIME    = 5;
+    static final int                FLIPPED          = 6;
+
+    private static final String[]   COLUMN_NAMES     = {"card", "time",  //$NON-NLS-1$ //$NON-NLS-2$
+        "levelBefore", "levelAfter", "result", "responseTime", "flipped"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    private static final int[]      WIDTHS           = {8, 8, 1, 1, 1, 4, 1};
+
+    private static final String     COLUMN_EXTENSION = ".col";      //$NON-NLS-1$
+    private static final String     DIRECTORY_SUFFIX = ".reviews";  //$NON-NLS-1$
+
+    private static final long       FLUSH_DELAY      = 5000;
+
+    private static ScheduledExecutorService s_executor;
+
+    private static class Review
+    {
+        private final long    m_card;
+        private final long    m_time;
+        private final int     m_levelBefore;
+        private final int     m_levelAfter;
+        private final int     m_result;
+        private final int     m_responseTime;
+        private final boolean m_flipped;
+
+        public Review(long card, long time, int levelBefore, int levelAfter,
+            int result, int responseTime, boolean flipped)
+        {
+            m_card = card;
+            m_time = time;
+            m_levelBefore = levelBefore;
+            m_levelAfter = levelAfter;
+            m_result = result;
+            m_responseTime = responseTime;
+            m_flipped = flipped;
+        }
+    }
+
+    private final Queue<Review>     m_pending        =
+        new ConcurrentLinkedQueue<Review>();
+    private final AtomicBoolean     m_flushScheduled = new AtomicBoolean();
+
+    // null while the lesson has no file. the reviews are kept pending then
+    private File                    m_directory;
+    private int                     m_rows;
+
+    // the reviews of cards with unsaved ids, which are kept until the ids
+    // are saved
+    private List<Review>            m_unsaved        = new ArrayList<Review>();
+    private long                    m_savedCardIds   = Long.MAX_VALUE;
+
+    /**
+     * @return the directory of the log of the lesson with given file.
+     */
+    public static File getDirectory(File lessonFile)
+    {
+        return new File(lessonFile.getPath() + DIRECTORY_SUFFIX);
+    }
+
+    /**
+     * Adds a review to the log. Can be called on any thread and doesn't
+     * block. The review is written to the directory of the log a few seconds
+     * later.
+     *
+     * @param result one of {@link #PASSED}, {@link #FAILED}, {@link #SKIPPED}
+     * and {@link #PARTIALLY_PASSED}.
+     * @param responseTime the milliseconds from showing the card to the
+     * answer.
+     * @param flipped <code>true</code> if the back side of the card was shown
+     * first.
+     */
+    public void add(long cardId, long time, int levelBefore, int levelAfter,
+        int result, int responseTime, boolean flipped)
+    {
+        m_pending.add(new Review(cardId, time, levelBefore, levelAfter, result,
+            responseTime, flipped));
+
+        if (m_flushScheduled.compareAndSet(false, true))
+        {
+            getExecutor().schedule(new Runnable() {
+                public void run()
+                {
+                    m_flushScheduled.set(false);
+                    try
+                    {
+                        flush();
+                    }
+                    catch (IOException e)
+                    {
+                        Main.logThrowable("Could not write the review log", e); //$NON-NLS-1$
+                    }
+                }
+            }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the directory that the log is stored in or <code>null</code>
+     * if it isn't stored yet.
+     */
+    public synchronized File getDirectory()
+    {
+        return m_directory;
+    }
+
+    /**
+     * @return the number of reviews in the log, including the ones that
+     * aren't written yet.
+     */
+    public synchronized int size()
+    {
+        return m_rows + m_unsaved.size() + m_pending.size();
+    }
+
+    /**
+     * Sets the id that follows the ids of the cards that are saved with the
+     * lesson, e.g. when the lesson is loaded or saved. Only the reviews of
+     * cards with lower ids are written, the others are kept until the lesson
+     * is saved with their ids. All reviews are written by default.
+     */
+    public synchronized void setSavedCardIds(long nextCardId)
+    {
+        m_savedCardIds = nextCardId;
+    }
+
+    /**
+     * Continues the log that is stored in given directory, e.g. when the
+     * lesson of this log is loaded. Does nothing if the log is already
+     * stored. The directory doesn't need to exist yet.
+     */
+    public synchronized void open(File directory)
+    {
+        if (m_directory != null)
+            return;
+
+        m_directory = directory;
+        m_rows = Integer.MAX_VALUE;
+        for (int column = 0; column < COLUMN_NAMES.length; column++)
+        {
+            long rows = getColumnFile(directory, column).length() / WIDTHS[column];
+            m_rows = (int)Math.min(m_rows, rows);
+        }
+    }
+
+    /**
+     * Stores this log in given directory from now on, e.g. when the lesson
+     * of this log is saved to a new file. The reviews that were written to
+     * the former directory are copied and a log that was stored in given
+     * directory before is replaced.
+     */
+    public synchronized void saveTo(File directory) throws IOException
+    {
+        flush();
+        if (directory.equals(m_directory))
+            return;
+
+        boolean copy = m_directory != null && m_rows > 0;
+        if (copy && !directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory); //$NON-NLS-1$
+
+        for (int column = 0; column < COLUMN_NAMES.length; column++)
+        {
+            File target = getColumnFile(directory, column);
+            if (!copy)
+            {
+                target.delete();
+                continue;
+            }
+
+            RandomAccessFile in = new RandomAccessFile(
+                getColumnFile(m_directory, column), "r"); //$NON-NLS-1$
+            RandomAccessFile out = new RandomAccessFile(target, "rw"); //$NON-NLS-1$
+            try
+            {
+                long length = (long)m_rows * WIDTHS[column];
+                out.setLength(0);
+
+                FileChannel channel = in.getChannel();
+                for (long position = 0; position < length;)
+                {
+                    position += channel.transferTo(position, length - position,
+                        out.getChannel());
+                }
+            }
+            finally
+            {
+                in.close();
+                out.close();
+            }
+        }
+
+        if (!copy)
+            m_rows = 0;
+
+        m_directory = directory;
+        flush();
+    }
+
+    /**
+     * Writes the pending reviews of cards with saved ids to the directory of
+     * this log, if it has one. Is called a few seconds after a review was
+     * added, but can be called at any time, e.g. before the program ends.
+     */
+    public synchronized void flush() throws IOException
+    {
+        if (m_directory == null || (m_pending.isEmpty() && m_unsaved.isEmpty()))
+            return;
+
+        // the order of the reviews of a card is kept
+        List<Review> candidates = m_unsaved;
+        for (Review review = m_pending.poll(); review != null; review = m_pending.poll())
+        {
+            candidates.add(review);
+        }
+
+        List<Review> reviews = new ArrayList<Review>(candidates.size());
+        m_unsaved = new ArrayList<Review>();
+        for (Review review : candidates)
+        {
+            if (review.m_card < m_savedCardIds)
+                reviews.add(review);
+            else
+                m_unsaved.add(review);
+        }
+
+        if (reviews.isEmpty())
+            return;
+
+        if (!m_directory.isDirectory() && !m_directory.mkdirs())
+            throw new IOException("Could not create " + m_directory); //$NON-NLS-1$
+
+        for (int column = 0; column < COLUMN_NAMES.length; column++)
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(reviews.size() * WIDTHS[column]);
+            for (Review review : reviews)
+            {
+                putValue(buffer, column, review);
+            }
+            buffer.flip();
+
+            RandomAccessFile file = new RandomAccessFile(
+                getColumnFile(m_directory, column), "rw"); //$NON-NLS-1$
+            try
+            {
+                FileChannel channel = file.getChannel();
+                long position = (long)m_rows * WIDTHS[column];
+                while (buffer.hasRemaining())
+                {
+                    position += channel.write(buffer, position);
+                }
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+
+        m_rows += reviews.size();
+    }
+
+    /**
+     * Computes the statistics of the reviews of the cards of given category
+     * and its child categories in one pass over the log. The cards of the
+     * categories are loaded for this.
+     *
+     * @param from the time of the first review that is counted.
+     * @param to the time after the last review that is counted. Earlier
+     * reviews are still used to find the time since the last check of the
+     * counted ones.
+     */
+    public synchronized ReviewStats query(Category category, long from, long to)
+        throws IOException
+    {
+        flush();
+
+        ReviewStats stats = new ReviewStats(category, from, to);
+        if (m_directory != null && m_rows > 0)
+        {
+            MappedByteBuffer[] columns = new MappedByteBuffer[COLUMN_NAMES.length];
+            for (int column = 0; column < columns.length; column++)
+            {
+                RandomAccessFile file = new RandomAccessFile(
+                    getColumnFile(m_directory, column), "r"); //$NON-NLS-1$
+                try
+                {
+                    columns[column] = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        0, (long)m_rows * WIDTHS[column]);
+                }
+                finally
+                {
+                    file.close();
+                }
+            }
+
+            for (int row = 0; row < m_rows; row++)
+            {
+                stats.add(
+                    columns[CARD].getLong(8 * row),
+                    columns[TIME].getLong(8 * row),
+                    columns[LEVEL_BEFORE].get(row) & 0xFF,
+                    columns[RESULT].get(row),
+                    columns[RESPONSE_TIME].getInt(4 * row));
+            }
+        }
+
+        // the reviews of a log that isn't stored yet or of unsaved cards
+        List<Review> reviews = new ArrayList<Review>(m_unsaved);
+        reviews.addAll(m_pending);
+        for (Review review : reviews)
+        {
+            stats.add(review.m_card, review.m_time, review.m_levelBefore,
+                review.m_result, review.m_responseTime);
+        }
+
+        return stats;
+    }
+
+    private static void putValue(ByteBuffer buffer, int column, Review review)
+    {
+        switch (column)
+        {
+        case CARD:
+            buffer.putLong(review.m_card);
+            break;
+
+        case TIME:
+            buffer.putLong(review.m_time);
+            break;
+
+        case LEVEL_BEFORE:
+            buffer.put(toByte(review.m_levelBefore));
+            break;
+
+        case LEVEL_AFTER:
+            buffer.put(toByte(review.m_levelAfter));
+            break;
+
+        case RESULT:
+            buffer.put((byte)review.m_result);
+            break;
+
+        case RESPONSE_TIME:
+            buffer.putInt(review.m_responseTime);
+            break;
+
+        case FLIPPED:
+            buffer.put((byte)(review.m_flipped ? 1 : 0));
+            break;
+        }
+    }
+
+    /**
+     * @return given level as unsigned byte. Higher levels are stored as 255.
+     */
+    private static byte toByte(int level)
+    {
+        return (byte)Math.min(level, 255);
+    }
+
+    static File getColumnFile(File directory, int column)
+    {
+        return new File(directory, COLUMN_NAMES[column] + COLUMN_EXTENSION);
+    }
+
+    private static synchronized ScheduledExecutorService getExecutor()
+    {
+        if (s_executor == null)
+        {
+            s_executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "Review log"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+
+        return s_executor;
+    }
+}
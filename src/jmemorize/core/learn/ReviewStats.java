@@ -0,0 +1,306 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.learn;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.util.LongHashMap;
+
+/**
+ * The statistics of the reviews of a category and its child categories, as
+ * computed by {@link ReviewLog#query(Category, long, long)}.
+ */
+public class ReviewStats
+{
+    /**
+     * The number of retention intervals. The first one holds the checks that
+     * followed the previous check of their card within a day, the others the
+     * ones after 1, 2-3, 4-7 days etc. The last one holds all longer ones.
+     */
+    public static final int INTERVALS = 12;
+
+    /**
+     * The counts of the results of a number of reviews.
+     */
+    public static class Counts
+    {
+        private int  m_passed;
+        private int  m_partiallyPassed;
+        private int  m_failed;
+        private int  m_skipped;
+        private long m_responseTime;
+
+        public int getPassed()
+        {
+            return m_passed;
+        }
+
+        public int getPartiallyPassed()
+        {
+            return m_partiallyPassed;
+        }
+
+        public int getFailed()
+        {
+            return m_failed;
+        }
+
+        public int getSkipped()
+        {
+            return m_skipped;
+        }
+
+        /**
+         * @return the number of reviews that weren't skipped.
+         */
+        public int getChecked()
+        {
+            return m_passed + m_partiallyPassed + m_failed;
+        }
+
+        public int getReviews()
+        {
+            return getChecked() + m_skipped;
+        }
+
+        /**
+         * @return the share of the checked reviews that were passed at least
+         * partially or 0 if there were none.
+         */
+        public float getRetention()
+        {
+            int checked = getChecked();
+            return checked > 0 ? (m_passed + m_partiallyPassed) / (float)checked : 0;
+        }
+
+        /**
+         * @return the average milliseconds of all reviews or 0 if there were
+         * none.
+         */
+        public int getAverageResponseTime()
+        {
+            int reviews = getReviews();
+            return reviews > 0 ? (int)(m_responseTime / reviews) : 0;
+        }
+
+        private void add(int result, int responseTime)
+        {
+            switch (result)
+            {
+            case ReviewLog.PASSED:
+                m_passed++;
+                break;
+
+            case ReviewLog.PARTIALLY_PASSED:
+                m_partiallyPassed++;
+                break;
+
+            case ReviewLog.FAILED:
+                m_failed++;
+                break;
+
+            case ReviewLog.SKIPPED:
+                m_skipped++;
+                break;
+            }
+
+            m_responseTime += responseTime;
+        }
+
+        private void addAll(Counts counts)
+        {
+            m_passed += counts.m_passed;
+            m_partiallyPassed += counts.m_partiallyPassed;
+            m_failed += counts.m_failed;
+            m_skipped += counts.m_skipped;
+            m_responseTime += counts.m_responseTime;
+        }
+    }
+
+    private final Category                  m_category;
+    private final long                      m_from;
+    private final long                      m_to;
+
+    private final LongHashMap<Category>     m_categoryOfCard;
+    private final LongHashMap<long[]>       m_lastCheck;
+
+    private final Map<Category, Counts>     m_localCounts =
+        new IdentityHashMap<Category, Counts>();
+    private final Counts                    m_total       = new Counts();
+    private final Counts[]                  m_intervals   = new Counts[INTERVALS];
+    private final List<Counts>              m_levels      = new ArrayList<Counts>();
+
+    ReviewStats(Category category, long from, long to)
+    {
+        m_category = category;
+        m_from = from;
+        m_to = to;
+
+        m_categoryOfCard = new LongHashMap<Category>(category.getCardCount());
+        for (Category child : category.getSubtreeList())
+        {
+            for (Card card : child.getLocalCards())
+            {
+                m_categoryOfCard.put(card.getId(), child);
+            }
+        }
+        m_lastCheck = new LongHashMap<long[]>(m_categoryOfCard.size());
+
+        for (int i = 0; i < INTERVALS; i++)
+        {
+            m_intervals[i] = new Counts();
+        }
+    }
+
+    /**
+     * @return the category that these statistics were computed for.
+     */
+    public Category getCategory()
+    {
+        return m_category;
+    }
+
+    /**
+     * @return the counts of all reviews of the category and its child
+     * categories.
+     */
+    public Counts getTotal()
+    {
+        return m_total;
+    }
+
+    /**
+     * @return the counts of the reviews of the cards that directly belong to
+     * given category.
+     */
+    public Counts getLocalCounts(Category category)
+    {
+        Counts counts = m_localCounts.get(category);
+        return counts != null ? counts : new Counts();
+    }
+
+    /**
+     * @return the counts of the reviews of the cards of given category and
+     * its child categories.
+     */
+    public Counts getCounts(Category category)
+    {
+        Counts counts = new Counts();
+        for (Category child : category.getSubtreeList())
+        {
+            counts.addAll(getLocalCounts(child));
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return the counts of the checks per retention interval. Checks of
+     * cards that weren't checked before aren't counted.
+     *
+     * @see #INTERVALS
+     */
+    public Counts[] getRetentionCurve()
+    {
+        return m_intervals.clone();
+    }
+
+    /**
+     * @return the time since the previous check, from which on the checks
+     * are counted in given retention interval.
+     */
+    public static long getIntervalStart(int interval)
+    {
+        return interval == 0 ? 0 : (1L << (interval - 1)) * Card.ONE_DAY;
+    }
+
+    /**
+     * @return the counts of the reviews of the cards that had given level
+     * before they were reviewed.
+     */
+    public Counts getLevelCounts(int level)
+    {
+        return level < m_levels.size() ? m_levels.get(level) : new Counts();
+    }
+
+    /**
+     * @return the number of levels that have reviews.
+     */
+    public int getLevels()
+    {
+        return m_levels.size();
+    }
+
+    /**
+     * Adds the review of a row of the log. The rows need to be added in the
+     * order of the log.
+     */
+    void add(long cardId, long time, int levelBefore, int result, int responseTime)
+    {
+        Category category = m_categoryOfCard.get(cardId);
+        if (category == null)
+            return;
+
+        long[] lastCheck = null;
+        if (result != ReviewLog.SKIPPED)
+        {
+            lastCheck = m_lastCheck.get(cardId);
+            if (lastCheck == null)
+                m_lastCheck.put(cardId, new long[] {time});
+        }
+
+        if (time >= m_from && time < m_to)
+        {
+            Counts counts = m_localCounts.get(category);
+            if (counts == null)
+            {
+                counts = new Counts();
+                m_localCounts.put(category, counts);
+            }
+            counts.add(result, responseTime);
+            m_total.add(result, responseTime);
+
+            while (m_levels.size() <= levelBefore)
+            {
+                m_levels.add(new Counts());
+            }
+            m_levels.get(levelBefore).add(result, responseTime);
+
+            if (lastCheck != null)
+                m_intervals[getInterval(time - lastCheck[0])].add(result, responseTime);
+        }
+
+        if (lastCheck != null)
+            lastCheck[0] = time;
+    }
+
+    private static int getInterval(long elapsed)
+    {
+        long days = elapsed / Card.ONE_DAY;
+        if (days < 1)
+            return 0;
+
+        return Math.min(INTERVALS - 1, 64 - Long.numberOfLeadingZeros(days));
+    }
+}
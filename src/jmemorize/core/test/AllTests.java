@@ -29,17 +29,31 @@ public class AllTests
         //$JUnit-BEGIN$
         suite.addTestSuite(CardTest.class);
         suite.addTestSuite(CategoryTest.class);
+        suite.addTestSuite(CategoryListModelTest.class);
+        suite.addTestSuite(SearchIndexTest.class);
+        suite.addTestSuite(SearchServiceTest.class);
+        suite.addTestSuite(CardQueryTest.class);
+        suite.addTestSuite(DuplicateFinderTest.class);
+        suite.addTestSuite(CardSorterTest.class);
+        suite.addTestSuite(CoalescingUpdaterTest.class);
         suite.addTestSuite(LessonProviderTest.class);
+        suite.addTestSuite(LessonLoaderTest.class);
+        suite.addTestSuite(LessonSummaryTest.class);
+        suite.addTestSuite(CardStoreTest.class);
         suite.addTestSuite(FormattedTextTest.class);
+        suite.addTestSuite(DocumentCacheTest.class);
         
         suite.addTestSuite(EquivalenceClassSetTest.class);
         suite.addTestSuite(EquivalenceClassSetTest2.class);
+        suite.addTestSuite(LongHashMapTest.class);
         
         suite.addTestSuite(LearnSessionTest.class);
         suite.addTestSuite(LearnSettingsTest.class);
         suite.addTestSuite(LearnSessionLargeTest.class);
         suite.addTestSuite(LearnSessionShufflingTest.class);
+        suite.addTestSuite(LearnQueueTest.class);
         suite.addTestSuite(LearnHistoryTest.class);
+        suite.addTestSuite(ReviewLogTest.class);
         
         suite.addTestSuite(LocalizationTest.class);
         suite.addTestSuite(ImageRepositoryTest.class);
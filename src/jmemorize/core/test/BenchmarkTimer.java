@@ -0,0 +1,84 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+/**
+ * A small timing helper for the benchmark programs in this package. The
+ * benchmarks are plain main classes that are run by hand. They are not part
+ * of {@link AllTests} because their results depend on the machine.
+ */
+public class BenchmarkTimer
+{
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS        = 5;
+    
+    /**
+     * Runs the given task a couple of times to warm up the JIT and then prints
+     * the best time of the measured rounds.
+     * 
+     * @param label the name that is printed along with the result.
+     * @param ops the number of operations that one run of the task performs.
+     * @param task the task to measure.
+     * @return the best time per operation in nanoseconds.
+     */
+    public static double measure(String label, int ops, Runnable task)
+    {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+        {
+            task.run();
+        }
+        
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        
+        double nsPerOp = (double)best / ops;
+        System.out.println(String.format("%-48s %12.1f ns/op %12.0f ops/s", 
+            label, nsPerOp, 1e9 / nsPerOp));
+        
+        return nsPerOp;
+    }
+    
+    /**
+     * @return the currently used heap in bytes after requesting a garbage
+     * collection.
+     */
+    public static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+            try
+            {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -22,9 +22,12 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -33,6 +36,8 @@ import jmemorize.core.Card;
 import jmemorize.core.Category;
 import jmemorize.core.Lesson;
 import jmemorize.core.io.CsvBuilder;
+import jmemorize.core.io.CsvImporter;
+import jmemorize.core.io.ExportProgressListener;
 import jmemorize.core.io.CsvBuilder.BadHeaderException;
 import jmemorize.gui.Localization;
 import junit.framework.TestCase;
@@ -183,6 +188,115 @@ public class CSVToolkitTest extends TestCase
         assertCard("front2", "flip2", root, 2, (Card)cards2.get(1));
     }
     
+    public void testExportReportsProgress() throws IOException
+    {
+        Category rootCategory = new Category("alltest");
+        for (int i = 0; i < 2500; i++)
+        {
+            rootCategory.addCard(new Card("front" + i, "flip" + i), i % 3);
+        }
+        
+        final List<Integer> progress = new ArrayList<Integer>();
+        CsvBuilder.exportLesson(new ByteArrayOutputStream(), 
+            new Lesson(rootCategory, true), ',', CHARSET, 
+            new ExportProgressListener() {
+            public void onProgress(int written, int total)
+            {
+                assertEquals(2500, total);
+                progress.add(written);
+            }
+        });
+        
+        assertEquals(Arrays.asList(1000, 2000, 2500), progress);
+    }
+    
+    public void testImportManyRowsKeepsFileOrder() throws IOException, BadHeaderException
+    {
+        Lesson lesson = new Lesson(false);
+        CsvImporter importer = new CsvImporter(',', CHARSET);
+        int cards = importer.importLesson(createStream(5000, -1), lesson);
+        
+        assertEquals(5000, cards);
+        
+        Category category = lesson.getRootCategory().getChildCategory("cat3");
+        List<Card> catCards = category.getCards();
+        assertEquals(1000, catCards.size());
+        assertCard("front3", "back3", "cat3", 3, catCards.get(0));
+        assertCard("front4998", "back4998", "cat3", 3, catCards.get(999));
+    }
+    
+    public void testImportReportsProgress() throws IOException, BadHeaderException
+    {
+        final List<Integer> progress = new ArrayList<Integer>();
+        
+        CsvImporter importer = new CsvImporter(',', CHARSET);
+        importer.setProgressListener(new CsvImporter.ProgressListener() {
+            public void onProgress(int cards, long bytes)
+            {
+                progress.add(cards);
+            }
+        });
+        importer.importLesson(createStream(3000, -1), new Lesson(false));
+        
+        assertFalse(progress.isEmpty());
+        assertEquals(new Integer(3000), progress.get(progress.size() - 1));
+    }
+    
+    public void testCancelImport() throws IOException, BadHeaderException
+    {
+        final CsvImporter importer = new CsvImporter(',', CHARSET);
+        
+        // cancels the import when half of the file has been read
+        final InputStream stream = createStream(100000, -1);
+        final int half = stream.available() / 2;
+        InputStream in = new FilterInputStream(stream) {
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                if (stream.available() < half)
+                    importer.cancel();
+                
+                return super.read(b, off, len);
+            }
+        };
+        
+        Lesson lesson = new Lesson(false);
+        importer.importLesson(in, lesson);
+        
+        assertTrue(importer.isCancelled());
+        assertTrue(lesson.getRootCategory().getCards().size() < 100000);
+    }
+    
+    public void testImportKeepsCardsBeforeBadRow() throws BadHeaderException
+    {
+        Lesson lesson = new Lesson(false);
+        try
+        {
+            CsvBuilder.importLesson(createStream(3000, 2500), ',', CHARSET, lesson);
+            fail("Expected exception not thrown.");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("line 2500") >= 0);
+        }
+        
+        assertEquals(2500, lesson.getRootCategory().getCards().size());
+    }
+    
+    /**
+     * @param badRow the index of a row with an empty flip side or -1.
+     */
+    private InputStream createStream(int rows, int badRow)
+    {
+        StringBuilder sb = new StringBuilder("Frontside,Flipside,Category,Level\n");
+        for (int i = 0; i < rows; i++)
+        {
+            String back = i == badRow ? "" : "back" + i;
+            sb.append("front" + i + "," + back + ",cat" + (i % 5) + "," + (i % 5) + "\n");
+        }
+        
+        return new ByteArrayInputStream(sb.toString().getBytes(CHARSET));
+    }
+    
     private InputStream getFileStream(String file) throws FileNotFoundException
     {
         return new FileInputStream("test/fixtures/csv/"+file);
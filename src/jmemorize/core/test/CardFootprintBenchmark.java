@@ -0,0 +1,148 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.FormattedText;
+
+/**
+ * Reports the heap that is retained per card. The <i>legacy</i> row uses a
+ * replica of the former card layout with five Date objects and linked lists
+ * for the images and observers of each card side, so that both layouts can be
+ * compared in one run.
+ */
+public class CardFootprintBenchmark
+{
+    private static final int CARDS = 200000;
+    
+    private static Object    s_sink;
+    
+    public static void main(String[] args)
+    {
+        FormattedText[] texts = createTexts(CARDS * 2);
+        long textsOnly = BenchmarkTimer.usedHeap();
+        
+        LegacyCard[] legacyCards = new LegacyCard[CARDS];
+        for (int i = 0; i < CARDS; i++)
+        {
+            long time = i * 1000L;
+            legacyCards[i] = new LegacyCard(time, texts[2 * i], texts[2 * i + 1]);
+        }
+        long legacy = BenchmarkTimer.usedHeap();
+        report("legacy card", legacy - textsOnly);
+        
+        s_sink = legacyCards;
+        legacyCards = null;
+        s_sink = null;
+        
+        long freed = BenchmarkTimer.usedHeap();
+        Card[] cards = new Card[CARDS];
+        for (int i = 0; i < CARDS; i++)
+        {
+            long time = i * 1000L;
+            Card card = new Card(new Date(time), texts[2 * i], texts[2 * i + 1]);
+            card.setDateTested(new Date(time + 1));
+            card.setDateExpired(new Date(time + 2));
+            cards[i] = card;
+        }
+        long compact = BenchmarkTimer.usedHeap();
+        report("card", compact - freed);
+        
+        s_sink = cards;
+    }
+    
+    private static void report(String label, long bytes)
+    {
+        System.out.println(String.format("%-48s %12.1f bytes/card", 
+            label, (double)bytes / CARDS));
+    }
+    
+    private static FormattedText[] createTexts(int count)
+    {
+        FormattedText[] texts = new FormattedText[count];
+        for (int i = 0; i < count; i++)
+        {
+            texts[i] = FormattedText.formatted("word " + i);
+        }
+        return texts;
+    }
+    
+    /**
+     * Replica of the former card layout.
+     */
+    private static class LegacyCard
+    {
+        private LegacySide m_frontSide;
+        private LegacySide m_backSide;
+        
+        private Date       m_dateTested;
+        private Date       m_dateExpired;
+        private Date       m_dateCreated;
+        private Date       m_dateModified;
+        private Date       m_dateTouched;
+        
+        public LegacyCard(long time, FormattedText front, FormattedText back)
+        {
+            m_frontSide = new LegacySide(front);
+            m_backSide = new LegacySide(back);
+            
+            m_dateCreated = new Date(time);
+            m_dateModified = new Date(time);
+            m_dateTouched = new Date(time + 1);
+            m_dateTested = new Date(time + 1);
+            m_dateExpired = new Date(time + 2);
+            
+            Object observer = new Object() {
+                public String toString()
+                {
+                    return m_dateCreated.toString();
+                }
+            };
+            m_frontSide.m_observers.add(observer);
+            m_backSide.m_observers.add(observer);
+        }
+        
+        public String toString()
+        {
+            return m_frontSide + "/" + m_backSide + m_dateTested + 
+                m_dateExpired + m_dateModified + m_dateTouched;
+        }
+    }
+    
+    private static class LegacySide
+    {
+        private FormattedText m_text;
+        private List<String>  m_imageIDs  = new LinkedList<String>();
+        private List<Object>  m_observers = new LinkedList<Object>();
+        
+        public LegacySide(FormattedText text)
+        {
+            m_text = text;
+        }
+        
+        public String toString()
+        {
+            return m_text + "" + m_imageIDs;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardSet;
+import jmemorize.core.Category;
+import jmemorize.util.LongHashMap;
+
+/**
+ * Compares looking up cards in the hash maps and sets that learn sessions
+ * used before with the maps and sets that look up cards by their ids, and
+ * reports the heap that every entry takes. The cards are looked up in a
+ * random order, like the cards of a session are checked.
+ */
+public class CardLookupBenchmark
+{
+    private static final int CARDS = 200000;
+    
+    private static Object    s_sink;
+    
+    public static void main(String[] args)
+    {
+        Category category = new Category("root");
+        for (int i = 0; i < CARDS; i++)
+            category.addCard(new Card("front " + i, "back " + i));
+        
+        // the entries are added and looked up in different orders
+        List<Card> insertOrder = category.getCards();
+        Collections.shuffle(insertOrder);
+        final List<Card> cards = new ArrayList<Card>(insertOrder);
+        Collections.shuffle(cards);
+        
+        long base = BenchmarkTimer.usedHeap();
+        final Map<Card, Object> hashMap = new HashMap<Card, Object>();
+        for (Card card : insertOrder)
+            hashMap.put(card, card);
+        report("HashMap<Card, V>", BenchmarkTimer.usedHeap() - base);
+        
+        base = BenchmarkTimer.usedHeap();
+        final LongHashMap<Object> longMap = new LongHashMap<Object>();
+        for (Card card : insertOrder)
+            longMap.put(card.getId(), card);
+        report("LongHashMap<V>", BenchmarkTimer.usedHeap() - base);
+        
+        base = BenchmarkTimer.usedHeap();
+        final Set<Card> hashSet = new HashSet<Card>(insertOrder);
+        report("HashSet<Card>", BenchmarkTimer.usedHeap() - base);
+        
+        base = BenchmarkTimer.usedHeap();
+        final Set<Card> cardSet = new CardSet(insertOrder);
+        report("CardSet", BenchmarkTimer.usedHeap() - base);
+        
+        BenchmarkTimer.measure("HashMap<Card, V>.get", CARDS, new Runnable() {
+            public void run()
+            {
+                int found = 0;
+                for (Card card : cards)
+                {
+                    if (hashMap.get(card) != null)
+                        found++;
+                }
+                s_sink = found;
+            }
+        });
+        
+        BenchmarkTimer.measure("LongHashMap<V>.get", CARDS, new Runnable() {
+            public void run()
+            {
+                int found = 0;
+                for (Card card : cards)
+                {
+                    if (longMap.get(card.getId()) != null)
+                        found++;
+                }
+                s_sink = found;
+            }
+        });
+        
+        BenchmarkTimer.measure("HashSet<Card>.contains", CARDS, new Runnable() {
+            public void run()
+            {
+                int found = 0;
+                for (Card card : cards)
+                {
+                    if (hashSet.contains(card))
+                        found++;
+                }
+                s_sink = found;
+            }
+        });
+        
+        BenchmarkTimer.measure("CardSet.contains", CARDS, new Runnable() {
+            public void run()
+            {
+                int found = 0;
+                for (Card card : cards)
+                {
+                    if (cardSet.contains(card))
+                        found++;
+                }
+                s_sink = found;
+            }
+        });
+        
+        BenchmarkTimer.measure("HashSet<Card> add and remove", CARDS, new Runnable() {
+            public void run()
+            {
+                Set<Card> set = new HashSet<Card>();
+                for (Card card : cards)
+                    set.add(card);
+                for (Card card : cards)
+                    set.remove(card);
+                s_sink = set;
+            }
+        });
+        
+        BenchmarkTimer.measure("CardSet add and remove", CARDS, new Runnable() {
+            public void run()
+            {
+                Set<Card> set = new CardSet();
+                for (Card card : cards)
+                    set.add(card);
+                for (Card card : cards)
+                    set.remove(card);
+                s_sink = set;
+            }
+        });
+    }
+    
+    private static void report(String label, long bytes)
+    {
+        System.out.println(String.format("%-48s %12.1f bytes/entry", 
+            label, (double)bytes / CARDS));
+    }
+}
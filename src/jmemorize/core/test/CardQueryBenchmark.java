@@ -0,0 +1,132 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardQuery;
+import jmemorize.core.Category;
+
+/**
+ * Compares evaluating card queries with CardQuery.search(), which only visits
+ * the decks and categories that can contain matches, against testing every
+ * card of getCards(). The number of cards can be given as first argument. Run
+ * with a large fixed heap (e.g. -Xms2g -Xmx2g) to get stable numbers.
+ */
+public class CardQueryBenchmark
+{
+    private static final int    CATEGORIES = 20;
+    private static final int    DECKS      = 8;
+    private static final long   DAY        = 24L * 60 * 60 * 1000;
+
+    private static final String[] QUERIES  = {
+        "level >= 6 ratio < 50",
+        "path:category3 expires < today+7",
+        "path:category3/sub1 level = 2",
+        "tested:never OR created > today-30",
+        "front:ab NOT level = 0"};
+
+    private static volatile int s_sink;
+
+    public static void main(String[] args) throws Exception
+    {
+        int cards = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final Category root = createLesson(cards, new Random(42));
+
+        for (String text : QUERIES)
+        {
+            final CardQuery query = CardQuery.compile(text);
+
+            BenchmarkTimer.measure("getCards filter, " + text, 1, new Runnable() {
+                public void run()
+                {
+                    List<Card> foundCards = new ArrayList<Card>();
+                    for (Card card : root.getCards())
+                    {
+                        if (query.matches(card))
+                            foundCards.add(card);
+                    }
+                    s_sink += foundCards.size();
+                }
+            });
+
+            BenchmarkTimer.measure("query search, " + text, 1, new Runnable() {
+                public void run()
+                {
+                    s_sink += query.search(root).size();
+                }
+            });
+        }
+    }
+
+    private static Category createLesson(int cards, Random random)
+    {
+        Category root = new Category("root");
+        List<Category> categories = new ArrayList<Category>();
+        for (int i = 0; i < CATEGORIES; i++)
+        {
+            Category category = root.addCategoryChild(new Category("category" + i));
+            categories.add(category);
+            categories.add(category.addCategoryChild(new Category("sub0")));
+            categories.add(category.addCategoryChild(new Category("sub1")));
+        }
+
+        long now = System.currentTimeMillis();
+
+        root.beginUpdate();
+        for (int i = 0; i < cards; i++)
+        {
+            String front = randomWord(random);
+            Card card = new Card(new Date(now - random.nextInt(365) * DAY),
+                front, randomWord(random));
+
+            int level = random.nextInt(DECKS);
+            if (level > 0)
+            {
+                int total = 1 + random.nextInt(10);
+                card.incStats(random.nextInt(total + 1), total);
+                card.setDateTested(new Date(now - random.nextInt(60) * DAY));
+            }
+
+            categories.get(i % categories.size()).addCard(card, level);
+
+            if (level > 0)
+                card.setDateExpired(new Date(now + random.nextInt(60) * DAY));
+        }
+        root.endUpdate();
+
+        return root;
+    }
+
+    private static String randomWord(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int length = 4 + random.nextInt(6);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char)('a' + random.nextInt(26)));
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardQuery;
+import jmemorize.core.Category;
+import junit.framework.TestCase;
+
+public class CardQueryTest extends TestCase
+{
+    private Category m_root;
+    private Category m_biology;
+    private Category m_cells;
+    private Category m_history;
+
+    private Card     m_cardCell;
+    private Card     m_cardGene;
+    private Card     m_cardRome;
+    private Card     m_cardRoot;
+
+    private Date     m_now;
+
+    protected void setUp() throws Exception
+    {
+        m_now = date(2008, 5, 10, 12);
+
+        m_root = new Category("root");
+        m_biology = m_root.addCategoryChild(new Category("Biology"));
+        m_cells = m_biology.addCategoryChild(new Category("Cells"));
+        m_history = m_root.addCategoryChild(new Category("History"));
+
+        m_cardCell = new Card(date(2008, 5, 1, 10), "cell", "Zelle");
+        m_cardCell.setDateTested(date(2008, 5, 9, 18));
+        m_cardCell.setDateExpired(date(2008, 5, 12, 18));
+        m_cardCell.incStats(3, 4);
+        m_cells.addCard(m_cardCell, 3);
+
+        m_cardGene = new Card(date(2008, 5, 10, 8), "gene", "Gen");
+        m_biology.addCard(m_cardGene, 0);
+
+        m_cardRome = new Card(date(2008, 4, 20, 8), "Rome", "Rom");
+        m_cardRome.setDateTested(date(2008, 5, 10, 9));
+        m_cardRome.setDateExpired(date(2008, 5, 20, 9));
+        m_cardRome.incStats(1, 4);
+        m_history.addCard(m_cardRome, 1);
+
+        m_cardRoot = new Card(date(2008, 5, 10, 9), "root", "Wurzel");
+        m_root.addCard(m_cardRoot, 1);
+        m_cardRoot.setDateExpired(date(2008, 5, 10, 9));
+    }
+
+    public void testText() throws Exception
+    {
+        assertQuery("ro", m_cardRome, m_cardRoot);
+        assertQuery("front:ROME", m_cardRome);
+        assertQuery("back:ro", m_cardRome);
+        assertQuery("back=gen", m_cardGene);
+        assertQuery("text!=gen", m_cardCell, m_cardRome, m_cardRoot);
+        assertQuery("\"zell\"", m_cardCell);
+    }
+
+    public void testLevel() throws Exception
+    {
+        assertQuery("level=1", m_cardRome, m_cardRoot);
+        assertQuery("level>=1", m_cardRome, m_cardRoot, m_cardCell);
+        assertQuery("deck < 1", m_cardGene);
+        assertQuery("level != 1", m_cardGene, m_cardCell);
+        assertQuery("level > 5");
+    }
+
+    public void testRatio() throws Exception
+    {
+        assertQuery("ratio >= 75", m_cardCell);
+        assertQuery("ratio < 50 level > 0", m_cardRome, m_cardRoot);
+    }
+
+    public void testDates() throws Exception
+    {
+        assertQuery("created:today", m_cardGene, m_cardRoot);
+        assertQuery("created < 2008-05-01", m_cardRome);
+        assertQuery("created <= 2008-05-01", m_cardRome, m_cardCell);
+        assertQuery("tested:yesterday", m_cardCell);
+        assertQuery("tested = never", m_cardGene, m_cardRoot);
+        assertQuery("tested != never", m_cardRome, m_cardCell);
+        assertQuery("expires < today+7", m_cardCell, m_cardRoot);
+        assertQuery("expires > today+7", m_cardRome);
+        assertQuery("expires >= now", m_cardRome, m_cardCell);
+        assertQuery("created > today-10", m_cardGene, m_cardRoot, m_cardCell);
+    }
+
+    public void testCategories() throws Exception
+    {
+        assertQuery("path:biology", m_cardGene, m_cardCell);
+        assertQuery("path:/Biology/Cells/", m_cardCell);
+        assertQuery("path!=Biology", m_cardRome, m_cardRoot);
+        assertQuery("category=history", m_cardRome);
+        assertQuery("path:Biology level >= 1", m_cardCell);
+        assertQuery("path:Chemistry");
+    }
+
+    public void testBooleanOperators() throws Exception
+    {
+        assertQuery("level=0 OR front:rome", m_cardGene, m_cardRome);
+        assertQuery("NOT path:Biology AND level=1", m_cardRome, m_cardRoot);
+        assertQuery("(path:history OR path:biology/cells) ratio >= 75", m_cardCell);
+        assertQuery("NOT (level=1 OR level=3)", m_cardGene);
+        assertQuery("rome OR not", m_cardRome); // lower case keywords are text
+    }
+
+    public void testSearchInCategory() throws Exception
+    {
+        CardQuery query = CardQuery.compile("level >= 0", m_now);
+        assertEquals(m_biology.getCards(), query.search(m_biology));
+
+        query = CardQuery.compile("path:Biology/Cells", m_now);
+        assertEquals(list(m_cardCell), query.search(m_cells));
+        assertEquals(list(), query.search(m_history));
+    }
+
+    public void testPathOfPastedSubtree() throws Exception
+    {
+        Category genetics = new Category("Genetics");
+        Category dna = genetics.addCategoryChild(new Category("DNA"));
+        Card card = new Card("helix", "Helix");
+        dna.addCard(card, 0);
+        m_cells.addCategoryChild(genetics);
+
+        assertQuery("path:Biology/Cells/Genetics/DNA", card);
+        assertQuery("path:Biology/Cells level=0", card);
+
+        CardQuery query = CardQuery.compile("path:Biology/Cells/Genetics", m_now);
+        assertEquals(list(card), query.search(genetics));
+        assertEquals(list(card), query.search(m_cells));
+    }
+
+    public void testResultsHaveCategoryOrder() throws Exception
+    {
+        for (int i = 0; i < 30; i++)
+        {
+            m_cells.addCard(new Card("cell " + i, "Zelle " + i), i % 4);
+        }
+
+        CardQuery query = CardQuery.compile("cell", m_now);
+        assertEquals(filter(query, m_root.getCards()), query.search(m_root));
+    }
+
+    public void testParseErrors()
+    {
+        assertParseError("level >= x", 9);
+        assertParseError("color:red", 0);
+        assertParseError("front < x", 6);
+        assertParseError("(level=1", 8);
+        assertParseError("created:2008-13-01", 8);
+        assertParseError("\"open", 0);
+        assertParseError("level=1 )", 8);
+        assertParseError("NOT", 3);
+    }
+
+    private void assertQuery(String text, Card... expected) throws Exception
+    {
+        CardQuery query = CardQuery.compile(text, m_now);
+        List<Card> cards = query.search(m_root);
+
+        assertEquals(text, expected.length, cards.size());
+        for (Card card : expected)
+        {
+            assertTrue(text + ": " + card, cards.contains(card));
+        }
+
+        assertEquals(text, filter(query, m_root.getCards()), cards);
+    }
+
+    private void assertParseError(String text, int position)
+    {
+        try
+        {
+            CardQuery.compile(text, m_now);
+            fail(text);
+        }
+        catch (CardQuery.ParseException e)
+        {
+            assertEquals(text, position, e.getPosition());
+        }
+    }
+
+    private static List<Card> filter(CardQuery query, List<Card> cards)
+    {
+        List<Card> foundCards = new ArrayList<Card>();
+        for (Card card : cards)
+        {
+            if (query.matches(card))
+                foundCards.add(card);
+        }
+
+        return foundCards;
+    }
+
+    private static List<Card> list(Card... cards)
+    {
+        List<Card> list = new ArrayList<Card>();
+        for (Card card : cards)
+            list.add(card);
+
+        return list;
+    }
+
+    private static Date date(int year, int month, int day, int hour)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, 0);
+
+        return calendar.getTime();
+    }
+}
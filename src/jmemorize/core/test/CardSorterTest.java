@@ -0,0 +1,165 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.gui.swing.widgets.CardSorter;
+import jmemorize.gui.swing.widgets.CardTable;
+import junit.framework.TestCase;
+
+public class CardSorterTest extends TestCase
+{
+    private Category   m_root;
+    private Category   m_categoryB;
+    private Category   m_categoryA;
+
+    private Card       m_card1;
+    private Card       m_card2;
+    private Card       m_card3;
+    private Card       m_card4;
+
+    private CardSorter m_sorter;
+
+    protected void setUp() throws Exception
+    {
+        m_root = new Category("root");
+        m_categoryB = m_root.addCategoryChild(new Category("b"));
+        m_categoryA = m_root.addCategoryChild(new Category("a"));
+
+        m_card1 = new Card("delta", "1");
+        m_card2 = new Card("Alpha", "2");
+        m_card3 = new Card("charlie", "3");
+        m_card4 = new Card("bravo", "4");
+
+        m_categoryB.addCard(m_card1, 2);
+        m_categoryA.addCard(m_card2, 0);
+        m_categoryB.addCard(m_card3, 0);
+        m_categoryA.addCard(m_card4, 1);
+
+        m_sorter = new CardSorter();
+        m_sorter.setCards(list(m_card1, m_card2, m_card3, m_card4));
+    }
+
+    public void testSortsByTextIgnoringCase()
+    {
+        assertCards(m_card2, m_card4, m_card3, m_card1);
+
+        m_sorter.sort(CardTable.COLUMN_FRONTSIDE, true);
+        assertCards(m_card1, m_card3, m_card4, m_card2);
+    }
+
+    public void testEqualKeysKeepTheirOrder()
+    {
+        // the cards are sorted by their front sides before
+        m_sorter.sort(CardTable.COLUMN_CATEGORY, false);
+        assertCards(m_card2, m_card4, m_card3, m_card1);
+
+        m_sorter.sort(CardTable.COLUMN_DECK, true);
+        assertCards(m_card1, m_card4, m_card2, m_card3);
+    }
+
+    public void testSortsListInPlace()
+    {
+        List<Card> cards = list(m_card1, m_card2, m_card3, m_card4);
+        m_sorter.setCards(cards);
+
+        assertSame(cards, m_sorter.getCards());
+        assertEquals(list(m_card2, m_card4, m_card3, m_card1), cards);
+    }
+
+    public void testAddAndRemove()
+    {
+        Card card = new Card("beta", "5");
+        assertEquals(1, m_sorter.add(card));
+        assertEquals(-1, m_sorter.add(card));
+        assertCards(m_card2, card, m_card4, m_card3, m_card1);
+
+        assertEquals(3, m_sorter.remove(m_card3));
+        assertEquals(-1, m_sorter.remove(m_card3));
+        assertCards(m_card2, card, m_card4, m_card1);
+    }
+
+    public void testUpdateChangedCard()
+    {
+        m_card1.setSides("aardvark", "1");
+        assertEquals(3, m_sorter.indexOf(m_card1));
+
+        assertEquals(0, m_sorter.update(m_card1));
+        assertCards(m_card1, m_card2, m_card4, m_card3);
+        assertEquals(0, m_sorter.indexOf(m_card1));
+    }
+
+    public void testUpdateChangedDeck()
+    {
+        m_sorter.sort(CardTable.COLUMN_DECK, false);
+        assertCards(m_card2, m_card3, m_card4, m_card1);
+
+        for (int i = 0; i < 3; i++)
+        {
+            Category.raiseCardLevel(m_card3, new Date(), new Date());
+        }
+
+        assertEquals(3, m_sorter.update(m_card3));
+        assertCards(m_card2, m_card4, m_card1, m_card3);
+    }
+
+    public void testCountsCardsByStatus() throws Exception
+    {
+        // cards that are added to higher decks expire right away
+        assertCounts(0, 2, 2);
+
+        m_card1.setDateExpired(new Date(System.currentTimeMillis() + 200));
+        m_sorter.update(m_card1);
+        assertCounts(1, 1, 2);
+
+        m_sorter.remove(m_card2);
+        assertCounts(1, 1, 1);
+
+        Category.resetCardLevel(m_card4, new Date());
+        m_sorter.update(m_card4);
+        assertCounts(1, 0, 2);
+
+        // the count changes without an update when the card expires
+        Thread.sleep(300);
+        assertCounts(0, 1, 2);
+    }
+
+    private void assertCounts(int learned, int expired, int unlearned)
+    {
+        assertEquals(learned, m_sorter.getLearnedCount());
+        assertEquals(expired, m_sorter.getExpiredCount());
+        assertEquals(unlearned, m_sorter.getUnlearnedCount());
+    }
+
+    private void assertCards(Card... cards)
+    {
+        assertEquals(Arrays.asList(cards), m_sorter.getCards());
+    }
+
+    private static List<Card> list(Card... cards)
+    {
+        return new ArrayList<Card>(Arrays.asList(cards));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Date;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.io.CardStore;
+
+/**
+ * Measures opening a large card store, the resident memory of the process
+ * and the heap before and after its cards are created, and how fast the
+ * columns and texts of the store can be scanned. The number of cards can be
+ * given as first argument.
+ */
+public class CardStoreBenchmark
+{
+    private static final int CATEGORIES = 10;
+    
+    private static Object    s_sink;
+    
+    public static void main(String[] args) throws Exception
+    {
+        int cards = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        
+        File file = File.createTempFile("benchmark", "." + CardStore.EXTENSION); //$NON-NLS-1$ //$NON-NLS-2$
+        try
+        {
+            CardStore.write(file, createCategory(cards));
+            
+            long baseHeap = BenchmarkTimer.usedHeap();
+            long baseRss = getRss();
+            System.out.println("opening " + cards + " cards, " + 
+                file.length() / 1024 + " KiB");
+            
+            long start = System.nanoTime();
+            CardStore store = CardStore.open(file);
+            report("open", start);
+            reportMemory("after open", baseHeap, baseRss);
+            
+            scan(store);
+            reportMemory("after scan", baseHeap, baseRss);
+            
+            Category root = new Category("root");
+            Category category = store.attach(root, "store");
+            reportMemory("after attach", baseHeap, baseRss);
+            
+            start = System.nanoTime();
+            category.getCards();
+            report("creating all cards", start);
+            reportMemory("with all cards", baseHeap, baseRss);
+            
+            s_sink = root;
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+    
+    private static void scan(CardStore store)
+    {
+        int n = store.getCardCount();
+        long now = System.currentTimeMillis();
+        
+        // warm up the JIT
+        for (int round = 0; round < 3; round++)
+            countExpired(store, now);
+        
+        long start = System.nanoTime();
+        int expired = countExpired(store, now);
+        reportRate("scan of expiry and level", n, start);
+        
+        start = System.nanoTime();
+        long chars = 0;
+        for (int card = 0; card < n; card++)
+            chars += store.getText(card, true).length();
+        reportRate("scan of front texts", n, start);
+        
+        s_sink = expired + chars;
+    }
+    
+    private static int countExpired(CardStore store, long now)
+    {
+        int expired = 0;
+        for (int card = 0, n = store.getCardCount(); card < n; card++)
+        {
+            long time = store.getTime(CardStore.EXPIRED, card);
+            if (store.getLevel(card) > 0 && time != CardStore.NO_DATE && time <= now)
+                expired++;
+        }
+        
+        return expired;
+    }
+    
+    private static Category createCategory(int cards)
+    {
+        Category root = new Category("root");
+        Category[] categories = new Category[CATEGORIES];
+        for (int i = 0; i < CATEGORIES; i++)
+            categories[i] = root.addCategoryChild(new Category("category " + i));
+        
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < cards; i++)
+        {
+            Card card = new Card(new Date(now - i * 1000L), 
+                "front side of card " + i, "back side of card " + i);
+            categories[i % CATEGORIES].addCard(card, i % 5);
+        }
+        
+        return root;
+    }
+    
+    /**
+     * @return the resident set size of this process in KiB, or 0 if it isn't
+     * known.
+     */
+    private static long getRss() throws IOException
+    {
+        File status = new File("/proc/self/status");
+        if (!status.exists())
+            return 0;
+        
+        BufferedReader reader = new BufferedReader(new FileReader(status));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.startsWith("VmRSS:"))
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+            
+            return 0;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+    
+    private static void report(String label, long start)
+    {
+        System.out.println(String.format("%-48s %12.1f ms", label, 
+            (System.nanoTime() - start) / 1000000.0));
+    }
+    
+    private static void reportRate(String label, int cards, long start)
+    {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-48s %12.1f M cards/s", label, 
+            cards / seconds / 1e6));
+    }
+    
+    private static void reportMemory(String label, long baseHeap, long baseRss) 
+        throws IOException
+    {
+        System.out.println(String.format("%-48s %12.1f MiB heap %8.1f MiB rss", 
+            label, (BenchmarkTimer.usedHeap() - baseHeap) / (1024.0 * 1024.0),
+            (getRss() - baseRss) / 1024.0));
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.ImageRepository;
+import jmemorize.core.Lesson;
+import jmemorize.core.LessonSummary;
+import jmemorize.core.io.CardStore;
+import jmemorize.core.io.LessonLoader;
+import jmemorize.core.io.XmlBuilder;
+import junit.framework.TestCase;
+
+public class CardStoreTest extends TestCase
+{
+    private File     m_storeFile;
+    private File     m_lessonFile;
+    private Category m_rootCategory;
+
+    protected void setUp() throws Exception
+    {
+        m_storeFile = File.createTempFile("store", "." + CardStore.EXTENSION);
+        m_storeFile.deleteOnExit();
+        m_lessonFile = new File(m_storeFile.getParentFile(), 
+            m_storeFile.getName() + ".jml");
+        m_lessonFile.deleteOnExit();
+
+        Lesson lesson = new Lesson(false);
+        m_rootCategory = lesson.getRootCategory();
+        Category animals = new Category("animals");
+        Category birds = new Category("birds");
+        m_rootCategory.addCategoryChild(animals);
+        animals.addCategoryChild(birds);
+
+        Category[] categories = {m_rootCategory, animals, birds};
+        for (int i = 0; i < 30; i++)
+        {
+            Card card = new Card(new Date(1000L * i), "front " + i, "flip " + i);
+            card.setDateTested(new Date(1000L * i + 1));
+            card.incStats(1, i);
+            categories[i % 3].addCard(card, i % 2);
+        }
+
+        CardStore.write(m_storeFile, m_rootCategory);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        ImageRepository.getInstance().retain(new HashSet<String>());
+    }
+
+    public void testReadsColumns() throws Exception
+    {
+        CardStore store = CardStore.open(m_storeFile);
+
+        assertEquals(30, store.getCardCount());
+        assertEquals(3, store.getCategoryCount());
+        assertEquals("birds", store.getCategoryName(2));
+        assertEquals(1, store.getParentCategory(2));
+        assertEquals(-1, store.getParentCategory(0));
+        assertEquals(20, store.getFirstCard(2));
+        assertEquals(10, store.getCardCount(2));
+        assertEquals(2, store.getNumberOfDecks(2));
+
+        // the cards of a category are ordered by their decks
+        Card card = m_rootCategory.getLocalCards(1).get(0);
+        int index = 5;
+        assertEquals(1, store.getLevel(index));
+        assertEquals("front 3", store.getText(index, true));
+        assertEquals("flip 3", store.getText(index, false));
+        assertEquals(card.getDateCreated().getTime(), 
+            store.getTime(CardStore.CREATED, index));
+        assertEquals(3001, store.getTime(CardStore.TESTED, index));
+        assertEquals(card.getDateExpired().getTime(), 
+            store.getTime(CardStore.EXPIRED, index));
+        assertEquals(3, store.getStat(CardStore.TESTS_TOTAL, index));
+        assertEquals(1, store.getStat(CardStore.TESTS_PASSED, index));
+    }
+
+    public void testAttachLoadsCardsWhenNeeded() throws Exception
+    {
+        Lesson lesson = new Lesson(false);
+        Category vocabulary = CardStore.open(m_storeFile).attach(
+            lesson.getRootCategory(), "vocabulary");
+
+        assertEquals(30, lesson.getRootCategory().getCardCount());
+        assertEquals(2, lesson.getRootCategory().getNumberOfDecks());
+        for (Category category : vocabulary.getSubtreeList())
+            assertFalse(category.isCardsLoaded());
+
+        Category birds = vocabulary.getChildCategory("animals").getChildCategory("birds");
+        List<Card> cards = birds.getLocalCards(0);
+        assertTrue(birds.isCardsLoaded());
+        assertFalse(vocabulary.isCardsLoaded());
+
+        assertEquals(5, cards.size());
+        assertEquals("front 2", cards.get(0).getFrontSide().getText().getFormatted());
+        assertEquals(2001, cards.get(0).getDateTested().getTime());
+        assertEquals(2, cards.get(0).getTestsTotal());
+        assertSame(birds, cards.get(0).getCategory());
+    }
+
+    public void testSavesProgressApartFromStore() throws Exception
+    {
+        Lesson lesson = new Lesson(false);
+        Category vocabulary = CardStore.open(m_storeFile).attach(
+            lesson.getRootCategory(), "vocabulary");
+
+        Card card = vocabulary.getLocalCards(0).get(0);
+        Date expiry = new Date(System.currentTimeMillis() + 10 * Card.ONE_DAY);
+        Category.raiseCardLevel(card, new Date(), expiry);
+
+        long length = m_storeFile.length();
+        long modified = m_storeFile.lastModified();
+        XmlBuilder.saveAsXMLFile(m_lessonFile, lesson);
+        XmlBuilder.attachCardChunks(m_lessonFile, lesson.getRootCategory());
+
+        assertEquals(length, m_storeFile.length());
+        assertEquals(modified, m_storeFile.lastModified());
+
+        // the saved progress is kept when the cards are unloaded
+        assertEquals(1, lesson.unloadCards());
+        assertEquals(6, vocabulary.getLocalCards(1).size());
+        assertSame(card, findCard(vocabulary.getLocalCards(1), "front 0"));
+
+        Lesson loaded = new Lesson(false);
+        assertEquals(0, new LessonLoader(m_lessonFile).load(loaded));
+
+        Category loadedVocabulary = loaded.getRootCategory().getChildCategory("vocabulary");
+        assertEquals(30, loaded.getRootCategory().getCardCount());
+        assertFalse(loadedVocabulary.isCardsLoaded());
+
+        List<Card> raised = loadedVocabulary.getLocalCards(1);
+        assertEquals(6, raised.size());
+        assertEquals(4, loadedVocabulary.getLocalCards(0).size());
+
+        Card loadedCard = findCard(raised, "front 0");
+        assertEquals(card.getId(), loadedCard.getId());
+        assertEquals(31, loaded.getRootCategory().getNextCardId());
+        assertEquals(1, loadedCard.getLevel());
+        assertEquals(2, loadedCard.getTestsPassed());
+        assertTrue(loadedCard.isLearned());
+        assertEquals(expiry.getTime() / 1000, loadedCard.getDateExpired().getTime() / 1000);
+
+        // unchanged categories are not loaded when saving again
+        XmlBuilder.saveAsXMLFile(m_lessonFile, loaded);
+        assertFalse(loadedVocabulary.getChildCategory("animals").isCardsLoaded());
+    }
+
+    public void testEditedCategoryIsSavedWithCards() throws Exception
+    {
+        Lesson lesson = new Lesson(false);
+        Category vocabulary = CardStore.open(m_storeFile).attach(
+            lesson.getRootCategory(), "vocabulary");
+
+        Category animals = vocabulary.getChildCategory("animals");
+        animals.getLocalCards(0).get(0).setSides("front edited", "flip edited");
+
+        XmlBuilder.saveAsXMLFile(m_lessonFile, lesson);
+        XmlBuilder.attachCardChunks(m_lessonFile, lesson.getRootCategory());
+        assertNull(animals.getCardChunk());
+
+        Lesson loaded = new Lesson(false);
+        assertEquals(10, new LessonLoader(m_lessonFile).load(loaded));
+
+        Category loadedAnimals = loaded.getRootCategory()
+            .getChildCategory("vocabulary").getChildCategory("animals");
+        assertNotNull(findCard(loadedAnimals.getLocalCards(), "front edited"));
+        assertFalse(loadedAnimals.getChildCategory("birds").isCardsLoaded());
+    }
+
+    public void testSummaryDoesntLoadCards() throws Exception
+    {
+        Lesson lesson = new Lesson(false);
+        Category vocabulary = CardStore.open(m_storeFile).attach(
+            lesson.getRootCategory(), "vocabulary");
+
+        XmlBuilder.saveAsXMLFile(m_lessonFile, lesson);
+        for (Category category : vocabulary.getSubtreeList())
+            assertFalse(category.isCardsLoaded());
+
+        LessonSummary expected = LessonSummary.create(lesson.getRootCategory());
+        LessonLoader loader = new LessonLoader(m_lessonFile);
+        Lesson loaded = new Lesson(false);
+        loader.load(loaded);
+
+        int[][] counts = loader.getSummary().getCounts(loaded.getRootCategory());
+        int[][] expectedCounts = expected.getCounts(lesson.getRootCategory());
+        for (int level = 0; level < expectedCounts.length; level++)
+            assertTrue(Arrays.equals(expectedCounts[level], counts[level]));
+    }
+
+    public void testRejectsImages() throws Exception
+    {
+        Card card = m_rootCategory.getLocalCards(0).get(0);
+        String id = ImageRepository.getInstance().addImage(getClass()
+            .getResourceAsStream("/resource/icons/blank.gif"), "blank.gif");
+        card.getFrontSide().setImages(Arrays.asList(id));
+
+        try
+        {
+            CardStore.write(m_storeFile, m_rootCategory);
+            fail();
+        }
+        catch (java.io.IOException e)
+        {
+            // expected
+        }
+
+        // the old store is kept
+        assertEquals(30, CardStore.open(m_storeFile).getCardCount());
+    }
+
+    private static Card findCard(List<Card> cards, String front)
+    {
+        for (Card card : cards)
+        {
+            if (card.getFrontSide().getText().getFormatted().equals(front))
+                return card;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.gui.swing.widgets.CardSorter;
+import jmemorize.gui.swing.widgets.CardTable;
+
+/**
+ * Compares sorting the card table with cached sort keys against sorting with
+ * a comparator that computes the column values for every comparison, like the
+ * card table did before. Also measures updating a single changed card. The
+ * number of cards can be given as first argument. Run with a large fixed
+ * heap (e.g. -Xms2g -Xmx2g) to get stable numbers.
+ */
+public class CardTableSortBenchmark
+{
+    private static final int CATEGORIES = 200;
+
+    public static void main(String[] args) throws Exception
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        Random random = new Random(42);
+        Category root = new Category("root");
+        List<Category> categories = new ArrayList<Category>();
+        for (int i = 0; i < CATEGORIES / 20; i++)
+        {
+            Category child = root.addCategoryChild(new Category("category " + i));
+            for (int j = 0; j < 20; j++)
+            {
+                categories.add(child.addCategoryChild(new Category("topic " + j)));
+            }
+        }
+
+        root.beginUpdate();
+        for (int i = 0; i < count; i++)
+        {
+            Card card = new Card(randomWord(random) + " " + randomWord(random),
+                randomWord(random));
+            categories.get(random.nextInt(categories.size())).addCard(card,
+                random.nextInt(5));
+        }
+        root.endUpdate();
+
+        // the cards of getCards() are already grouped by category and deck
+        final List<Card> cards = root.getCards();
+        Collections.shuffle(cards, random);
+
+        final CardSorter sorter = new CardSorter();
+        sorter.setCards(new ArrayList<Card>(cards));
+
+        int[] columns = {CardTable.COLUMN_PATH, CardTable.COLUMN_FRONTSIDE, 
+            CardTable.COLUMN_DECK};
+        String[] names = {"path", "front", "deck"};
+
+        for (int i = 0; i < columns.length; i++)
+        {
+            final int column = columns[i];
+
+            BenchmarkTimer.measure("comparator per comparison, " + names[i], 1, 
+                new Runnable() {
+                public void run()
+                {
+                    List<Card> list = new ArrayList<Card>(cards);
+                    Collections.sort(list, new ValueComparator(column));
+                }
+            });
+
+            sorter.sort(column, false);
+            BenchmarkTimer.measure("cached sort keys, " + names[i], 1, new Runnable() {
+                public void run()
+                {
+                    sorter.setCards(new ArrayList<Card>(cards));
+                }
+            });
+        }
+
+        sorter.sort(CardTable.COLUMN_FRONTSIDE, false);
+        final Card card = cards.get(count / 2);
+        final Random editRandom = new Random(7);
+
+        BenchmarkTimer.measure("edit card, resort all", 1, new Runnable() {
+            public void run()
+            {
+                card.setSides(randomWord(editRandom), "x");
+                sorter.setCards(sorter.getCards());
+            }
+        });
+
+        BenchmarkTimer.measure("edit card, update row", 1000, new Runnable() {
+            public void run()
+            {
+                for (int i = 0; i < 1000; i++)
+                {
+                    card.setSides(randomWord(editRandom), "x");
+                    sorter.update(card);
+                }
+            }
+        });
+    }
+
+    /**
+     * The comparator that the card table used before it cached sort keys.
+     */
+    private static class ValueComparator implements Comparator<Card>
+    {
+        private final int m_column;
+
+        public ValueComparator(int column)
+        {
+            m_column = column;
+        }
+
+        @SuppressWarnings("unchecked")
+        public int compare(Card card0, Card card1)
+        {
+            Comparable<Object> value0 = (Comparable<Object>)getValue(card0);
+            Comparable<Object> value1 = (Comparable<Object>)getValue(card1);
+
+            return value0.compareTo(value1);
+        }
+
+        private Object getValue(Card card)
+        {
+            switch (m_column)
+            {
+            case CardTable.COLUMN_FRONTSIDE:
+                return card.getFrontSide().getText().getUnformatted().replace('\n', ' ');
+
+            case CardTable.COLUMN_DECK:
+                return new Integer(card.getLevel());
+
+            default:
+                return card.getCategory().getPath();
+            }
+        }
+    }
+
+    private static String randomWord(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int length = 4 + random.nextInt(6);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char)('a' + random.nextInt(26)));
+        }
+
+        return sb.toString();
+    }
+}
@@ -141,4 +141,49 @@ public class CardTest extends TestCase
         assertEquals(m_card.getLearnedAmount(true), clonedCard.getLearnedAmount(true));
         assertEquals(m_card.getLearnedAmount(false), clonedCard.getLearnedAmount(false));
     }
+    
+    public void testImagesCantBeModifiedDirectly()
+    {
+        List<String> images = new LinkedList<String>();
+        images.add("foo.png");
+        m_card.getFrontSide().setImages(images);
+        
+        try
+        {
+            m_card.getFrontSide().getImages().add("bar.png");
+            fail("image list should only be changed by setImages");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // expected
+        }
+        
+        assertEquals(images, m_card.getFrontSide().getImages());
+    }
+    
+    public void testDatesAreNotStoredAsReference()
+    {
+        Date expired = new Date(m_card.getDateCreated().getTime() + Card.ONE_DAY);
+        m_card.setDateExpired(expired);
+        
+        Date copy = (Date)expired.clone();
+        expired.setTime(0);
+        m_card.getDateExpired().setTime(0);
+        
+        assertEquals(copy, m_card.getDateExpired());
+    }
+    
+    public void testUnsetDates()
+    {
+        assertNull(m_card.getDateTested());
+        assertNull(m_card.getDateExpired());
+        assertTrue(m_card.isUnlearned());
+        
+        m_card.setDateExpired(new Date());
+        assertFalse(m_card.isUnlearned());
+        
+        m_card.setDateExpired(null);
+        assertNull(m_card.getDateExpired());
+        assertTrue(m_card.isUnlearned());
+    }
 }
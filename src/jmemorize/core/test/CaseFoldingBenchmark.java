@@ -0,0 +1,132 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.SearchTool;
+
+/**
+ * Measures repeated case insensitive searches over all cards of a large
+ * lesson. The <i>legacy</i> rows lower case both card sides for every card
+ * and query, like SearchTool did before the folded texts were cached. The
+ * first cached run folds all texts and the following runs reuse them. The
+ * number of cards can be given as first argument.
+ */
+public class CaseFoldingBenchmark
+{
+    private static final int    QUERIES = 5;
+
+    private static volatile int s_sink;
+
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+
+        Random random = new Random(42);
+        Category root = new Category("root");
+        root.beginUpdate();
+        for (int i = 0; i < count; i++)
+        {
+            root.addCard(new Card(randomWords(random, 2), randomWords(random, 3)));
+        }
+        root.endUpdate();
+
+        final List<Card> cards = root.getCards();
+        final String[] queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++)
+        {
+            queries[i] = randomWords(random, 1).substring(0, 3);
+        }
+
+        long start = System.nanoTime();
+        search(cards, queries[0]);
+        System.out.println(String.format("first search, folding all texts: %.1f ms",
+            (System.nanoTime() - start) / 1e6));
+
+        BenchmarkTimer.measure("legacy, " + QUERIES + " searches", count, 
+            new Runnable() {
+            public void run()
+            {
+                for (String query : queries)
+                    s_sink += legacySearch(cards, query).size();
+            }
+        });
+
+        BenchmarkTimer.measure("cached folding, " + QUERIES + " searches", count, 
+            new Runnable() {
+            public void run()
+            {
+                for (String query : queries)
+                    s_sink += search(cards, query).size();
+            }
+        });
+    }
+
+    private static List<Card> search(List<Card> cards, String query)
+    {
+        return SearchTool.search(query, SearchTool.BOTH_SIDES, false, cards);
+    }
+
+    /**
+     * The former case insensitive search of SearchTool.
+     */
+    private static List<Card> legacySearch(List<Card> cards, String text)
+    {
+        List<Card> foundCards = new LinkedList<Card>();
+        for (Card card : cards)
+        {
+            String frontSide = card.getFrontSide().getText().getUnformatted();
+            String flipSide  = card.getBackSide().getText().getUnformatted();
+
+            text      = text.toLowerCase();
+            frontSide = frontSide.toLowerCase();
+            flipSide  = flipSide.toLowerCase();
+
+            if (frontSide.indexOf(text) > -1 || flipSide.indexOf(text) > -1)
+                foundCards.add(card);
+        }
+
+        return foundCards;
+    }
+
+    private static String randomWords(Random random, int words)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++)
+        {
+            if (i > 0)
+                sb.append(' ');
+
+            // capitalized words like in most vocabulary lessons
+            sb.append((char)('A' + random.nextInt(26)));
+            int length = 3 + random.nextInt(6);
+            for (int j = 0; j < length; j++)
+            {
+                sb.append((char)('a' + random.nextInt(26)));
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardBatchObserver;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+
+/**
+ * Measures importing and removing 100k cards into a lesson with a couple of
+ * child categories, once with an event for every card and once enclosed in a
+ * batch update. A refresh observer, which reads the deck sizes like the deck
+ * chart does, is hooked to every category. Besides the time, the number of
+ * refreshes is printed, since the observers of the GUI are a lot more
+ * expensive than this one. Run with a large fixed heap (e.g. -Xms2g -Xmx2g)
+ * to get stable numbers.
+ */
+public class CategoryBatchBenchmark
+{
+    private static final int  CARDS      = 100000;
+    private static final int  CATEGORIES = 20;
+    private static final int  LEVELS     = 5;
+    
+    private static volatile int s_sink;
+    private static int          s_refreshes;
+    
+    public static void main(String[] args)
+    {
+        s_refreshes = 0;
+        removeCards(importCards(false), false);
+        System.out.println("refreshes, event per card: " + s_refreshes);
+        
+        s_refreshes = 0;
+        removeCards(importCards(true), true);
+        System.out.println("refreshes, batch update:   " + s_refreshes);
+        
+        BenchmarkTimer.measure("import, event per card", CARDS, new Runnable() {
+            public void run()
+            {
+                importCards(false);
+            }
+        });
+        
+        BenchmarkTimer.measure("import, batch update", CARDS, new Runnable() {
+            public void run()
+            {
+                importCards(true);
+            }
+        });
+        
+        BenchmarkTimer.measure("import + remove, event per card", CARDS, 
+            new Runnable() {
+            public void run()
+            {
+                removeCards(importCards(true), false);
+            }
+        });
+        
+        BenchmarkTimer.measure("import + remove, batch update", CARDS, 
+            new Runnable() {
+            public void run()
+            {
+                removeCards(importCards(true), true);
+            }
+        });
+    }
+    
+    private static Category importCards(boolean batch)
+    {
+        Lesson lesson = new Lesson(false);
+        Category root = lesson.getRootCategory();
+        
+        List<Category> categories = new ArrayList<Category>();
+        for (int i = 0; i < CATEGORIES; i++)
+        {
+            Category category = root.addCategoryChild(new Category("cat" + i));
+            category.addObserver(new RefreshObserver());
+            categories.add(category);
+        }
+        root.addObserver(new RefreshObserver());
+        
+        Date now = new Date();
+        if (batch)
+            root.beginUpdate();
+        
+        for (int i = 0; i < CARDS; i++)
+        {
+            Card card = new Card(now, "front " + i, "back " + i);
+            categories.get(i % CATEGORIES).addCard(card, i % LEVELS);
+        }
+        
+        if (batch)
+            root.endUpdate();
+        
+        return root;
+    }
+    
+    private static void removeCards(Category root, boolean batch)
+    {
+        List<Card> cards = root.getCards();
+        if (batch)
+        {
+            root.removeCards(cards);
+        }
+        else
+        {
+            for (Card card : cards)
+            {
+                card.getCategory().removeCard(card);
+            }
+        }
+    }
+    
+    /**
+     * Reads the deck sizes of the observed category on every notification.
+     */
+    private static class RefreshObserver implements CardBatchObserver
+    {
+        public void onCardEvent(int type, Card card, Category category, int deck)
+        {
+            refresh(category);
+        }
+        
+        public void onCardsEvent(int type, List<Card> cards, Category category)
+        {
+            refresh(category);
+        }
+        
+        public void onCategoryEvent(int type, Category category)
+        {
+            refresh(category);
+        }
+        
+        private void refresh(Category category)
+        {
+            s_refreshes++;
+            
+            int sum = 0;
+            for (int i = 0; i < category.getNumberOfDecks(); i++)
+            {
+                sum += category.getLocalCards(i).size();
+            }
+            s_sink = sum;
+        }
+    }
+}
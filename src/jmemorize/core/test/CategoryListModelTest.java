@@ -0,0 +1,196 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.CategoryObserver;
+import jmemorize.gui.swing.widgets.CategoryListModel;
+import junit.framework.TestCase;
+
+public class CategoryListModelTest extends TestCase implements CategoryObserver
+{
+    /**
+     * Applies the list events of the model to a copy of its list, so that
+     * the events can be checked.
+     */
+    private class Mirror implements ListDataListener
+    {
+        private List<Object> m_items = new ArrayList<Object>();
+        private int          m_changes;
+
+        public void intervalAdded(ListDataEvent e)
+        {
+            for (int i = e.getIndex0(); i <= e.getIndex1(); i++)
+                m_items.add(i, m_model.getElementAt(i));
+        }
+
+        public void intervalRemoved(ListDataEvent e)
+        {
+            m_items.subList(e.getIndex0(), e.getIndex1() + 1).clear();
+        }
+
+        public void contentsChanged(ListDataEvent e)
+        {
+            m_changes++;
+        }
+    }
+
+    private Category          m_root;
+    private Category          m_a;
+    private Category          m_b;
+    private Category          m_bChild;
+    private CategoryListModel m_model;
+    private Mirror            m_mirror;
+
+    protected void setUp() throws Exception
+    {
+        m_root = new Category("root");
+        m_b = m_root.addCategoryChild(new Category("b"));
+        m_a = m_root.addCategoryChild(new Category("a"));
+        m_bChild = m_b.addCategoryChild(new Category("child"));
+
+        m_model = new CategoryListModel(m_root);
+        m_mirror = new Mirror();
+        for (int i = 0; i < m_model.getSize(); i++)
+            m_mirror.m_items.add(m_model.getElementAt(i));
+
+        m_model.addListDataListener(m_mirror);
+        m_root.addObserver(this);
+    }
+
+    public void testAddSubtree()
+    {
+        Category c = new Category("c");
+        c.addCategoryChild(new Category("d"));
+        m_a.addCategoryChild(c);
+
+        assertModel();
+        assertEquals(2, m_model.indexOf(c));
+    }
+
+    public void testAddDeepSubtreeThenSiblings()
+    {
+        Category sub = new Category("sub");
+        Category mid = sub.addCategoryChild(new Category("mid"));
+        mid.addCategoryChild(new Category("leaf"));
+        m_root.addCategoryChild(sub);
+        assertModel();
+
+        m_root.addCategoryChild(new Category("n"));
+        m_root.addCategoryChild(new Category("z"));
+        mid.addCategoryChild(new Category("0"));
+
+        assertModel();
+    }
+
+    public void testRemoveSubtree()
+    {
+        m_b.remove();
+
+        assertModel();
+        assertEquals(2, m_model.getSize());
+    }
+
+    public void testRemoveSelected()
+    {
+        m_model.setSelectedItem(m_bChild);
+        m_b.remove();
+
+        assertSame(m_root, m_model.getSelectedItem());
+    }
+
+    public void testRenameMovesSubtree()
+    {
+        m_b.setName("0");
+
+        assertModel();
+        assertEquals(1, m_model.indexOf(m_b));
+        assertEquals(2, m_model.indexOf(m_bChild));
+    }
+
+    public void testRenameInPlace()
+    {
+        int changes = m_mirror.m_changes;
+        m_b.setName("c");
+
+        assertModel();
+        assertEquals(changes + 1, m_mirror.m_changes);
+    }
+
+    public void testRandomChanges()
+    {
+        Random random = new Random(3);
+        List<Category> categories = new ArrayList<Category>();
+        categories.add(m_root);
+
+        for (int i = 0; i < 500; i++)
+        {
+            Category category = categories.get(random.nextInt(categories.size()));
+            int action = random.nextInt(10);
+
+            // few names, so that there are many siblings with the same name
+            String name = "n" + random.nextInt(8);
+
+            if (action < 6 || category == m_root)
+            {
+                categories.add(category.addCategoryChild(new Category(name)));
+            }
+            else if (action < 8)
+            {
+                category.setName(name);
+            }
+            else
+            {
+                category.remove();
+                categories.retainAll(m_root.getSubtreeList());
+            }
+
+            assertModel();
+        }
+    }
+
+    public void onCategoryEvent(int type, Category category)
+    {
+        m_model.onCategoryEvent(type, category);
+    }
+
+    public void onCardEvent(int type, Card card, Category category, int deck)
+    {
+    }
+
+    private void assertModel()
+    {
+        List<Category> expected = m_root.getSubtreeList();
+        assertEquals(expected, m_mirror.m_items);
+
+        assertEquals(expected.size(), m_model.getSize());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertSame(expected.get(i), m_model.getElementAt(i));
+        }
+    }
+}
@@ -18,12 +18,17 @@
  */
 package jmemorize.core.test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardBatchObserver;
+import jmemorize.core.CardChunk;
 import jmemorize.core.Category;
 import jmemorize.core.CategoryObserver;
 import junit.framework.TestCase;
@@ -129,6 +134,24 @@ public class CategoryTest extends TestCase implements CategoryObserver
         assertEquals(2, child3.getDepth());
     }
     
+    public void testAttachedSubtreeGetsDepths()
+    {
+        Category sub = new Category("sub");
+        Category mid = sub.addCategoryChild(new Category("mid"));
+        Category leaf = mid.addCategoryChild(new Category("leaf"));
+        
+        Category root = new Category("test root");
+        root.addCategoryChild(new Category("test child")).addCategoryChild(sub);
+        assertEquals(2, sub.getDepth());
+        assertEquals(3, mid.getDepth());
+        assertEquals(4, leaf.getDepth());
+        
+        Category z = root.addCategoryChild(new Category("z"));
+        assertTrue(Category.compareTreeOrder(leaf, z) < 0);
+        assertTrue(Category.compareTreeOrder(z, leaf) > 0);
+        assertTrue(Category.compareTreeOrder(sub, leaf) < 0);
+    }
+    
     public void testRemoveChildCategory()
     {
         Category root = new Category("test root");
@@ -472,6 +495,464 @@ public class CategoryTest extends TestCase implements CategoryObserver
         assertEquals(2, m_rootCategory.getNumberOfDecks());
     }
     
+    public void testChildCategoriesAreSortedNaturally()
+    {
+        Category root = new Category("root");
+        root.addCategoryChild(new Category("b10"));
+        root.addCategoryChild(new Category("a"));
+        root.addCategoryChild(new Category("b9"));
+        root.addCategoryChild(new Category("c"));
+        
+        assertEquals("[Category(a), Category(b9), Category(b10), Category(c)]", 
+            root.getChildCategories().toString());
+    }
+    
+    public void testGetChildCategoryByName()
+    {
+        Category root = new Category("root");
+        Category first = root.addCategoryChild(new Category("same"));
+        Category second = root.addCategoryChild(new Category("same"));
+        Category other = root.addCategoryChild(new Category("other"));
+        
+        assertSame(first, root.getChildCategory("same"));
+        assertSame(other, root.getChildCategory("other"));
+        assertNull(root.getChildCategory("missing"));
+        
+        first.remove();
+        assertSame(second, root.getChildCategory("same"));
+        
+        second.remove();
+        assertNull(root.getChildCategory("same"));
+    }
+    
+    public void testRenameChildCategory()
+    {
+        Category root = new Category("root");
+        Category a = root.addCategoryChild(new Category("a"));
+        Category b = root.addCategoryChild(new Category("b"));
+        
+        a.setName("c");
+        
+        assertNull(root.getChildCategory("a"));
+        assertSame(a, root.getChildCategory("c"));
+        assertEquals(Arrays.asList(b, a), root.getChildCategories());
+    }
+    
+    public void testCardIteratorMatchesGetCards()
+    {
+        Category grandChild = m_childCategory.addCategoryChild(new Category("grand_child"));
+        Category child2 = m_rootCategory.addCategoryChild(new Category("child2"));
+        
+        m_rootCategory.addCard(m_rootCard, 1);
+        m_childCategory.addCard(m_childCard, 0);
+        for (int i = 0; i < 12; i++)
+        {
+            Category[] categories = {m_rootCategory, m_childCategory, grandChild, child2};
+            categories[i % 4].addCard(new Card(new Date(), "card" + i, "bla"), i % 3);
+        }
+        
+        List<Card> iterated = new ArrayList<Card>();
+        for (Iterator<Card> it = m_rootCategory.getCardIterator(); it.hasNext();)
+        {
+            iterated.add(it.next());
+        }
+        
+        assertEquals(m_rootCategory.getCards(), iterated);
+        assertEquals(14, m_rootCategory.getCardCount());
+        assertEquals(m_childCategory.getCards().size(), m_childCategory.getCardCount());
+    }
+    
+    public void testCardIteratorOfEmptyCategory()
+    {
+        assertFalse(m_rootCategory.getCardIterator().hasNext());
+        assertEquals(0, m_rootCategory.getCardCount());
+    }
+    
+    public void testBatchUpdateDefersCardEvents()
+    {
+        m_rootCategory.beginUpdate();
+        m_rootCategory.addCard(m_rootCard);
+        m_childCategory.addCard(m_childCard, 2);
+        
+        assertEquals(0, m_events.size());
+        assertEquals(3, m_childCategory.getNumberOfDecks());
+        
+        m_rootCategory.endUpdate();
+        
+        assertEquals(3, m_rootCategory.getNumberOfDecks());
+        assertEquals(3, m_events.size());
+        ((CardEvent)m_events.get(0)).assertEvent(Category.ADDED_EVENT, m_rootCard, 0, m_rootCategory);
+        ((CardEvent)m_events.get(1)).assertEvent(Category.ADDED_EVENT, m_childCard, 2, m_childCategory);
+        ((CardEvent)m_events.get(2)).assertEvent(Category.ADDED_EVENT, m_childCard, 2, m_childCategory);
+    }
+    
+    public void testBatchUpdateOfAttachedSubtree()
+    {
+        Category sub = new Category("sub");
+        Category mid = sub.addCategoryChild(new Category("mid"));
+        Category leaf = mid.addCategoryChild(new Category("leaf"));
+        m_rootCategory.addCategoryChild(sub);
+        
+        // the event of the parent comes first, but its decks are adjusted
+        // after the ones of its descendants
+        m_rootCategory.beginUpdate();
+        sub.addCard(m_rootCard);
+        leaf.addCard(m_childCard, 4);
+        m_rootCategory.endUpdate();
+        
+        assertEquals(5, leaf.getNumberOfDecks());
+        assertEquals(5, mid.getNumberOfDecks());
+        assertEquals(5, sub.getNumberOfDecks());
+        assertEquals(5, m_rootCategory.getNumberOfDecks());
+    }
+    
+    public void testNestedBatchUpdate()
+    {
+        m_childCategory.beginUpdate();
+        m_rootCategory.beginUpdate();
+        m_childCategory.addCard(m_childCard);
+        m_rootCategory.endUpdate();
+        
+        assertEquals(0, m_events.size());
+        
+        m_childCategory.endUpdate();
+        assertEquals(2, m_events.size());
+    }
+    
+    public void testCategoryEventFlushesBatch()
+    {
+        m_rootCategory.beginUpdate();
+        m_childCategory.addCard(m_childCard);
+        m_childCategory.setName("renamed");
+        
+        assertEquals(4, m_events.size());
+        ((CardEvent)m_events.get(0)).assertEvent(Category.ADDED_EVENT, m_childCard, 0, m_childCategory);
+        ((CategoryEvent)m_events.get(2)).assertCategory(Category.EDITED_EVENT, m_childCategory);
+        
+        m_rootCategory.endUpdate();
+        assertEquals(4, m_events.size());
+    }
+    
+    public void testAddCardsFiresSingleBatchEvent()
+    {
+        BatchRecorder recorder = new BatchRecorder();
+        m_rootCategory.addObserver(recorder);
+        
+        Card card = new Card(new Date(), "card","bla");
+        List<Card> cards = Arrays.asList(m_rootCard, card);
+        m_rootCategory.addCards(cards, 1);
+        
+        assertEquals(1, recorder.m_batches.size());
+        assertEquals(cards, recorder.m_batches.get(0));
+        assertEquals(2, m_rootCategory.getCards(1).size());
+        assertEquals(2, m_events.size());
+    }
+    
+    public void testRemoveCardsFromChildCategories()
+    {
+        m_rootCategory.addCard(m_rootCard);
+        m_childCategory.addCard(m_childCard, 1);
+        
+        BatchRecorder recorder = new BatchRecorder();
+        m_rootCategory.addObserver(recorder);
+        
+        m_rootCategory.removeCards(Arrays.asList(m_rootCard, m_childCard));
+        
+        assertNull(m_rootCard.getCategory());
+        assertNull(m_childCard.getCategory());
+        assertEquals(0, m_rootCategory.getCards().size());
+        assertEquals(0, m_rootCategory.getNumberOfDecks());
+        
+        // one batch for each category
+        assertEquals(2, recorder.m_batches.size());
+        assertEquals(Arrays.asList(m_rootCard), recorder.m_batches.get(0));
+        assertEquals(Arrays.asList(m_childCard), recorder.m_batches.get(1));
+    }
+    
+    public void testChildIndex()
+    {
+        Category b = m_rootCategory.addCategoryChild(new Category("b"));
+        Category a = m_rootCategory.addCategoryChild(new Category("a"));
+        Category b2 = m_rootCategory.addCategoryChild(new Category("b"));
+        
+        List<Category> children = m_rootCategory.getChildCategories();
+        for (int i = 0; i < children.size(); i++)
+        {
+            assertEquals(i, m_rootCategory.getChildIndex(children.get(i)));
+        }
+        
+        assertEquals(0, m_rootCategory.getChildIndex(a));
+        assertEquals(1, m_rootCategory.getChildIndex(b));
+        assertEquals(2, m_rootCategory.getChildIndex(b2));
+        assertEquals(-1, b.getChildIndex(a));
+    }
+    
+    public void testCompareTreeOrder()
+    {
+        Category a = m_rootCategory.addCategoryChild(new Category("a"));
+        Category aChild = a.addCategoryChild(new Category("z"));
+        Category z = m_rootCategory.addCategoryChild(new Category("z"));
+        m_rootCategory.removeObserver(this);
+        
+        List<Category> order = m_rootCategory.getSubtreeList();
+        for (int i = 0; i < order.size(); i++)
+        {
+            for (int j = 0; j < order.size(); j++)
+            {
+                int result = Category.compareTreeOrder(order.get(i), order.get(j));
+                assertEquals(Integer.signum(i - j), Integer.signum(result));
+            }
+        }
+        
+        // a removed category keeps its place while its event is delivered
+        final Category[] removed = new Category[1];
+        final int[] results = new int[2];
+        final Category aFinal = a;
+        final Category zFinal = z;
+        m_rootCategory.addObserver(new CategoryObserver() {
+            public void onCategoryEvent(int type, Category category)
+            {
+                removed[0] = category;
+                results[0] = Category.compareTreeOrder(aFinal, category);
+                results[1] = Category.compareTreeOrder(category, zFinal);
+            }
+            
+            public void onCardEvent(int type, Card card, Category category, int deck)
+            {
+            }
+        });
+        
+        aChild.remove();
+        assertSame(aChild, removed[0]);
+        assertTrue(results[0] < 0);
+        assertTrue(results[1] < 0);
+    }
+    
+    public void testChunkIsLoadedWhenNeeded()
+    {
+        TestChunk chunk = new TestChunk(3);
+        m_childCategory.setCardChunk(chunk, false);
+        
+        assertFalse(m_childCategory.isCardsLoaded());
+        assertEquals(3, m_rootCategory.getCardCount());
+        assertEquals(2, m_rootCategory.getNumberOfDecks());
+        assertEquals(0, chunk.m_loads);
+        
+        List<Card> cards = m_rootCategory.getCards();
+        assertEquals(3, cards.size());
+        assertEquals(1, chunk.m_loads);
+        assertTrue(m_childCategory.isCardsLoaded());
+        
+        for (Card card : cards)
+            assertSame(m_childCategory, card.getCategory());
+        
+        assertEquals(1, m_childCategory.getLocalCards(1).get(0).getLevel());
+        assertTrue(m_events.isEmpty());
+    }
+    
+    public void testUnloadKeepsReferencedCards()
+    {
+        TestChunk chunk = new TestChunk(3);
+        m_childCategory.setCardChunk(chunk, false);
+        Card kept = m_childCategory.getLocalCards(0).get(0);
+        
+        assertTrue(m_childCategory.unloadCards());
+        assertFalse(m_childCategory.isCardsLoaded());
+        assertEquals(3, m_childCategory.getCardCount());
+        assertEquals(2, m_childCategory.getNumberOfDecks());
+        
+        assertSame(kept, m_childCategory.getLocalCards(0).get(0));
+        assertEquals(3, m_childCategory.getCards().size());
+        assertEquals(2, chunk.m_loads);
+    }
+    
+    public void testChangedCardsAreNotUnloaded()
+    {
+        m_childCategory.setCardChunk(new TestChunk(3), false);
+        m_childCategory.addCard(m_childCard);
+        
+        assertFalse(m_childCategory.unloadCards());
+        assertEquals(4, m_childCategory.getCards().size());
+        
+        // saving the cards to a new chunk makes them unchanged again
+        m_childCategory.setCardChunk(new TestChunk(4), true);
+        assertTrue(m_childCategory.unloadCards());
+    }
+    
+    public void testEditingUnloadedCardLoadsCategory()
+    {
+        m_childCategory.setCardChunk(new TestChunk(3), false);
+        Card card = m_childCategory.getLocalCards(0).get(0);
+        assertTrue(m_childCategory.unloadCards());
+        
+        card.setSides("edited", "bla");
+        
+        assertTrue(m_childCategory.isCardsLoaded());
+        assertFalse(m_childCategory.unloadCards());
+        assertSame(card, m_childCategory.getLocalCards(0).get(0));
+    }
+    
+    public void testCategoriesWithoutChunkAreNotUnloaded()
+    {
+        m_childCategory.addCard(m_childCard);
+        
+        assertFalse(m_childCategory.unloadCards());
+        assertTrue(m_childCategory.isCardsLoaded());
+    }
+    
+    public void testAddedCardsGetIds()
+    {
+        Card card = new Card("card", "bla");
+        assertEquals(0, card.getId());
+        
+        m_rootCategory.addCard(m_rootCard);
+        m_childCategory.addCard(card, 2);
+        
+        assertTrue(m_rootCard.getId() > 0);
+        assertTrue(card.getId() > m_rootCard.getId());
+        assertEquals(card.getId() + 1, m_rootCategory.getNextCardId());
+        
+        // the id stays with the card
+        long id = card.getId();
+        Category.moveCard(card, m_rootCategory);
+        Category.raiseCardLevel(card, new Date(), new Date());
+        m_rootCategory.removeCard(card);
+        m_childCategory.addCard(card);
+        assertEquals(id, card.getId());
+        
+        Card clone = (Card)card.clone();
+        assertEquals(0, clone.getId());
+        m_childCategory.addCard(clone);
+        assertEquals(id + 1, clone.getId());
+    }
+    
+    public void testCardsWithIdsRaiseNextId()
+    {
+        m_rootCard.setId(50);
+        m_childCategory.addCard(m_rootCard);
+        assertEquals(50, m_rootCard.getId());
+        
+        m_childCategory.addCard(m_childCard);
+        assertEquals(51, m_childCard.getId());
+        
+        assertEquals(52, m_rootCategory.reserveCardIds(10));
+        assertEquals(62, m_rootCategory.getNextCardId());
+    }
+    
+    public void testAttachedCategoryGetsNewIds()
+    {
+        m_rootCategory.addCard(m_rootCard);
+        
+        Category copy = new Category("copy");
+        copy.addCard(m_childCard);
+        copy.addCategoryChild(new Category("copy child")).addCard(new Card("a", "b"));
+        assertEquals(m_rootCard.getId(), m_childCard.getId());
+        
+        m_childCategory.addCategoryChild(copy);
+        
+        List<Long> ids = new ArrayList<Long>();
+        for (Card card : m_rootCategory.getCards())
+        {
+            assertFalse(ids.contains(card.getId()));
+            ids.add(card.getId());
+        }
+        assertEquals(3, ids.size());
+    }
+    
+    public void testChunkCardsWithoutIdsAreNotUnloaded()
+    {
+        m_rootCategory.addCard(m_rootCard);
+        m_childCategory.setCardChunk(new TestChunk(3, false), false);
+        
+        List<Card> cards = m_rootCategory.getCards();
+        for (Card card : cards)
+            assertTrue(card.getId() > 0);
+        assertTrue(cards.get(1).getId() != cards.get(2).getId());
+        
+        // the new ids are kept until the cards are saved
+        assertFalse(m_childCategory.unloadCards());
+        
+        Card card = m_childCategory.getLocalCards(0).get(0);
+        assertTrue(card.getId() > m_rootCard.getId());
+        assertTrue(card.getId() < m_rootCategory.getNextCardId());
+    }
+    
+    /**
+     * Creates new cards on every load, two in deck 0 and the rest in deck 1.
+     */
+    private static class TestChunk implements CardChunk
+    {
+        private final int     m_cards;
+        private final boolean m_ids;
+        private int           m_loads;
+        
+        public TestChunk(int cards)
+        {
+            this(cards, true);
+        }
+        
+        /**
+         * @param ids <code>false</code> if the cards should be loaded without
+         * ids, like the ones of chunks that were written before cards had ids.
+         */
+        public TestChunk(int cards, boolean ids)
+        {
+            m_cards = cards;
+            m_ids = ids;
+        }
+        
+        public int getCardCount()
+        {
+            return m_cards;
+        }
+        
+        public int getNumberOfDecks()
+        {
+            return 2;
+        }
+        
+        public List<List<Card>> loadDecks()
+        {
+            m_loads++;
+            
+            List<List<Card>> decks = new ArrayList<List<Card>>();
+            decks.add(new ArrayList<Card>());
+            decks.add(new ArrayList<Card>());
+            for (int i = 0; i < m_cards; i++)
+            {
+                Card card = new Card("card " + i, "bla");
+                if (m_ids)
+                    card.setId(100 + i);
+                
+                if (i >= 2)
+                    card.setDateExpired(new Date());
+                
+                decks.get(Math.min(i / 2, 1)).add(card);
+            }
+            
+            return decks;
+        }
+    }
+    
+    private static class BatchRecorder implements CardBatchObserver
+    {
+        private List<List<Card>> m_batches = new ArrayList<List<Card>>();
+        
+        public void onCardsEvent(int type, List<Card> cards, Category category)
+        {
+            m_batches.add(new ArrayList<Card>(cards));
+        }
+        
+        public void onCardEvent(int type, Card card, Category category, int deck)
+        {
+            m_batches.add(Arrays.asList(card));
+        }
+        
+        public void onCategoryEvent(int type, Category category)
+        {
+        }
+    }
+    
     /*
      * @see jmemorize.core.CategoryObserver
      */
@@ -0,0 +1,272 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JComboBox;
+import javax.swing.JTree;
+import javax.swing.SwingUtilities;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.CategoryObserver;
+import jmemorize.gui.swing.widgets.CategoryListModel;
+
+/**
+ * Measures how long a category combo box and a category tree take to follow
+ * category events on a taxonomy of 20k categories. Before, the combo box
+ * built its model again and the tree searched the node of the category and
+ * reloaded its parent on every event. Now both apply each event to their
+ * models. The category tree widget can't be created without a display, so
+ * its old and new event handling are run on a plain tree.
+ */
+public class CategoryViewBenchmark
+{
+    private static final int TOP_CATEGORIES = 100;
+    private static final int CHILDREN       = 200;
+    private static final int OPERATIONS     = 500;
+
+    /**
+     * The combo box and tree handling from before.
+     */
+    private static class OldViews implements CategoryObserver
+    {
+        private final Category         m_root;
+        private final JComboBox        m_comboBox = new JComboBox();
+        private final DefaultTreeModel m_treeModel;
+
+        public OldViews(Category root)
+        {
+            m_root = root;
+            m_treeModel = new DefaultTreeModel(createNode(root, null));
+            new JTree(m_treeModel);
+            updateComboBox();
+        }
+
+        public void onCategoryEvent(int type, Category category)
+        {
+            updateComboBox();
+
+            DefaultMutableTreeNode parent = getNode(category.getParent());
+            if (type == ADDED_EVENT)
+            {
+                int index = category.getParent().getChildCategories().indexOf(category);
+                parent.insert(createNode(category, null), index);
+            }
+            else
+            {
+                DefaultMutableTreeNode node = getNode(category);
+                int index = category.getParent().getChildCategories().indexOf(category);
+                if (parent.getIndex(node) != index)
+                {
+                    parent.remove(node);
+                    parent.insert(node, index);
+                }
+            }
+            m_treeModel.reload(parent);
+        }
+
+        public void onCardEvent(int type, Card card, Category category, int deck)
+        {
+        }
+
+        private void updateComboBox()
+        {
+            Object selected = m_comboBox.getModel().getSelectedItem();
+            List<Category> categories = m_root.getSubtreeList();
+            DefaultComboBoxModel model = new DefaultComboBoxModel(categories.toArray());
+            if (categories.contains(selected))
+                model.setSelectedItem(selected);
+
+            m_comboBox.setModel(model);
+        }
+
+        private DefaultMutableTreeNode getNode(Category category)
+        {
+            DefaultMutableTreeNode root = (DefaultMutableTreeNode)m_treeModel.getRoot();
+            for (Enumeration e = root.depthFirstEnumeration(); e.hasMoreElements();)
+            {
+                DefaultMutableTreeNode node = (DefaultMutableTreeNode)e.nextElement();
+                if (node.getUserObject() == category)
+                    return node;
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * The combo box and tree handling from now on.
+     */
+    private static class NewViews implements CategoryObserver
+    {
+        private final CategoryListModel m_listModel;
+        private final DefaultTreeModel  m_treeModel;
+        private final Map<Category, DefaultMutableTreeNode> m_nodes = 
+            new IdentityHashMap<Category, DefaultMutableTreeNode>();
+
+        public NewViews(Category root)
+        {
+            m_listModel = new CategoryListModel(root);
+            new JComboBox(m_listModel);
+
+            m_treeModel = new DefaultTreeModel(createNode(root, m_nodes));
+            new JTree(m_treeModel);
+        }
+
+        public void onCategoryEvent(int type, Category category)
+        {
+            m_listModel.onCategoryEvent(type, category);
+
+            Category parent = category.getParent();
+            DefaultMutableTreeNode parentNode = m_nodes.get(parent);
+            int index = parent.getChildIndex(category);
+            if (type == ADDED_EVENT)
+            {
+                m_treeModel.insertNodeInto(createNode(category, m_nodes), 
+                    parentNode, index);
+            }
+            else
+            {
+                DefaultMutableTreeNode node = m_nodes.get(category);
+                if (parentNode.getIndex(node) != index)
+                {
+                    m_treeModel.removeNodeFromParent(node);
+                    m_treeModel.insertNodeInto(node, parentNode, index);
+                }
+                else
+                {
+                    m_treeModel.nodeChanged(node);
+                }
+            }
+        }
+
+        public void onCardEvent(int type, Card card, Category category, int deck)
+        {
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run()
+            {
+                for (boolean old : new boolean[] {true, false})
+                {
+                    runViews(old);
+                }
+            }
+        });
+    }
+
+    private static void runViews(boolean old)
+    {
+        String mode = old ? "before: " : "after: ";
+        Random random = new Random(42);
+
+        // the bulk insertion of the taxonomy is only measured for the new
+        // views, the old ones would take several minutes
+        Category root = new Category("root");
+        List<Category> topCategories = new ArrayList<Category>();
+        List<Category> categories = new ArrayList<Category>();
+        CategoryObserver views = old ? null : new NewViews(root);
+        if (views != null)
+            root.addObserver(views);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < TOP_CATEGORIES; i++)
+        {
+            Category top = root.addCategoryChild(new Category(randomWord(random)));
+            topCategories.add(top);
+            for (int j = 0; j < CHILDREN; j++)
+            {
+                categories.add(top.addCategoryChild(new Category(randomWord(random))));
+            }
+        }
+        if (views != null)
+        {
+            print(mode + "insert taxonomy", TOP_CATEGORIES * (CHILDREN + 1), 
+                System.nanoTime() - start);
+            root.removeObserver(views);
+        }
+
+        views = old ? new OldViews(root) : new NewViews(root);
+        root.addObserver(views);
+
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++)
+        {
+            Category top = topCategories.get(random.nextInt(TOP_CATEGORIES));
+            top.addCategoryChild(new Category(randomWord(random)));
+        }
+        print(mode + "insert into 20k categories", OPERATIONS, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++)
+        {
+            categories.get(random.nextInt(categories.size())).setName(randomWord(random));
+        }
+        print(mode + "rename in 20k categories", OPERATIONS, System.nanoTime() - start);
+
+        root.removeObserver(views);
+    }
+
+    private static DefaultMutableTreeNode createNode(Category category, 
+        Map<Category, DefaultMutableTreeNode> nodes)
+    {
+        DefaultMutableTreeNode node = new DefaultMutableTreeNode(category);
+        if (nodes != null)
+            nodes.put(category, node);
+
+        for (Category child : category.getChildCategories())
+        {
+            node.add(createNode(child, nodes));
+        }
+
+        return node;
+    }
+
+    private static void print(String label, int ops, long nanos)
+    {
+        double nsPerOp = (double)nanos / ops;
+        System.out.println(String.format("%-48s %12.1f ns/op %12.0f ops/s", 
+            label, nsPerOp, 1e9 / nsPerOp));
+    }
+
+    private static String randomWord(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int length = 4 + random.nextInt(6);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char)('a' + random.nextInt(26)));
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.concurrent.Callable;
+
+import javax.swing.SwingUtilities;
+
+import jmemorize.gui.swing.CoalescingUpdater;
+import junit.framework.TestCase;
+
+public class CoalescingUpdaterTest extends TestCase
+{
+    private class CountingUpdater extends CoalescingUpdater<Integer>
+    {
+        private int     m_prepared;
+        private int     m_applied;
+        private int     m_value;
+        private boolean m_computedOnEventThread;
+        private boolean m_appliedOffEventThread;
+
+        public CountingUpdater(int interval)
+        {
+            super(interval);
+        }
+
+        protected Callable<Integer> prepare()
+        {
+            m_prepared++;
+            final int value = m_model;
+
+            return new Callable<Integer>() {
+                public Integer call()
+                {
+                    if (SwingUtilities.isEventDispatchThread())
+                        m_computedOnEventThread = true;
+
+                    return new Integer(value);
+                }
+            };
+        }
+
+        protected void apply(Integer value)
+        {
+            if (!SwingUtilities.isEventDispatchThread())
+                m_appliedOffEventThread = true;
+
+            m_applied++;
+            m_value = value.intValue();
+        }
+    }
+
+    private volatile int m_model;
+
+    public void testCoalescesChanges() throws Exception
+    {
+        CountingUpdater updater = new CountingUpdater(200);
+
+        for (int i = 1; i <= 1000; i++)
+        {
+            m_model = i;
+            updater.markDirty();
+        }
+        waitForUpdates(updater);
+
+        // the first change starts an update right away, the others are
+        // coalesced into the next one
+        assertTrue(updater.m_prepared <= 2);
+        assertEquals(updater.m_prepared, updater.m_applied);
+        assertEquals(1000, updater.m_value);
+    }
+
+    public void testComputesOffEventThread() throws Exception
+    {
+        CountingUpdater updater = new CountingUpdater(10);
+
+        m_model = 42;
+        updater.markDirty();
+        waitForUpdates(updater);
+
+        assertEquals(42, updater.m_value);
+        assertFalse(updater.m_computedOnEventThread);
+        assertFalse(updater.m_appliedOffEventThread);
+    }
+
+    public void testMeasuresLatency() throws Exception
+    {
+        CountingUpdater updater = new CountingUpdater(50);
+
+        updater.markDirty();
+        waitForUpdates(updater);
+        updater.markDirty();
+        waitForUpdates(updater);
+
+        assertEquals(2, updater.getUpdateCount());
+        assertTrue(updater.getLastLatency() > 0);
+        assertTrue(updater.getMaxLatency() >= updater.getAverageLatency());
+    }
+
+    private void waitForUpdates(final CoalescingUpdater<?> updater)
+        throws Exception
+    {
+        final boolean[] pending = {true};
+        for (int i = 0; i < 200 && pending[0]; i++)
+        {
+            Thread.sleep(20);
+
+            // the latency is recorded with a later event than the update
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run()
+                {
+                    pending[0] = updater.isPending();
+                }
+            });
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run()
+                {
+                }
+            });
+        }
+
+        assertFalse(pending[0]);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.io.CsvBuilder;
+
+import com.csvreader.CsvWriter;
+
+/**
+ * Measures the throughput and the peak heap of exporting a large lesson to
+ * CSV. The <i>legacy</i> row collects all cards with getCards() and writes
+ * them through an unbuffered CsvWriter, like CsvBuilder did before the export
+ * was streamed. The number of cards can be given as first argument.
+ */
+public class CsvExportBenchmark
+{
+    private static final Charset CHARSET    = Charset.forName("UTF-8");
+    private static final int     CATEGORIES = 20;
+    private static final int     LEVELS     = 5;
+    
+    public static void main(String[] args) throws Exception
+    {
+        int cards = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        Lesson lesson = createLesson(cards);
+        File file = File.createTempFile("jmemorize-export", ".csv");
+        try
+        {
+            // warm up the JIT
+            legacyExport(lesson, file);
+            export(lesson, file);
+            
+            System.out.println("exporting " + cards + " cards");
+            
+            long heap = startMeasurement();
+            long start = System.nanoTime();
+            legacyExport(lesson, file);
+            report("legacy export (getCards, unbuffered)", cards, start, heap);
+            
+            heap = startMeasurement();
+            start = System.nanoTime();
+            export(lesson, file);
+            report("streaming export", cards, start, heap);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+    
+    private static Lesson createLesson(int cards)
+    {
+        Category root = new Category("root");
+        Category[] categories = new Category[CATEGORIES];
+        for (int i = 0; i < CATEGORIES; i++)
+        {
+            categories[i] = root.addCategoryChild(new Category("category" + i));
+        }
+        
+        Date now = new Date();
+        root.beginUpdate();
+        for (int i = 0; i < cards; i++)
+        {
+            Card card = new Card(now, "<b>word</b> " + i, "meaning <i>" + i + "</i>");
+            categories[i % CATEGORIES].addCard(card, i % LEVELS);
+        }
+        root.endUpdate();
+        
+        return new Lesson(root, false);
+    }
+    
+    /**
+     * Collects the garbage and resets the peak usage of the heap pools.
+     * 
+     * @return the used heap after collecting.
+     */
+    private static long startMeasurement()
+    {
+        long used = BenchmarkTimer.usedHeap();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        }
+        
+        return used;
+    }
+    
+    private static void report(String label, int cards, long start, long heap)
+    {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        
+        System.out.println(String.format("%-40s %8.2f s %10.0f cards/s %8d KiB peak heap above lesson", 
+            label, seconds, cards / seconds, Math.max(0, peak - heap) / 1024));
+    }
+    
+    private static void export(Lesson lesson, File file) throws Exception
+    {
+        OutputStream out = new FileOutputStream(file);
+        CsvBuilder.exportLesson(out, lesson, ',', CHARSET);
+    }
+    
+    /**
+     * The former export of CsvBuilder.
+     */
+    private static void legacyExport(Lesson lesson, File file) throws Exception
+    {
+        CsvWriter writer = new CsvWriter(new FileOutputStream(file), ',', CHARSET);
+        writer.write("Frontside");
+        writer.write("Flipside");
+        writer.write("Category");
+        writer.write("Level");
+        writer.endRecord();
+        
+        List<Card> cards = lesson.getRootCategory().getCards();
+        for (Card card : cards)
+        {
+            writer.write(card.getFrontSide().getText().getFormatted());
+            writer.write(card.getBackSide().getText().getFormatted());
+            
+            if (lesson.getRootCategory() == card.getCategory())
+                writer.write("");
+            else
+                writer.write(card.getCategory().getName());
+            
+            writer.write(Integer.toString(card.getLevel()));
+            writer.endRecord();
+        }
+        
+        writer.close();
+    }
+}
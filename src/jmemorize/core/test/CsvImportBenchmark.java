@@ -0,0 +1,149 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.FormattedText;
+import jmemorize.core.Lesson;
+import jmemorize.core.io.CsvImporter;
+
+import com.csvreader.CsvReader;
+
+/**
+ * Measures the rows per second of importing a large generated CSV file. The
+ * <i>legacy</i> row reads, parses and inserts every record on one thread and
+ * fires an event per card, like CsvBuilder did before the import pipeline.
+ * The number of rows can be given as first argument. Run with a big heap
+ * (e.g. -Xmx4g) for multi-million-row files.
+ */
+public class CsvImportBenchmark
+{
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    
+    public static void main(String[] args) throws Exception
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        
+        File warmupFile = createFile(100000);
+        File file = createFile(rows);
+        try
+        {
+            // warm up the JIT
+            legacyImport(warmupFile, new Lesson(false));
+            pipelineImport(warmupFile, new Lesson(false));
+            
+            System.out.println("importing " + rows + " rows, " + 
+                file.length() / 1024 + " KiB");
+            
+            long start = System.nanoTime();
+            legacyImport(file, new Lesson(false));
+            report("legacy import (single thread)", rows, start);
+            
+            start = System.nanoTime();
+            pipelineImport(file, new Lesson(false));
+            report("import pipeline", rows, start);
+        }
+        finally
+        {
+            warmupFile.delete();
+            file.delete();
+        }
+    }
+    
+    private static void report(String label, int rows, long start)
+    {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-48s %12.2f s %12.0f rows/s", 
+            label, seconds, rows / seconds));
+        
+        BenchmarkTimer.usedHeap(); // collect the imported lesson
+    }
+    
+    private static File createFile(int rows) throws IOException
+    {
+        File file = File.createTempFile("jmemorize-import", ".csv");
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file), CHARSET));
+        try
+        {
+            out.write("Frontside,Flipside,Category,Level\n");
+            for (int i = 0; i < rows; i++)
+            {
+                out.write("\"<b>word</b> " + i + "\",\"meaning <i>" + i + 
+                    "</i> &amp; more\",category" + (i % 50) + "," + (i % 4) + "\n");
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        
+        return file;
+    }
+    
+    private static void pipelineImport(File file, Lesson lesson) throws Exception
+    {
+        InputStream in = new FileInputStream(file);
+        new CsvImporter(',', CHARSET).importLesson(in, lesson);
+    }
+    
+    /**
+     * The former import loop of CsvBuilder.
+     */
+    private static void legacyImport(File file, Lesson lesson) throws Exception
+    {
+        CsvReader reader = new CsvReader(new FileInputStream(file), ',', CHARSET);
+        Category rootCategory = lesson.getRootCategory();
+        
+        reader.readHeaders();
+        while (reader.readRecord())
+        {
+            FormattedText frontSide = FormattedText.formatted(reader.get("Frontside"));
+            FormattedText flipSide = FormattedText.formatted(reader.get("Flipside"));
+            
+            if (frontSide.getUnformatted().length() == 0 || 
+                flipSide.getUnformatted().length() == 0)
+                throw new IOException("empty card");
+            
+            Card card = new Card(frontSide, flipSide);
+            
+            String categoryName = reader.get("Category");
+            Category category = rootCategory.getChildCategory(categoryName);
+            if (category == null)
+            {
+                category = new Category(categoryName);
+                rootCategory.addCategoryChild(category);
+            }
+            
+            category.addCard(card, Integer.parseInt(reader.get("Level")));
+        }
+        reader.close();
+    }
+}
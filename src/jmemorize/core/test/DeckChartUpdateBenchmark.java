@@ -0,0 +1,145 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.SwingUtilities;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.gui.swing.CoalescingUpdater;
+import jmemorize.gui.swing.panels.DeckChartPanel;
+
+/**
+ * Measures how much event dispatch thread time a burst of single card
+ * events costs the deck chart. Before, the chart counted all cards on every
+ * event. Now the events are coalesced and the cards are counted on a
+ * background thread. Also prints the latency from the events until the
+ * chart was repainted. The number of cards can be given as first argument.
+ */
+public class DeckChartUpdateBenchmark
+{
+    private static final int CATEGORIES = 200;
+    private static final int DECKS      = 6;
+    private static final int BURST      = 10000;
+
+    public static void main(String[] args) throws Exception
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        Random random = new Random(42);
+        final Category root = new Category("root");
+        final List<Category> categories = new ArrayList<Category>();
+        for (int i = 0; i < CATEGORIES; i++)
+        {
+            categories.add(root.addCategoryChild(new Category("category " + i)));
+        }
+
+        root.beginUpdate();
+        for (int i = 0; i < count; i++)
+        {
+            categories.get(random.nextInt(CATEGORIES)).addCard(
+                new Card("front " + i, "back " + i), random.nextInt(DECKS));
+        }
+        root.endUpdate();
+
+        // the counting that the chart did for every card event
+        BenchmarkTimer.measure("count per event (before)", 1, new Runnable() {
+            public void run()
+            {
+                countBars(root);
+            }
+        });
+
+        final DeckChartPanel[] panel = new DeckChartPanel[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run()
+            {
+                panel[0] = new DeckChartPanel(null);
+                panel[0].setSize(800, 300);
+                panel[0].setCategory(root);
+            }
+        });
+        final CoalescingUpdater<?> updater = panel[0].getUpdater();
+        waitForUpdates(updater);
+
+        final long[] eventTime = new long[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run()
+            {
+                int before = updater.getUpdateCount();
+                long start = System.nanoTime();
+                for (int i = 0; i < BURST; i++)
+                {
+                    categories.get(i % CATEGORIES).addCard(
+                        new Card("pasted " + i, "x"));
+                }
+                eventTime[0] = System.nanoTime() - start;
+
+                System.out.println("updates during burst: " + 
+                    (updater.getUpdateCount() - before));
+            }
+        });
+        int updates = updater.getUpdateCount();
+        waitForUpdates(updater);
+
+        System.out.println(String.format(
+            "%d events on the event thread: %.1f ms, %.1f us/event", BURST, 
+            eventTime[0] / 1e6, eventTime[0] / 1e3 / BURST));
+        System.out.println("updates after burst: " + 
+            (updater.getUpdateCount() - updates));
+        System.out.println(String.format("event to paint latency: last %.1f ms, " +
+            "max %.1f ms, average %.1f ms", updater.getLastLatency(), 
+            updater.getMaxLatency(), updater.getAverageLatency()));
+    }
+
+    private static void countBars(Category category)
+    {
+        category.getLearnedCards().size();
+        category.getExpiredCards().size();
+        category.getUnlearnedCards().size();
+
+        for (int level = 0; level < category.getNumberOfDecks(); level++)
+        {
+            category.getLearnedCards(level).size();
+            category.getExpiredCards(level).size();
+        }
+    }
+
+    private static void waitForUpdates(final CoalescingUpdater<?> updater)
+        throws Exception
+    {
+        final boolean[] pending = {true};
+        while (pending[0])
+        {
+            Thread.sleep(20);
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run()
+                {
+                    pending[0] = updater.isPending();
+                }
+            });
+        }
+
+        Thread.sleep(20);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.CategoryObserver;
+import jmemorize.gui.swing.widgets.CardSorter;
+import jmemorize.gui.swing.widgets.CardTable;
+
+/**
+ * Measures the latency of single card events for the table of the main
+ * window. The old way reloads all cards of the category, sorts them and
+ * counts them for the status bar on every event. The new way inserts,
+ * removes or updates the single row of the card. The table itself can't be
+ * created without a display, so both ways are run on the {@link CardSorter}
+ * that backs it. The number of cards can be given as first argument.
+ */
+public class DeckTableEventBenchmark
+{
+    private static final int CATEGORIES = 200;
+    private static final int EVENTS     = 200;
+
+    /**
+     * Keeps a sorted view of all cards of a category, like the deck table
+     * panel does when all decks are shown.
+     */
+    private static class View implements CategoryObserver
+    {
+        private final Category   m_category;
+        private final CardSorter m_sorter = new CardSorter();
+        private final boolean    m_reload;
+
+        public View(Category category, boolean reload)
+        {
+            m_category = category;
+            m_reload = reload;
+
+            m_sorter.sort(CardTable.COLUMN_FRONTSIDE, false);
+            m_sorter.setCards(category.getCards());
+        }
+
+        public void onCardEvent(int type, Card card, Category category, int deck)
+        {
+            if (m_reload)
+            {
+                m_sorter.setCards(m_category.getCards());
+                countCards(m_sorter.getCards());
+                return;
+            }
+
+            switch (type)
+            {
+            case REMOVED_EVENT:
+                m_sorter.remove(card);
+                break;
+
+            case ADDED_EVENT:
+            case MOVED_EVENT:
+            case DECK_EVENT:
+                if (!m_sorter.contains(card))
+                    m_sorter.add(card);
+                else
+                    m_sorter.update(card);
+                break;
+
+            default:
+                m_sorter.update(card);
+            }
+
+            m_sorter.getLearnedCount();
+        }
+
+        public void onCategoryEvent(int type, Category category)
+        {
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        Random random = new Random(42);
+        Category root = new Category("root");
+        List<Category> categories = new ArrayList<Category>();
+        for (int i = 0; i < CATEGORIES / 20; i++)
+        {
+            Category child = root.addCategoryChild(new Category("category " + i));
+            for (int j = 0; j < 20; j++)
+            {
+                categories.add(child.addCategoryChild(new Category("topic " + j)));
+            }
+        }
+
+        root.beginUpdate();
+        for (int i = 0; i < count; i++)
+        {
+            Card card = new Card(randomWord(random) + " " + randomWord(random),
+                randomWord(random));
+            categories.get(random.nextInt(categories.size())).addCard(card,
+                random.nextInt(5));
+        }
+        root.endUpdate();
+
+        final Category source = categories.get(0);
+        final Category target = categories.get(1);
+        final Card card = source.getLocalCards().get(0);
+        final Random editRandom = new Random(7);
+
+        for (boolean reload : new boolean[] {true, false})
+        {
+            View view = new View(root, reload);
+            root.addObserver(view);
+
+            String mode = reload ? "reload, " : "row update, ";
+            int events = reload ? EVENTS / 20 : EVENTS;
+            final int pairs = events / 2;
+
+            BenchmarkTimer.measure(mode + "added/removed", 2 * pairs, new Runnable() {
+                public void run()
+                {
+                    for (int i = 0; i < pairs; i++)
+                    {
+                        Card newCard = new Card(randomWord(editRandom), "x");
+                        source.addCard(newCard);
+                        source.removeCard(newCard);
+                    }
+                }
+            });
+
+            BenchmarkTimer.measure(mode + "moved", 2 * pairs, new Runnable() {
+                public void run()
+                {
+                    for (int i = 0; i < pairs; i++)
+                    {
+                        Category.moveCard(card, target);
+                        Category.moveCard(card, source);
+                    }
+                }
+            });
+
+            BenchmarkTimer.measure(mode + "deck", 2 * pairs, new Runnable() {
+                public void run()
+                {
+                    for (int i = 0; i < pairs; i++)
+                    {
+                        Category.raiseCardLevel(card, new Date(), new Date());
+                        Category.resetCardLevel(card, new Date());
+                    }
+                }
+            });
+
+            BenchmarkTimer.measure(mode + "edited", 2 * pairs, new Runnable() {
+                public void run()
+                {
+                    for (int i = 0; i < 2 * pairs; i++)
+                    {
+                        card.setSides(randomWord(editRandom), "x");
+                    }
+                }
+            });
+
+            root.removeObserver(view);
+        }
+    }
+
+    /**
+     * Counts the cards like the status bar does.
+     */
+    private static int countCards(List<Card> cards)
+    {
+        int learned = 0;
+        for (Card card : cards)
+        {
+            if (card.isLearned())
+                learned++;
+        }
+
+        return learned;
+    }
+
+    private static String randomWord(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int length = 4 + random.nextInt(6);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char)('a' + random.nextInt(26)));
+        }
+
+        return sb.toString();
+    }
+}
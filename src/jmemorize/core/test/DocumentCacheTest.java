@@ -0,0 +1,124 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.text.StyledDocument;
+
+import jmemorize.core.Card;
+import jmemorize.core.FormattedText;
+import jmemorize.gui.swing.DocumentCache;
+import junit.framework.TestCase;
+
+public class DocumentCacheTest extends TestCase
+{
+    private static final long TIMEOUT = 5000;
+
+    private DocumentCache     m_cache;
+
+    protected void setUp() throws Exception
+    {
+        m_cache = DocumentCache.getInstance();
+        m_cache.clear();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        m_cache.clear();
+    }
+
+    public void testEvictsLeastRecentlyPrefetched() throws Exception
+    {
+        List<Card> cards = createCards(10);
+        m_cache.prefetch(cards);
+        waitFor(cards.get(9).getBackSide().getText());
+
+        // 20 sides, but only 16 documents are kept
+        assertEquals(16, m_cache.size());
+        assertFalse(m_cache.contains(cards.get(0).getFrontSide().getText()));
+        assertFalse(m_cache.contains(cards.get(1).getBackSide().getText()));
+        assertTrue(m_cache.contains(cards.get(2).getFrontSide().getText()));
+        assertTrue(m_cache.contains(cards.get(9).getFrontSide().getText()));
+    }
+
+    public void testTakeHandsOutPrefetchedDocumentOnce() throws Exception
+    {
+        Card card = createCards(1).get(0);
+        FormattedText text = card.getFrontSide().getText();
+        m_cache.prefetch(Collections.singletonList(card));
+        waitFor(card.getBackSide().getText());
+
+        int hits = m_cache.getHits();
+        int misses = m_cache.getMisses();
+
+        StyledDocument prefetched = m_cache.take(text);
+        assertEquals(hits + 1, m_cache.getHits());
+        assertFalse(m_cache.contains(text));
+
+        // the second document is built again on the calling thread
+        StyledDocument built = m_cache.take(text);
+        assertEquals(misses + 1, m_cache.getMisses());
+        assertNotSame(prefetched, built);
+        assertEquals(text, FormattedText.formatted(built));
+        assertEquals(text, FormattedText.formatted(prefetched));
+    }
+
+    public void testLooksUpDocumentsByEqualTexts() throws Exception
+    {
+        Card card = createCards(1).get(0);
+        FormattedText text = card.getFrontSide().getText();
+        m_cache.prefetch(Collections.singletonList(card));
+        waitFor(card.getBackSide().getText());
+
+        FormattedText equalText = FormattedText.formatted(text.getFormatted());
+        assertNotSame(text, equalText);
+        assertTrue(m_cache.contains(equalText));
+
+        int hits = m_cache.getHits();
+        m_cache.take(equalText);
+        assertEquals(hits + 1, m_cache.getHits());
+        assertFalse(m_cache.contains(text));
+    }
+
+    private static List<Card> createCards(int count)
+    {
+        List<Card> cards = new ArrayList<Card>(count);
+        for (int i = 0; i < count; i++)
+            cards.add(new Card("front " + i, "back " + i));
+
+        return cards;
+    }
+
+    /**
+     * Waits until the document of given text is prepared. The requests are
+     * prepared in the order of the cards.
+     */
+    private void waitFor(FormattedText text) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (!m_cache.contains(text))
+        {
+            assertTrue(System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jmemorize.core.Card;
+import jmemorize.core.DuplicateFinder;
+
+/**
+ * Measures finding duplicates among random cards, of which every 100th is a
+ * copy of an earlier card with one word changed or added. The number of cards
+ * can be given as first argument. Run with a large fixed heap (e.g. -Xms2g
+ * -Xmx2g) to get stable numbers.
+ */
+public class DuplicateFinderBenchmark
+{
+    private static final int    WORDS = 50000;
+
+    private static volatile int s_sink;
+
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        Random random = new Random(42);
+        String[] words = new String[WORDS];
+        for (int i = 0; i < WORDS; i++)
+        {
+            words[i] = randomWord(random);
+        }
+
+        final List<Card> cards = new ArrayList<Card>();
+        int copies = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (i > 0 && i % 100 == 0)
+            {
+                Card original = cards.get(random.nextInt(i));
+                cards.add(new Card(original.getFrontSide().getText().getUnformatted(),
+                    original.getBackSide().getText().getUnformatted() + " " +
+                    words[random.nextInt(WORDS)]));
+                copies++;
+                continue;
+            }
+
+            String front = words[random.nextInt(WORDS)] + " " +
+                words[random.nextInt(WORDS)] + " " + words[random.nextInt(WORDS)];
+            String back = words[random.nextInt(WORDS)] + " " +
+                words[random.nextInt(WORDS)] + " " + words[random.nextInt(WORDS)] +
+                " " + words[random.nextInt(WORDS)];
+            cards.add(new Card(front, back));
+        }
+
+        List<List<Card>> groups = new DuplicateFinder(cards).find(null);
+        int found = 0;
+        for (List<Card> group : groups)
+        {
+            found += group.size() - 1;
+        }
+        System.out.println(String.format("%d cards, %d near duplicates, %d found in %d groups",
+            count, copies, found, groups.size()));
+
+        BenchmarkTimer.measure("find duplicates in " + count + " cards", 1, new Runnable() {
+            public void run()
+            {
+                s_sink += new DuplicateFinder(cards).find(null).size();
+            }
+        });
+    }
+
+    private static String randomWord(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int length = 4 + random.nextInt(6);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char)('a' + random.nextInt(26)));
+        }
+
+        return sb.toString();
+    }
+}
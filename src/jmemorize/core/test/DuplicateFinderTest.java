@@ -0,0 +1,157 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jmemorize.core.Card;
+import jmemorize.core.DuplicateFinder;
+import junit.framework.TestCase;
+
+public class DuplicateFinderTest extends TestCase
+{
+    private List<Card> m_cards = new ArrayList<Card>();
+
+    public void testExactDuplicates()
+    {
+        Card card0 = addCard("the mitochondria", "power plant of the cell");
+        addCard("nucleus", "contains the genome");
+        Card card2 = addCard("the mitochondria", "power plant of the cell");
+
+        assertGroups(find(), list(card0, card2));
+    }
+
+    public void testNearDuplicates()
+    {
+        Card card0 = addCard("The Mitochondria", "power  plant of the cell");
+        Card card1 = addCard("the mitochondria", "power plant of a cell");
+        Card card2 = addCard("the mitochondrium", "power plant of the cell.");
+        addCard("the ribosome", "builds the proteins");
+
+        assertGroups(find(), list(card0, card1, card2));
+    }
+
+    public void testDifferentCardsAreNoDuplicates()
+    {
+        addCard("house", "Haus");
+        addCard("mouse", "Maus");
+        addCard("horse", "Pferd");
+        addCard("Haus", "house");
+
+        assertEquals(0, find().size());
+    }
+
+    public void testSeveralGroupsInCardOrder()
+    {
+        Card card0 = addCard("dog", "Hund");
+        Card card1 = addCard("cat", "Katze");
+        Card card2 = addCard("cat", "Katze");
+        Card card3 = addCard("dog", "Hund");
+        Card card4 = addCard("dog", "Hund");
+
+        assertGroups(find(), list(card0, card3, card4), list(card1, card2));
+    }
+
+    public void testManyCards()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++)
+        {
+            addCard(randomWord(random), randomWord(random) + " " + randomWord(random));
+        }
+        Card original = m_cards.get(1234);
+        Card copy = addCard(original.getFrontSide().getText().getUnformatted(),
+            original.getBackSide().getText().getUnformatted());
+
+        List<List<Card>> groups = find();
+        assertEquals(1, groups.size());
+        assertEquals(2, groups.get(0).size());
+        assertSame(original, groups.get(0).get(0));
+        assertSame(copy, groups.get(0).get(1));
+    }
+
+    public void testProgressAndCancel()
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            addCard("card " + i, "Karte " + i);
+        }
+
+        final DuplicateFinder finder = new DuplicateFinder(m_cards);
+        final int[] progress = {-1, 0};
+        finder.find(new DuplicateFinder.ProgressListener() {
+            public void onProgress(int done, int total)
+            {
+                assertTrue(done >= progress[0]);
+                progress[0] = done;
+                progress[1] = total;
+            }
+        });
+        assertEquals(progress[1], progress[0]);
+
+        finder.cancel();
+        assertTrue(finder.isCancelled());
+    }
+
+    private Card addCard(String front, String back)
+    {
+        Card card = new Card(front, back);
+        m_cards.add(card);
+
+        return card;
+    }
+
+    private List<List<Card>> find()
+    {
+        return new DuplicateFinder(m_cards).find(null);
+    }
+
+    private static void assertGroups(List<List<Card>> groups,
+        List<?>... expected)
+    {
+        assertEquals(expected.length, groups.size());
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals(expected[i], groups.get(i));
+        }
+    }
+
+    private static String randomWord(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int length = 4 + random.nextInt(6);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char)('a' + random.nextInt(26)));
+        }
+
+        return sb.toString();
+    }
+
+    private static List<Card> list(Card... cards)
+    {
+        List<Card> list = new ArrayList<Card>();
+        for (Card card : cards)
+            list.add(card);
+
+        return list;
+    }
+}
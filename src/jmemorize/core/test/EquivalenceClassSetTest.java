@@ -102,6 +102,30 @@ public class EquivalenceClassSetTest extends TestCase
         assertTrue(interSet.size() == mod3EqvSet.size());
     }
 
+    public void testPeekLoop()
+    {
+        Iterator loopIter = mod3EqvSet.loopIterator();
+        assertEquals(0, ((Integer)loopIter.next()).intValue() % 3);
+        
+        // the two remaining items of class 0, then candidates of class 1
+        List peeked = mod3EqvSet.peekLoop(4);
+        assertEquals(4, peeked.size());
+        assertEquals(peeked.get(0), loopIter.next());
+        assertEquals(peeked.get(1), loopIter.next());
+        
+        Object next = loopIter.next();
+        assertEquals(1, ((Integer)next).intValue() % 3);
+        assertTrue(peeked.contains(next));
+    }
+    
+    public void testPeekLoopDoesNotAdvance()
+    {
+        List peeked = mod3EqvSet.peekLoop(1);
+        assertEquals(peeked, mod3EqvSet.peekLoop(1));
+        
+        assertEquals(0, new EquivalenceClassSet(mod3EqvSet.getComparator()).peekLoop(3).size());
+    }
+
     protected void internalSanityTestLoopIterator(int iters, boolean isShuffle)
     {
         if (!isShuffle)
@@ -0,0 +1,316 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+
+import jmemorize.core.FormattedText;
+
+/**
+ * Measures the cost of loading and rendering formatted card texts. The
+ * <i>legacy</i> rows use the regular expressions that FormattedText used
+ * before the tag scanner, so that both can be compared in one run.
+ */
+public class FormattedTextBenchmark
+{
+    private static final int     CARDS        = 20000;
+    
+    private static final String  TAGS         = "<(/?(b|i|u|sub|sup)?)>";
+    private static final Pattern TEXT_PATTERN = Pattern.compile(
+        "(.*?)<(/?(b|i|u|sub|sup)?)>", Pattern.DOTALL);
+    
+    private static String[]      s_texts;
+    private static volatile int  s_sink;
+    
+    public static void main(String[] args)
+    {
+        s_texts = createTexts(CARDS * 2, new Random(42));
+        
+        BenchmarkTimer.measure("legacy load (formatted+unformatted)", CARDS, 
+            new Runnable() {
+            public void run()
+            {
+                int sum = 0;
+                for (String text : s_texts)
+                    sum += legacyUnformatted(text).length();
+                s_sink = sum;
+            }
+        });
+        
+        BenchmarkTimer.measure("load (lazy, unformatted not accessed)", CARDS, 
+            new Runnable() {
+            public void run()
+            {
+                int sum = 0;
+                for (String text : s_texts)
+                    sum += FormattedText.formatted(text).getFormatted().length();
+                s_sink = sum;
+            }
+        });
+        
+        BenchmarkTimer.measure("load + getUnformatted", CARDS, new Runnable() {
+            public void run()
+            {
+                int sum = 0;
+                for (String text : s_texts)
+                    sum += FormattedText.formatted(text).getUnformatted().length();
+                s_sink = sum;
+            }
+        });
+        
+        BenchmarkTimer.measure("legacy render (regex decode)", CARDS, 
+            new Runnable() {
+            public void run()
+            {
+                int sum = 0;
+                for (String text : s_texts)
+                    sum += legacyDocument(text).getLength();
+                s_sink = sum;
+            }
+        });
+        
+        BenchmarkTimer.measure("render (getDocument)", CARDS, new Runnable() {
+            public void run()
+            {
+                int sum = 0;
+                for (String text : s_texts)
+                    sum += FormattedText.formatted(text).getDocument().getLength();
+                s_sink = sum;
+            }
+        });
+        
+        benchmarkEncoding();
+    }
+    
+    /**
+     * Measures saving an edited card with a long formatted text, e.g. a
+     * pasted article. Also checks that the encoder still produces the same
+     * output as the former recursive encoder.
+     */
+    private static void benchmarkEncoding()
+    {
+        final StyledDocument doc = createLongDocument(new Random(7), 2000);
+        
+        String expected = legacyEncode(doc);
+        String actual = FormattedText.formatted(doc).getFormatted();
+        if (!expected.equals(actual))
+            throw new IllegalStateException("encodings differ");
+        
+        System.out.println("encoding " + doc.getLength() + " chars, " + 
+            doc.getDefaultRootElement().getElementCount() + " paragraphs");
+        
+        BenchmarkTimer.measure("legacy encode (recursive)", 1, new Runnable() {
+            public void run()
+            {
+                s_sink = legacyEncode(doc).length();
+            }
+        });
+        
+        BenchmarkTimer.measure("encode (single pass)", 1, new Runnable() {
+            public void run()
+            {
+                s_sink = FormattedText.formatted(doc).getFormatted().length();
+            }
+        });
+    }
+    
+    private static StyledDocument createLongDocument(Random random, int runs)
+    {
+        Object[] styles = {StyleConstants.Bold, StyleConstants.Italic, 
+            StyleConstants.Underline, StyleConstants.Subscript, 
+            StyleConstants.Superscript};
+        
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        try
+        {
+            for (int i = 0; i < runs; i++)
+            {
+                SimpleAttributeSet attr = new SimpleAttributeSet();
+                for (Object style : styles)
+                {
+                    if (random.nextInt(4) == 0)
+                        attr.addAttribute(style, Boolean.TRUE);
+                }
+                
+                String text = i % 10 == 9 ? "if (a < b) {\n" : "Lorem ipsum dolor ";
+                doc.insertString(doc.getLength(), text, attr);
+            }
+        }
+        catch (BadLocationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        
+        return doc;
+    }
+    
+    private static String legacyEncode(StyledDocument doc)
+    {
+        String text = legacyEncode(doc.getDefaultRootElement(), 0, doc.getLength());
+        for (String key : new String[] {"sub", "b", "u", "i", "sup"})
+            text = text.replaceAll("</" + key + "><" + key + ">", "");
+        
+        return text;
+    }
+    
+    private static String legacyEncode(Element e, int startSelection, 
+        int endSelection)
+    {
+        String[] keys = {"sub", "b", "u", "i", "sup"};
+        Object[] styles = {StyleConstants.Subscript, StyleConstants.Bold, 
+            StyleConstants.Underline, StyleConstants.Italic, 
+            StyleConstants.Superscript};
+        
+        StringBuilder sb = new StringBuilder();
+        if (e.getName().equals("content"))
+        {
+            Document doc = e.getDocument();
+            int start = e.getStartOffset();
+            int end = Math.min(e.getEndOffset(), doc.getLength());
+            
+            if (start > endSelection || end < startSelection)
+                return sb.toString();
+            
+            try
+            {
+                start = Math.max(start, startSelection);
+                end = Math.min(end, endSelection);
+                
+                String text = doc.getText(start, end - start);
+                sb.append(text.replace("<", "&lt;").replace(">", "&gt;"));
+            }
+            catch (BadLocationException ex)
+            {
+                throw new IllegalStateException(ex);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < e.getElementCount(); i++)
+            {
+                sb.append(legacyEncode(e.getElement(i), startSelection, endSelection));
+            }
+        }
+        
+        for (int i = 0; i < keys.length; i++)
+        {
+            Boolean style = (Boolean)e.getAttributes().getAttribute(styles[i]);
+            if (style != null && style.booleanValue())
+            {
+                sb.insert(0, "<" + keys[i] + ">");
+                sb.append("</" + keys[i] + ">");
+            }
+        }
+        
+        return sb.toString();
+    }
+    
+    /**
+     * Creates card texts like the ones found in vocabulary and science
+     * lessons. About half of them contain markup.
+     */
+    private static String[] createTexts(int count, Random random)
+    {
+        String[] words = {"photosynthesis", "der Apfel", "H<sub>2</sub>O", 
+            "E = mc<sup>2</sup>", "<b>Mitochondria</b>", "&lt;tag&gt;", 
+            "<i>lat.</i>", "to be", "<u>important</u>", "carbon", "\u00e4rger"};
+        
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            int n = 2 + random.nextInt(12);
+            for (int j = 0; j < n; j++)
+            {
+                String word = words[random.nextInt(words.length)];
+                if (i % 2 == 0)
+                    word = word.replaceAll(TAGS, "").replace("&lt;", "").replace("&gt;", "");
+                
+                sb.append(word).append(' ');
+            }
+            texts[i] = sb.toString();
+        }
+        
+        return texts;
+    }
+    
+    private static String legacyUnformatted(String formatted)
+    {
+        return formatted.replaceAll(TAGS, "").replaceAll("<img .*?/>", "")
+            .replace("&lt;", "<").replace("&gt;", ">");
+    }
+    
+    private static DefaultStyledDocument legacyDocument(String text)
+    {
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        try
+        {
+            Matcher m = TEXT_PATTERN.matcher(new StringBuilder(text));
+            int end = 0;
+            int offset = 0;
+            
+            SimpleAttributeSet attr = new SimpleAttributeSet();
+            while (m.find())
+            {
+                String pretext = m.group(1).replace("&lt;", "<").replace("&gt;", ">");
+                doc.insertString(offset, pretext, attr);
+                offset += pretext.length();
+                
+                String tag = m.group(2);
+                boolean style = !tag.startsWith("/");
+                attr.addAttribute(toStyle(style ? tag : tag.substring(1)), 
+                    Boolean.valueOf(style));
+                
+                end = m.end();
+            }
+            
+            doc.insertString(offset, text.substring(end), new SimpleAttributeSet());
+        }
+        catch (BadLocationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        
+        return doc;
+    }
+    
+    private static Object toStyle(String tag)
+    {
+        if (tag.equals("b"))
+            return StyleConstants.Bold;
+        if (tag.equals("i"))
+            return StyleConstants.Italic;
+        if (tag.equals("u"))
+            return StyleConstants.Underline;
+        if (tag.equals("sub"))
+            return StyleConstants.Subscript;
+        
+        return StyleConstants.Superscript;
+    }
+}
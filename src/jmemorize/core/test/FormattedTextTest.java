@@ -116,6 +116,109 @@ public class FormattedTextTest extends TestCase
         assertEquals("F<b>ooba</b>r", FormattedText.formatted(m_doc).getFormatted());
     }    
     
+    public void testUnformattedStripsStyleTags()
+    {
+        FormattedText fText = FormattedText.formatted("F<b>o<i>o</i></b>b<sub>a</sub><sup>r</sup>");
+        assertEquals("Foobar", fText.getUnformatted());
+    }
+    
+    public void testUnformattedStripsEmptyTags()
+    {
+        assertEquals("Foobar", FormattedText.formatted("Foo<></>bar").getUnformatted());
+    }
+    
+    public void testUnformattedKeepsUnknownTags()
+    {
+        assertEquals("Foo<su>bar", FormattedText.formatted("Foo<su>bar").getUnformatted());
+    }
+    
+    public void testUnformattedStripsImageTags()
+    {
+        FormattedText fText = FormattedText.formatted("Foo<img src=\"a.png\"/>bar<img />");
+        assertEquals("Foobar", fText.getUnformatted());
+    }
+    
+    public void testUnformattedKeepsImageTagsSpanningLines()
+    {
+        FormattedText fText = FormattedText.formatted("Foo<img \n/>bar");
+        assertEquals("Foo<img \n/>bar", fText.getUnformatted());
+    }
+    
+    public void testUnformattedUnescapesMarkupChars()
+    {
+        FormattedText fText = FormattedText.formatted("&lt;b&gt; &amp; &l<b>x</b>");
+        assertEquals("<b> &amp; &lx", fText.getUnformatted());
+    }
+    
+    public void testUnformattedReturnsSameStringWithoutMarkup()
+    {
+        String text = "Foobar";
+        assertSame(text, FormattedText.formatted(text).getUnformatted());
+    }
+    
+    public void testDecodeNestedStyles() throws BadLocationException
+    {
+        StyledDocument doc = FormattedText.formatted("a<b>b<i>c</i></b>d&lt;").getDocument();
+        
+        assertEquals("abcd<", doc.getText(0, doc.getLength()));
+        assertStyle(doc, 0, StyleConstants.Bold, false);
+        assertStyle(doc, 1, StyleConstants.Bold, true);
+        assertStyle(doc, 1, StyleConstants.Italic, false);
+        assertStyle(doc, 2, StyleConstants.Bold, true);
+        assertStyle(doc, 2, StyleConstants.Italic, true);
+        assertStyle(doc, 3, StyleConstants.Bold, false);
+    }
+    
+    public void testDecodeIgnoresEmptyTags() throws BadLocationException
+    {
+        StyledDocument doc = FormattedText.formatted("Foo<>b<b>a</b>r</>").getDocument();
+        
+        assertEquals("Foobar", doc.getText(0, doc.getLength()));
+        assertStyle(doc, 4, StyleConstants.Bold, true);
+    }
+    
+    public void testEncodeNestedStyles() throws BadLocationException
+    {
+        m_doc.insertString(0, "Foobar Test", SimpleAttributeSet.EMPTY);
+        
+        SimpleAttributeSet attr = new SimpleAttributeSet();
+        attr.addAttribute(StyleConstants.Bold, Boolean.TRUE);
+        attr.addAttribute(StyleConstants.Italic, Boolean.TRUE);
+        m_doc.setCharacterAttributes(1, 4, attr, true);
+        
+        attr = new SimpleAttributeSet();
+        attr.addAttribute(StyleConstants.Subscript, Boolean.TRUE);
+        m_doc.setCharacterAttributes(3, 4, attr, false);
+        
+        assertEquals("F<i><b>oo</b><b><sub>ba</sub></b></i><sub>r </sub>Test", 
+            FormattedText.formatted(m_doc).getFormatted());
+    }
+    
+    public void testEncodeSelection() throws BadLocationException
+    {
+        m_doc.insertString(0, "Foo<bar>", SimpleAttributeSet.EMPTY);
+        
+        SimpleAttributeSet attr = new SimpleAttributeSet();
+        attr.addAttribute(StyleConstants.Underline, Boolean.TRUE);
+        m_doc.setCharacterAttributes(2, 3, attr, true);
+        
+        assertEquals("o<u>o&lt;b</u>a", 
+            FormattedText.formatted(m_doc, 1, 6).getFormatted());
+    }
+    
+    public void testEncodeMultipleParagraphs() throws BadLocationException
+    {
+        m_doc.insertString(0, "Foo\nbar\n", SimpleAttributeSet.EMPTY);
+        
+        SimpleAttributeSet attr = new SimpleAttributeSet();
+        attr.addAttribute(StyleConstants.Bold, Boolean.TRUE);
+        m_doc.setCharacterAttributes(2, 3, attr, true);
+        
+        String encoding = FormattedText.formatted(m_doc).getFormatted();
+        assertEquals("Fo<b>o\nb</b>ar\n", encoding);
+        assertEquals("Foo\nbar\n", FormattedText.formatted(encoding).getUnformatted());
+    }
+    
     /**
      * Asserts that the style is still set correctly on a styled document after
      * encoding the document into a string representation and decoding it back
@@ -143,6 +246,47 @@ public class FormattedTextTest extends TestCase
         }
     }
 
+    public void testFoldKeepsLowerCaseAscii()
+    {
+        String text = "house 42";
+        assertSame(text, FormattedText.fold(text, false));
+        assertSame(text, FormattedText.fold(text, true));
+    }
+    
+    public void testFold()
+    {
+        assertEquals("haus", FormattedText.fold("HaUs", false));
+        assertEquals("strasse", FormattedText.fold("Stra\u00DFe", false));
+        assertEquals("strasse", FormattedText.fold("STRASSE", false));
+        assertEquals("\u00E9t\u00E9", FormattedText.fold("\u00C9T\u00C9", false));
+        assertEquals("\u03C3\u03C3", FormattedText.fold("\u03A3\u03C2", false));
+    }
+    
+    public void testFoldStripsAccents()
+    {
+        assertEquals("ete", FormattedText.fold("\u00C9t\u00E9", true));
+        assertEquals("ete", FormattedText.fold("e\u0301te\u0301", true));
+        assertEquals("strasse", FormattedText.fold("Stra\u00DFe", true));
+    }
+    
+    public void testFoldedTextIsCached()
+    {
+        FormattedText text = FormattedText.formatted("<b>Gro\u00DF</b> und Klein");
+        
+        assertEquals("gross und klein", text.getFolded(false));
+        assertSame(text.getFolded(false), text.getFolded(false));
+        assertSame(text.getFolded(true), text.getFolded(true));
+    }
+    
+    private static void assertStyle(StyledDocument doc, int offset, 
+        Object style, boolean expected)
+    {
+        Boolean hasStyle = (Boolean)doc.getCharacterElement(offset).
+            getAttributes().getAttribute(style);
+        
+        assertEquals(expected, hasStyle != null && hasStyle.booleanValue());
+    }
+
     private static StyledDocument roundtrip(StyledDocument doc)
     {
         String encoding = FormattedText.formatted(doc).getFormatted();
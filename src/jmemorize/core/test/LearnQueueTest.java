@@ -0,0 +1,351 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.learn.DefaultLearnSession;
+import jmemorize.core.learn.LearnQueue;
+import jmemorize.core.learn.LearnQueueService;
+import jmemorize.core.learn.LearnSettings;
+import jmemorize.core.test.stubs.LearnSessionProviderStub;
+import junit.framework.TestCase;
+
+public class LearnQueueTest extends TestCase
+{
+    private Category                m_rootCategory;
+    private Category                m_childCategory;
+    private Category                m_otherCategory;
+
+    private Card                    m_unlearnedCard;
+    private Card                    m_expiredCard;
+    private Card                    m_learnedCard;
+    private Card                    m_otherCard;
+
+    // the results of the service, run on the test thread
+    private BlockingQueue<Runnable> m_dispatched = new LinkedBlockingQueue<Runnable>();
+    private LearnQueueService       m_service;
+    private DefaultLearnSession     m_session;
+    private boolean                 m_sessionBuilt;
+
+    protected void setUp() throws Exception
+    {
+        m_rootCategory = new Category("root");
+        m_childCategory = new Category("child");
+        m_otherCategory = new Category("other");
+        m_rootCategory.addCategoryChild(m_childCategory);
+        m_rootCategory.addCategoryChild(m_otherCategory);
+
+        long now = System.currentTimeMillis();
+        m_unlearnedCard = new Card("unlearned", "flip");
+        m_expiredCard = new Card("expired", "flip");
+        m_learnedCard = new Card("learned", "flip");
+        m_otherCard = new Card("other", "flip");
+
+        m_rootCategory.addCard(m_unlearnedCard);
+        m_childCategory.addCard(m_expiredCard);
+        m_childCategory.addCard(m_learnedCard);
+        m_otherCategory.addCard(m_otherCard);
+
+        Category.raiseCardLevel(m_expiredCard, new Date(now), new Date(now - 1000));
+        Category.raiseCardLevel(m_learnedCard, new Date(now),
+            new Date(now + Card.ONE_DAY));
+
+        m_service = new LearnQueueService(new Executor() {
+            public void execute(Runnable command)
+            {
+                m_dispatched.add(command);
+            }
+        });
+        m_service.setRootCategory(m_rootCategory);
+    }
+
+    public void testBuildCollectsLearnableCards()
+    {
+        LearnQueue queue = new LearnQueue(m_rootCategory);
+        assertTrue(queue.build(null));
+
+        TestHelper.assertSet(new Card[]{m_unlearnedCard, m_otherCard},
+            queue.getCards(true, false));
+        TestHelper.assertSet(new Card[]{m_expiredCard},
+            queue.getCards(false, true));
+        assertEquals(3, queue.getCards(true, true).size());
+        assertEquals(m_learnedCard.getDateExpired().getTime(),
+            queue.getNextExpiration());
+        assertTrue(queue.isValid());
+    }
+
+    public void testBuildOnlyCollectsCardsOfCategory()
+    {
+        LearnQueue queue = new LearnQueue(m_childCategory);
+        assertTrue(queue.build(null));
+
+        TestHelper.assertSet(new Card[]{m_expiredCard}, queue.getCards(true, true));
+    }
+
+    public void testBuildReportsProgress()
+    {
+        final int[] progress = new int[2];
+        LearnQueue queue = new LearnQueue(m_rootCategory);
+        queue.build(new LearnQueue.ProgressListener() {
+            public void onProgress(int done, int total)
+            {
+                progress[0] = done;
+                progress[1] = total;
+            }
+        });
+
+        assertEquals(3, progress[0]);
+        assertEquals(3, progress[1]);
+    }
+
+    public void testCancelledBuild()
+    {
+        LearnQueue queue = new LearnQueue(m_rootCategory);
+        queue.cancel();
+
+        assertFalse(queue.build(null));
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testUpdateFollowsChangedCards()
+    {
+        LearnQueue queue = new LearnQueue(m_childCategory);
+        queue.build(null);
+
+        Category.raiseCardLevel(m_expiredCard, new Date(),
+            new Date(System.currentTimeMillis() + Card.ONE_DAY));
+        queue.update(m_expiredCard);
+        assertTrue(queue.isEmpty());
+
+        Category.resetCardLevel(m_learnedCard, new Date());
+        queue.update(m_learnedCard);
+        TestHelper.assertSet(new Card[]{m_learnedCard}, queue.getCards(true, true));
+
+        Category.moveCard(m_learnedCard, m_otherCategory);
+        queue.update(m_learnedCard);
+        assertTrue(queue.isEmpty());
+
+        Card card = new Card("new", "flip");
+        m_childCategory.addCard(card);
+        queue.update(card);
+        TestHelper.assertSet(new Card[]{card}, queue.getCards(true, false));
+
+        m_childCategory.removeCard(card);
+        queue.update(card);
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testServiceKeepsPrefetchedQueueUpToDate() throws Exception
+    {
+        assertNull(m_service.getQueue(m_rootCategory));
+
+        m_service.setCategory(m_rootCategory);
+        runQueueBuild();
+
+        LearnQueue queue = m_service.getQueue(m_rootCategory);
+        assertNotNull(queue);
+        assertEquals(3, queue.size());
+
+        Card card = new Card("new", "flip");
+        m_childCategory.addCard(card);
+        Category.resetCardLevel(m_expiredCard, new Date());
+
+        assertSame(queue, m_service.getQueue(m_rootCategory));
+        TestHelper.assertSet(new Card[]{m_unlearnedCard, m_expiredCard, m_otherCard, card},
+            queue.getCards(true, false));
+        assertTrue(queue.getCards(false, true).isEmpty());
+    }
+
+    public void testServiceDropsQueueOnCategoryEvent() throws Exception
+    {
+        m_service.setCategory(m_rootCategory);
+        runQueueBuild();
+        assertNotNull(m_service.getQueue(m_rootCategory));
+
+        m_childCategory.addCategoryChild(new Category("grandchild"));
+        assertNull(m_service.getQueue(m_rootCategory));
+
+        // is built again
+        runQueueBuild();
+        assertNotNull(m_service.getQueue(m_rootCategory));
+    }
+
+    public void testServiceBuildsQueueAgainWhenCardExpires() throws Exception
+    {
+        long now = System.currentTimeMillis();
+        Category.raiseCardLevel(m_learnedCard, new Date(now), new Date(now + 1500));
+
+        m_service.setCategory(m_childCategory);
+        runQueueBuild();
+        LearnQueue queue = m_service.getQueue(m_childCategory);
+        TestHelper.assertSet(new Card[]{m_expiredCard}, queue.getCards(true, true));
+
+        // the expiration and the new build
+        runDispatched();
+        runQueueBuild();
+
+        queue = m_service.getQueue(m_childCategory);
+        TestHelper.assertSet(new Card[]{m_expiredCard, m_learnedCard},
+            queue.getCards(true, true));
+    }
+
+    public void testServiceBuildsSession() throws Exception
+    {
+        buildSession(m_childCategory, true, true);
+
+        // builds the queue and then the session
+        runQueueBuild();
+        runDispatched();
+
+        assertTrue(m_sessionBuilt);
+        TestHelper.assertSet(new Card[]{m_expiredCard}, m_session.getCardsLeft());
+    }
+
+    public void testServiceBuildsSessionFromPrefetchedQueue() throws Exception
+    {
+        m_service.setCategory(m_rootCategory);
+        runQueueBuild();
+
+        buildSession(m_rootCategory, true, false);
+        runDispatched();
+
+        assertTrue(m_sessionBuilt);
+        TestHelper.assertSet(new Card[]{m_unlearnedCard, m_otherCard},
+            m_session.getCardsLeft());
+    }
+
+    public void testServiceBuildsSessionAgainWhenCardsChanged() throws Exception
+    {
+        m_service.setCategory(m_rootCategory);
+        runQueueBuild();
+
+        buildSession(m_rootCategory, true, false);
+        m_rootCategory.removeCard(m_unlearnedCard);
+        runDispatched();
+        assertFalse(m_sessionBuilt);
+
+        runDispatched();
+        assertTrue(m_sessionBuilt);
+        TestHelper.assertSet(new Card[]{m_otherCard}, m_session.getCardsLeft());
+    }
+
+    public void testCancelledSessionTask() throws Exception
+    {
+        LearnQueueService.SessionTask task = buildSession(m_rootCategory, true, true);
+        task.cancel();
+
+        runDispatched();
+        while (!m_sessionBuilt)
+            runDispatched();
+
+        assertNull(m_session);
+    }
+
+    public void testServiceBuildsQueueAgainWhenBuildFailedDuringChange()
+        throws Exception
+    {
+        FailingCategory failing = new FailingCategory();
+        m_childCategory.addCategoryChild(failing);
+
+        m_service.setCategory(m_rootCategory);
+        m_childCategory.addCard(new Card("new", "flip"));
+
+        // the failed build and the new build
+        runDispatched();
+        runQueueBuild();
+
+        assertEquals(1, failing.m_loads);
+        assertEquals(4, m_service.getQueue(m_rootCategory).size());
+    }
+
+    public void testServiceCancelsQueueWhenBuildFailed() throws Exception
+    {
+        m_childCategory.addCategoryChild(new FailingCategory());
+
+        buildSession(m_rootCategory, true, true);
+        runDispatched();
+
+        assertTrue(m_sessionBuilt);
+        assertNull(m_session);
+        assertNull(m_service.getQueue(m_rootCategory));
+    }
+
+    /**
+     * A category whose cards seem to be unloaded and can't be loaded the
+     * first time, as if the lesson changed while they were read.
+     */
+    private static class FailingCategory extends Category
+    {
+        private volatile int m_loads;
+
+        public FailingCategory()
+        {
+            super("failing");
+        }
+
+        public boolean isCardsLoaded()
+        {
+            return m_loads > 0;
+        }
+
+        public void loadLocalCards()
+        {
+            if (m_loads++ == 0)
+                throw new IndexOutOfBoundsException();
+        }
+    }
+
+    private LearnQueueService.SessionTask buildSession(Category category,
+        boolean learnUnlearned, boolean learnExpired)
+    {
+        return m_service.buildSession(new LearnSettings(), new ArrayList<Card>(),
+            category, learnUnlearned, learnExpired, new LearnSessionProviderStub(),
+            null, new LearnQueueService.SessionListener() {
+                public void onSessionBuilt(DefaultLearnSession session)
+                {
+                    m_sessionBuilt = true;
+                    m_session = session;
+                }
+            });
+    }
+
+    /**
+     * Runs the results of loading the cards and of collecting them.
+     */
+    private void runQueueBuild() throws InterruptedException
+    {
+        runDispatched();
+        runDispatched();
+    }
+
+    private void runDispatched() throws InterruptedException
+    {
+        Runnable runnable = m_dispatched.poll(5, TimeUnit.SECONDS);
+        assertNotNull(runnable);
+        runnable.run();
+    }
+}
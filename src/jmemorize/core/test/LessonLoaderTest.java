@@ -0,0 +1,553 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardSet;
+import jmemorize.core.Category;
+import jmemorize.core.CategoryObserver;
+import jmemorize.core.Lesson;
+import jmemorize.core.LessonSummary;
+import jmemorize.core.SearchIndex;
+import jmemorize.core.SearchTool;
+import jmemorize.core.Settings;
+import jmemorize.core.io.LessonLoader;
+import jmemorize.core.io.XmlBuilder;
+import junit.framework.TestCase;
+
+public class LessonLoaderTest extends TestCase
+{
+    private File             m_file;
+    private Lesson           m_expected;
+    private List<String>     m_log;
+
+    protected void setUp() throws Exception
+    {
+        m_file = File.createTempFile("loader", ".jml");
+        m_file.deleteOnExit();
+
+        m_expected = new Lesson(false);
+        Category rootCategory = m_expected.getRootCategory();
+        Category animals = new Category("animals");
+        Category birds = new Category("birds");
+        rootCategory.addCategoryChild(animals);
+        animals.addCategoryChild(birds);
+
+        Category[] categories = {rootCategory, animals, birds};
+        for (int i = 0; i < 90; i++)
+        {
+            categories[i % 3].addCard(new Card("front " + i, "flip " + i), i % 4);
+        }
+
+        XmlBuilder.saveAsXMLFile(m_file, m_expected);
+
+        m_log = new ArrayList<String>();
+    }
+
+    public void testLoadsAllCards() throws Exception
+    {
+        Lesson lesson = new Lesson(false);
+        int cards = new LessonLoader(m_file).load(lesson);
+
+        assertEquals(90, cards);
+        assertLessonEquals(m_expected.getRootCategory(), lesson.getRootCategory());
+    }
+
+    public void testLoadsStructureBeforeCards() throws Exception
+    {
+        LessonLoader loader = new LessonLoader(m_file);
+        loader.setProgressListener(new LessonLoader.ProgressListener() {
+            public void onStructureLoaded(Lesson lesson, int totalCards)
+            {
+                Category rootCategory = lesson.getRootCategory();
+                m_log.add("structure " + totalCards + " " + 
+                    rootCategory.getCards().size() + " " + 
+                    rootCategory.getSubtreeList().size());
+            }
+
+            public void onSummaryLoaded(Lesson lesson, LessonSummary summary)
+            {
+            }
+
+            public void onProgress(int cards, long bytes)
+            {
+                if (cards > 0)
+                    m_log.add("cards " + cards);
+            }
+        });
+        loader.load(new Lesson(false));
+
+        assertEquals("structure 90 0 3", m_log.get(0));
+        assertEquals("cards 90", m_log.get(m_log.size() - 1));
+    }
+
+    public void testLoadsSummaryBeforeStructure() throws Exception
+    {
+        LessonLoader loader = new LessonLoader(m_file);
+        loader.setProgressListener(new LessonLoader.ProgressListener() {
+            public void onSummaryLoaded(Lesson lesson, LessonSummary summary)
+            {
+                Category rootCategory = lesson.getRootCategory();
+                int[][] counts = summary.getCounts(rootCategory);
+                m_log.add("summary " + counts[0][LessonSummary.CARDS] + " " + 
+                    rootCategory.getCards().size() + " " + 
+                    rootCategory.getSubtreeList().size());
+            }
+
+            public void onStructureLoaded(Lesson lesson, int totalCards)
+            {
+                m_log.add("structure");
+            }
+
+            public void onProgress(int cards, long bytes)
+            {
+            }
+        });
+        Lesson lesson = new Lesson(false);
+        loader.load(lesson);
+
+        assertEquals("summary 23 0 3", m_log.get(0));
+        assertEquals("structure", m_log.get(1));
+        assertTrue(loader.isSummaryValid());
+        assertLessonEquals(m_expected.getRootCategory(), lesson.getRootCategory());
+    }
+
+    public void testDetectsWrongSummary() throws Exception
+    {
+        Lesson other = new Lesson(false);
+        other.getRootCategory().addCategoryChild(new Category("animals"));
+        other.getRootCategory().addCategoryChild(new Category("plants"));
+        other.getRootCategory().addCard(new Card("front", "flip"));
+
+        // replace the summary of the file
+        ZipFile zipFile = new ZipFile(m_file);
+        File file = File.createTempFile("loader", ".jml");
+        file.deleteOnExit();
+
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try
+        {
+            out.putNextEntry(new ZipEntry("lesson.xml"));
+            InputStream in = zipFile.getInputStream(zipFile.getEntry("lesson.xml"));
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                out.write(buffer, 0, n);
+            in.close();
+            out.closeEntry();
+
+            out.putNextEntry(new ZipEntry("summary.xml"));
+            XmlBuilder.writeSummary(out, other.getRootCategory());
+            out.closeEntry();
+        }
+        finally
+        {
+            out.close();
+            zipFile.close();
+        }
+
+        LessonLoader loader = new LessonLoader(file);
+        Lesson lesson = new Lesson(false);
+        assertEquals(90, loader.load(lesson));
+
+        assertNotNull(loader.getSummary());
+        assertFalse(loader.isSummaryValid());
+
+        // the category that was only in the summary is gone
+        assertLessonEquals(m_expected.getRootCategory(), lesson.getRootCategory());
+    }
+
+    public void testChangesLessonInInsertExecutor() throws Exception
+    {
+        final boolean[] inExecutor = new boolean[1];
+        final CategoryObserver observer = new CategoryObserver() {
+            public void onCardEvent(int type, Card card, Category category, int deck)
+            {
+                assertTrue(inExecutor[0]);
+            }
+
+            public void onCategoryEvent(int type, Category category)
+            {
+                assertTrue(inExecutor[0]);
+            }
+        };
+
+        LessonLoader loader = new LessonLoader(m_file);
+        loader.setInsertExecutor(new Executor() {
+            public void execute(Runnable command)
+            {
+                m_log.add("execute");
+
+                inExecutor[0] = true;
+                command.run();
+                inExecutor[0] = false;
+            }
+        });
+        loader.setProgressListener(new LessonLoader.ProgressListener() {
+            public void onStructureLoaded(Lesson lesson, int totalCards)
+            {
+                assertTrue(inExecutor[0]);
+                lesson.getRootCategory().addObserver(observer);
+            }
+
+            public void onSummaryLoaded(Lesson lesson, LessonSummary summary)
+            {
+            }
+
+            public void onProgress(int cards, long bytes)
+            {
+                assertFalse(inExecutor[0]);
+            }
+        });
+
+        Lesson lesson = new Lesson(false);
+        loader.load(lesson);
+
+        assertTrue(m_log.size() >= 2);
+        assertEquals(90, lesson.getRootCategory().getCards().size());
+    }
+
+    public void testLoaderChangesDontModifyLesson() throws Exception
+    {
+        final Lesson lesson = new Lesson(false);
+        LessonLoader loader = new LessonLoader(m_file);
+        loader.setInsertExecutor(new Executor() {
+            public void execute(Runnable command)
+            {
+                lesson.runLoaderChange(command);
+            }
+        });
+        loader.setProgressListener(new LessonLoader.ProgressListener() {
+            public void onStructureLoaded(Lesson loaded, int totalCards)
+            {
+                // the categories were created before the lesson is shown
+                loaded.setCanSave(false);
+            }
+
+            public void onSummaryLoaded(Lesson loaded, LessonSummary summary)
+            {
+            }
+
+            public void onProgress(int cards, long bytes)
+            {
+            }
+        });
+        loader.load(lesson);
+
+        assertFalse(lesson.canSave());
+        assertEquals(90, lesson.getRootCategory().getCards().size());
+    }
+
+    public void testUserChangesWhileLoadingModifyLesson() throws Exception
+    {
+        final Lesson lesson = new Lesson(false);
+        LessonLoader loader = new LessonLoader(m_file);
+        loader.setInsertExecutor(new Executor() {
+            public void execute(Runnable command)
+            {
+                lesson.runLoaderChange(command);
+            }
+        });
+        loader.setProgressListener(new LessonLoader.ProgressListener() {
+            public void onStructureLoaded(Lesson loaded, int totalCards)
+            {
+                loaded.setCanSave(false);
+            }
+
+            public void onSummaryLoaded(Lesson loaded, LessonSummary summary)
+            {
+            }
+
+            public void onProgress(int cards, long bytes)
+            {
+                // a change of the user between two batches
+                if (cards > 0 && m_log.isEmpty())
+                {
+                    m_log.add("edit");
+                    lesson.getRootCategory().addCard(new Card("user", "edit"));
+                }
+            }
+        });
+        loader.load(lesson);
+
+        assertTrue(lesson.canSave());
+        assertEquals(91, lesson.getRootCategory().getCards().size());
+    }
+
+    public void testCancelKeepsStructure() throws Exception
+    {
+        final LessonLoader loader = new LessonLoader(m_file);
+        loader.setProgressListener(new LessonLoader.ProgressListener() {
+            public void onStructureLoaded(Lesson lesson, int totalCards)
+            {
+                loader.cancel();
+            }
+
+            public void onSummaryLoaded(Lesson lesson, LessonSummary summary)
+            {
+            }
+
+            public void onProgress(int cards, long bytes)
+            {
+                m_log.add("progress");
+            }
+        });
+
+        Lesson lesson = new Lesson(false);
+        assertEquals(0, loader.load(lesson));
+
+        assertTrue(loader.isCancelled());
+        assertEquals(0, lesson.getRootCategory().getCards().size());
+        assertEquals(3, lesson.getRootCategory().getSubtreeList().size());
+        assertTrue(m_log.isEmpty());
+    }
+
+    public void testCancelBeforeReading() throws Exception
+    {
+        LessonLoader loader = new LessonLoader(m_file);
+        loader.setProgressListener(new LessonLoader.ProgressListener() {
+            public void onStructureLoaded(Lesson lesson, int totalCards)
+            {
+                m_log.add("structure");
+            }
+
+            public void onSummaryLoaded(Lesson lesson, LessonSummary summary)
+            {
+            }
+
+            public void onProgress(int cards, long bytes)
+            {
+                m_log.add("progress");
+            }
+        });
+        loader.cancel();
+
+        Lesson lesson = new Lesson(false);
+        assertEquals(0, loader.load(lesson));
+
+        assertTrue(m_log.isEmpty());
+        assertEquals(1, lesson.getRootCategory().getSubtreeList().size());
+    }
+
+    public void testLoadsChunksWhenNeeded() throws Exception
+    {
+        saveChunked(m_file, m_expected);
+
+        LessonLoader loader = new LessonLoader(m_file);
+        Lesson lesson = new Lesson(false);
+        assertEquals(0, loader.load(lesson));
+
+        Category rootCategory = lesson.getRootCategory();
+        for (Category category : rootCategory.getSubtreeList())
+            assertFalse(category.isCardsLoaded());
+
+        assertEquals(90, rootCategory.getCardCount());
+        assertEquals(4, rootCategory.getNumberOfDecks());
+
+        // only the cards of the touched category are loaded
+        Category birds = rootCategory.getChildCategory("animals")
+            .getChildCategory("birds");
+        assertEquals(30, birds.getCards().size());
+        assertTrue(birds.isCardsLoaded());
+        assertFalse(rootCategory.isCardsLoaded());
+
+        assertLessonEquals(m_expected.getRootCategory(), rootCategory);
+    }
+
+    public void testSavedLessonUnloadsCards() throws Exception
+    {
+        saveChunked(m_file, m_expected);
+        XmlBuilder.attachCardChunks(m_file, m_expected.getRootCategory());
+
+        Card card = m_expected.getRootCategory().getLocalCards(0).get(0);
+        assertEquals(3, m_expected.unloadCards());
+        assertEquals(0, m_expected.unloadCards());
+
+        // saving the lesson again loads all cards before overwriting the file
+        saveChunked(m_file, m_expected);
+        assertSame(card, m_expected.getRootCategory().getLocalCards(0).get(0));
+
+        Lesson lesson = new Lesson(false);
+        new LessonLoader(m_file).load(lesson);
+        assertLessonEquals(m_expected.getRootCategory(), lesson.getRootCategory());
+
+        // unchunked files can't be used to load the cards again
+        XmlBuilder.saveAsXMLFile(m_file, m_expected);
+        XmlBuilder.attachCardChunks(m_file, m_expected.getRootCategory());
+        assertEquals(0, m_expected.unloadCards());
+    }
+
+    public void testRemovedCardIdsAreNotReused() throws Exception
+    {
+        Category rootCategory = m_expected.getRootCategory();
+        Card card = new Card("new", "card");
+        rootCategory.addCard(card);
+        rootCategory.removeCard(card);
+        XmlBuilder.saveAsXMLFile(m_file, m_expected);
+
+        Lesson lesson = new Lesson(false);
+        new LessonLoader(m_file).load(lesson);
+
+        Card other = new Card("other", "card");
+        lesson.getRootCategory().addCard(other);
+        assertEquals(card.getId() + 1, other.getId());
+    }
+
+    public void testLoadsFileWithoutCardIds() throws Exception
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(m_file), "UTF-8");
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Lesson>" +
+            "<Category name=\"root\"><Deck>" +
+            "<Card Frontside=\"a\" Backside=\"b\"/>" +
+            "<Card Frontside=\"c\" Backside=\"d\"/></Deck>" +
+            "<Category name=\"child\"><Deck>" +
+            "<Card Frontside=\"e\" Backside=\"f\"/></Deck></Category>" +
+            "</Category></Lesson>");
+        out.close();
+
+        Lesson lesson = new Lesson(false);
+        new LessonLoader(m_file).load(lesson);
+
+        Set<Long> ids = new HashSet<Long>();
+        for (Card card : lesson.getRootCategory().getCards())
+            ids.add(card.getId());
+
+        assertEquals(new HashSet<Long>(Arrays.asList(1L, 2L, 3L)), ids);
+        assertEquals(4, lesson.getRootCategory().getNextCardId());
+    }
+
+    public void testMergedCardsGetNewIds() throws Exception
+    {
+        Lesson lesson = new Lesson(false);
+        Category rootCategory = lesson.getRootCategory();
+        for (int i = 0; i < 3; i++)
+            rootCategory.addCard(new Card("own " + i, "flip"));
+
+        SearchIndex index = lesson.getSearchIndex();
+        XmlBuilder.loadFromXMLFile(m_file, lesson);
+
+        List<Card> cards = rootCategory.getCards();
+        assertEquals(93, cards.size());
+        assertEquals(93, new CardSet(cards).size());
+        assertEquals(94, rootCategory.getNextCardId());
+
+        // the imported cards are searchable
+        assertEquals(1, index.search("front 42", SearchTool.FRONT_SIDE, true,
+            SearchTool.WHOLE_WORD, rootCategory).size());
+        assertEquals(93, index.size());
+    }
+
+    public void testMergedChunksGetNewIds() throws Exception
+    {
+        saveChunked(m_file, m_expected);
+
+        Lesson lesson = new Lesson(false);
+        Category rootCategory = lesson.getRootCategory();
+        for (int i = 0; i < 3; i++)
+            rootCategory.addCard(new Card("own " + i, "flip"));
+
+        new LessonLoader(m_file).load(lesson);
+
+        List<Card> cards = rootCategory.getCards();
+        assertEquals(93, cards.size());
+        assertEquals(93, new CardSet(cards).size());
+        for (Card card : cards)
+            assertTrue(card.getId() < rootCategory.getNextCardId());
+    }
+
+    public void testUnloadedCardsOfAddedTreeGetNewIds() throws Exception
+    {
+        saveChunked(m_file, m_expected);
+
+        Lesson loaded = new Lesson(false);
+        new LessonLoader(m_file).load(loaded);
+        Category loadedRoot = loaded.getRootCategory();
+        assertFalse(loadedRoot.isCardsLoaded());
+
+        Category rootCategory = new Category("other");
+        for (int i = 0; i < 3; i++)
+            rootCategory.addCard(new Card("own " + i, "flip"));
+
+        rootCategory.addCategoryChild(loadedRoot);
+
+        List<Card> cards = rootCategory.getCards();
+        assertEquals(93, cards.size());
+        assertEquals(93, new CardSet(cards).size());
+        assertEquals(94, rootCategory.getNextCardId());
+    }
+
+    private static void saveChunked(File file, Lesson lesson) throws Exception
+    {
+        boolean chunked = Settings.loadIsSaveChunked();
+        Settings.storeSaveChunked(true);
+        try
+        {
+            XmlBuilder.saveAsXMLFile(file, lesson);
+        }
+        finally
+        {
+            Settings.storeSaveChunked(chunked);
+        }
+    }
+
+    private void assertLessonEquals(Category expected, Category actual)
+    {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getNumberOfDecks(), actual.getNumberOfDecks());
+
+        for (int level = 0; level < expected.getNumberOfDecks(); level++)
+        {
+            List<Card> expectedCards = expected.getLocalCards(level);
+            List<Card> actualCards = actual.getLocalCards(level);
+
+            assertEquals(expectedCards.size(), actualCards.size());
+            for (int i = 0; i < expectedCards.size(); i++)
+            {
+                assertEquals(expectedCards.get(i).getFrontSide().getText(), 
+                    actualCards.get(i).getFrontSide().getText());
+                assertEquals(expectedCards.get(i).getId(), 
+                    actualCards.get(i).getId());
+            }
+        }
+
+        List<Category> expectedChildren = expected.getChildCategories();
+        List<Category> actualChildren = actual.getChildCategories();
+
+        assertEquals(expectedChildren.size(), actualChildren.size());
+        for (int i = 0; i < expectedChildren.size(); i++)
+        {
+            assertLessonEquals(expectedChildren.get(i), actualChildren.get(i));
+        }
+    }
+}
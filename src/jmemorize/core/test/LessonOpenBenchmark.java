@@ -0,0 +1,209 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.LessonSummary;
+import jmemorize.core.Settings;
+import jmemorize.core.io.LessonLoader;
+import jmemorize.core.io.XmlBuilder;
+
+/**
+ * Measures how long opening a large lesson blocks the thread of the views.
+ * The blocking load parses the file and inserts all cards before the lesson
+ * can be shown, like opening a lesson did on the event dispatch thread. The
+ * staged load shows the lesson once the summary that is saved with it is
+ * read, or otherwise once its categories are loaded. Only the inserts of its
+ * batches run on the thread of the views. The chunked load opens the same
+ * lesson saved with a chunk per category and then touches one category and
+ * all categories. The number of cards can be given as first argument.
+ */
+public class LessonOpenBenchmark
+{
+    private static long m_insertTime;
+    private static long m_longestInsert;
+    
+    public static void main(String[] args) throws Exception
+    {
+        int cards = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        
+        File warmupFile = createFile(20000, false);
+        File file = createFile(cards, false);
+        File chunkedFile = createFile(cards, true);
+        try
+        {
+            // warm up the JIT
+            XmlBuilder.loadFromXMLFile(warmupFile, new Lesson(false));
+            stagedLoad(warmupFile, false);
+            
+            System.out.println("opening " + cards + " cards, " + 
+                file.length() / 1024 + " KiB");
+            
+            long start = System.nanoTime();
+            XmlBuilder.loadFromXMLFile(file, new Lesson(false));
+            report("blocking load, until the lesson is shown", start);
+            BenchmarkTimer.usedHeap(); // collect the loaded lesson
+            
+            stagedLoad(file, true);
+            chunkedLoad(chunkedFile);
+        }
+        finally
+        {
+            warmupFile.delete();
+            file.delete();
+            chunkedFile.delete();
+        }
+    }
+    
+    private static void chunkedLoad(File file) throws Exception
+    {
+        long baseHeap = BenchmarkTimer.usedHeap();
+        
+        long start = System.nanoTime();
+        Lesson lesson = new Lesson(false);
+        XmlBuilder.loadFromXMLFile(file, lesson);
+        report("chunked load, until the lesson is loaded", start);
+        reportHeap("chunked load, heap of the lesson", baseHeap);
+        
+        Category category = lesson.getRootCategory().getChildCategories().get(0);
+        start = System.nanoTime();
+        category.getCards();
+        report("chunked load, loading one category", start);
+        reportHeap("chunked load, heap with one category", baseHeap);
+        
+        start = System.nanoTime();
+        lesson.getRootCategory().getCards();
+        report("chunked load, loading all categories", start);
+        reportHeap("chunked load, heap with all categories", baseHeap);
+        
+        lesson.unloadCards();
+        reportHeap("chunked load, heap after unloading", baseHeap);
+        
+        // keeps the lesson reachable up to here
+        lesson.getRootCategory().getCardCount();
+    }
+    
+    private static void reportHeap(String label, long baseHeap)
+    {
+        System.out.println(String.format("%-48s %12.1f MiB", label, 
+            (BenchmarkTimer.usedHeap() - baseHeap) / (1024.0 * 1024.0)));
+    }
+    
+    private static void stagedLoad(File file, boolean print) throws Exception
+    {
+        m_insertTime = 0;
+        m_longestInsert = 0;
+        
+        final long start = System.nanoTime();
+        final long[] summary = new long[1];
+        final long[] structure = new long[1];
+        
+        LessonLoader loader = new LessonLoader(file);
+        loader.setInsertExecutor(new Executor() {
+            public void execute(Runnable command)
+            {
+                long start = System.nanoTime();
+                command.run();
+                
+                long time = System.nanoTime() - start;
+                m_insertTime += time;
+                m_longestInsert = Math.max(m_longestInsert, time);
+            }
+        });
+        loader.setProgressListener(new LessonLoader.ProgressListener() {
+            public void onStructureLoaded(Lesson lesson, int totalCards)
+            {
+                structure[0] = System.nanoTime();
+            }
+            
+            public void onSummaryLoaded(Lesson lesson, LessonSummary lessonSummary)
+            {
+                summary[0] = System.nanoTime();
+            }
+            
+            public void onProgress(int cards, long bytes)
+            {
+            }
+        });
+        loader.load(new Lesson(false));
+        
+        if (print)
+        {
+            report("staged load, until the summary is shown", start, summary[0]);
+            report("staged load, until the categories are loaded", start, structure[0]);
+            report("staged load, until all cards are inserted", start);
+            System.out.println(String.format("%-48s %12.1f ms", 
+                "staged load, inserts on the view thread", m_insertTime / 1e6));
+            System.out.println(String.format("%-48s %12.1f ms", 
+                "staged load, longest insert", m_longestInsert / 1e6));
+        }
+        BenchmarkTimer.usedHeap();
+    }
+    
+    private static void report(String label, long start)
+    {
+        report(label, start, System.nanoTime());
+    }
+    
+    private static void report(String label, long start, long end)
+    {
+        System.out.println(String.format("%-48s %12.1f ms", label, 
+            (end - start) / 1e6));
+    }
+    
+    private static File createFile(int cards, boolean chunked) throws Exception
+    {
+        Lesson lesson = new Lesson(false);
+        Category rootCategory = lesson.getRootCategory();
+        
+        Category[] categories = new Category[50];
+        for (int i = 0; i < categories.length; i++)
+        {
+            categories[i] = new Category("category" + i);
+            rootCategory.addCategoryChild(categories[i]);
+        }
+        
+        rootCategory.beginUpdate();
+        for (int i = 0; i < cards; i++)
+        {
+            categories[i % categories.length].addCard(new Card(
+                "<b>word</b> " + i, "meaning <i>" + i + "</i>"), i % 4);
+        }
+        rootCategory.endUpdate();
+        
+        File file = File.createTempFile("jmemorize-open", ".jml");
+        boolean savedChunked = Settings.loadIsSaveChunked();
+        Settings.storeSaveChunked(chunked);
+        try
+        {
+            XmlBuilder.saveAsXMLFile(file, lesson);
+        }
+        finally
+        {
+            Settings.storeSaveChunked(savedChunked);
+        }
+        
+        return file;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.Date;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.LessonSummary;
+import jmemorize.core.Main;
+import junit.framework.TestCase;
+
+public class LessonSummaryTest extends TestCase
+{
+    private Category m_root;
+    private Category m_child;
+    private Card     m_learnedCard;
+
+    protected void setUp() throws Exception
+    {
+        m_root = new Category("root");
+        m_child = m_root.addCategoryChild(new Category("child"));
+
+        long now = Main.getNow().getTime();
+
+        m_root.addCard(new Card("unlearned", "1"), 0);
+        m_child.addCard(new Card("unlearned", "2"), 0);
+
+        m_learnedCard = new Card("learned", "3");
+        m_learnedCard.setDateExpired(new Date(now + Card.ONE_DAY));
+        m_child.addCard(m_learnedCard, 2);
+
+        Card expiredCard = new Card("expired", "4");
+        expiredCard.setDateExpired(new Date(now - Card.ONE_DAY));
+        m_child.addCard(expiredCard, 2);
+    }
+
+    public void testCountsLocalCards()
+    {
+        LessonSummary summary = LessonSummary.create(m_root);
+
+        int[][] counts = summary.getLocalCounts(m_child);
+        assertEquals(3, counts.length);
+        assertEquals(1, counts[0][LessonSummary.CARDS]);
+        assertEquals(0, counts[1][LessonSummary.CARDS]);
+        assertEquals(2, counts[2][LessonSummary.CARDS]);
+        assertEquals(1, counts[2][LessonSummary.LEARNED]);
+        assertEquals(1, counts[2][LessonSummary.EXPIRED]);
+
+        assertEquals(1, summary.getLocalCounts(m_root)[0][LessonSummary.CARDS]);
+        assertEquals(2, summary.getCategories().size());
+    }
+
+    public void testCountsSubtree()
+    {
+        int[][] counts = LessonSummary.create(m_root).getCounts(m_root);
+
+        assertEquals(3, counts.length);
+        assertEquals(2, counts[0][LessonSummary.CARDS]);
+        assertEquals(2, counts[2][LessonSummary.CARDS]);
+        assertEquals(1, counts[2][LessonSummary.LEARNED]);
+    }
+
+    public void testNextExpiryIsFirstLearnedCard()
+    {
+        LessonSummary summary = LessonSummary.create(m_root);
+
+        assertEquals(m_learnedCard.getDateExpired().getTime(),
+            summary.getNextExpiry());
+        assertTrue(summary.isCurrent());
+    }
+
+    public void testMatchesSameCards()
+    {
+        assertTrue(LessonSummary.create(m_root).matches(
+            LessonSummary.create(m_root)));
+    }
+
+    public void testDoesNotMatchOtherCards()
+    {
+        LessonSummary summary = LessonSummary.create(m_root);
+        m_child.addCard(new Card("new", "5"), 1);
+
+        assertFalse(summary.matches(LessonSummary.create(m_root)));
+    }
+
+    public void testIgnoresLearnedCardsOfOutdatedSummary()
+    {
+        LessonSummary summary = new LessonSummary(0);
+        summary.addCategory(m_root);
+        summary.addCounts(m_root, 0, 1, 0, 0);
+        summary.addCounts(m_child, 0, 1, 0, 0);
+        summary.addCounts(m_child, 2, 2, 2, 0);
+
+        assertFalse(summary.isCurrent());
+        assertTrue(summary.matches(LessonSummary.create(m_root)));
+
+        summary.addCounts(m_child, 2, 1, 0, 0);
+        assertFalse(summary.matches(LessonSummary.create(m_root)));
+    }
+}
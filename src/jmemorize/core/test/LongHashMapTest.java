@@ -0,0 +1,136 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardSet;
+import jmemorize.core.Category;
+import jmemorize.util.LongHashMap;
+import junit.framework.TestCase;
+
+public class LongHashMapTest extends TestCase
+{
+    private LongHashMap<String> m_map;
+
+    protected void setUp() throws Exception
+    {
+        m_map = new LongHashMap<String>();
+    }
+
+    public void testPutGetRemove()
+    {
+        assertNull(m_map.put(1, "a"));
+        assertNull(m_map.put(-5, "b"));
+        assertNull(m_map.put(Long.MAX_VALUE, "c"));
+        assertEquals("a", m_map.put(1, "d"));
+
+        assertEquals(3, m_map.size());
+        assertEquals("d", m_map.get(1));
+        assertEquals("b", m_map.get(-5));
+        assertEquals("c", m_map.get(Long.MAX_VALUE));
+        assertNull(m_map.get(0));
+
+        assertEquals("b", m_map.remove(-5));
+        assertNull(m_map.remove(-5));
+        assertFalse(m_map.containsKey(-5));
+        assertEquals(2, m_map.size());
+
+        m_map.clear();
+        assertTrue(m_map.isEmpty());
+        assertNull(m_map.get(1));
+    }
+
+    public void testMatchesHashMap()
+    {
+        Map<Long, String> expected = new HashMap<Long, String>();
+        Random random = new Random(7);
+
+        // few keys, so that removed slots are reused and dropped
+        for (int i = 0; i < 100000; i++)
+        {
+            long key = random.nextInt(2000) * 1000003L;
+            if (random.nextInt(3) == 0)
+            {
+                assertEquals(expected.remove(key), m_map.remove(key));
+            }
+            else
+            {
+                String value = Integer.toString(i);
+                assertEquals(expected.put(key, value), m_map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), m_map.size());
+        for (Map.Entry<Long, String> entry : expected.entrySet())
+            assertEquals(entry.getValue(), m_map.get(entry.getKey()));
+    }
+
+    public void testIteratorRemove()
+    {
+        for (long key = 0; key < 100; key++)
+            m_map.put(key, Long.toString(key));
+
+        int seen = 0;
+        for (Iterator<String> it = m_map.values().iterator(); it.hasNext();)
+        {
+            String value = it.next();
+            seen++;
+            if (Long.parseLong(value) % 2 == 0)
+                it.remove();
+        }
+
+        assertEquals(100, seen);
+        assertEquals(50, m_map.size());
+        assertEquals(50, m_map.values().size());
+        assertNull(m_map.get(10));
+        assertEquals("11", m_map.get(11));
+    }
+
+    public void testCardSetUsesIds()
+    {
+        Category category = new Category("category");
+        Card card = new Card("a", "b");
+        Card other = new Card("c", "d");
+        category.addCard(card);
+        category.addCard(other);
+
+        CardSet set = new CardSet();
+        assertTrue(set.add(card));
+        assertFalse(set.add(card));
+        assertTrue(set.contains(card));
+        assertFalse(set.contains(other));
+
+        // a card with the same id is not the same card
+        Card copy = (Card)card.clone();
+        copy.setId(card.getId());
+        assertFalse(set.contains(copy));
+        assertFalse(set.remove(copy));
+
+        set.add(other);
+        set.removeAll(new CardSet(Collections.singleton(card)));
+        assertEquals(1, set.size());
+        assertSame(other, set.iterator().next());
+    }
+}
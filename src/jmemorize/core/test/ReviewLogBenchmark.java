@@ -0,0 +1,117 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.learn.ReviewLog;
+import jmemorize.core.learn.ReviewStats;
+
+/**
+ * Measures adding reviews to a {@link ReviewLog}, writing them to its column
+ * files and computing the statistics of a lesson from the mapped columns.
+ */
+public class ReviewLogBenchmark
+{
+    private static final int CARDS      = 100000;
+    private static final int CATEGORIES = 10;
+    private static final int REVIEWS    = 1000000;
+
+    private static Object    s_sink;
+
+    public static void main(String[] args) throws Exception
+    {
+        final Category root = new Category("root");
+        for (int i = 0; i < CATEGORIES; i++)
+        {
+            Category category = new Category("category " + i);
+            root.addCategoryChild(category);
+            for (int j = 0; j < CARDS / CATEGORIES; j++)
+                category.addCard(new Card("front " + j, "back " + j));
+        }
+
+        List<Card> cards = root.getCards();
+        Random random = new Random(42);
+        final long[] ids = new long[REVIEWS];
+        final long[] times = new long[REVIEWS];
+        for (int i = 0; i < REVIEWS; i++)
+        {
+            ids[i] = cards.get(random.nextInt(CARDS)).getId();
+            times[i] = 1000000000000L + i * 60000L;
+        }
+
+        final File directory = File.createTempFile("benchmark", ".reviews");
+        directory.delete();
+
+        BenchmarkTimer.measure("ReviewLog.add", REVIEWS, new Runnable() {
+            public void run()
+            {
+                ReviewLog log = new ReviewLog();
+                for (int i = 0; i < REVIEWS; i++)
+                    log.add(ids[i], times[i], i % 5, i % 5 + 1, i % 4, 1500, false);
+                s_sink = log;
+            }
+        });
+
+        BenchmarkTimer.measure("ReviewLog.add and flush", REVIEWS, new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    ReviewLog log = new ReviewLog();
+                    log.saveTo(directory);
+                    for (int i = 0; i < REVIEWS; i++)
+                        log.add(ids[i], times[i], i % 5, i % 5 + 1, i % 4, 1500, false);
+                    log.flush();
+                    s_sink = log;
+                }
+                catch (IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        final ReviewLog log = new ReviewLog();
+        log.open(directory);
+        BenchmarkTimer.measure("ReviewLog.query", REVIEWS, new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    ReviewStats stats = log.query(root, 0, Long.MAX_VALUE);
+                    s_sink = stats.getRetentionCurve();
+                }
+                catch (IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        for (File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+}
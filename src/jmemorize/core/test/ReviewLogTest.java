@@ -0,0 +1,323 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Main;
+import jmemorize.core.learn.DefaultLearnSession;
+import jmemorize.core.learn.LearnSettings;
+import jmemorize.core.learn.ReviewLog;
+import jmemorize.core.learn.ReviewStats;
+import jmemorize.core.test.stubs.LearnSessionProviderStub;
+import junit.framework.TestCase;
+
+public class ReviewLogTest extends TestCase
+{
+    private static final long T0 = 1000000000000L;
+
+    private List<File> m_directories = new ArrayList<File>();
+
+    private Category   m_rootCategory;
+    private Category   m_childCategory;
+    private Card       m_card0;
+    private Card       m_card1;
+    private Card       m_card2;
+
+    protected void setUp() throws Exception
+    {
+        m_rootCategory = new Category("root");
+        m_childCategory = new Category("child");
+        m_rootCategory.addCategoryChild(m_childCategory);
+
+        m_card0 = new Card("front0", "flip0");
+        m_card1 = new Card("front1", "flip1");
+        m_card2 = new Card("front2", "flip2");
+        m_rootCategory.addCard(m_card0);
+        m_rootCategory.addCard(m_card1);
+        m_childCategory.addCard(m_card2);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        for (File directory : m_directories)
+        {
+            File[] files = directory.listFiles();
+            if (files != null)
+            {
+                for (File file : files)
+                    file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    public void testSessionLogsReviews() throws Exception
+    {
+        long start = Main.getNow().getTime();
+        ReviewLog log = new ReviewLog();
+        DefaultLearnSession session = new DefaultLearnSession(m_rootCategory,
+            new LearnSettings(), new ArrayList<Card>(), true, false,
+            new LearnSessionProviderStub());
+        session.setReviewLog(log);
+        session.startLearning();
+
+        session.cardSkipped();
+        session.cardChecked(true, false);
+        session.cardChecked(false, true);
+
+        assertEquals(3, log.size());
+
+        ReviewStats stats = log.query(m_rootCategory, start, 
+            Main.getNow().getTime() + 1);
+        assertEquals(1, stats.getTotal().getPassed());
+        assertEquals(1, stats.getTotal().getFailed());
+        assertEquals(1, stats.getTotal().getSkipped());
+        assertEquals(3, stats.getLevelCounts(0).getReviews());
+    }
+
+    public void testKeepsReviewsPendingWithoutDirectory() throws Exception
+    {
+        ReviewLog log = new ReviewLog();
+        log.add(m_card0.getId(), T0, 0, 1, ReviewLog.PASSED, 100, false);
+        log.flush();
+
+        assertNull(log.getDirectory());
+        assertEquals(1, log.size());
+
+        File directory = createDirectory();
+        log.saveTo(directory);
+        assertEquals(directory, log.getDirectory());
+
+        ReviewLog reopened = new ReviewLog();
+        reopened.open(directory);
+        assertEquals(1, reopened.size());
+    }
+
+    public void testFlushAndReopen() throws Exception
+    {
+        File directory = createDirectory();
+        ReviewLog log = new ReviewLog();
+        log.open(directory);
+        assertEquals(0, log.size());
+
+        log.add(m_card0.getId(), T0, 0, 1, ReviewLog.PASSED, 100, false);
+        log.add(m_card1.getId(), T0 + 1, 0, 0, ReviewLog.FAILED, 200, true);
+        log.flush();
+        log.add(m_card2.getId(), T0 + 2, 0, 0, ReviewLog.SKIPPED, 300, false);
+        log.flush();
+
+        ReviewLog reopened = new ReviewLog();
+        reopened.open(directory);
+        assertEquals(3, reopened.size());
+
+        ReviewStats stats = reopened.query(m_rootCategory, 0, Long.MAX_VALUE);
+        assertEquals(1, stats.getTotal().getPassed());
+        assertEquals(1, stats.getTotal().getFailed());
+        assertEquals(1, stats.getTotal().getSkipped());
+        assertEquals(200, stats.getTotal().getAverageResponseTime());
+    }
+
+    public void testKeepsReviewsOfUnsavedCardsUntilSaved() throws Exception
+    {
+        File directory = createDirectory();
+        ReviewLog log = new ReviewLog();
+        log.open(directory);
+        log.setSavedCardIds(m_card2.getId());
+
+        log.add(m_card2.getId(), T0, 0, 1, ReviewLog.PASSED, 100, false);
+        log.add(m_card0.getId(), T0 + 1, 0, 1, ReviewLog.PASSED, 100, false);
+        log.flush();
+
+        assertEquals(2, log.size());
+        assertEquals(2, log.query(m_rootCategory, 0, Long.MAX_VALUE)
+            .getTotal().getPassed());
+
+        // the changes of the lesson are discarded
+        ReviewLog reopened = new ReviewLog();
+        reopened.open(directory);
+        assertEquals(1, reopened.size());
+
+        // the lesson is saved
+        log.setSavedCardIds(m_card2.getId() + 1);
+        log.flush();
+
+        reopened = new ReviewLog();
+        reopened.open(directory);
+        assertEquals(2, reopened.size());
+    }
+
+    public void testOpenKeepsStoredDirectory() throws Exception
+    {
+        File directory = createDirectory();
+        ReviewLog log = new ReviewLog();
+        log.open(directory);
+        log.open(createDirectory());
+
+        assertEquals(directory, log.getDirectory());
+    }
+
+    public void testSaveToReplacesStaleLog() throws Exception
+    {
+        File directory = createDirectory();
+        ReviewLog stale = new ReviewLog();
+        stale.open(directory);
+        for (int i = 0; i < 5; i++)
+            stale.add(m_card0.getId(), T0 + i, 0, 1, ReviewLog.PASSED, 100, false);
+        stale.flush();
+
+        ReviewLog log = new ReviewLog();
+        log.add(m_card1.getId(), T0, 0, 0, ReviewLog.FAILED, 100, false);
+        log.add(m_card1.getId(), T0 + 1, 0, 1, ReviewLog.PASSED, 100, false);
+        log.saveTo(directory);
+
+        ReviewLog reopened = new ReviewLog();
+        reopened.open(directory);
+        assertEquals(2, reopened.size());
+
+        ReviewStats stats = reopened.query(m_rootCategory, 0, Long.MAX_VALUE);
+        assertEquals(1, stats.getTotal().getPassed());
+        assertEquals(1, stats.getTotal().getFailed());
+    }
+
+    public void testSaveToCopiesWrittenReviews() throws Exception
+    {
+        File oldDirectory = createDirectory();
+        ReviewLog log = new ReviewLog();
+        log.open(oldDirectory);
+        log.add(m_card0.getId(), T0, 0, 1, ReviewLog.PASSED, 100, false);
+        log.add(m_card1.getId(), T0 + 1, 0, 1, ReviewLog.PASSED, 100, false);
+        log.flush();
+
+        File newDirectory = createDirectory();
+        log.saveTo(newDirectory);
+        log.add(m_card2.getId(), T0 + 2, 0, 1, ReviewLog.PASSED, 100, false);
+        log.flush();
+
+        ReviewLog oldLog = new ReviewLog();
+        oldLog.open(oldDirectory);
+        assertEquals(2, oldLog.size());
+
+        ReviewLog newLog = new ReviewLog();
+        newLog.open(newDirectory);
+        assertEquals(3, newLog.size());
+        assertEquals(3, newLog.query(m_rootCategory, 0, Long.MAX_VALUE)
+            .getTotal().getPassed());
+    }
+
+    public void testOverwritesTornRow() throws Exception
+    {
+        File directory = createDirectory();
+        ReviewLog log = new ReviewLog();
+        log.open(directory);
+        log.add(m_card0.getId(), T0, 0, 1, ReviewLog.PASSED, 100, false);
+        log.add(m_card1.getId(), T0 + 1, 0, 1, ReviewLog.PASSED, 100, false);
+        log.flush();
+
+        // the program ended while writing the card column of the next row
+        File cardColumn = new File(directory, "card.col");
+        FileOutputStream out = new FileOutputStream(cardColumn, true);
+        out.write(new byte[] {1, 2, 3});
+        out.close();
+
+        ReviewLog reopened = new ReviewLog();
+        reopened.open(directory);
+        assertEquals(2, reopened.size());
+
+        reopened.add(m_card2.getId(), T0 + 2, 0, 0, ReviewLog.FAILED, 100, false);
+        reopened.flush();
+        assertEquals(3 * 8, cardColumn.length());
+
+        ReviewStats stats = reopened.query(m_rootCategory, 0, Long.MAX_VALUE);
+        assertEquals(2, stats.getTotal().getPassed());
+        assertEquals(1, stats.getLocalCounts(m_childCategory).getFailed());
+    }
+
+    public void testRetentionCurve() throws Exception
+    {
+        ReviewLog log = new ReviewLog();
+        long id0 = m_card0.getId();
+        long id1 = m_card1.getId();
+
+        log.add(id0, T0, 0, 1, ReviewLog.PASSED, 100, false);
+        log.add(id1, T0, 0, 1, ReviewLog.PASSED, 100, false);
+        log.add(id0, T0 + 2 * Card.ONE_DAY, 1, 0, ReviewLog.FAILED, 100, false);
+        log.add(id0, T0 + 2 * Card.ONE_DAY + 1000, 0, 0, ReviewLog.SKIPPED, 100, false);
+        log.add(id0, T0 + 2 * Card.ONE_DAY + 3600000, 0, 1, ReviewLog.PASSED, 100, false);
+        log.add(id1, T0 + 10 * Card.ONE_DAY, 1, 2, ReviewLog.PASSED, 100, false);
+
+        ReviewStats stats = log.query(m_rootCategory, 0, Long.MAX_VALUE);
+        ReviewStats.Counts[] curve = stats.getRetentionCurve();
+
+        assertEquals(ReviewStats.INTERVALS, curve.length);
+        assertEquals(1, curve[0].getPassed()); // after an hour
+        assertEquals(1, curve[2].getFailed()); // after 2 days
+        assertEquals(1, curve[4].getPassed()); // after 10 days
+        assertEquals(0f, curve[2].getRetention(), 0.001f);
+        assertEquals(8 * Card.ONE_DAY, ReviewStats.getIntervalStart(4));
+
+        int checked = 0;
+        for (ReviewStats.Counts counts : curve)
+            checked += counts.getChecked();
+        assertEquals(3, checked);
+
+        assertEquals(2, stats.getLevels());
+        assertEquals(4, stats.getLevelCounts(0).getReviews());
+        assertEquals(0.5f, stats.getLevelCounts(1).getRetention(), 0.001f);
+    }
+
+    public void testCountsPerCategoryAndTimeRange() throws Exception
+    {
+        ReviewLog log = new ReviewLog();
+        log.add(m_card0.getId(), T0, 0, 1, ReviewLog.PASSED, 100, false);
+        log.add(m_card2.getId(), T0 + 1, 0, 0, ReviewLog.FAILED, 100, false);
+        log.add(m_card2.getId(), T0 + Card.ONE_DAY, 0, 0, ReviewLog.PARTIALLY_PASSED, 100, true);
+        log.add(m_card1.getId(), T0 + 2 * Card.ONE_DAY, 0, 1, ReviewLog.PASSED, 100, false);
+        log.add(12345, T0 + 2 * Card.ONE_DAY, 0, 1, ReviewLog.PASSED, 100, false);
+
+        ReviewStats all = log.query(m_rootCategory, 0, Long.MAX_VALUE);
+        assertEquals(4, all.getTotal().getReviews());
+        assertEquals(2, all.getLocalCounts(m_rootCategory).getPassed());
+        assertEquals(4, all.getCounts(m_rootCategory).getReviews());
+        assertEquals(0.5f, all.getCounts(m_childCategory).getRetention(), 0.001f);
+
+        ReviewStats child = log.query(m_childCategory, 0, Long.MAX_VALUE);
+        assertEquals(2, child.getTotal().getReviews());
+        assertEquals(0, child.getLocalCounts(m_rootCategory).getReviews());
+
+        // the earlier check is still used for the retention curve
+        ReviewStats range = log.query(m_rootCategory, T0 + Card.ONE_DAY,
+            T0 + 2 * Card.ONE_DAY);
+        assertEquals(1, range.getTotal().getReviews());
+        assertEquals(1, range.getRetentionCurve()[0].getPartiallyPassed());
+    }
+
+    private File createDirectory() throws Exception
+    {
+        File directory = File.createTempFile("reviews", ".reviews");
+        directory.delete();
+        m_directories.add(directory);
+        return directory;
+    }
+}
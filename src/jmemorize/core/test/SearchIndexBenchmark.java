@@ -0,0 +1,174 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.SearchIndex;
+import jmemorize.core.SearchService;
+import jmemorize.core.SearchTool;
+import jmemorize.core.SearchService.Query;
+
+/**
+ * Compares searching a large lesson with the search index against the linear
+ * scan of SearchTool over getCards(), which is what the find frame did before
+ * the index existed. The cards consist of random words. The number of cards
+ * can be given as first argument. At last a word is typed into a search
+ * service, which narrows the results of the previous chars. Run with a large fixed heap (e.g. -Xms3g
+ * -Xmx3g) to get stable numbers.
+ */
+public class SearchIndexBenchmark
+{
+    private static final int  CATEGORIES = 20;
+    private static final int  WORDS      = 50000;
+
+    private static volatile int s_sink;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int cards = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        Random random = new Random(42);
+        String[] words = new String[WORDS];
+        for (int i = 0; i < WORDS; i++)
+        {
+            words[i] = randomWord(random);
+        }
+
+        Lesson lesson = createLesson(cards, words, random);
+
+        long heap = BenchmarkTimer.usedHeap();
+        long start = System.nanoTime();
+        lesson.getSearchIndex();
+        System.out.println(String.format("building the index for %d cards: %.2f s, %d MiB",
+            cards, (System.nanoTime() - start) / 1e9,
+            (BenchmarkTimer.usedHeap() - heap) >> 20));
+
+        String word = words[random.nextInt(WORDS)];
+
+        measure("substring '" + word + "'", word, SearchTool.SUBSTRING, lesson);
+        measure("substring '" + word.substring(1, 4) + "'",
+            word.substring(1, 4), SearchTool.SUBSTRING, lesson);
+        measure("prefix '" + word.substring(0, 4) + "'",
+            word.substring(0, 4), SearchTool.PREFIX, lesson);
+        measure("whole word '" + word + "'", word, SearchTool.WHOLE_WORD, lesson);
+        measure("substring '" + word.substring(0, 2) + "'",
+            word.substring(0, 2), SearchTool.SUBSTRING, lesson);
+        
+        type(words[random.nextInt(WORDS)], lesson);
+    }
+    
+    /**
+     * Types the given word into a search service one char at a time, waiting
+     * for the complete results after every char, and prints the latency to
+     * the first results.
+     */
+    private static void type(String word, Lesson lesson) throws InterruptedException
+    {
+        final BlockingQueue<Boolean> completed = new LinkedBlockingQueue<Boolean>();
+        SearchService service = new SearchService(lesson.getSearchIndex(), 
+            new SearchService.ResultListener() {
+            public void onResults(Query query, List<Card> cards, boolean complete)
+            {
+                if (complete)
+                    completed.add(Boolean.TRUE);
+            }
+        });
+        
+        for (int i = 1; i <= word.length(); i++)
+        {
+            String text = word.substring(0, i);
+            service.search(new Query(text, SearchTool.BOTH_SIDES, false, 
+                SearchTool.SUBSTRING, lesson.getRootCategory()));
+            completed.take();
+            
+            System.out.println(String.format("typing '%s', first results after %.3f ms", 
+                text, service.getFirstResultLatency() / 1e6));
+        }
+        
+        service.shutdown();
+    }
+
+    private static void measure(String label, final String text,
+        final int mode, final Lesson lesson)
+    {
+        final Category root = lesson.getRootCategory();
+        final SearchIndex index = lesson.getSearchIndex();
+
+        BenchmarkTimer.measure("linear scan, " + label, 1, new Runnable() {
+            public void run()
+            {
+                List<Card> cards = SearchTool.search(text, SearchTool.BOTH_SIDES,
+                    false, mode, root.getCards());
+                s_sink += cards.size();
+            }
+        });
+
+        BenchmarkTimer.measure("index, " + label, 1, new Runnable() {
+            public void run()
+            {
+                List<Card> cards = index.search(text, SearchTool.BOTH_SIDES,
+                    false, mode, root);
+                s_sink += cards.size();
+            }
+        });
+    }
+
+    private static Lesson createLesson(int cards, String[] words, Random random)
+    {
+        Category root = new Category("root");
+        Category[] categories = new Category[CATEGORIES];
+        for (int i = 0; i < CATEGORIES; i++)
+        {
+            categories[i] = root.addCategoryChild(new Category("category" + i));
+        }
+
+        root.beginUpdate();
+        for (int i = 0; i < cards; i++)
+        {
+            String front = words[random.nextInt(WORDS)] + " " +
+                words[random.nextInt(WORDS)];
+            String back = words[random.nextInt(WORDS)] + " " +
+                words[random.nextInt(WORDS)] + " " + words[random.nextInt(WORDS)];
+
+            categories[i % CATEGORIES].addCard(new Card(front, back));
+        }
+        root.endUpdate();
+
+        return new Lesson(root, false);
+    }
+
+    private static String randomWord(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int length = 4 + random.nextInt(6);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char)('a' + random.nextInt(26)));
+        }
+
+        return sb.toString();
+    }
+}
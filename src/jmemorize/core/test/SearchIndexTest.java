@@ -0,0 +1,256 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.SearchIndex;
+import jmemorize.core.SearchTool;
+import junit.framework.TestCase;
+
+public class SearchIndexTest extends TestCase
+{
+    private Lesson   m_lesson;
+    private Category m_root;
+    private Category m_child;
+
+    private Card     m_cardHouse;
+    private Card     m_cardMouse;
+    private Card     m_cardTree;
+
+    protected void setUp() throws Exception
+    {
+        m_lesson = new Lesson(false);
+        m_root = m_lesson.getRootCategory();
+        m_child = m_root.addCategoryChild(new Category("child"));
+
+        m_cardHouse = new Card("Haus", "house");
+        m_cardMouse = new Card("Maus", "mouse pad");
+        m_cardTree = new Card("Baum", "tree house");
+
+        m_root.addCard(m_cardHouse);
+        m_root.addCard(m_cardMouse);
+        m_child.addCard(m_cardTree);
+    }
+
+    public void testSubstring()
+    {
+        assertSearch("ous", SearchTool.FLIP_SIDE, false,
+            m_cardHouse, m_cardMouse, m_cardTree);
+        assertSearch("aus", SearchTool.FRONT_SIDE, false,
+            m_cardHouse, m_cardMouse);
+        assertSearch("aus", SearchTool.FLIP_SIDE, false);
+        assertSearch("tree h", SearchTool.BOTH_SIDES, false, m_cardTree);
+        assertSearch("xyz", SearchTool.BOTH_SIDES, false);
+    }
+
+    public void testShortTexts()
+    {
+        assertSearch("m", SearchTool.FRONT_SIDE, false, m_cardMouse, m_cardTree);
+        assertSearch("us", SearchTool.FRONT_SIDE, false, m_cardHouse, m_cardMouse);
+        assertSearch("d", SearchTool.BOTH_SIDES, false, m_cardMouse);
+        assertSearch("", SearchTool.FRONT_SIDE, false,
+            m_cardHouse, m_cardMouse, m_cardTree);
+    }
+
+    public void testMatchCase()
+    {
+        assertSearch("haus", SearchTool.FRONT_SIDE, false, m_cardHouse);
+        assertSearch("haus", SearchTool.FRONT_SIDE, true);
+        assertSearch("Haus", SearchTool.FRONT_SIDE, true, m_cardHouse);
+        assertSearch("H", SearchTool.FRONT_SIDE, true, m_cardHouse);
+    }
+
+    public void testCaseFolding()
+    {
+        Card card = new Card("Stra\u00DFe", "STREET");
+        m_root.addCard(card);
+        
+        assertSearch("strasse", SearchTool.FRONT_SIDE, false, card);
+        assertSearch("STRA\u00DF", SearchTool.FRONT_SIDE, false, card);
+        assertSearch("street", SearchTool.FLIP_SIDE, false, card);
+        assertSearch("strasse", SearchTool.FRONT_SIDE, true);
+    }
+
+    public void testPrefixAndWholeWord()
+    {
+        SearchIndex index = m_lesson.getSearchIndex();
+
+        assertEquals(Arrays.asList(m_cardMouse), index.search("pa",
+            SearchTool.FLIP_SIDE, false, SearchTool.PREFIX, m_root));
+        assertEquals(Arrays.asList(), index.search("ad",
+            SearchTool.FLIP_SIDE, false, SearchTool.PREFIX, m_root));
+
+        assertEquals(Arrays.asList(m_cardHouse, m_cardTree), index.search(
+            "house", SearchTool.FLIP_SIDE, false, SearchTool.WHOLE_WORD, m_root));
+        assertEquals(Arrays.asList(), index.search("hous",
+            SearchTool.FLIP_SIDE, false, SearchTool.WHOLE_WORD, m_root));
+    }
+
+    public void testCategoryScope()
+    {
+        SearchIndex index = m_lesson.getSearchIndex();
+
+        assertEquals(Arrays.asList(m_cardTree), index.search("house",
+            SearchTool.FLIP_SIDE, false, SearchTool.SUBSTRING, m_child));
+    }
+
+    public void testCategoryScopeOfAttachedSubtree()
+    {
+        SearchIndex index = m_lesson.getSearchIndex();
+
+        Category sub = new Category("sub");
+        Category mid = sub.addCategoryChild(new Category("mid"));
+        Card card = new Card("hello", "world");
+        mid.addCard(card);
+        m_child.addCategoryChild(sub);
+
+        assertEquals(Arrays.asList(card), index.search("hello",
+            SearchTool.BOTH_SIDES, false, SearchTool.SUBSTRING, sub));
+        assertEquals(Arrays.asList(card), index.search("hello",
+            SearchTool.BOTH_SIDES, false, SearchTool.SUBSTRING, m_child));
+        assertTrue(index.search("hello", SearchTool.BOTH_SIDES, false,
+            SearchTool.SUBSTRING, m_cardHouse.getCategory()).contains(card));
+    }
+
+    public void testEditedCard()
+    {
+        m_lesson.getSearchIndex();
+        m_cardHouse.setSides("Garten", "garden");
+
+        assertSearch("haus", SearchTool.FRONT_SIDE, false);
+        assertSearch("gart", SearchTool.FRONT_SIDE, false, m_cardHouse);
+    }
+
+    public void testRemovedCard()
+    {
+        m_lesson.getSearchIndex();
+        m_root.removeCard(m_cardMouse);
+
+        assertSearch("aus", SearchTool.FRONT_SIDE, false, m_cardHouse);
+    }
+
+    public void testAddedAndRemovedCategory()
+    {
+        m_lesson.getSearchIndex();
+
+        Category other = new Category("other");
+        Card card = new Card("Katze", "cat");
+        other.addCard(card);
+
+        m_child.addCategoryChild(other);
+        assertSearch("katz", SearchTool.FRONT_SIDE, false, card);
+
+        m_child.remove();
+        assertSearch("katz", SearchTool.FRONT_SIDE, false);
+        assertSearch("baum", SearchTool.FRONT_SIDE, false);
+    }
+
+    public void testBatchUpdate()
+    {
+        m_lesson.getSearchIndex();
+
+        List<Card> cards = new ArrayList<Card>();
+        for (int i = 0; i < 10; i++)
+            cards.add(new Card("Karte " + i, "card " + i));
+
+        m_child.addCards(cards, 0);
+        assertSearch("karte 7", SearchTool.FRONT_SIDE, false, cards.get(7));
+
+        m_root.removeCards(cards);
+        assertSearch("karte", SearchTool.FRONT_SIDE, false);
+    }
+
+    /**
+     * Compares the index with the linear search after a lot of random edits,
+     * which also make the index rebuild itself.
+     */
+    public void testMatchesLinearSearch()
+    {
+        Random random = new Random(42);
+        List<Card> cards = new ArrayList<Card>();
+        for (int i = 0; i < 500; i++)
+        {
+            Card card = new Card(randomText(random), randomText(random));
+            cards.add(card);
+            m_child.addCard(card);
+        }
+
+        SearchIndex index = m_lesson.getSearchIndex();
+
+        for (int i = 0; i < 3000; i++)
+        {
+            Card card = cards.get(random.nextInt(cards.size()));
+            card.setSides(randomText(random), randomText(random));
+        }
+
+        String[] queries = {"a", "Ab", "ba c", "cab", "abc", "B", "ca ab"};
+        for (String query : queries)
+        {
+            for (int side = 0; side <= 2; side++)
+            {
+                for (int mode = 0; mode <= 2; mode++)
+                {
+                    for (boolean matchCase : new boolean[] {true, false})
+                    {
+                        List<Card> expected = SearchTool.search(query, side,
+                            matchCase, mode, m_root.getCards());
+                        List<Card> found = index.search(query, side,
+                            matchCase, mode, m_root);
+
+                        assertEquals(new HashSet<Card>(expected),
+                            new HashSet<Card>(found));
+                        assertEquals(expected.size(), found.size());
+                    }
+                }
+            }
+        }
+    }
+
+    private void assertSearch(String text, int side, boolean matchCase,
+        Card... expected)
+    {
+        List<Card> found = m_lesson.getSearchIndex().search(text, side,
+            matchCase, SearchTool.SUBSTRING, m_root);
+
+        assertEquals(new HashSet<Card>(Arrays.asList(expected)),
+            new HashSet<Card>(found));
+        assertEquals(new HashSet<Card>(SearchTool.search(text, side, matchCase,
+            m_root.getCards())), new HashSet<Card>(found));
+    }
+
+    private static String randomText(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append("abcABC ".charAt(random.nextInt(7)));
+        }
+
+        return sb.toString();
+    }
+}
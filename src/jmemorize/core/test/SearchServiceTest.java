@@ -0,0 +1,181 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.Lesson;
+import jmemorize.core.SearchService;
+import jmemorize.core.SearchTool;
+import jmemorize.core.SearchService.Query;
+import junit.framework.TestCase;
+
+public class SearchServiceTest extends TestCase implements
+    SearchService.ResultListener
+{
+    private static class Result
+    {
+        private final Query      m_query;
+        private final List<Card> m_cards;
+        private final boolean    m_complete;
+
+        public Result(Query query, List<Card> cards, boolean complete)
+        {
+            m_query = query;
+            m_cards = cards;
+            m_complete = complete;
+        }
+    }
+
+    private BlockingQueue<Result> m_results = new LinkedBlockingQueue<Result>();
+
+    private Lesson                m_lesson;
+    private Category              m_root;
+    private SearchService         m_service;
+
+    protected void setUp() throws Exception
+    {
+        m_lesson = new Lesson(false);
+        m_root = m_lesson.getRootCategory();
+
+        for (int i = 0; i < 250; i++)
+        {
+            m_root.addCard(new Card("word " + i, "Wort " + i));
+        }
+
+        m_service = new SearchService(m_lesson.getSearchIndex(), this);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        m_service.shutdown();
+    }
+
+    public void onResults(Query query, List<Card> cards, boolean complete)
+    {
+        m_results.add(new Result(query, cards, complete));
+    }
+
+    public void testReportsFirstHitsBeforeAllHits() throws Exception
+    {
+        Query query = query("word");
+        m_service.search(query);
+
+        Result first = nextResult();
+        assertSame(query, first.m_query);
+        assertFalse(first.m_complete);
+        assertEquals(SearchService.FIRST_HITS, first.m_cards.size());
+
+        Result all = nextResult();
+        assertTrue(all.m_complete);
+        assertEquals(250, all.m_cards.size());
+        assertEquals(first.m_cards, all.m_cards.subList(0, SearchService.FIRST_HITS));
+
+        assertTrue(m_service.getFirstResultLatency() >= 0);
+    }
+
+    public void testSmallResultIsReportedOnce() throws Exception
+    {
+        m_service.search(query("word 12"));
+
+        Result result = nextResult();
+        assertTrue(result.m_complete);
+        assertEquals(11, result.m_cards.size()); // 12, 120-129
+    }
+
+    public void testNarrowedSearch() throws Exception
+    {
+        m_service.search(query("1"));
+        List<Card> wide = completeResult().m_cards;
+
+        m_service.search(query("word 1"));
+        List<Card> narrow = completeResult().m_cards;
+
+        assertEquals(SearchTool.search("word 1", SearchTool.BOTH_SIDES, false,
+            m_root.getCards()).size(), narrow.size());
+        assertTrue(wide.containsAll(narrow));
+    }
+
+    public void testNarrowedSearchSeesChanges() throws Exception
+    {
+        m_service.search(query("word"));
+        completeResult();
+
+        Card card = new Card("word 1000", "Wort 1000");
+        m_root.addCard(card);
+
+        m_service.search(query("word 1000"));
+        List<Card> cards = completeResult().m_cards;
+
+        assertEquals(1, cards.size());
+        assertSame(card, cards.get(0));
+    }
+
+    public void testCancelledSearchIsNotReported() throws Exception
+    {
+        Query first = query("word");
+        Query second = query("Wort 3");
+
+        m_service.search(first);
+        m_service.search(second);
+
+        // the first search may have finished before it could be cancelled
+        Result result = completeResult();
+        if (result.m_query == first)
+            result = completeResult();
+
+        assertSame(second, result.m_query);
+        assertEquals(11, result.m_cards.size()); // 3, 30-39
+        assertNull(m_results.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private Query query(String text)
+    {
+        return new Query(text, SearchTool.BOTH_SIDES, false,
+            SearchTool.SUBSTRING, m_root);
+    }
+
+    private Result nextResult() throws InterruptedException
+    {
+        Result result = m_results.poll(10, TimeUnit.SECONDS);
+        assertNotNull("no result", result);
+
+        return result;
+    }
+
+    /**
+     * @return the next complete result. Partial results of superseded
+     * searches that are still in the queue are skipped.
+     */
+    private Result completeResult() throws InterruptedException
+    {
+        Result result = nextResult();
+        while (!result.m_complete)
+        {
+            result = nextResult();
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.core.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.learn.DefaultLearnSession;
+import jmemorize.core.learn.LearnQueue;
+import jmemorize.core.learn.LearnSettings;
+import jmemorize.core.test.stubs.LearnSessionProviderStub;
+
+/**
+ * Compares the work that starting a learn session does on the event dispatch
+ * thread: looking through the cards of the category and building the
+ * session there, as before, or only taking the cards of a learn queue that
+ * was built in advance. Also measures keeping the queue up to date.
+ */
+public class SessionStartBenchmark
+{
+    private static final int CARDS      = 100000;
+    private static final int CATEGORIES = 10;
+
+    private static Object    s_sink;
+
+    public static void main(String[] args)
+    {
+        final Category root = new Category("root");
+        for (int i = 0; i < CATEGORIES; i++)
+        {
+            Category category = new Category("category " + i);
+            root.addCategoryChild(category);
+            for (int j = 0; j < CARDS / CATEGORIES; j++)
+                category.addCard(new Card("front " + j, "back " + j), j % 3);
+        }
+
+        final LearnSettings settings = new LearnSettings();
+        final LearnSessionProviderStub provider = new LearnSessionProviderStub();
+
+        BenchmarkTimer.measure("session built on the calling thread", 1, new Runnable() {
+            public void run()
+            {
+                s_sink = new DefaultLearnSession(root, settings,
+                    new ArrayList<Card>(), true, true, provider);
+            }
+        });
+
+        final LearnQueue queue = new LearnQueue(root);
+        BenchmarkTimer.measure("LearnQueue.build in advance", 1, new Runnable() {
+            public void run()
+            {
+                LearnQueue built = new LearnQueue(root);
+                built.build(null);
+                s_sink = built;
+            }
+        });
+        queue.build(null);
+
+        BenchmarkTimer.measure("cards taken from the queue", 1, new Runnable() {
+            public void run()
+            {
+                s_sink = queue.getCards(true, true);
+            }
+        });
+
+        final List<Card> cards = root.getCards();
+        BenchmarkTimer.measure("LearnQueue.update", cards.size(), new Runnable() {
+            public void run()
+            {
+                for (Card card : cards)
+                    queue.update(card);
+            }
+        });
+    }
+}
@@ -113,6 +113,11 @@ public class LearnSessionStub implements LearnSession
         return m_emptySet;
     }
 
+    public List<Card> getUpcomingCards(int max)
+    {
+        return new ArrayList<Card>();
+    }
+
     public Category getCategory()
     {
         return null;
@@ -72,6 +72,7 @@ public interface LC
     // -- File -------
     
     public static final String FILE_CSV                               = "File.CSV";
+    public static final String FILE_CARD_STORE                        = "File.CARD_STORE";
     
     // -- NewCard --------
     
@@ -112,6 +113,7 @@ public interface LC
     public static final String PREFERENCES_FONT                       = "Preferences.FONT";
     public static final String PREFERENCES_SIZE                       = "Preferences.SIZE";
     public static final String PREFERENCES_USE_GZIP                   = "Preferences.USE_GZIP";
+    public static final String PREFERENCES_SAVE_CHUNKED               = "Preferences.SAVE_CHUNKED";
     /** since 1.3.0 */
     public static final String PREFERENCES_VERT_ALIGN                 = "Preferences.VERT_ALIGN";
     /** since 1.3.0 */
@@ -189,6 +191,7 @@ public interface LC
 
     public static final String MATCH_CASE                             = "FindTool.MATCH_CASE";
     public static final String BOTH_SIDES                             = "FindTool.BOTH_SIDES";
+    public static final String QUERY                                  = "FindTool.QUERY";
 
     // -- MainFrame --------
 
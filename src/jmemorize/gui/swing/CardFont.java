@@ -61,4 +61,26 @@ public class CardFont
             default: return StyleConstants.ALIGN_LEFT;
         }
     }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof CardFont))
+            return false;
+        
+        CardFont other = (CardFont)obj;
+        return m_font.equals(other.m_font) && 
+            m_alignment == other.m_alignment &&
+            m_isVerticallyCentered == other.m_isVerticallyCentered;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode()
+    {
+        return m_font.hashCode() * 31 + m_alignment.hashCode();
+    }
 }
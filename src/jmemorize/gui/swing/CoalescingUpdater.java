@@ -0,0 +1,276 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.gui.swing;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import jmemorize.core.Main;
+
+/**
+ * Coalesces model changes into view updates. Every change only marks the
+ * view as dirty, and a single Swing timer starts at most one update per
+ * interval, however many changes happen meanwhile. An update takes a
+ * snapshot of the model on the event dispatch thread, computes the new view
+ * data on a background thread and then applies it on the event dispatch
+ * thread again.
+ * 
+ * The time from the first change of an update until the view has been
+ * repainted is measured and can be queried for every updater.
+ * 
+ * @param <T> the type of the computed view data.
+ */
+public abstract class CoalescingUpdater<T>
+{
+    /**
+     * The default interval between two updates in milliseconds.
+     */
+    public static final int        DEFAULT_INTERVAL = 40;
+    
+    private static ExecutorService s_executor;
+    
+    private final int              m_interval;
+    private final Timer            m_timer;
+    
+    // all fields below are only accessed on the event dispatch thread
+    private boolean                m_dirty;
+    private long                   m_dirtySince;
+    private boolean                m_running;
+    private long                   m_lastStart;
+    
+    private long                   m_lastLatency;
+    private long                   m_maxLatency;
+    private long                   m_totalLatency;
+    private int                    m_updates;
+    
+    public CoalescingUpdater()
+    {
+        this(DEFAULT_INTERVAL);
+    }
+    
+    /**
+     * @param interval the minimal time between the starts of two updates in
+     * milliseconds.
+     */
+    public CoalescingUpdater(int interval)
+    {
+        m_interval = interval;
+        m_lastStart = System.nanoTime() - interval * 1000000L;
+        
+        m_timer = new Timer(interval, new ActionListener() {
+            public void actionPerformed(ActionEvent e)
+            {
+                startUpdate();
+            }
+        });
+        m_timer.setRepeats(false);
+    }
+    
+    /**
+     * Marks the view as dirty, so that it gets updated with the next update.
+     * Can be called from any thread.
+     */
+    public void markDirty()
+    {
+        if (!SwingUtilities.isEventDispatchThread())
+        {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run()
+                {
+                    markDirty();
+                }
+            });
+            return;
+        }
+        
+        if (!m_dirty)
+        {
+            m_dirty = true;
+            m_dirtySince = System.nanoTime();
+        }
+        
+        scheduleUpdate();
+    }
+    
+    /**
+     * @return <code>true</code> if changes are waiting for an update or an
+     * update is running.
+     */
+    public boolean isPending()
+    {
+        return m_dirty || m_running;
+    }
+    
+    /**
+     * @return the time from the first change of the last update until the
+     * view was repainted in milliseconds.
+     */
+    public double getLastLatency()
+    {
+        return m_lastLatency / 1e6;
+    }
+    
+    /**
+     * @return the longest time from a change until the view was repainted in
+     * milliseconds.
+     */
+    public double getMaxLatency()
+    {
+        return m_maxLatency / 1e6;
+    }
+    
+    /**
+     * @return the average time from a change until the view was repainted in
+     * milliseconds.
+     */
+    public double getAverageLatency()
+    {
+        return m_updates > 0 ? m_totalLatency / 1e6 / m_updates : 0;
+    }
+    
+    /**
+     * @return the number of updates that were applied so far.
+     */
+    public int getUpdateCount()
+    {
+        return m_updates;
+    }
+    
+    /**
+     * Takes a snapshot of the model that is needed for the update. Called on
+     * the event dispatch thread.
+     * 
+     * @return the computation that is run on a background thread.
+     */
+    protected abstract Callable<T> prepare();
+    
+    /**
+     * Applies the computed data to the view. Called on the event dispatch
+     * thread.
+     */
+    protected abstract void apply(T result);
+    
+    private void scheduleUpdate()
+    {
+        // a running update schedules the next one when it is done
+        if (m_running || m_timer.isRunning())
+            return;
+        
+        long wait = m_lastStart / 1000000L + m_interval - System.nanoTime() / 1000000L;
+        m_timer.setInitialDelay((int)Math.max(0, Math.min(wait, m_interval)));
+        m_timer.start();
+    }
+    
+    private void startUpdate()
+    {
+        if (!m_dirty || m_running)
+            return;
+        
+        final long since = m_dirtySince;
+        m_dirty = false;
+        m_running = true;
+        m_lastStart = System.nanoTime();
+        
+        final Callable<T> computation;
+        try
+        {
+            computation = prepare();
+        }
+        catch (RuntimeException e)
+        {
+            m_running = false;
+            throw e;
+        }
+        
+        getExecutor().execute(new Runnable() {
+            public void run()
+            {
+                T result = null;
+                try
+                {
+                    result = computation.call();
+                }
+                catch (Exception e)
+                {
+                    Main.logThrowable("Error updating view", e); //$NON-NLS-1$
+                }
+                
+                final T finalResult = result;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        finishUpdate(finalResult, since);
+                    }
+                });
+            }
+        });
+    }
+    
+    private void finishUpdate(T result, final long since)
+    {
+        m_running = false;
+        try
+        {
+            if (result != null)
+                apply(result);
+        }
+        finally
+        {
+            if (m_dirty)
+                scheduleUpdate();
+        }
+        
+        // the repaints that the update caused are processed before this
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run()
+            {
+                long latency = System.nanoTime() - since;
+                
+                m_lastLatency = latency;
+                m_maxLatency = Math.max(m_maxLatency, latency);
+                m_totalLatency += latency;
+                m_updates++;
+            }
+        });
+    }
+    
+    private static synchronized ExecutorService getExecutor()
+    {
+        if (s_executor == null)
+        {
+            s_executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "View update"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        
+        return s_executor;
+    }
+}
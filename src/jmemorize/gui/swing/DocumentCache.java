@@ -0,0 +1,254 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.gui.swing;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.text.StyledDocument;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardSide;
+import jmemorize.core.FormattedText;
+import jmemorize.core.ImageRepository;
+import jmemorize.core.Main;
+
+/**
+ * Holds styled documents of card sides that were rendered in advance. Card
+ * sides that are about to be shown (e.g. the next card of a learn session) 
+ * can be prefetched. Their documents are then decoded on a low priority 
+ * background thread, so that showing them later doesn't need to parse the
+ * formatted text on the event dispatch thread.
+ * 
+ * Because text panes modify the documents they display, a prepared document
+ * is handed out only once. The cache is bounded and drops the least recently
+ * prefetched documents first. Documents are looked up by the equality of the
+ * formatted texts, so a side with the same text gets the same document.
+ */
+public class DocumentCache
+{
+    /**
+     * A card side that is waiting to be rendered. Holds copies of the side's
+     * contents, so that the card can still be edited meanwhile.
+     */
+    private static class Request
+    {
+        private final FormattedText m_text;
+        private final List<String>  m_imageIDs;
+        
+        public Request(CardSide side)
+        {
+            m_text = side.getText();
+            m_imageIDs = new ArrayList<String>(side.getImages());
+        }
+    }
+    
+    private static final int             MAX_DOCUMENTS = 16;
+    
+    private static DocumentCache         m_instance;
+    
+    private final Map<FormattedText, StyledDocument> m_documents = 
+        new LinkedHashMap<FormattedText, StyledDocument>();
+    
+    private final LinkedList<Request>    m_queue       = new LinkedList<Request>();
+    private Thread                       m_worker;
+    
+    private int                          m_hits;
+    private int                          m_misses;
+    
+    public static synchronized DocumentCache getInstance()
+    {
+        if (m_instance == null)
+            m_instance = new DocumentCache();
+        
+        return m_instance;
+    }
+    
+    /**
+     * Returns a styled document for given text. If the document was prefetched
+     * it is removed from the cache and returned. Otherwise a new document is
+     * created on the calling thread.
+     * 
+     * @return a document that is exclusively owned by the caller.
+     */
+    public StyledDocument take(FormattedText text)
+    {
+        StyledDocument doc;
+        synchronized (this)
+        {
+            doc = m_documents.remove(text);
+            if (doc != null)
+                m_hits++;
+            else
+                m_misses++;
+        }
+        
+        return doc != null ? doc : text.getDocument();
+    }
+    
+    /**
+     * Schedules both sides of the given cards to be rendered in the
+     * background. Pending requests of earlier calls are dropped because they
+     * refer to cards that are not upcoming anymore.
+     */
+    public synchronized void prefetch(List<Card> cards)
+    {
+        m_queue.clear();
+        for (Card card : cards)
+        {
+            m_queue.add(new Request(card.getFrontSide()));
+            m_queue.add(new Request(card.getBackSide()));
+        }
+        
+        if (m_queue.isEmpty())
+            return;
+        
+        if (m_worker == null)
+        {
+            m_worker = new Thread(new Runnable() {
+                public void run()
+                {
+                    processQueue();
+                }
+            }, "jMemorize document prefetch"); //$NON-NLS-1$
+            
+            m_worker.setDaemon(true);
+            m_worker.setPriority(Thread.MIN_PRIORITY);
+            m_worker.start();
+        }
+        
+        notifyAll();
+    }
+    
+    /**
+     * Removes all prepared documents, e.g. when a new lesson is loaded.
+     */
+    public synchronized void clear()
+    {
+        m_queue.clear();
+        m_documents.clear();
+    }
+    
+    /**
+     * @return <code>true</code> if a prepared document for a text that is
+     * equal to given one is waiting to be taken.
+     */
+    public synchronized boolean contains(FormattedText text)
+    {
+        return m_documents.containsKey(text);
+    }
+    
+    /**
+     * @return the number of prepared documents.
+     */
+    public synchronized int size()
+    {
+        return m_documents.size();
+    }
+    
+    /**
+     * @return the number of {@link #take(FormattedText)} calls that could be 
+     * served by a prefetched document.
+     */
+    public synchronized int getHits()
+    {
+        return m_hits;
+    }
+    
+    /**
+     * @return the number of {@link #take(FormattedText)} calls that needed to
+     * create their document on the calling thread.
+     */
+    public synchronized int getMisses()
+    {
+        return m_misses;
+    }
+    
+    private void processQueue()
+    {
+        while (true)
+        {
+            Request request;
+            synchronized (this)
+            {
+                while (m_queue.isEmpty())
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                }
+                
+                request = m_queue.removeFirst();
+            }
+            
+            try
+            {
+                prepare(request);
+            }
+            catch (RuntimeException e)
+            {
+                Main.logThrowable("Error prefetching card side", e);
+            }
+        }
+    }
+    
+    private void prepare(Request request)
+    {
+        FormattedText text = request.m_text;
+        synchronized (this)
+        {
+            if (text == null || m_documents.containsKey(text))
+                return;
+        }
+        
+        StyledDocument doc = text.getDocument();
+        
+        // decoding images is as expensive as decoding text
+        ImageRepository repo = ImageRepository.getInstance();
+        for (String id : request.m_imageIDs)
+        {
+            repo.getImage(id);
+        }
+        
+        synchronized (this)
+        {
+            m_documents.put(text, doc);
+            
+            Iterator<FormattedText> it = m_documents.keySet().iterator();
+            while (m_documents.size() > MAX_DOCUMENTS)
+            {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+    
+    private DocumentCache() // singleton
+    {
+    }
+}
@@ -332,9 +332,17 @@ public class GeneralTransferHandler extends TransferHandler
             if (t.isDataFlavorSupported(CARDS_FLAVOR))
             {
                 List<Card> cards = (List<Card>)t.getTransferData(CARDS_FLAVOR);
-                for (Card card : cards)
+                targetCategory.beginUpdate();
+                try
                 {
-                    targetCategory.addCard((Card)card.clone(), card.getLevel());
+                    for (Card card : cards)
+                    {
+                        targetCategory.addCard((Card)card.clone(), card.getLevel());
+                    }
+                }
+                finally
+                {
+                    targetCategory.endUpdate();
                 }
     
                 return true;
@@ -413,10 +421,7 @@ public class GeneralTransferHandler extends TransferHandler
                 Category category = table.getView().getCategory();
 
                 List<Card> cards = (List<Card>)data.getTransferData(CARDS_FLAVOR);
-                for (Card card : cards)
-                {
-                    category.removeCard(card);
-                }
+                category.removeCards(cards);
             }
             else if (data.isDataFlavorSupported(CATEGORY_FLAVOR))
             {
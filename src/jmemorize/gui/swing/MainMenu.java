@@ -36,15 +36,18 @@ import jmemorize.gui.swing.actions.edit.CopyAction;
 import jmemorize.gui.swing.actions.edit.CutAction;
 import jmemorize.gui.swing.actions.edit.EditCardAction;
 import jmemorize.gui.swing.actions.edit.FindAction;
+import jmemorize.gui.swing.actions.edit.FindDuplicatesAction;
 import jmemorize.gui.swing.actions.edit.PasteAction;
 import jmemorize.gui.swing.actions.edit.RemoveAction;
 import jmemorize.gui.swing.actions.edit.ResetCardAction;
 import jmemorize.gui.swing.actions.file.ExitAction;
 import jmemorize.gui.swing.actions.file.ExportToCSVAction;
+import jmemorize.gui.swing.actions.file.ExportToCardStoreAction;
 import jmemorize.gui.swing.actions.file.ExportToCleanLessonAction;
 import jmemorize.gui.swing.actions.file.ExportToPDFAction;
 import jmemorize.gui.swing.actions.file.ExportToRTFAction;
 import jmemorize.gui.swing.actions.file.ImportCSVAction;
+import jmemorize.gui.swing.actions.file.ImportCardStoreAction;
 import jmemorize.gui.swing.actions.file.ImportJMLAction;
 import jmemorize.gui.swing.actions.file.ImportTSVAction;
 import jmemorize.gui.swing.actions.file.NewLessonAction;
@@ -118,6 +121,7 @@ public class MainMenu extends JMenuBar implements RecentItemsObserver
         editMenu.add(new JMenuItem(new ResetCardAction(provider)));
         editMenu.addSeparator();
         editMenu.add(new JMenuItem(new FindAction()));
+        editMenu.add(new JMenuItem(new FindDuplicatesAction()));
         return editMenu;
     }
 
@@ -165,6 +169,7 @@ public class MainMenu extends JMenuBar implements RecentItemsObserver
         importMenu.add(new ImportCSVAction());
         importMenu.add(new ImportTSVAction());
         importMenu.add(new ImportJMLAction());
+        importMenu.add(new ImportCardStoreAction());
         
         
         // Sub menu for export menu items 
@@ -175,6 +180,7 @@ public class MainMenu extends JMenuBar implements RecentItemsObserver
         exportMenu.add(new ExportToRTFAction());
         exportMenu.add(new ExportToCSVAction());
         exportMenu.add(new ExportToCleanLessonAction());
+        exportMenu.add(new ExportToCardStoreAction());
         
         m_fileMenu.addSeparator();
         m_fileMenu.add(importMenu);
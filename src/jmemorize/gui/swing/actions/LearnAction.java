@@ -21,10 +21,13 @@ package jmemorize.gui.swing.actions;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 
+import java.util.List;
+
 import jmemorize.core.Card;
+import jmemorize.core.CardBatchObserver;
 import jmemorize.core.Category;
-import jmemorize.core.CategoryObserver;
 import jmemorize.core.Main;
+import jmemorize.core.learn.LearnQueue;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
 import jmemorize.gui.swing.SelectionProvider;
@@ -38,7 +41,7 @@ import jmemorize.gui.swing.frames.MainFrame;
  * @author djemili
  */
 public class LearnAction extends AbstractSessionDisabledAction 
-    implements SelectionObserver, CategoryObserver
+    implements SelectionObserver, CardBatchObserver
 {
     private SelectionProvider m_selectionProvider;
     private Category          m_category;
@@ -75,6 +78,9 @@ public class LearnAction extends AbstractSessionDisabledAction
         if (m_category != null)
             m_category.addObserver(this);
         
+        // builds the learn queue of the category in advance
+        Main.getInstance().getLearnQueueService().setCategory(m_category);
+        
         updateEnablement();
     }
 
@@ -86,6 +92,14 @@ public class LearnAction extends AbstractSessionDisabledAction
         updateEnablement();
     }
 
+    /* (non-Javadoc)
+     * @see jmemorize.core.CardBatchObserver
+     */
+    public void onCardsEvent(int type, List<Card> cards, Category category)
+    {
+        updateEnablement();
+    }
+
     /* (non-Javadoc)
      * @see jmemorize.core.CategoryObserver
      */
@@ -110,8 +124,16 @@ public class LearnAction extends AbstractSessionDisabledAction
         boolean hasSelectedCards = m_selectionProvider.getSelectedCards() != null &&
             !m_selectionProvider.getSelectedCards().isEmpty();
             
-        boolean hasLearnableCards = m_selectionProvider.getCategory() != null && 
-            !m_selectionProvider.getCategory().getLearnableCards().isEmpty();
+        Category category = m_selectionProvider.getCategory();
+        boolean hasLearnableCards = false;
+        if (category != null)
+        {
+            LearnQueue queue = Main.getInstance().getLearnQueueService()
+                .getQueue(category);
+            
+            hasLearnableCards = queue != null ? !queue.isEmpty() : 
+                !category.getLearnableCards().isEmpty();
+        }
         
         setEnabled(!runningSession && (hasLearnableCards || hasSelectedCards)); 
     }
@@ -0,0 +1,149 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.gui.swing.actions.edit;
+
+import java.util.List;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.DuplicateFinder;
+import jmemorize.core.Main;
+import jmemorize.gui.Localization;
+import jmemorize.gui.swing.actions.AbstractAction2;
+import jmemorize.gui.swing.dialogs.ErrorDialog;
+import jmemorize.gui.swing.frames.DuplicatesFrame;
+import jmemorize.gui.swing.frames.MainFrame;
+
+/**
+ * An action that searches the lesson for duplicate cards in a background
+ * thread and shows the groups that were found.
+ */
+public class FindDuplicatesAction extends AbstractAction2
+{
+    public FindDuplicatesAction()
+    {
+        setValues();
+    }
+
+    public void actionPerformed(java.awt.event.ActionEvent e)
+    {
+        final MainFrame frame = Main.getInstance().getFrame();
+        final Category rootCategory = Main.getInstance().getLesson().getRootCategory();
+
+        final DuplicateFinder finder = new DuplicateFinder(rootCategory.getCards());
+        final ProgressMonitor monitor = new ProgressMonitor(frame,
+            Localization.get("MainFrame.FINDING_DUPLICATES"), null, 0, 100); //$NON-NLS-1$
+
+        final DuplicateFinder.ProgressListener listener = 
+            new DuplicateFinder.ProgressListener() {
+            public void onProgress(final int done, final int total)
+            {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        if (monitor.isCanceled())
+                            finder.cancel();
+
+                        monitor.setProgress(100 * done / Math.max(1, total));
+                    }
+                });
+            }
+        };
+
+        Thread thread = new Thread("Duplicates") { //$NON-NLS-1$
+            public void run()
+            {
+                try
+                {
+                    final List<List<Card>> groups = finder.find(listener);
+
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run()
+                        {
+                            showGroups(rootCategory, groups, finder);
+                        }
+                    });
+                }
+                catch (final RuntimeException e)
+                {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run()
+                        {
+                            showError(e);
+                        }
+                    });
+                }
+                finally
+                {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run()
+                        {
+                            monitor.close();
+                        }
+                    });
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void showGroups(Category rootCategory, List<List<Card>> groups,
+        DuplicateFinder finder)
+    {
+        // the lesson could have been closed in the meantime
+        if (finder.isCancelled() || 
+            rootCategory != Main.getInstance().getLesson().getRootCategory())
+        {
+            return;
+        }
+
+        if (groups.isEmpty())
+        {
+            JOptionPane.showMessageDialog(Main.getInstance().getFrame(),
+                Localization.get("MainFrame.NO_DUPLICATES"), //$NON-NLS-1$
+                Localization.get("Duplicates.TITLE"), //$NON-NLS-1$
+                JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        DuplicatesFrame.getInstance().show(rootCategory, groups);
+    }
+
+    /**
+     * Logs the given error and shows it in an error dialog.
+     */
+    private void showError(Exception e)
+    {
+        String msg = Localization.get("MainFrame.ERROR_DUPLICATES"); //$NON-NLS-1$
+        Main.logThrowable(msg, e);
+
+        new ErrorDialog(Main.getInstance().getFrame(), msg, e).setVisible(true);
+    }
+
+    private void setValues()
+    {
+        setName(Localization.get("MainFrame.FIND_DUPLICATES")); //$NON-NLS-1$
+        setDescription(Localization.get("MainFrame.FIND_DUPLICATES_DESC")); //$NON-NLS-1$
+    }
+}
@@ -77,10 +77,8 @@ public class RemoveAction extends AbstractAction2 implements SelectionObserver
                 return;
             }
 
-            for (Card card : selectedCards)
-            {
-                card.getCategory().removeCard(card); // HACK
-            }
+            Category rootCategory = Main.getInstance().getLesson().getRootCategory();
+            rootCategory.removeCards(selectedCards);
         }
         else if (selectedCategories.size() > 0)
         {
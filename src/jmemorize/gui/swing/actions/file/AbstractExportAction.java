@@ -26,10 +26,14 @@ import java.text.MessageFormat;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 
 import jmemorize.core.Lesson;
 import jmemorize.core.Main;
 import jmemorize.core.Settings;
+import jmemorize.core.io.ExportProgressListener;
+import jmemorize.core.io.PdfRtfBuilder;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
 import jmemorize.gui.swing.actions.AbstractSessionDisabledAction;
@@ -38,6 +42,15 @@ import jmemorize.util.ExtensionFileFilter;
 
 public abstract class AbstractExportAction extends AbstractSessionDisabledAction
 {
+    /**
+     * Writes an export to a file. Used for exports that run on a worker
+     * thread.
+     */
+    protected interface BackgroundExport
+    {
+        void write(File file, ExportProgressListener listener) throws IOException;
+    }
+    
     /**
      * Displays a Save As or Export dialog, and to confirm overwrites,
      * and to attach specified file extension.
@@ -119,16 +132,86 @@ public abstract class AbstractExportAction extends AbstractSessionDisabledAction
         }
         catch (IOException e)
         {
-            Object[] args = {file != null ? file.getName() : "?"};
-            MessageFormat form = new MessageFormat(
-                Localization.get(LC.ERROR_SAVE));
-            String msg = form.format(args);
-            Main.logThrowable(msg, e);
-
-            new ErrorDialog(main.getFrame(), msg, e).setVisible(true);
+            showExportError(file, e);
         }
     }
     
+    /**
+     * Runs given export on a worker thread and shows its progress. Must be
+     * called on the event dispatch thread.
+     * 
+     * @param builder the builder that is cancelled when the user cancels the
+     * progress monitor.
+     */
+    protected static void exportInBackground(final File file, 
+        final PdfRtfBuilder builder, final BackgroundExport export)
+    {
+        MessageFormat form = new MessageFormat(
+            Localization.get("MainFrame.EXPORTING")); //$NON-NLS-1$
+        final ProgressMonitor monitor = new ProgressMonitor(
+            Main.getInstance().getFrame(), 
+            form.format(new Object[] {file.getName()}), null, 0, 100);
+        
+        final ExportProgressListener listener = new ExportProgressListener() {
+            public void onProgress(final int written, final int total)
+            {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        if (monitor.isCanceled())
+                            builder.cancel();
+                        
+                        monitor.setProgress(100 * written / Math.max(1, total));
+                    }
+                });
+            }
+        };
+        
+        Thread thread = new Thread("Export") { //$NON-NLS-1$
+            public void run()
+            {
+                try
+                {
+                    export.write(file, listener);
+                }
+                catch (final IOException e)
+                {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run()
+                        {
+                            showExportError(file, e);
+                        }
+                    });
+                }
+                finally
+                {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run()
+                        {
+                            monitor.close();
+                        }
+                    });
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Logs the given error and shows it in an error dialog. Must be called on
+     * the event dispatch thread.
+     */
+    protected static void showExportError(File file, Exception e)
+    {
+        Object[] args = {file != null ? file.getName() : "?"};
+        MessageFormat form = new MessageFormat(Localization.get(LC.ERROR_SAVE));
+        String msg = form.format(args);
+        Main.logThrowable(msg, e);
+
+        new ErrorDialog(Main.getInstance().getFrame(), msg, e).setVisible(true);
+    }
+    
     abstract protected void doExport(Lesson lesson, File file) throws IOException;
     abstract protected ExtensionFileFilter getFileFilter();
 }
@@ -89,15 +89,24 @@ public abstract class AbstractImportAction extends AbstractSessionDisabledAction
         } 
         catch (Exception e)
         {
-            Object[] args = {file != null ? file.getName() : "?"};
-            MessageFormat form = new MessageFormat(Localization.get(LC.ERROR_LOAD));
-            String msg = form.format(args);
-            Main.logThrowable(msg, e);
-
-            new ErrorDialog(main.getFrame(), msg, e).setVisible(true);
+            showImportError(file, e);
         }
     }
     
+    /**
+     * Logs the given error and shows it in an error dialog. Must be called on
+     * the event dispatch thread.
+     */
+    protected static void showImportError(File file, Exception e)
+    {
+        Object[] args = {file != null ? file.getName() : "?"};
+        MessageFormat form = new MessageFormat(Localization.get(LC.ERROR_LOAD));
+        String msg = form.format(args);
+        Main.logThrowable(msg, e);
+
+        new ErrorDialog(Main.getInstance().getFrame(), msg, e).setVisible(true);
+    }
+    
     /**
      * Imports given file contents into given lesson.
      */
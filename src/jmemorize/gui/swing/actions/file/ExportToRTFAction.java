@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 
 import jmemorize.core.Lesson;
+import jmemorize.core.io.ExportProgressListener;
 import jmemorize.core.io.PdfRtfBuilder;
 import jmemorize.gui.Localization;
 import jmemorize.util.ExtensionFileFilter;
@@ -41,7 +42,15 @@ public class ExportToRTFAction extends AbstractExportAction
      */
     protected void doExport(Lesson lesson, File file) throws IOException
     {
-        PdfRtfBuilder.exportLessonToRTF(lesson, file);
+        final PdfRtfBuilder builder = new PdfRtfBuilder(lesson);
+        
+        exportInBackground(file, builder, new BackgroundExport() {
+            public void write(File file, ExportProgressListener listener) 
+                throws IOException
+            {
+                builder.writeRTF(file, listener);
+            }
+        });
     }
 
     /* (non-Javadoc)
@@ -21,16 +21,21 @@ package jmemorize.gui.swing.actions.file;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.concurrent.Executor;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileFilter;
 
 import jmemorize.core.Lesson;
 import jmemorize.core.Main;
-import jmemorize.core.io.CsvBuilder;
-import jmemorize.core.io.CsvBuilder.BadHeaderException;
+import jmemorize.core.io.CsvImporter;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
 import jmemorize.util.ExtensionFileFilter;
@@ -69,29 +74,115 @@ public class ImportCSVAction extends AbstractImportAction
         return selection == null ? null : Charset.forName(selection);
     }
     
+    /**
+     * Imports the given file on a background thread. The cards are inserted
+     * on the event dispatch thread in a few batches, while a progress monitor
+     * shows the progress and allows to cancel the import. The import is
+     * cancelled when the lesson is replaced by another one. Errors are shown
+     * in an error dialog.
+     */
+    public static void importInBackground(final File file, char delimiter, 
+        Charset charset, final Lesson lesson) throws IOException
+    {
+        final InputStream in = new FileInputStream(file);
+        
+        MessageFormat form = new MessageFormat(
+            Localization.get("MainFrame.IMPORTING")); //$NON-NLS-1$
+        final ProgressMonitor monitor = new ProgressMonitor(
+            Main.getInstance().getFrame(), 
+            form.format(new Object[] {file.getName()}), null, 0, 100);
+        
+        final CsvImporter importer = new CsvImporter(delimiter, charset);
+        importer.setInsertExecutor(new Executor() {
+            public void execute(final Runnable command)
+            {
+                try
+                {
+                    SwingUtilities.invokeAndWait(new Runnable() {
+                        public void run()
+                        {
+                            // the lesson can have been closed meanwhile
+                            if (Main.getInstance().getLesson() != lesson)
+                            {
+                                importer.cancel();
+                                return;
+                            }
+                            
+                            command.run();
+                        }
+                    });
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (InvocationTargetException e)
+                {
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException)e.getCause();
+                    
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        });
+        importer.setProgressListener(new CsvImporter.ProgressListener() {
+            public void onProgress(int cards, final long bytes)
+            {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        if (monitor.isCanceled())
+                            importer.cancel();
+                        
+                        long length = Math.max(1, file.length());
+                        monitor.setProgress((int)Math.min(99, 100 * bytes / length));
+                    }
+                });
+            }
+        });
+        
+        Thread thread = new Thread("CSV import") { //$NON-NLS-1$
+            public void run()
+            {
+                try
+                {
+                    importer.importLesson(in, lesson);
+                }
+                catch (final Exception e)
+                {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run()
+                        {
+                            showImportError(file, e);
+                        }
+                    });
+                }
+                finally
+                {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run()
+                        {
+                            monitor.close();
+                        }
+                    });
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
     /* (non-Javadoc)
      * @see jmemorize.gui.swing.actions.file.AbstractImportAction
      */
     protected void doImport(File file, Lesson lesson) throws IOException
     {
-        FileInputStream in = null;
-        try
-        {
-            in = new FileInputStream(file);
-            Charset charset = showCharsetChooser(Main.getInstance().getFrame());
-            
-            if (charset == null)
-                return;
-             
-            CsvBuilder.importLesson(in, ',', charset, lesson);
-        } 
-        catch (BadHeaderException e)
-        {
-            if (in != null)
-                in.close();
-            
-            throw new IOException(e.getMessage());
-        }
+        Charset charset = showCharsetChooser(Main.getInstance().getFrame());
+        
+        if (charset == null)
+            return;
+        
+        importInBackground(file, ',', charset, lesson);
     }
 
     /* (non-Javadoc)
@@ -19,7 +19,6 @@
 package jmemorize.gui.swing.actions.file;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 
@@ -27,8 +26,6 @@ import javax.swing.filechooser.FileFilter;
 
 import jmemorize.core.Lesson;
 import jmemorize.core.Main;
-import jmemorize.core.io.CsvBuilder;
-import jmemorize.core.io.CsvBuilder.BadHeaderException;
 import jmemorize.gui.Localization;
 import jmemorize.gui.swing.frames.MainFrame;
 import jmemorize.util.ExtensionFileFilter;
@@ -50,25 +47,13 @@ public class ImportTSVAction extends AbstractImportAction
      */
     protected void doImport(File file, Lesson lesson) throws IOException
     {
-        FileInputStream in = null;
-        try
-        {
-            in = new FileInputStream(file);
-            MainFrame frame = Main.getInstance().getFrame();
-            Charset charset = ImportCSVAction.showCharsetChooser(frame);
-            
-            if (charset == null)
-                return;
-            
-            CsvBuilder.importLesson(in, '\t', charset, lesson);
-        } 
-        catch (BadHeaderException e)
-        {
-            if (in != null)
-                in.close();
-            
-            throw new IOException(e.getMessage());
-        }
+        MainFrame frame = Main.getInstance().getFrame();
+        Charset charset = ImportCSVAction.showCharsetChooser(frame);
+        
+        if (charset == null)
+            return;
+        
+        ImportCSVAction.importInBackground(file, '\t', charset, lesson);
     }
 
     /* (non-Javadoc)
@@ -94,7 +94,8 @@ public class SaveLessonAction extends AbstractSessionDisabledAction
         Main main = Main.getInstance();
         Lesson lesson = main.getLesson();
         
-        setEnabled(!main.isSessionRunning() && lesson.canSave());
+        setEnabled(!main.isSessionRunning() && lesson.canSave() &&
+            !lesson.isLoading());
     }
 
     private void setValues()
@@ -21,6 +21,8 @@ package jmemorize.gui.swing.actions.file;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 
+import jmemorize.core.Lesson;
+import jmemorize.core.LessonObserver;
 import jmemorize.core.Main;
 import jmemorize.gui.Localization;
 import jmemorize.gui.swing.actions.AbstractSessionDisabledAction;
@@ -31,10 +33,14 @@ import jmemorize.gui.swing.actions.AbstractSessionDisabledAction;
  * @author djemili
  */
 public class SaveLessonAsAction extends AbstractSessionDisabledAction
+    implements LessonObserver
 {
     public SaveLessonAsAction()
     {
         setValues();
+        
+        Main.getInstance().addLessonObserver(this);
+        updateEnablement();
     }
     
     /* (non-Javadoc)
@@ -46,6 +52,50 @@ public class SaveLessonAsAction extends AbstractSessionDisabledAction
         main.getFrame().saveLesson(main.getLesson(), null);
     }
     
+    /* (non-Javadoc)
+     * @see jmemorize.core.LessonObserver
+     */
+    public void lessonLoaded(Lesson newLesson)
+    {
+        updateEnablement();
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.LessonObserver
+     */
+    public void lessonModified(Lesson lesson)
+    {
+        updateEnablement();
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.LessonObserver
+     */
+    public void lessonSaved(Lesson lesson)
+    {
+        updateEnablement();
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.LessonObserver
+     */
+    public void lessonClosed(Lesson lesson)
+    {
+        updateEnablement();
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.gui.swing.actions.AbstractSessionDisabledAction
+     */
+    protected void updateEnablement()
+    {
+        Main main = Main.getInstance();
+        Lesson lesson = main.getLesson();
+        
+        // a lesson that is still loading is incomplete
+        setEnabled(!main.isSessionRunning() && !lesson.isLoading());
+    }
+    
     private void setValues()
     {
         setName(Localization.get("MainFrame.SAVE_AS")); //$NON-NLS-1$
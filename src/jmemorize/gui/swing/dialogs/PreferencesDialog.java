@@ -95,6 +95,8 @@ public class PreferencesDialog extends JDialog
     private JComboBox m_langComboBox    = new JComboBox();
     private JCheckBox m_zippedLessonBox = new JCheckBox(
         Localization.get(LC.PREFERENCES_USE_GZIP));
+    private JCheckBox m_chunkedLessonBox = new JCheckBox(
+        Localization.get(LC.PREFERENCES_SAVE_CHUNKED));
     
     private JButton   m_applyButton     = new JButton(Localization.get(LC.APPLY));
     
@@ -130,6 +132,8 @@ public class PreferencesDialog extends JDialog
         
         // etc
         m_zippedLessonBox.setSelected(Settings.loadIsSaveCompressed());
+        m_chunkedLessonBox.setSelected(Settings.loadIsSaveChunked());
+        m_chunkedLessonBox.setEnabled(m_zippedLessonBox.isSelected());
         
         // prepare lists/combobox
         updateListFromFont();
@@ -224,6 +228,14 @@ public class PreferencesDialog extends JDialog
                 updateFontPreview();
             }
         });
+        
+        // only zipped lessons can store their categories separately
+        m_zippedLessonBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e)
+            {
+                m_chunkedLessonBox.setEnabled(m_zippedLessonBox.isSelected());
+            }
+        });
     }
     
     private JPanel buildMainPanel()
@@ -265,8 +277,8 @@ public class PreferencesDialog extends JDialog
     {
         // build panel
         FormLayout layout = new FormLayout(
-            "p, 9dlu, p:grow",      // columns //$NON-NLS-1$
-            "p, 3dlu, p, 9dlu, p"); // rows    //$NON-NLS-1$
+            "p, 9dlu, p:grow",             // columns //$NON-NLS-1$
+            "p, 3dlu, p, 9dlu, p, 3dlu, p"); // rows    //$NON-NLS-1$
         
         CellConstraints cc = new CellConstraints();
         
@@ -277,6 +289,7 @@ public class PreferencesDialog extends JDialog
         builder.addLabel(Localization.get(LC.PREFERENCES_LANG), cc.xy (1, 3));
         builder.add(m_langComboBox,                             cc.xy (3, 3));
         builder.add(m_zippedLessonBox,                          cc.xyw(1, 5, 3));
+        builder.add(m_chunkedLessonBox,                         cc.xyw(1, 7, 3));
         
         return builder.getPanel();
     }
@@ -443,6 +456,7 @@ public class PreferencesDialog extends JDialog
         Settings.storeFont(FontType.TABLE_FLIP, m_fonts.get(5));
         
         Settings.storeSaveCompressed(m_zippedLessonBox.isSelected());
+        Settings.storeSaveChunked(m_chunkedLessonBox.isSelected());
     }
     
     /**
@@ -0,0 +1,313 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.gui.swing.frames;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Toolkit;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.UIManager;
+import javax.swing.border.EmptyBorder;
+import javax.swing.border.EtchedBorder;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+
+import jmemorize.core.Card;
+import jmemorize.core.CardBatchObserver;
+import jmemorize.core.Category;
+import jmemorize.core.Events;
+import jmemorize.core.Main;
+import jmemorize.core.Settings;
+import jmemorize.core.Main.ProgramEndObserver;
+import jmemorize.gui.LC;
+import jmemorize.gui.Localization;
+import jmemorize.gui.swing.actions.AbstractAction2;
+import jmemorize.gui.swing.panels.StatusBar;
+import jmemorize.gui.swing.widgets.CardTable;
+import jmemorize.util.EscapableFrame;
+
+import com.jgoodies.forms.factories.ButtonBarFactory;
+
+/**
+ * A frame that shows the groups of duplicate cards that were found by a
+ * {@link jmemorize.core.DuplicateFinder}. The cards of the selected group are
+ * shown in a card table, where they can be edited or removed.
+ */
+public class DuplicatesFrame extends EscapableFrame
+    implements CardBatchObserver, ProgramEndObserver
+{
+    private final static String    FRAME_ID      = "duplicatesframe"; //$NON-NLS-1$
+
+    private CardTable              m_cardTable   = new CardTable(this,
+        Main.USER_PREFS.node("duplicates.table"), //$NON-NLS-1$
+            new int[] {
+                CardTable.COLUMN_FRONTSIDE,
+                CardTable.COLUMN_BACKSIDE,
+                CardTable.COLUMN_DECK,
+                CardTable.COLUMN_CATEGORY,
+                CardTable.COLUMN_MODIFIED});
+
+    private DefaultListModel       m_groupsModel = new DefaultListModel();
+    private JList                  m_groupsList  = new JList(m_groupsModel);
+    private StatusBar              m_statusBar   = new StatusBar();
+
+    private Category               m_rootCategory;
+
+    private static DuplicatesFrame m_instance;
+
+    private class CloseAction extends AbstractAction2
+    {
+        public CloseAction()
+        {
+            setName(Localization.get(LC.CANCEL));
+        }
+
+        public void actionPerformed(java.awt.event.ActionEvent e)
+        {
+            close();
+        }
+    }
+
+    public static DuplicatesFrame getInstance()
+    {
+        if (m_instance == null)
+        {
+            m_instance = new DuplicatesFrame();
+        }
+
+        return m_instance;
+    }
+
+    /**
+     * Shows the given groups of duplicate cards.
+     */
+    public void show(Category rootCategory, List<List<Card>> groups)
+    {
+        if (m_rootCategory != null)
+        {
+            m_rootCategory.removeObserver(this);
+        }
+        m_rootCategory = rootCategory;
+        m_rootCategory.addObserver(this);
+
+        m_groupsModel.clear();
+        for (List<Card> group : groups)
+        {
+            m_groupsModel.addElement(new ArrayList<Card>(group));
+        }
+
+        if (!groups.isEmpty())
+        {
+            m_groupsList.setSelectedIndex(0);
+        }
+
+        showSelectedGroup();
+        setVisible(true);
+    }
+
+    public boolean close()
+    {
+        setVisible(false);
+
+        if (m_rootCategory != null)
+        {
+            m_rootCategory.removeObserver(this);
+            m_rootCategory = null;
+        }
+
+        // don't hold on to the cards of a closed lesson
+        m_groupsModel.clear();
+        showSelectedGroup();
+        return true;
+    }
+
+    /*
+     * @see jmemorize.core.CategoryObserver#onCardEvent
+     */
+    public void onCardEvent(int type, Card card, Category category, int deck)
+    {
+        if (type == Events.REMOVED_EVENT)
+        {
+            Set<Card> cards = new HashSet<Card>();
+            cards.add(card);
+            removeCards(cards);
+        }
+    }
+
+    /*
+     * @see jmemorize.core.CardBatchObserver#onCardsEvent
+     */
+    public void onCardsEvent(int type, List<Card> cards, Category category)
+    {
+        if (type == Events.REMOVED_EVENT)
+        {
+            removeCards(new HashSet<Card>(cards));
+        }
+    }
+
+    /*
+     * @see jmemorize.core.CategoryObserver#onCategoryEvent
+     */
+    public void onCategoryEvent(int type, Category category)
+    {
+        // removed categories fire events for their cards
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see jmemorize.core.Main.ProgramEndObserver
+     */
+    public void onProgramEnd()
+    {
+        Settings.storeFrameState(this, FRAME_ID);
+    }
+
+    /**
+     * Removes the given cards from their groups. Groups that have only one
+     * card left are removed.
+     */
+    @SuppressWarnings("unchecked")
+    private void removeCards(Set<Card> cards)
+    {
+        int selected = m_groupsList.getSelectedIndex();
+
+        for (int i = m_groupsModel.size() - 1; i >= 0; i--)
+        {
+            List<Card> group = (List<Card>)m_groupsModel.get(i);
+            for (Iterator<Card> it = group.iterator(); it.hasNext();)
+            {
+                if (cards.contains(it.next()))
+                    it.remove();
+            }
+
+            if (group.size() < 2)
+            {
+                m_groupsModel.remove(i);
+                if (selected > i)
+                    selected--;
+            }
+        }
+
+        if (m_groupsModel.size() > 0)
+        {
+            m_groupsList.setSelectedIndex(Math.min(Math.max(0, selected),
+                m_groupsModel.size() - 1));
+        }
+
+        showSelectedGroup();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void showSelectedGroup()
+    {
+        List<Card> group = (List<Card>)m_groupsList.getSelectedValue();
+        List<Card> cards = group != null ?
+            new ArrayList<Card>(group) : new ArrayList<Card>(0);
+
+        m_cardTable.getView().setCards(cards, m_rootCategory);
+        m_statusBar.setCards(cards);
+
+        MessageFormat form = new MessageFormat(
+            Localization.get("Duplicates.GROUPS")); //$NON-NLS-1$
+        m_statusBar.setLeftText(form.format(
+            new Object[] {new Integer(m_groupsModel.size())}));
+    }
+
+    private DuplicatesFrame()
+    {
+        initComponents();
+
+        Main.getInstance().addProgramEndObserver(this);
+        Settings.loadFrameState(this, FRAME_ID);
+    }
+
+    private void initComponents()
+    {
+        setTitle(Localization.get("Duplicates.TITLE")); //$NON-NLS-1$
+
+        m_groupsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        m_groupsList.setCellRenderer(new DefaultListCellRenderer() {
+            public Component getListCellRendererComponent(JList list,
+                Object value, int index, boolean isSelected, boolean cellHasFocus)
+            {
+                List<?> group = (List<?>)value;
+                Card card = (Card)group.get(0);
+                String text = group.size() + " \u00d7 " + //$NON-NLS-1$
+                    card.getFrontSide().getText().getUnformatted();
+
+                return super.getListCellRendererComponent(list, text, index,
+                    isSelected, cellHasFocus);
+            }
+        });
+        m_groupsList.addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(ListSelectionEvent e)
+            {
+                if (!e.getValueIsAdjusting())
+                    showSelectedGroup();
+            }
+        });
+
+        JScrollPane groupsPane = new JScrollPane(m_groupsList);
+        groupsPane.setPreferredSize(new Dimension(200, 300));
+
+        JScrollPane cardsPane = new JScrollPane(m_cardTable);
+        Color color = UIManager.getColor("Table.background"); //$NON-NLS-1$
+        cardsPane.getViewport().setBackground(color);
+        cardsPane.setPreferredSize(new Dimension(500, 300));
+
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
+            groupsPane, cardsPane);
+        splitPane.setBorder(new EmptyBorder(5, 5, 5, 5));
+
+        JPanel buttonPanel = ButtonBarFactory.buildRightAlignedBar(
+            new JButton(new CloseAction()));
+        buttonPanel.setBorder(new EmptyBorder(0, 5, 5, 10));
+
+        JPanel mainPanel = new JPanel(new BorderLayout());
+        mainPanel.add(splitPane, BorderLayout.CENTER);
+        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
+        mainPanel.setBorder(new EtchedBorder());
+
+        m_cardTable.setStatusBar(m_statusBar);
+
+        getContentPane().add(mainPanel, BorderLayout.CENTER);
+        getContentPane().add(m_statusBar, BorderLayout.SOUTH);
+
+        setIconImage(Toolkit.getDefaultToolkit().getImage(
+            getClass().getResource("/resource/icons/find.gif"))); //$NON-NLS-1$
+        pack();
+    }
+}
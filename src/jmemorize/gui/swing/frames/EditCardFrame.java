@@ -45,6 +45,7 @@ import jmemorize.core.Main;
 import jmemorize.core.Settings;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
+import jmemorize.gui.swing.DocumentCache;
 import jmemorize.gui.swing.SelectionProvider;
 import jmemorize.gui.swing.actions.AbstractAction2;
 import jmemorize.gui.swing.actions.edit.AddCardAction;
@@ -465,6 +466,26 @@ public class EditCardFrame extends EscapableFrame implements CategoryObserver, S
         categoryComboBox.setSelectedCategory(m_currentCard.getCategory());
         
         updateApplyButton();
+        prefetchNeighbours();
+    }
+    
+    /**
+     * Renders the cards that can be reached with the next/previous buttons in
+     * the background.
+     */
+    private void prefetchNeighbours()
+    {
+        if (m_cards == null)
+            return;
+        
+        List<Card> neighbours = new ArrayList<Card>(2);
+        if (hasNext())
+            neighbours.add(m_cards.get(m_currentCardIndex + 1));
+        
+        if (hasPrevious())
+            neighbours.add(m_cards.get(m_currentCardIndex - 1));
+        
+        DocumentCache.getInstance().prefetch(neighbours);
     }
 
     /**
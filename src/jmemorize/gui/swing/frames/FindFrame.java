@@ -24,11 +24,13 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import javax.swing.AbstractAction;
@@ -41,17 +43,25 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.EtchedBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.PopupMenuEvent;
 import javax.swing.event.PopupMenuListener;
+import javax.swing.text.JTextComponent;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardBatchObserver;
+import jmemorize.core.CardQuery;
 import jmemorize.core.Category;
-import jmemorize.core.CategoryObserver;
 import jmemorize.core.Events;
+import jmemorize.core.Lesson;
 import jmemorize.core.Main;
+import jmemorize.core.SearchService;
 import jmemorize.core.SearchTool;
 import jmemorize.core.Settings;
 import jmemorize.core.Main.ProgramEndObserver;
@@ -75,9 +85,14 @@ import com.jgoodies.forms.layout.FormLayout;
  * @author djemili
  */
 public class FindFrame extends EscapableFrame 
-    implements CategoryObserver, ProgramEndObserver
+    implements CardBatchObserver, ProgramEndObserver
 {
     private final static String FRAME_ID            = "findframe";
+    
+    /**
+     * The pause in typing in milliseconds after which a card query is run.
+     */
+    private final static int    QUERY_DELAY         = 300;
 
     private CardTable           m_cardTable         = new CardTable(this, 
         Main.USER_PREFS.node("find.table"), //$NON-NLS-1$
@@ -93,6 +108,8 @@ public class FindFrame extends EscapableFrame
 
     private JCheckBox           m_matchCaseBox      = new JCheckBox(
         Localization.get(LC.MATCH_CASE));
+    private JCheckBox           m_queryBox          = new JCheckBox(
+        Localization.get(LC.QUERY));
     private JRadioButton        m_radioBothSides    = new JRadioButton(
         Localization.get(LC.BOTH_SIDES), true);
     private JRadioButton        m_radioFrontSide    = new JRadioButton(
@@ -109,6 +126,20 @@ public class FindFrame extends EscapableFrame
     private boolean             m_matchCase;
     private Category            m_searchCategory;
     
+    // searches run in the background while the user is typing
+    private SearchService       m_searchService;
+    private Lesson              m_searchLesson;
+    private SearchService.Query m_currentQuery;
+    
+    // card queries are only run when the user pauses typing
+    private Timer               m_queryTimer        = new Timer(QUERY_DELAY, 
+        new ActionListener() {
+            public void actionPerformed(ActionEvent e)
+            {
+                runCardQuery();
+            }
+        });
+    
     private static FindFrame    m_instance;
 
     private class FindAction extends AbstractAction2
@@ -171,13 +202,36 @@ public class FindFrame extends EscapableFrame
 
     public void search()
     {
-        String searchText = (String)m_searchTextBox.getSelectedItem();
+        String searchText = getSearchText();
 
-        if (searchText == null || searchText.equals("")) //$NON-NLS-1$
+        if (searchText.equals("")) //$NON-NLS-1$
             return;
 
+        m_recentSearchTexts.push(searchText);
+        startSearch(searchText, false);
+    }
+    
+    /**
+     * @return the nanoseconds until the first results of the most recent
+     * search were shown. -1 if there was no search yet.
+     */
+    public long getFirstResultLatency()
+    {
+        return m_searchService != null ? 
+            m_searchService.getFirstResultLatency() : -1;
+    }
+    
+    /**
+     * Starts a search in the background. A search that is still running is
+     * cancelled. The results are shown in the card table as they come in.
+     * 
+     * @param typing <code>true</code> if the search text is still being typed.
+     * Card queries are then only run once the user pauses typing.
+     */
+    private void startSearch(String searchText, boolean typing)
+    {
+        m_queryTimer.stop();
         m_searchText = searchText;
-        m_recentSearchTexts.push(m_searchText);
 
         if (m_radioBothSides.isSelected())
         {
@@ -198,10 +252,112 @@ public class FindFrame extends EscapableFrame
 
         m_matchCase = m_matchCaseBox.isSelected();
 
-        List<Card> results = SearchTool.search(m_searchText, m_searchSides, 
-            m_matchCase, m_searchCategory.getCards());
+        SearchService service = getSearchService();
+        if (m_searchText.equals("")) //$NON-NLS-1$
+        {
+            service.cancel();
+            m_currentQuery = null;
+            m_statusBar.setLeftText(null);
+            clear();
+            return;
+        }
         
-        m_cardTable.getView().setCards(results, m_searchCategory);
+        if (m_queryBox.isSelected())
+        {
+            service.cancel();
+            m_currentQuery = null;
+            
+            if (typing)
+            {
+                // incomplete queries are no errors yet
+                m_statusBar.setLeftText(null);
+                m_queryTimer.restart();
+            }
+            else
+            {
+                runCardQuery();
+            }
+            return;
+        }
+        
+        m_statusBar.setLeftText(null);
+
+        m_currentQuery = new SearchService.Query(m_searchText, m_searchSides, 
+            m_matchCase, SearchTool.SUBSTRING, m_searchCategory);
+        service.search(m_currentQuery);
+    }
+    
+    /**
+     * Compiles the search text as card query and shows the matching cards.
+     * Errors in the query are shown in the status bar.
+     */
+    private void runCardQuery()
+    {
+        CardQuery query;
+        try
+        {
+            query = CardQuery.compile(m_searchText);
+        }
+        catch (CardQuery.ParseException e)
+        {
+            m_statusBar.setLeftText(e.getMessage() + " (" + //$NON-NLS-1$
+                (e.getPosition() + 1) + ")"); //$NON-NLS-1$
+            return;
+        }
+        
+        m_statusBar.setLeftText(null);
+        m_cardTable.getView().setCards(query.search(m_searchCategory), 
+            m_searchCategory);
+        updateStatusBar();
+    }
+    
+    /**
+     * @return the search service for the current lesson. A new one is created
+     * when the lesson has changed.
+     */
+    private SearchService getSearchService()
+    {
+        Lesson lesson = Main.getInstance().getLesson();
+        if (m_searchService != null && m_searchLesson == lesson)
+            return m_searchService;
+        
+        if (m_searchService != null)
+            m_searchService.shutdown();
+        
+        m_searchLesson = lesson;
+        m_searchService = new SearchService(lesson.getSearchIndex(), 
+            new SearchService.ResultListener() {
+            public void onResults(final SearchService.Query query, 
+                final List<Card> cards, boolean complete)
+            {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        showResults(query, cards);
+                    }
+                });
+            }
+        });
+        
+        return m_searchService;
+    }
+    
+    private void showResults(SearchService.Query query, List<Card> cards)
+    {
+        // results of superseded searches can still be on their way
+        if (query != m_currentQuery)
+            return;
+        
+        m_cardTable.getView().setCards(cards, query.getCategory());
+        updateStatusBar();
+    }
+    
+    private String getSearchText()
+    {
+        JTextComponent editor = (JTextComponent)
+            m_searchTextBox.getEditor().getEditorComponent();
+        
+        return editor.getText();
     }
 
     public boolean close()
@@ -215,16 +371,32 @@ public class FindFrame extends EscapableFrame
      */
     public void onCardEvent(int type, Card card, Category category, int deck)
     {
-        // CHECK move into cardtable!?
-        List<Card> cards = m_cardTable.getView().getCards();
-
         // for now we only remove cards but dont add new cards
         if (type == Events.REMOVED_EVENT)
         {
-            cards.remove(card);
+            m_cardTable.getView().removeCard(card);
+        }
+        else if (type != Events.ADDED_EVENT)
+        {
+            m_cardTable.getView().updateCard(card);
+        }
+        
+        updateStatusBar();
+    }
+
+    /*
+     * @see jmemorize.core.CardBatchObserver#onCardsEvent
+     */
+    public void onCardsEvent(int type, List<Card> cards, Category category)
+    {
+        List<Card> results = m_cardTable.getView().getCards();
+
+        if (type == Events.REMOVED_EVENT)
+        {
+            results.removeAll(new HashSet<Card>(cards));
         }
 
-        m_cardTable.getView().setCards(cards, m_searchCategory);
+        m_cardTable.getView().setCards(results, m_searchCategory);
         updateStatusBar();
     }
 
@@ -285,7 +457,8 @@ public class FindFrame extends EscapableFrame
         builder.add(m_radioFrontSide, cc.xy(5, 5));
         builder.add(m_radioBackSide, cc.xy(7, 5));
 
-        builder.add(m_matchCaseBox, cc.xyw(3, 7, 5));
+        builder.add(m_matchCaseBox, cc.xy(3, 7));
+        builder.add(m_queryBox, cc.xyw(5, 7, 3));
 
         builder.addSeparator(Localization.get("FindTool.RESULTS"), cc.xyw(1, 9, 7)); //$NON-NLS-1$
         builder.add(scrollPane, cc.xyw(1, 11, 7));
@@ -337,6 +510,25 @@ public class FindFrame extends EscapableFrame
             }
         });
 
+        // search as you type
+        JTextComponent editor = (JTextComponent)comp;
+        editor.getDocument().addDocumentListener(new DocumentListener() {
+            public void changedUpdate(DocumentEvent e)
+            {
+                // ignore attribute changes
+            }
+
+            public void insertUpdate(DocumentEvent e)
+            {
+                startSearch(getSearchText(), true);
+            }
+
+            public void removeUpdate(DocumentEvent e)
+            {
+                startSearch(getSearchText(), true);
+            }
+        });
+
         Component editorComp = m_searchTextBox.getEditor().getEditorComponent();
         editorComp.addFocusListener(new FocusListener()
         {
@@ -368,6 +560,7 @@ public class FindFrame extends EscapableFrame
     
     private FindFrame()
     {
+        m_queryTimer.setRepeats(false);
         initComponents();
 
         Main.getInstance().addProgramEndObserver(this);
@@ -383,6 +576,20 @@ public class FindFrame extends EscapableFrame
         group.add(m_radioBothSides);
         group.add(m_radioFrontSide);
         group.add(m_radioBackSide);
+        
+        // changed options update the current search
+        ActionListener optionsListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e)
+            {
+                if (m_searchText != null)
+                    startSearch(getSearchText(), false);
+            }
+        };
+        m_radioBothSides.addActionListener(optionsListener);
+        m_radioFrontSide.addActionListener(optionsListener);
+        m_radioBackSide.addActionListener(optionsListener);
+        m_matchCaseBox.addActionListener(optionsListener);
+        m_queryBox.addActionListener(optionsListener);
 
         JPanel mainPanel = new JPanel(new BorderLayout());
         mainPanel.add(buildSearchPanel(), BorderLayout.CENTER);
@@ -29,10 +29,12 @@ import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
@@ -46,7 +48,9 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JToolBar;
+import javax.swing.ProgressMonitor;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.TransferHandler;
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
@@ -58,10 +62,15 @@ import jmemorize.core.Card;
 import jmemorize.core.Category;
 import jmemorize.core.CategoryObserver;
 import jmemorize.core.Lesson;
+import jmemorize.core.LessonSummary;
 import jmemorize.core.Main;
 import jmemorize.core.Settings;
 import jmemorize.core.Main.ProgramEndObserver;
+import jmemorize.core.io.LessonLoader;
+import jmemorize.core.learn.DefaultLearnSession;
 import jmemorize.core.learn.LearnHistory;
+import jmemorize.core.learn.LearnQueue;
+import jmemorize.core.learn.LearnQueueService;
 import jmemorize.core.learn.LearnSession;
 import jmemorize.core.learn.LearnSessionObserver;
 import jmemorize.core.learn.LearnHistory.SessionSummary;
@@ -146,6 +155,13 @@ public class MainFrame extends JFrame implements CategoryObserver,
     // UGLYHACK remove
     private List<Category>                  m_focusedCategories;
 
+    // the loader of the lesson that is being opened
+    private LessonLoader                    m_lessonLoader;
+    private long                            m_firstPaintTime     = -1;
+    
+    // the numbers of cards that are shown while the cards are loaded
+    private LessonSummary                   m_loadingSummary;
+
     // set look and feel before we load any frames
     static
     {
@@ -243,6 +259,9 @@ public class MainFrame extends JFrame implements CategoryObserver,
     
     public void setLesson(Lesson lesson)
     {
+        if (m_loadingSummary != null)
+            setSummary(null);
+        
         Category rootCategory = lesson.getRootCategory();
 
         m_categoryBox.setRootCategory(rootCategory);
@@ -251,6 +270,7 @@ public class MainFrame extends JFrame implements CategoryObserver,
 
         EditCardFrame.getInstance().setVisible(false);
         FindFrame.getInstance().setVisible(false);
+        DuplicatesFrame.getInstance().close();
 
         updateFrameTitle();
     }
@@ -272,6 +292,9 @@ public class MainFrame extends JFrame implements CategoryObserver,
         
         m_categoryBox.setSelectedCategory(category);
         m_categoryTree.setSelectedCategory(category);
+        
+        if (m_loadingSummary != null)
+            updateSummaryCounts();
 
         // in learn mode the focused item should always our currently learned card
         if (!Main.getInstance().isSessionRunning()) // HACK
@@ -312,6 +335,9 @@ public class MainFrame extends JFrame implements CategoryObserver,
         
         m_deckTablePanel.setDeck(level);
         m_deckChartPanel.setDeck(level);
+        
+        if (m_loadingSummary != null)
+            updateSummaryCounts();
     }
     
     /**
@@ -363,14 +389,41 @@ public class MainFrame extends JFrame implements CategoryObserver,
         return m_showCategoryTree;
     }
     
+    /**
+     * Starts a learn session. The session is built in the background, while
+     * a progress monitor allows to cancel it. Usually the cards of the
+     * session are already known and the monitor doesn't show up.
+     */
     public void startLearning(Category category, List<Card> selectedCards, 
         boolean learnUnlearned, boolean learnExpired)
     {
-        m_showCategoryTreeOld = m_showCategoryTree;
-        showCategoryTree(false);
+        final ProgressMonitor monitor = new ProgressMonitor(this, 
+            Localization.get("MainFrame.PREPARING_SESSION"), null, 0, 100); //$NON-NLS-1$
         
-        m_main.startLearnSession(m_main.getLearnSettings(), selectedCards, 
-            category, learnUnlearned, learnExpired);
+        final LearnQueueService.SessionTask[] task = new LearnQueueService.SessionTask[1];
+        task[0] = m_main.buildLearnSession(m_main.getLearnSettings(), selectedCards, 
+            category, learnUnlearned, learnExpired, 
+            new LearnQueue.ProgressListener() {
+                public void onProgress(final int done, final int total)
+                {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run()
+                        {
+                            if (monitor.isCanceled())
+                                task[0].cancel();
+                            
+                            // building the session takes the last part
+                            monitor.setProgress(90 * done / Math.max(1, total));
+                        }
+                    });
+                }
+            }, 
+            new LearnQueueService.SessionListener() {
+                public void onSessionBuilt(DefaultLearnSession session)
+                {
+                    monitor.close();
+                }
+            });
     }
     
     public NewCardFramesManager getNewCardManager() // TODO pull up to a new common singleton
@@ -448,25 +501,23 @@ public class MainFrame extends JFrame implements CategoryObserver,
                 }
             }
         
-            m_main.loadLesson(file);
-            Settings.storeLastDirectory(file);
-            
-            LearnHistory history = m_main.getLesson().getLearnHistory();
-            if (!history.isLoaded())
-                importGlobalLearnHistory(history);
-            
+            loadInBackground(file);
         }
         catch (Exception e)
         {
-            Object[] args = {file != null ? file.getName() : "?"};
-            MessageFormat form = new MessageFormat(Localization.get(LC.ERROR_LOAD));
-            String msg = form.format(args);
-            Main.logThrowable(msg, e);
-            
-            new ErrorDialog(this, msg, e).setVisible(true);
+            showLoadError(file, e);
         }
     }
 
+    /**
+     * @return the milliseconds from starting to open the last lesson until
+     * its categories were painted, or -1 if no lesson was opened yet.
+     */
+    public long getFirstPaintTime()
+    {
+        return m_firstPaintTime;
+    }
+
     /**
      * Saves the lesson or displays an error message if the operation failed.
      * 
@@ -475,6 +526,10 @@ public class MainFrame extends JFrame implements CategoryObserver,
      */
     public void saveLesson(Lesson lesson, File file)
     {
+        // saving would overwrite the file with the cards loaded so far
+        if (lesson.isLoading())
+            return;
+        
         try
         {
             if (file == null)
@@ -522,8 +577,18 @@ public class MainFrame extends JFrame implements CategoryObserver,
             return false;
         }
 
-        // then see if lesson should to be saved
+        // then see if lesson should to be saved. A lesson that is still
+        // loading is incomplete and can't be saved, so changes to it are lost
         Lesson lesson = m_main.getLesson();
+        if (lesson.canSave() && lesson.isLoading())
+        {
+            int n = JOptionPane.showConfirmDialog(MainFrame.this,
+                Localization.get("MainFrame.DISCARD_LOADING"), "Warning", //$NON-NLS-1$ //$NON-NLS-2$
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+            
+            return n == JOptionPane.OK_OPTION;
+        }
+        
         if (lesson.canSave())
         {
             int n = JOptionPane.showConfirmDialog(MainFrame.this,
@@ -613,6 +678,9 @@ public class MainFrame extends JFrame implements CategoryObserver,
 
     private void gotoLearnMode()
     {
+        m_showCategoryTreeOld = m_showCategoryTree;
+        showCategoryTree(false);
+        
         m_deckTablePanel.getCardTable().removeSelectionObserver(this);
         m_learnPanel.addSelectionObserver(this);
         
@@ -652,6 +720,219 @@ public class MainFrame extends JFrame implements CategoryObserver,
         }
     }
 
+    /**
+     * Loads the lesson on a background thread. The lesson is shown as soon as
+     * its categories are loaded and its cards are inserted in batches on the
+     * event dispatch thread, while a progress monitor allows to cancel the
+     * load.
+     */
+    private void loadInBackground(final File file)
+    {
+        if (m_lessonLoader != null)
+            m_lessonLoader.cancel();
+        
+        final long start = System.currentTimeMillis();
+        final Lesson lesson = new Lesson(false);
+        lesson.setFile(file);
+        
+        MessageFormat form = new MessageFormat(
+            Localization.get("MainFrame.LOADING")); //$NON-NLS-1$
+        final ProgressMonitor monitor = new ProgressMonitor(this, 
+            form.format(new Object[] {file.getName()}), null, 0, 100);
+        
+        final LessonLoader loader = new LessonLoader(file);
+        m_lessonLoader = loader;
+        
+        loader.setInsertExecutor(new Executor() {
+            public void execute(final Runnable command)
+            {
+                try
+                {
+                    // the inserts don't mark the lesson as modified
+                    SwingUtilities.invokeAndWait(new Runnable() {
+                        public void run()
+                        {
+                            lesson.runLoaderChange(command);
+                        }
+                    });
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (InvocationTargetException e)
+                {
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException)e.getCause();
+                    
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        });
+        loader.setProgressListener(new LessonLoader.ProgressListener() {
+            private int m_totalCards;
+            
+            public void onSummaryLoaded(Lesson loaded, LessonSummary summary)
+            {
+                showLesson(loaded);
+                setSummary(summary);
+            }
+            
+            public void onStructureLoaded(Lesson loaded, int totalCards)
+            {
+                m_totalCards = totalCards;
+                if (m_main.getLesson() != loaded)
+                    showLesson(loaded);
+            }
+            
+            private void showLesson(Lesson loaded)
+            {
+                m_main.setLoadingLesson(loaded);
+                
+                // runs after the repaint that setting the lesson has requested
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        m_firstPaintTime = System.currentTimeMillis() - start;
+                        Main.getLogger().info("Showing " + file.getName() + //$NON-NLS-1$
+                            " after " + m_firstPaintTime + " ms"); //$NON-NLS-1$ //$NON-NLS-2$
+                    }
+                });
+            }
+            
+            public void onProgress(final int cards, final long bytes)
+            {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        if (monitor.isCanceled())
+                            loader.cancel();
+                        
+                        // reading the file is the first half of the work
+                        long length = Math.max(1, file.length());
+                        int progress = (int)Math.min(50, 50 * bytes / length) + 
+                            50 * cards / Math.max(1, m_totalCards);
+                        monitor.setProgress(Math.min(99, progress));
+                    }
+                });
+            }
+        });
+        
+        Thread thread = new Thread("Lesson loader") { //$NON-NLS-1$
+            public void run()
+            {
+                Exception error = null;
+                try
+                {
+                    loader.load(lesson);
+                }
+                catch (Exception e)
+                {
+                    error = e;
+                }
+                
+                final Exception loadError = error;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run()
+                    {
+                        monitor.close();
+                        finishLoading(loader, lesson, loadError);
+                    }
+                });
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Is called on the event dispatch thread when a background load ended.
+     * A lesson that was only partially loaded isn't kept.
+     */
+    private void finishLoading(LessonLoader loader, Lesson lesson, Exception error)
+    {
+        if (m_lessonLoader == loader)
+            m_lessonLoader = null;
+        
+        File file = lesson.getFile();
+        boolean shown = m_main.getLesson() == lesson;
+        
+        // the cards are loaded or the lesson is replaced
+        if (shown)
+            setSummary(null);
+        
+        if (error != null || loader.isCancelled())
+        {
+            if (shown)
+                m_main.createNewLesson();
+            
+            if (error != null)
+            {
+                m_main.getRecentLessonFiles().remove(file.getAbsolutePath());
+                showLoadError(file, error);
+            }
+            return;
+        }
+        
+        // a lesson that was opened in the meantime has replaced this one
+        if (!shown)
+            return;
+        
+        m_main.finishLoadingLesson(lesson);
+        Settings.storeLastDirectory(file);
+        
+        LearnHistory history = lesson.getLearnHistory();
+        if (!history.isLoaded())
+            importGlobalLearnHistory(history);
+    }
+    
+    /**
+     * Shows the numbers of the summary of a lesson in the deck chart and the
+     * status bar until its cards are loaded.
+     * 
+     * @param summary the summary or <code>null</code> to show the cards.
+     */
+    private void setSummary(LessonSummary summary)
+    {
+        m_loadingSummary = summary;
+        m_deckChartPanel.setSummary(summary);
+        updateSummaryCounts();
+    }
+    
+    private void updateSummaryCounts()
+    {
+        if (m_loadingSummary == null)
+        {
+            m_statusBar.setSummaryCounts(null);
+            return;
+        }
+        
+        int[][] decks = m_loadingSummary.getCounts(m_category);
+        int[] counts = new int[4];
+        for (int level = 0; level < decks.length; level++)
+        {
+            if (m_deck >= 0 && level != m_deck)
+                continue;
+            
+            counts[0] += decks[level][LessonSummary.CARDS];
+            counts[1] += decks[level][LessonSummary.LEARNED];
+            counts[2] += decks[level][LessonSummary.EXPIRED];
+        }
+        counts[3] = counts[0] - counts[1] - counts[2];
+        
+        m_statusBar.setSummaryCounts(counts);
+    }
+    
+    private void showLoadError(File file, Exception e)
+    {
+        Object[] args = {file != null ? file.getName() : "?"};
+        MessageFormat form = new MessageFormat(Localization.get(LC.ERROR_LOAD));
+        String msg = form.format(args);
+        Main.logThrowable(msg, e);
+        
+        new ErrorDialog(this, msg, e).setVisible(true);
+    }
+
     private SelectionProvider getCurrentSelectionProvider() 
     {
         if (m_main.isSessionRunning())
@@ -80,6 +80,7 @@ import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
 import jmemorize.gui.swing.CardFont;
 import jmemorize.gui.swing.ColorConstants;
+import jmemorize.gui.swing.DocumentCache;
 
 /**
  * @author djemili
@@ -261,6 +262,7 @@ public class CardSidePanel extends JPanel
     private Mode                    m_mode;
     private List<CardImageObserver> m_imageObservers = new LinkedList<CardImageObserver>();
     private CardFont                m_cardFont;
+    private CardFont                m_appliedFont; // copy, CardFont is mutable
 
     private JButton                 m_prevImageButton;
     private JButton                 m_nextImageButton;
@@ -300,7 +302,15 @@ public class CardSidePanel extends JPanel
     
     public void setCardFont(CardFont cardFont)
     {
+        boolean unchanged = cardFont.equals(m_appliedFont);
         m_cardFont = cardFont;
+        
+        // avoid re-encoding the document when e.g. the next card is shown
+        if (unchanged)
+            return;
+        
+        m_appliedFont = new CardFont(cardFont.getFont(), 
+            cardFont.getAlignment(), cardFont.isVerticallyCentered());
         m_textPane.setFont(cardFont.getFont());
         
         FormattedText fText = getText();
@@ -319,7 +329,7 @@ public class CardSidePanel extends JPanel
      */
     public Document setText(FormattedText text)
     {
-        StyledDocument doc = text.getDocument();
+        StyledDocument doc = DocumentCache.getInstance().take(text);
         m_textPane.setDocument(doc);
         
         setDocAlignment(doc, m_cardFont);
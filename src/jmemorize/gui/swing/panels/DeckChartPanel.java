@@ -28,15 +28,18 @@ import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardBatchObserver;
 import jmemorize.core.Category;
-import jmemorize.core.CategoryObserver;
+import jmemorize.core.LessonSummary;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
+import jmemorize.gui.swing.CoalescingUpdater;
 import jmemorize.gui.swing.ColorConstants;
 import jmemorize.gui.swing.frames.MainFrame;
 
@@ -69,9 +72,13 @@ import org.jfree.ui.TextAnchor;
  * of the time. It shows a visual representation of the current card
  * distribution among all decks in form of a 3D stacked bar chart.
  * 
+ * Card events don't update the chart right away. They are coalesced into
+ * at most one update per {@link CoalescingUpdater#DEFAULT_INTERVAL}, which
+ * counts the cards on a background thread.
+ * 
  * @author djemili
  */
-public class DeckChartPanel extends JPanel implements CategoryObserver
+public class DeckChartPanel extends JPanel implements CardBatchObserver
 {    
     /**
      * A mouse listener for clicks on the chart. If a bar is clicked the view
@@ -117,7 +124,7 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
             Rectangle2D dataArea, CategoryPlot plot, CategoryAxis domainAxis, 
             ValueAxis rangeAxis, CategoryDataset data, int row, int column, int pass)
         {
-            if (column - 1 == m_deck && m_category.getCards(m_deck).size() > 0)
+            if (column - 1 == m_deck && getDeckSize(m_deck) > 0)
             {
                 setOutlinePaint(ColorConstants.SELECTION_COLOR, false);
                 setBaseItemLabelFont(m_boldFont, false);
@@ -179,6 +186,122 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
         }
     }
     
+    /**
+     * The cards of the category grouped by deck and the number of bars, taken
+     * on the event dispatch thread. While a summary is shown, its numbers are
+     * taken instead of the cards.
+     */
+    private class Snapshot implements Callable<Bars>
+    {
+        private final Card[]  m_cards;
+        private final int[]   m_deckStarts;
+        private final int[][] m_counts;
+        private final int     m_numDecks;
+        
+        public Snapshot()
+        {
+            if (m_summary != null)
+            {
+                m_counts = m_summary.getCounts(m_category);
+                m_cards = null;
+                m_deckStarts = null;
+                m_numDecks = getNumDecks(m_counts.length);
+                return;
+            }
+            
+            int decks = m_category.getNumberOfDecks();
+            List<Card> cards = new ArrayList<Card>(m_category.getCardCount());
+            
+            m_deckStarts = new int[decks + 1];
+            for (int level = 0; level < decks; level++)
+            {
+                m_deckStarts[level] = cards.size();
+                cards.addAll(m_category.getCards(level));
+            }
+            m_deckStarts[decks] = cards.size();
+            
+            m_cards = cards.toArray(new Card[cards.size()]);
+            m_counts = null;
+            m_numDecks = getNumDecks(decks);
+        }
+        
+        /**
+         * Counts the cards in one pass and builds the new dataset.
+         */
+        public Bars call()
+        {
+            int[][] counts = m_counts != null ? m_counts : countCards();
+            int decks = counts.length;
+            Bars bars = new Bars(decks);
+            
+            int totalLearned = 0;
+            int totalExpired = 0;
+            for (int level = 0; level < decks; level++)
+            {
+                bars.m_deckSizes[level] = counts[level][LessonSummary.CARDS];
+                totalLearned += counts[level][LessonSummary.LEARNED];
+                totalExpired += counts[level][LessonSummary.EXPIRED];
+            }
+            
+            // the columns appear in the order in which they are added
+            int unlearned = decks > 0 ? bars.m_deckSizes[0] : 0;
+            setValues(bars.m_dataset, SUMMARY_BAR_NAME, unlearned, totalExpired, 
+                totalLearned);
+            setValues(bars.m_dataset, DECK0_NAME, unlearned, 0, 0);
+            
+            for (int level = 1; level < m_numDecks - 1; level++)
+            {
+                if (level < decks)
+                {
+                    setValues(bars.m_dataset, getDeckLabel(level), 0, 
+                        counts[level][LessonSummary.EXPIRED], 
+                        counts[level][LessonSummary.LEARNED]);
+                }
+                else
+                {
+                    setValues(bars.m_dataset, getDeckLabel(level), 0, 0, 0);
+                }
+            }
+            
+            return bars;
+        }
+        
+        private int[][] countCards()
+        {
+            int decks = m_deckStarts.length - 1;
+            int[][] counts = new int[decks][3];
+            for (int level = 0; level < decks; level++)
+            {
+                for (int i = m_deckStarts[level]; i < m_deckStarts[level + 1]; i++)
+                {
+                    if (m_cards[i].isLearned())
+                        counts[level][LessonSummary.LEARNED]++;
+                    else if (m_cards[i].isExpired())
+                        counts[level][LessonSummary.EXPIRED]++;
+                }
+                
+                counts[level][LessonSummary.CARDS] = 
+                    m_deckStarts[level + 1] - m_deckStarts[level];
+            }
+            
+            return counts;
+        }
+    }
+    
+    /**
+     * The counted cards of the chart.
+     */
+    private static class Bars
+    {
+        private final DefaultCategoryDataset m_dataset = new DefaultCategoryDataset();
+        private final int[]                  m_deckSizes;
+        
+        public Bars(int decks)
+        {
+            m_deckSizes = new int[decks];
+        }
+    }
+    
     // TODO make minimum deck bars dependent on screen resolution
     
     private final static String     DECK0_NAME            = 
@@ -194,12 +317,31 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
         Localization.get("DeckChart.UNLEARNED_CARDS");
     
     private Category                m_category;
+    private LessonSummary           m_summary;
     
     private MainFrame               m_frame;
     
     private DefaultCategoryDataset  m_dataset;
     private ChartPanel              m_chartPanel;
     private MyBarRenderer           m_barRenderer;
+    private int[]                   m_deckSizes           = new int[0];
+    
+    private CoalescingUpdater<Bars> m_updater             = 
+        new CoalescingUpdater<Bars>() {
+        protected Callable<Bars> prepare()
+        {
+            return new Snapshot();
+        }
+        
+        protected void apply(Bars bars)
+        {
+            m_dataset = bars.m_dataset;
+            m_deckSizes = bars.m_deckSizes;
+            
+            CategoryPlot plot = (CategoryPlot)m_chartPanel.getChart().getPlot();
+            plot.setDataset(m_dataset);
+        }
+    };
     
     public DeckChartPanel(MainFrame mainFrame) 
     {
@@ -226,6 +368,28 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
         m_barRenderer.setSelectedDeck(level);
     }
     
+    /**
+     * Shows the numbers of given summary instead of the ones of the cards,
+     * e.g. while the cards of a lesson are loaded.
+     * 
+     * @param summary the summary or <code>null</code> to show the cards
+     * again.
+     */
+    public void setSummary(LessonSummary summary)
+    {
+        m_summary = summary;
+        m_updater.markDirty();
+    }
+    
+    /**
+     * @return the updater of the chart, which also tells how long it takes
+     * until card events are shown.
+     */
+    public CoalescingUpdater<?> getUpdater()
+    {
+        return m_updater;
+    }
+    
     /* (non-Javadoc)
      * @see jmemorize.core.CategoryObserver
      */
@@ -239,7 +403,15 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
      */
     public void onCardEvent(int type, Card card, Category category, int level)
     {   
-        updateBars(); 
+        m_updater.markDirty(); 
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.CardBatchObserver
+     */
+    public void onCardsEvent(int type, List<Card> cards, Category category)
+    {
+        m_updater.markDirty();
     }
 
     private JFreeChart createChart() 
@@ -286,7 +458,9 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
     private void createDataset()
     {
         m_dataset = createDefaultDataSet();
-        updateBars();
+        m_deckSizes = new int[0];
+        m_updater.markDirty();
+        
         CategoryPlot plot = (CategoryPlot)m_chartPanel.getChart().getPlot();
         plot.setDataset(m_dataset);
     }
@@ -311,7 +485,7 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
             public void componentResized(ComponentEvent e)
             {
                 if (m_category != null)
-                    updateBars();
+                    m_updater.markDirty();
             }
         });
     }
@@ -329,54 +503,6 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
         return dataset;
     }
     
-    private void updateBars() //CHECK put Dataset as argument!?
-    {
-        updateSummaryBar();
-        
-        while (m_dataset.getColumnCount() > getNumDecks())
-        {
-            m_dataset.removeColumn(m_dataset.getColumnCount() - 1);
-        }
-        
-        for (int i=0; i < getNumDecks() - 1; i++)
-        {
-            updateBar(i);
-        }
-    }
-    
-    private void updateSummaryBar()
-    {
-        int learned = m_category.getLearnedCards().size();
-        int expired = m_category.getExpiredCards().size();
-        int unlearned = m_category.getUnlearnedCards().size();
-        
-        setValues(m_dataset, SUMMARY_BAR_NAME, unlearned, expired, learned);
-    }
-    
-    private void updateBar(int level)
-    {
-        if (level == 0)
-        {
-            int unlearnedCards = m_category.getCards(level).size();
-            setValues(m_dataset, DECK0_NAME, unlearnedCards, 0, 0);
-        } 
-        else
-        {
-            String deckLabel = getDeckLabel(level);
-            if (level >= m_category.getNumberOfDecks())
-            {
-                setValues(m_dataset, deckLabel, 0, 0, 0);
-            }
-            else
-            {
-                int learnedCards = m_category.getLearnedCards(level).size();
-                int expiredCards = m_category.getExpiredCards(level).size();
-                
-                setValues(m_dataset, deckLabel, 0, expiredCards, learnedCards);
-            }
-        }
-    }
-    
     /**
      * Sets the values for the column with given id. This method also handles
      * the order in which the rows will appear in the column.
@@ -392,15 +518,20 @@ public class DeckChartPanel extends JPanel implements CategoryObserver
         dataset.setValue(learned, LEARNED_CARDS_ROW, column);
     }
 
+    private int getDeckSize(int level)
+    {
+        return level >= 0 && level < m_deckSizes.length ? m_deckSizes[level] : 0;
+    }
+    
     private String getDeckLabel(int level)
     {
         return (level == 0) ? DECK0_NAME :
             Localization.get(LC.DECK) + " " + level; //$NON-NLS-1$
     }
 
-    private int getNumDecks()
+    private int getNumDecks(int decks)
     {
-        return Math.max(m_category.getNumberOfDecks(), getMinNumDecks()) + 1;
+        return Math.max(decks, getMinNumDecks()) + 1;
     }
     
     /**
@@ -37,8 +37,9 @@ import javax.swing.UIManager;
 import javax.swing.border.EtchedBorder;
 
 import jmemorize.core.Card;
+import jmemorize.core.CardBatchObserver;
 import jmemorize.core.Category;
-import jmemorize.core.CategoryObserver;
+import jmemorize.core.Events;
 import jmemorize.core.Main;
 import jmemorize.gui.Localization;
 import jmemorize.gui.swing.actions.AbstractAction2;
@@ -52,7 +53,7 @@ import jmemorize.gui.swing.widgets.CardTable;
  * 
  * @author djemili
  */
-public class DeckTablePanel extends JPanel implements CategoryObserver
+public class DeckTablePanel extends JPanel implements CardBatchObserver
 {
     private class NextDeckAction extends AbstractAction2
     {
@@ -105,6 +106,9 @@ public class DeckTablePanel extends JPanel implements CategoryObserver
     private NextDeckAction     m_nextDeckAction     = new NextDeckAction();
     private PreviousDeckAction m_previousDeckAction = new PreviousDeckAction();
     
+    // batches with more cards than this reload the whole table
+    private static final int   MAX_ROW_UPDATES    = 256;
+    
     private int                m_currentDeckLevel = 0;
     private Category           m_category;
     
@@ -174,7 +178,7 @@ public class DeckTablePanel extends JPanel implements CategoryObserver
      */
     public void onCategoryEvent(int type, Category category)
     {
-        if (m_category.getSubtreeList().contains(category))
+        if (isInCategory(category))
             setDeck(m_currentDeckLevel);
     }
 
@@ -183,8 +187,91 @@ public class DeckTablePanel extends JPanel implements CategoryObserver
      */
     public void onCardEvent(int type, Card card, Category category, int deck)
     {
-        // TODO make this finer
-        setDeck(m_currentDeckLevel);
+        updateCard(type, card);
+        updateButtons();
+    }
+
+    /* (non-Javadoc)
+     * @see jmemorize.core.CardBatchObserver
+     */
+    public void onCardsEvent(int type, List<Card> cards, Category category)
+    {
+        // reloading is cheaper than updating a big part of the table row by row
+        if (cards.size() > MAX_ROW_UPDATES)
+        {
+            setDeck(m_currentDeckLevel);
+            return;
+        }
+        
+        for (Card card : cards)
+        {
+            updateCard(type, card);
+        }
+        updateButtons();
+    }
+    
+    /**
+     * Inserts, removes or updates the row of a single changed card.
+     */
+    private void updateCard(int type, Card card)
+    {
+        CardTable.ViewModel view = m_cardTable.getView();
+        
+        switch (type)
+        {
+        case Events.REMOVED_EVENT:
+            view.removeCard(card);
+            break;
+            
+        case Events.ADDED_EVENT:
+        case Events.MOVED_EVENT:
+        case Events.DECK_EVENT:
+            // the card may have entered or left the shown category or deck
+            if (!isShown(card))
+            {
+                view.removeCard(card);
+            }
+            else if (view.containsCard(card))
+            {
+                view.updateCard(card);
+            }
+            else
+            {
+                view.addCard(card);
+            }
+            break;
+            
+        default:
+            view.updateCard(card);
+        }
+    }
+    
+    /**
+     * @return <code>true</code> if the card is in the shown category or one
+     * of its child categories and in the shown deck.
+     */
+    private boolean isShown(Card card)
+    {
+        if (m_currentDeckLevel >= 0 && card.getLevel() != m_currentDeckLevel)
+            return false;
+        
+        return isInCategory(card.getCategory());
+    }
+    
+    /**
+     * @return <code>true</code> if given category is the shown category or
+     * one of its child categories. Removed categories still know their
+     * parents while their event is delivered.
+     */
+    private boolean isInCategory(Category category)
+    {
+        for (Category c = category; c != null; c = c.getParent())
+        {
+            if (c == m_category)
+                return true;
+        }
+        
+        return false;
     }
     
     private void updateButtons()
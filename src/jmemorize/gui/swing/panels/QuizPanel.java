@@ -44,6 +44,7 @@ import jmemorize.core.learn.LearnSession.LearnCardObserver;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
 import jmemorize.gui.swing.CardFont;
+import jmemorize.gui.swing.DocumentCache;
 import jmemorize.gui.swing.Quiz;
 import jmemorize.gui.swing.CardFont.FontType;
 import jmemorize.gui.swing.actions.AbstractAction2;
@@ -165,6 +166,9 @@ public class QuizPanel extends JPanel implements Events,
     private boolean           m_isShowAnswer;
     
     private static String     PREFS_SHOW_CARD_CATEGORY = "show.card-category"; //$NON-NLS-1$
+    
+    // number of upcoming cards that are rendered in advance
+    private static final int  PREFETCHED_CARDS = 2;
 
     public QuizPanel()
     {
@@ -192,6 +196,7 @@ public class QuizPanel extends JPanel implements Events,
         m_isShowAnswer = false;
         
         m_session.getCategory().removeObserver(this);
+        DocumentCache.getInstance().clear();
     }
 
     /**
@@ -211,6 +216,9 @@ public class QuizPanel extends JPanel implements Events,
         updateCategoryField();
         
         showQuestion();
+        
+        DocumentCache.getInstance().prefetch(
+            m_session.getUpcomingCards(PREFETCHED_CARDS));
     }
     
     /* (non-Javadoc)
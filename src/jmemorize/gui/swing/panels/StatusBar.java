@@ -21,6 +21,7 @@ package jmemorize.gui.swing.panels;
 import java.awt.BorderLayout;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -29,6 +30,7 @@ import javax.swing.border.EmptyBorder;
 import jmemorize.core.Card;
 import jmemorize.gui.LC;
 import jmemorize.gui.Localization;
+import jmemorize.gui.swing.CoalescingUpdater;
 
 import com.jgoodies.forms.builder.DefaultFormBuilder;
 import com.jgoodies.forms.layout.CellConstraints;
@@ -47,6 +49,35 @@ public class StatusBar extends JPanel
     private JLabel m_leftLabel  = new JLabel();
     private JLabel m_rightLabel = new JLabel();
     
+    // the cards or numbers of cards for the next update of the right label,
+    // unless the numbers of a summary are shown
+    private Card[] m_cards;
+    private int[]  m_counts;
+    private int[]  m_summaryCounts;
+    
+    private CoalescingUpdater<String> m_updater = new CoalescingUpdater<String>() {
+        protected Callable<String> prepare()
+        {
+            // the cards are kept, so that they can be shown again after a
+            // summary
+            final Card[] cards = m_summaryCounts == null ? m_cards : null;
+            final int[] counts = m_summaryCounts != null ? m_summaryCounts : 
+                m_counts != null ? m_counts : new int[4];
+            
+            return new Callable<String>() {
+                public String call()
+                {
+                    return formatCounts(cards != null ? countCards(cards) : counts);
+                }
+            };
+        }
+        
+        protected void apply(String text)
+        {
+            m_rightLabel.setText(text);
+        }
+    };
+    
     public StatusBar()
     {
         setLayout(new BorderLayout());
@@ -66,11 +97,52 @@ public class StatusBar extends JPanel
     
     /**
      * Sets currently shown cards. This is used for the right part of the status
-     * bar that shows the number of currently displayed cards.
+     * bar that shows the number of currently displayed cards. The cards are
+     * counted on a background thread and the status bar is updated shortly
+     * after.
      * 
      * @param cards The cards that are currently displayed.
      */
     public void setCards(List<Card> cards)
+    {
+        m_cards = cards.toArray(new Card[cards.size()]);
+        m_updater.markDirty();
+    }
+    
+    /**
+     * Sets the numbers of currently shown cards, if they are already known.
+     * The status bar is updated shortly after.
+     */
+    public void setCounts(int cards, int learned, int expired, int unlearned)
+    {
+        m_cards = null;
+        m_counts = new int[] {cards, learned, expired, unlearned};
+        m_updater.markDirty();
+    }
+    
+    /**
+     * Shows the given numbers instead of the ones of the shown cards, e.g.
+     * while the cards of a lesson are loaded.
+     * 
+     * @param counts the numbers of cards, learned, expired and unlearned
+     * cards, or <code>null</code> to show the cards again.
+     */
+    public void setSummaryCounts(int[] counts)
+    {
+        m_summaryCounts = counts;
+        m_updater.markDirty();
+    }
+    
+    /**
+     * @return the updater of the card numbers, which also tells how long it
+     * takes until changes are shown.
+     */
+    public CoalescingUpdater<?> getUpdater()
+    {
+        return m_updater;
+    }
+    
+    private static int[] countCards(Card[] cards)
     {
         int unlearned = 0;
         int learned = 0;
@@ -92,15 +164,19 @@ public class StatusBar extends JPanel
             }
         }
         
+        return new int[] {cards.length, learned, expired, unlearned};
+    }
+    
+    private static String formatCounts(int[] counts)
+    {
         Object[] args = {
-            Localization.get(LC.STATUS_CARDS),     new Integer(cards.size()),
-            Localization.get(LC.STATUS_LEARNED),   new Integer(learned),
-            Localization.get(LC.STATUS_EXPIRED),   new Integer(expired),
-            Localization.get(LC.STATUS_UNLEARNED), new Integer(unlearned)};
+            Localization.get(LC.STATUS_CARDS),     new Integer(counts[0]),
+            Localization.get(LC.STATUS_LEARNED),   new Integer(counts[1]),
+            Localization.get(LC.STATUS_EXPIRED),   new Integer(counts[2]),
+            Localization.get(LC.STATUS_UNLEARNED), new Integer(counts[3])};
         
         MessageFormat form = new MessageFormat("{0}: {1} ({2}: {3}  {4}: {5}  {6}: {7})"); //$NON-NLS-1$
-        
-        m_rightLabel.setText(form.format(args));
+        return form.format(args);
     }
     
     private JPanel buildStatusBar()
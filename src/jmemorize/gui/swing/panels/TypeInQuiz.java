@@ -26,12 +26,12 @@ public class TypeInQuiz implements Quiz
      */
     public float showAnswer()
     {
-        String actual = m_cardSide.getText().getUnformatted();
-        String expected = m_text.getUnformatted();
+        String actual = m_cardSide.getText().getFolded(false);
+        String expected = m_text.getFolded(false);
         
         m_cardSide.setText(m_text);
         
-        if (expected.equalsIgnoreCase(actual))
+        if (expected.equals(actual))
             return 1f;
         
         return -1f;
@@ -0,0 +1,419 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.gui.swing.widgets;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jmemorize.core.Card;
+import jmemorize.core.Category;
+import jmemorize.core.FormattedText;
+import jmemorize.core.Main;
+
+/**
+ * Keeps a list of cards sorted by one of the columns of {@link CardTable}.
+ * The sort key of every card is computed once per sort instead of once per
+ * comparison. Text keys are collation keys, which are kept until the text of
+ * the card changes. Single cards can be added, removed and updated at their
+ * sorted place without sorting the whole list again. The numbers of learned,
+ * expired and unlearned cards are kept up to date in the same way.
+ */
+public class CardSorter
+{
+    /**
+     * A card together with its sort key for one column. The sequence number
+     * keeps the order of cards with equal keys, so that every row has a
+     * unique place.
+     */
+    private class Row
+    {
+        private final Card   m_card;
+        private int          m_column = -1;
+        private Object       m_source;
+        private CollationKey m_text;
+        private long         m_number;
+        private int          m_sequence;
+        private int          m_status;
+
+        public Row(Card card)
+        {
+            m_card = card;
+        }
+
+        /**
+         * Computes the key for the sort column, unless the cached one is
+         * still valid.
+         */
+        public void update()
+        {
+            switch (m_sortColumn)
+            {
+            case CardTable.COLUMN_FRONTSIDE:
+            case CardTable.COLUMN_BACKSIDE:
+                FormattedText text = m_sortColumn == CardTable.COLUMN_FRONTSIDE ?
+                    m_card.getFrontSide().getText() : m_card.getBackSide().getText();
+
+                // card sides get new text objects when they are edited
+                if (m_column != m_sortColumn || text != m_source)
+                {
+                    m_text = m_collator.getCollationKey(
+                        text.getUnformatted().replace('\n', ' '));
+                    m_source = text;
+                }
+                break;
+
+            case CardTable.COLUMN_CATEGORY:
+            case CardTable.COLUMN_PATH:
+                m_text = getCategoryKey(m_card.getCategory());
+                m_source = null;
+                break;
+
+            case CardTable.COLUMN_DECK:
+                m_number = m_card.getLevel();
+                break;
+
+            case CardTable.COLUMN_RATIO:
+                m_number = m_card.getPassRatio();
+                break;
+
+            default:
+                Date date = getDate(m_card, m_sortColumn);
+                m_number = date != null ? date.getTime() : Long.MIN_VALUE;
+            }
+
+            m_column = m_sortColumn;
+        }
+    }
+
+    /**
+     * Orders rows by their keys and then by their sequence numbers.
+     */
+    private class RowComparator implements Comparator<Row>
+    {
+        private final boolean m_text;
+
+        public RowComparator()
+        {
+            m_text = isTextColumn(m_sortColumn);
+        }
+
+        /**
+         * @see java.util.Comparator
+         */
+        public int compare(Row row0, Row row1)
+        {
+            int result;
+            if (m_text)
+            {
+                result = row0.m_text.compareTo(row1.m_text);
+            }
+            else
+            {
+                result = row0.m_number < row1.m_number ? -1 :
+                    (row0.m_number == row1.m_number ? 0 : 1);
+            }
+
+            if (m_descending)
+                result = -result;
+
+            return result != 0 ? result : row0.m_sequence - row1.m_sequence;
+        }
+    }
+
+    private final Collator              m_collator     = Collator.getInstance();
+
+    private List<Card>                  m_cards        = new ArrayList<Card>();
+
+    // the rows in the order of m_cards
+    private List<Row>                   m_rows         = new ArrayList<Row>();
+    private Map<Card, Row>              m_rowOfCard    = new IdentityHashMap<Card, Row>();
+    private Map<Category, CollationKey> m_categoryKeys = new HashMap<Category, CollationKey>();
+    private int                         m_nextSequence;
+
+    private int                         m_sortColumn   = CardTable.COLUMN_FRONTSIDE;
+    private boolean                     m_descending;
+
+    // the number of cards per status and the time when the next learned
+    // card expires, which changes the numbers without any card event
+    private int[]                       m_statusCounts = new int[3];
+    private long                        m_nextExpiry   = Long.MAX_VALUE;
+
+    private static final int            UNLEARNED      = 0;
+    private static final int            LEARNED        = 1;
+    private static final int            EXPIRED        = 2;
+
+    /**
+     * Sorts the given list in place and keeps it sorted from now on. The
+     * sort keys of cards that were in the previous list are reused. Cards
+     * with equal keys keep their order.
+     */
+    public void setCards(List<Card> cards)
+    {
+        m_cards = cards;
+        m_categoryKeys.clear();
+
+        Map<Card, Row> oldRows = m_rowOfCard;
+        m_rows = new ArrayList<Row>(cards.size());
+        m_rowOfCard = new IdentityHashMap<Card, Row>(cards.size());
+
+        Arrays.fill(m_statusCounts, 0);
+        m_nextExpiry = Long.MAX_VALUE;
+
+        int sequence = 0;
+        for (Card card : cards)
+        {
+            Row row = oldRows.get(card);
+            if (row == null)
+                row = new Row(card);
+
+            row.m_sequence = sequence++;
+            row.update();
+            countStatus(row);
+
+            m_rows.add(row);
+            m_rowOfCard.put(card, row);
+        }
+        m_nextSequence = sequence;
+
+        Collections.sort(m_rows, new RowComparator());
+
+        for (int i = 0; i < m_rows.size(); i++)
+        {
+            m_cards.set(i, m_rows.get(i).m_card);
+        }
+    }
+
+    /**
+     * Sorts the cards by given column.
+     */
+    public void sort(int column, boolean descending)
+    {
+        m_sortColumn = column;
+        m_descending = descending;
+
+        setCards(m_cards);
+    }
+
+    public List<Card> getCards()
+    {
+        return m_cards;
+    }
+
+    public boolean contains(Card card)
+    {
+        return m_rowOfCard.containsKey(card);
+    }
+
+    /**
+     * @return the index of given card or -1 if it isn't in the list.
+     */
+    public int indexOf(Card card)
+    {
+        Row row = m_rowOfCard.get(card);
+        return row != null ? findRow(row) : -1;
+    }
+
+    /**
+     * Inserts the card at its sorted place.
+     *
+     * @return the index of the card or -1 if it already was in the list.
+     */
+    public int add(Card card)
+    {
+        if (m_rowOfCard.containsKey(card))
+            return -1;
+
+        Row row = new Row(card);
+        row.m_sequence = m_nextSequence++;
+        row.update();
+        countStatus(row);
+
+        return insertRow(row);
+    }
+
+    /**
+     * @return the index that the card had or -1 if it wasn't in the list.
+     */
+    public int remove(Card card)
+    {
+        Row row = m_rowOfCard.get(card);
+        if (row == null)
+            return -1;
+
+        int index = findRow(row);
+        m_rows.remove(index);
+        m_cards.remove(index);
+        m_rowOfCard.remove(card);
+        m_statusCounts[row.m_status]--;
+
+        return index;
+    }
+
+    /**
+     * Moves a changed card to its new sorted place.
+     *
+     * @return the new index of the card or -1 if it isn't in the list.
+     */
+    public int update(Card card)
+    {
+        Row row = m_rowOfCard.get(card);
+        if (row == null)
+            return -1;
+
+        int index = findRow(row);
+        m_rows.remove(index);
+        m_cards.remove(index);
+
+        // the card could have been moved to a renamed category
+        m_categoryKeys.remove(card.getCategory());
+        row.update();
+
+        m_statusCounts[row.m_status]--;
+        countStatus(row);
+
+        return insertRow(row);
+    }
+
+    /**
+     * @return the number of cards that are learned and not expired.
+     */
+    public int getLearnedCount()
+    {
+        checkExpiry();
+        return m_statusCounts[LEARNED];
+    }
+
+    public int getExpiredCount()
+    {
+        checkExpiry();
+        return m_statusCounts[EXPIRED];
+    }
+
+    public int getUnlearnedCount()
+    {
+        checkExpiry();
+        return m_statusCounts[UNLEARNED];
+    }
+
+    private void countStatus(Row row)
+    {
+        Card card = row.m_card;
+        if (card.isUnlearned())
+        {
+            row.m_status = UNLEARNED;
+        }
+        else if (card.isLearned())
+        {
+            row.m_status = LEARNED;
+            m_nextExpiry = Math.min(m_nextExpiry, card.getDateExpired().getTime());
+        }
+        else
+        {
+            row.m_status = EXPIRED;
+        }
+
+        m_statusCounts[row.m_status]++;
+    }
+
+    /**
+     * Counts all cards again if a learned card has expired since the last
+     * count.
+     */
+    private void checkExpiry()
+    {
+        if (Main.getNow().getTime() < m_nextExpiry)
+            return;
+
+        Arrays.fill(m_statusCounts, 0);
+        m_nextExpiry = Long.MAX_VALUE;
+        for (Row row : m_rows)
+            countStatus(row);
+    }
+
+    private CollationKey getCategoryKey(Category category)
+    {
+        CollationKey key = m_categoryKeys.get(category);
+        if (key == null)
+        {
+            key = m_collator.getCollationKey(m_sortColumn == CardTable.COLUMN_PATH ?
+                category.getPath() : category.getName());
+            m_categoryKeys.put(category, key);
+        }
+
+        return key;
+    }
+
+    private int insertRow(Row row)
+    {
+        int index = Collections.binarySearch(m_rows, row, new RowComparator());
+        if (index < 0)
+            index = -index - 1;
+
+        m_rows.add(index, row);
+        m_cards.add(index, row.m_card);
+        m_rowOfCard.put(row.m_card, row);
+
+        return index;
+    }
+
+    /**
+     * Finds the row by its current key, so this has to be called before the
+     * key is updated.
+     */
+    private int findRow(Row row)
+    {
+        int index = Collections.binarySearch(m_rows, row, new RowComparator());
+        return index >= 0 ? index : m_rows.indexOf(row);
+    }
+
+    private static boolean isTextColumn(int column)
+    {
+        return column == CardTable.COLUMN_FRONTSIDE ||
+            column == CardTable.COLUMN_BACKSIDE ||
+            column == CardTable.COLUMN_CATEGORY ||
+            column == CardTable.COLUMN_PATH;
+    }
+
+    private static Date getDate(Card card, int column)
+    {
+        switch (column)
+        {
+        case CardTable.COLUMN_CREATED:
+            return card.getDateCreated();
+
+        case CardTable.COLUMN_MODIFIED:
+            return card.getDateModified();
+
+        case CardTable.COLUMN_TESTED:
+            return card.getDateTested();
+
+        default:
+            return card.getDateExpired();
+        }
+    }
+}
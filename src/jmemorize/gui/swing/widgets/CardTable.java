@@ -26,8 +26,6 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -77,7 +75,6 @@ import jmemorize.gui.swing.frames.MainFrame;
 import jmemorize.gui.swing.panels.StatusBar;
 import jmemorize.util.Arrow;
 import jmemorize.util.PreferencesTool;
-import jmemorize.util.ReverseOrder;
 import jmemorize.util.TimeSpan;
 
 /**
@@ -192,37 +189,6 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
         }
     }
     
-    /**
-     * A Comparator that orders cards according to the specified model index.
-     */
-    private class CardComparator implements Comparator<Card>
-    {
-        private int m_modelIndex;
-        
-        public CardComparator(int modelIndex)
-        {
-            m_modelIndex = modelIndex;
-        }
-
-        /**
-         * @see java.util.Comparator
-         */
-        public int compare(Card arg0, Card arg1)
-        {
-            Comparable col0 = (Comparable)getValue(arg0, m_modelIndex);
-            Comparable col1 = (Comparable)getValue(arg1, m_modelIndex);
-            
-            if (col0 == null)
-            {
-                return col1 == null ? 0 : -1;
-            } 
-            else
-            {
-                return col1 == null ? 1 : col0.compareTo(col1);
-            } 
-        }
-    }
-    
     /**
      * Copied from Java Sample.
      */
@@ -267,7 +233,7 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
         public static final int ASCENDING  = 0;
         public static final int DESCENDING = 1;
 
-        private List<Card>      m_cards    = new ArrayList<Card>();
+        private CardSorter      m_sorter   = new CardSorter();
         // HACK currently this is only needed for transferhandlers
         private Category        m_category;
 
@@ -281,9 +247,9 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
         
         public void setCards(List<Card> cards, Category category)
         {
-            m_cards = cards;
+            m_sorter.setCards(cards);
             m_category = category;
-            resort();
+            fireTableDataChanged();
             
             updateCardCountStatusBar();
         }
@@ -303,9 +269,64 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
             resort();
         }
         
+        /**
+         * Inserts the card at its sorted place.
+         */
+        public void addCard(Card card)
+        {
+            int index = m_sorter.add(card);
+            if (index < 0)
+                return;
+            
+            fireTableRowsInserted(index, index);
+            updateCardCountStatusBar();
+        }
+        
+        /**
+         * Removes the card from the table, if it is shown.
+         */
+        public void removeCard(Card card)
+        {
+            int index = m_sorter.remove(card);
+            if (index < 0)
+                return;
+            
+            fireTableRowsDeleted(index, index);
+            updateCardCountStatusBar();
+        }
+        
+        /**
+         * Updates the row of a changed card and moves it to its new sorted
+         * place.
+         */
+        public void updateCard(Card card)
+        {
+            int oldIndex = m_sorter.indexOf(card);
+            if (oldIndex < 0)
+                return;
+            
+            int newIndex = m_sorter.update(card);
+            if (oldIndex == newIndex)
+            {
+                fireTableRowsUpdated(newIndex, newIndex);
+            }
+            else
+            {
+                fireTableRowsDeleted(oldIndex, oldIndex);
+                fireTableRowsInserted(newIndex, newIndex);
+            }
+            
+            updateCardCountStatusBar();
+        }
+        
         public List<Card> getCards()
         {
-            return m_cards;
+            return m_sorter.getCards();
+        }
+        
+        public boolean containsCard(Card card)
+        {
+            return m_sorter.contains(card);
         }
 
         /**
@@ -313,7 +334,7 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
          */
         public int getRowCount()
         {
-            return m_cards != null ? m_cards.size() : 0;
+            return m_sorter.getCards().size();
         }
 
         /**
@@ -345,7 +366,7 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
          */
         public Object getValueAt(int rowIndex, int columnIndex)
         {
-            Card card = (Card)m_cards.get(rowIndex);
+            Card card = m_sorter.getCards().get(rowIndex);
             return getValue(card, columnIndex);
         }
 
@@ -367,14 +388,8 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
         
         private void resort()
         {
-            if (m_cards != null) //CHECK
-            {
-                Comparator<Card> comparator = new CardComparator(m_orderModelIndex);
-                Collections.sort(m_cards, m_orderDir == ASCENDING ? 
-                    comparator : new ReverseOrder<Card>(comparator));
-                
-                fireTableDataChanged();
-            }
+            m_sorter.sort(m_orderModelIndex, m_orderDir == DESCENDING);
+            fireTableDataChanged();
         }
     }
     
@@ -1014,7 +1029,10 @@ public class CardTable extends JTable implements Settings.CardFontObserver,
     {
         if (m_statusBar != null)
         {
-            m_statusBar.setCards(m_tableModel.getCards());
+            CardSorter sorter = m_tableModel.m_sorter;
+            m_statusBar.setCounts(sorter.getCards().size(),
+                sorter.getLearnedCount(), sorter.getExpiredCount(),
+                sorter.getUnlearnedCount());
         }
     }
     
@@ -19,9 +19,7 @@
 package jmemorize.gui.swing.widgets;
 
 import java.awt.Component;
-import java.util.List;
 
-import javax.swing.DefaultComboBoxModel;
 import javax.swing.ImageIcon;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
@@ -69,6 +67,7 @@ public class CategoryComboBox extends JComboBox implements CategoryObserver
         getResource("/resource/icons/folder.gif")); //$NON-NLS-1$
     
     private Category            m_rootCategory;
+    private CategoryListModel   m_model;
     
     public CategoryComboBox()
     {
@@ -85,7 +84,17 @@ public class CategoryComboBox extends JComboBox implements CategoryObserver
         m_rootCategory = category;
         m_rootCategory.addObserver(this);
         
-        updateModel();
+        Object selected = getModel().getSelectedItem();
+        m_model = new CategoryListModel(category);
+        
+        // if former selected object still there, select it again
+        if (selected instanceof Category && 
+            m_model.indexOf((Category)selected) >= 0)
+        {
+            m_model.setSelectedItem(selected);
+        }
+        
+        setModel(m_model);
     }
     
     public Category getRootCategory()
@@ -108,7 +117,7 @@ public class CategoryComboBox extends JComboBox implements CategoryObserver
      */
     public void onCategoryEvent(int type, Category category)
     {
-        updateModel();
+        m_model.onCategoryEvent(type, category);
     }
 
     /* (non-Javadoc)
@@ -118,19 +127,4 @@ public class CategoryComboBox extends JComboBox implements CategoryObserver
     {
         // ignore
     }
-    
-    private void updateModel()
-    {
-        Object selected = getModel().getSelectedItem();
-        List<Category> categoryList = m_rootCategory.getSubtreeList();
-        DefaultComboBoxModel model = new DefaultComboBoxModel(categoryList.toArray());
-        
-        // if former selected object still there, select it again
-        if (categoryList.contains(selected))
-        {
-            model.setSelectedItem(selected);
-        }
-
-        setModel(model);
-    }
 }
@@ -0,0 +1,238 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.gui.swing.widgets;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+import javax.swing.ComboBoxModel;
+
+import jmemorize.core.Category;
+import jmemorize.core.Events;
+
+/**
+ * A list model of all categories of a category tree, in the order of
+ * {@link Category#getSubtreeList()}. Category events are applied to the list
+ * one by one: an added or removed category inserts or removes the block of
+ * its subtree and a renamed category moves its block to its new place. The
+ * places are found by binary searches in tree order, so that the list never
+ * has to be built again.
+ */
+public class CategoryListModel extends AbstractListModel implements ComboBoxModel
+{
+    private static final Comparator<Category> TREE_ORDER = new Comparator<Category>() {
+        public int compare(Category c1, Category c2)
+        {
+            return Category.compareTreeOrder(c1, c2);
+        }
+    };
+    
+    private final Category       m_rootCategory;
+    private final List<Category> m_categories;
+    private Object               m_selected;
+    
+    public CategoryListModel(Category rootCategory)
+    {
+        m_rootCategory = rootCategory;
+        m_categories = rootCategory.getSubtreeList();
+        m_selected = rootCategory;
+    }
+    
+    /**
+     * Applies a category event of the category tree to the list.
+     * 
+     * @param type ADDED_EVENT, REMOVED_EVENT or EDITED_EVENT.
+     */
+    public void onCategoryEvent(int type, Category category)
+    {
+        switch (type)
+        {
+        case Events.ADDED_EVENT:
+            insertBlock(category);
+            break;
+            
+        case Events.REMOVED_EVENT:
+            int index = indexOf(category);
+            if (index < 0)
+                return;
+            
+            removeBlock(index);
+            if (m_selected == category || (m_selected instanceof Category && 
+                isDescendant((Category)m_selected, category)))
+            {
+                setSelectedItem(m_rootCategory);
+            }
+            break;
+            
+        case Events.EDITED_EVENT:
+            moveBlock(category);
+            break;
+        }
+    }
+    
+    /**
+     * @return the index of given category or -1 if it isn't in the list.
+     */
+    public int indexOf(Category category)
+    {
+        int index = Collections.binarySearch(m_categories, category, TREE_ORDER);
+        if (index >= 0 && m_categories.get(index) == category)
+            return index;
+        
+        // removed categories that had siblings with the same name
+        return m_categories.indexOf(category);
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.swing.ListModel#getSize()
+     */
+    public int getSize()
+    {
+        return m_categories.size();
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.swing.ListModel#getElementAt(int)
+     */
+    public Object getElementAt(int index)
+    {
+        return m_categories.get(index);
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.swing.ComboBoxModel#getSelectedItem()
+     */
+    public Object getSelectedItem()
+    {
+        return m_selected;
+    }
+    
+    /* (non-Javadoc)
+     * @see javax.swing.ComboBoxModel#setSelectedItem(java.lang.Object)
+     */
+    public void setSelectedItem(Object item)
+    {
+        if (item == m_selected)
+            return;
+        
+        m_selected = item;
+        fireContentsChanged(this, -1, -1);
+    }
+    
+    private void insertBlock(Category category)
+    {
+        int index = -Collections.binarySearch(m_categories, category, TREE_ORDER) - 1;
+        if (index < 0)
+            return; // already in the list
+        
+        List<Category> subtree = category.getSubtreeList();
+        m_categories.addAll(index, subtree);
+        fireIntervalAdded(this, index, index + subtree.size() - 1);
+    }
+    
+    /**
+     * Removes the category at given index and all its child categories.
+     */
+    private void removeBlock(int index)
+    {
+        Category category = m_categories.get(index);
+        int end = index + 1;
+        while (end < m_categories.size() && 
+            isDescendant(m_categories.get(end), category))
+        {
+            end++;
+        }
+        
+        m_categories.subList(index, end).clear();
+        fireIntervalRemoved(this, index, end - 1);
+    }
+    
+    /**
+     * Moves a renamed category and its child categories to their new place.
+     */
+    private void moveBlock(Category category)
+    {
+        Category parent = category.getParent();
+        if (parent == null)
+        {
+            fireContentsChanged(this, 0, 0);
+            return;
+        }
+        
+        // the renamed block is out of order, but only among the descendants
+        // of the parent, so the parent can still be found
+        int parentIndex = indexOf(parent);
+        int index = parentIndex + 1;
+        while (index < m_categories.size() && m_categories.get(index) != category)
+        {
+            index++;
+        }
+        if (index == m_categories.size())
+            return;
+        
+        // a block that stays in place only needs to be repainted
+        boolean afterPrevious = index == parentIndex + 1 || 
+            TREE_ORDER.compare(previousSibling(parentIndex, index), category) < 0;
+        int next = index + 1;
+        while (next < m_categories.size() && isDescendant(m_categories.get(next), category))
+        {
+            next++;
+        }
+        boolean beforeNext = next == m_categories.size() || 
+            TREE_ORDER.compare(category, m_categories.get(next)) < 0;
+        
+        if (afterPrevious && beforeNext)
+        {
+            fireContentsChanged(this, index, index);
+            return;
+        }
+        
+        removeBlock(index);
+        insertBlock(category);
+    }
+    
+    /**
+     * @return the sibling that comes right before the category at given index.
+     */
+    private Category previousSibling(int parentIndex, int index)
+    {
+        int depth = m_categories.get(index).getDepth();
+        for (int i = index - 1; i > parentIndex; i--)
+        {
+            if (m_categories.get(i).getDepth() == depth)
+                return m_categories.get(i);
+        }
+        
+        return m_categories.get(parentIndex);
+    }
+    
+    private static boolean isDescendant(Category category, Category ancestor)
+    {
+        for (Category c = category.getParent(); c != null && 
+            c.getDepth() >= ancestor.getDepth(); c = c.getParent())
+        {
+            if (c == ancestor)
+                return true;
+        }
+        
+        return false;
+    }
+}
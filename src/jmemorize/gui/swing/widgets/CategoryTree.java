@@ -26,7 +26,9 @@ import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.EventObject;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.Action;
 import javax.swing.ImageIcon;
@@ -244,6 +246,10 @@ public class CategoryTree extends JTree implements CategoryObserver, SelectionPr
     /** The category that was shown before the popup menu was opened. */
     private Category                m_beforeMenuCategory;
     
+    // the tree node of every category, so that events don't have to search
+    private Map<Category, DefaultMutableTreeNode> m_nodes = 
+        new IdentityHashMap<Category, DefaultMutableTreeNode>();
+    
     private List<SelectionObserver> m_selectionObservers = new ArrayList<SelectionObserver>();
     private JPopupMenu              m_categoryMenu;
     private boolean                 m_reopeningCategoryMenu = false;
@@ -281,6 +287,7 @@ public class CategoryTree extends JTree implements CategoryObserver, SelectionPr
         m_rootCategory = category;
         m_rootCategory.addObserver(this);
         
+        m_nodes.clear();
         MutableTreeNode root = createCategoryNode(category);
         setModel(new CategoryTreeModel(root));
         this.repaint();
@@ -295,18 +302,10 @@ public class CategoryTree extends JTree implements CategoryObserver, SelectionPr
             return;
         }
         
-        DefaultMutableTreeNode root = (DefaultMutableTreeNode)getModel().getRoot();
-        Enumeration enumer = root.depthFirstEnumeration();
-        
-        while (enumer.hasMoreElements())
+        DefaultMutableTreeNode node = m_nodes.get(category);
+        if (node != null)
         {
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode)enumer.nextElement();
-            Object userValue = node.getUserObject();
-            
-            if (userValue == category)
-            {
-                setSelectionPath(new TreePath(node.getPath()));
-            }
+            setSelectionPath(new TreePath(node.getPath()));
         }
         
         updateSelectionObservers();
@@ -332,31 +331,48 @@ public class CategoryTree extends JTree implements CategoryObserver, SelectionPr
      */
     public void onCategoryEvent(int type, Category category)
     {
-        MutableTreeNode parent = null;
+        DefaultTreeModel model = (DefaultTreeModel)getModel();
+        DefaultMutableTreeNode node = m_nodes.get(category);
         
         switch (type)
         {
             case ADDED_EVENT: 
-                parent = getNode(category.getParent());
-                MutableTreeNode newChild = createCategoryNode(category);
+                if (node != null)
+                    return;
                 
-                int idx = category.getParent().getChildCategories().indexOf(category);
-                parent.insert(newChild, idx);                
+                Category parent = category.getParent();
+                model.insertNodeInto(createCategoryNode(category), 
+                    m_nodes.get(parent), parent.getChildIndex(category));
                 break;
                 
             case REMOVED_EVENT:
-                parent = getNode(category.getParent());
-                MutableTreeNode child  = getNode(category);
-                parent.remove(child);
+                if (node == null)
+                    return;
+                
+                model.removeNodeFromParent(node);
+                removeNodes(node);
                 break;
                 
             case EDITED_EVENT:
-                parent = getNode(category);
+                if (node == null)
+                    return;
+                
+                // a renamed category can move to another sorted position
+                Category parentCategory = category.getParent();
+                if (parentCategory != null)
+                {
+                    DefaultMutableTreeNode parentNode = m_nodes.get(parentCategory);
+                    int newIdx = parentCategory.getChildIndex(category);
+                    if (parentNode.getIndex(node) != newIdx)
+                    {
+                        moveNode(node, parentNode, newIdx);
+                        return;
+                    }
+                }
+                
+                model.nodeChanged(node);
                 break;
         }
-        
-        DefaultTreeModel model = (DefaultTreeModel)getModel();
-        model.reload(parent);
     }
 
     /*
@@ -541,27 +557,55 @@ public class CategoryTree extends JTree implements CategoryObserver, SelectionPr
         return menu;
     }
     
-    private DefaultMutableTreeNode getNode(Object userValue)
+    /**
+     * Moves the node to another index of its parent. The expanded and
+     * selected nodes of its subtree stay expanded and selected.
+     */
+    private void moveNode(DefaultMutableTreeNode node, 
+        DefaultMutableTreeNode parentNode, int index)
     {
         DefaultTreeModel model = (DefaultTreeModel)getModel();
-        DefaultMutableTreeNode root = (DefaultMutableTreeNode)model.getRoot();
+        TreePath path = new TreePath(node.getPath());
+        
+        List<TreePath> expanded = new ArrayList<TreePath>();
+        if (isExpanded(path))
+            expanded.add(path);
         
-        for (Enumeration enumer = root.depthFirstEnumeration(); enumer.hasMoreElements();)
+        for (Enumeration<TreePath> e = getExpandedDescendants(path); 
+            e != null && e.hasMoreElements();)
         {
-            DefaultMutableTreeNode node = (DefaultMutableTreeNode)enumer.nextElement();
-            
-            if (node.getUserObject() == userValue)
-            {
-                return node;
-            }
+            expanded.add(e.nextElement());
         }
         
-        return null;
+        TreePath selection = getSelectionPath();
+        boolean selected = selection != null && path.isDescendant(selection);
+        
+        model.removeNodeFromParent(node);
+        model.insertNodeInto(node, parentNode, index);
+        
+        // the tree paths are made of the same nodes, so they are still valid
+        for (TreePath expandedPath : expanded)
+        {
+            expandPath(expandedPath);
+        }
+        
+        if (selected)
+            setSelectionPath(selection);
+    }
+    
+    private void removeNodes(DefaultMutableTreeNode node)
+    {
+        m_nodes.remove(node.getUserObject());
+        for (int i = 0; i < node.getChildCount(); i++)
+        {
+            removeNodes((DefaultMutableTreeNode)node.getChildAt(i));
+        }
     }
     
     private MutableTreeNode createCategoryNode(Category category)
     {
         DefaultMutableTreeNode node = new DefaultMutableTreeNode(category);
+        m_nodes.put(category, node);
         
         // for all child categories
         for (Category cat : category.getChildCategories())
@@ -228,6 +228,56 @@ public class EquivalenceClassSet<T> extends AbstractSet<T>
         return new LoopIterator();
     }
    
+    /**
+     * Returns the elements that the loopIterator will most likely return next,
+     * without advancing it. The remaining elements of the current equivalence 
+     * class are returned in the order in which they will be returned. If these 
+     * are less than requested, elements of the following class are appended. 
+     * Because that class may be shuffled when it is reached, these are only 
+     * candidates. Modifying the set can also change what will be returned.
+     * 
+     * @param max the maximum number of elements to return.
+     * @return a new list with at most max elements.
+     */
+    public List<T> peekLoop(int max) 
+    {
+        List<T> result = new ArrayList<T>(Math.min(max, m_size));
+        if (m_size <= 0) 
+        {
+            return result;
+        }
+        
+        if (m_loopCurrentEqvClass != null) 
+        {
+            for (int i = m_loopItemIter.nextIndex(); 
+                i < m_loopCurrentEqvClass.size() && result.size() < max; i++) 
+            {
+                result.add((T)m_loopCurrentEqvClass.get(i));
+            }
+        }
+        
+        if (result.size() < max) 
+        {
+            int nextClassIdx = m_loopEqvClassIter.nextIndex();
+            if (nextClassIdx >= m_equivalenceClasses.size()) 
+            {
+                nextClassIdx = 0; // loop iterator will recycle to beginning
+            }
+            
+            List nextEqvClass = (List)m_equivalenceClasses.get(nextClassIdx);
+            for (int i = 0; i < nextEqvClass.size() && result.size() < max; i++) 
+            {
+                T item = (T)nextEqvClass.get(i);
+                if (!result.contains(item)) 
+                {
+                    result.add(item);
+                }
+            }
+        }
+        
+        return result;
+    }
+    
     public void resetLoopIterator() 
     {
         m_loopEqvClassIter = m_equivalenceClasses.listIterator();
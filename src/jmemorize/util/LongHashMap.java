@@ -0,0 +1,310 @@
+/*
+ * jMemorize - Learning made easy (and fun) - A Leitner flashcards tool
+ * Copyright(C) 2004-2008 Riad Djemili and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 1, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package jmemorize.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from primitive long keys to values, which doesn't box its keys and
+ * doesn't create an entry object per mapping. The keys and values are kept
+ * in two arrays of an open addressing table with linear probing. Removed
+ * mappings leave a marker behind, so that removing doesn't move other
+ * mappings and can be done while iterating. The markers are dropped when
+ * the table is rebuilt.
+ *
+ * This map does not allow <code>null</code> values and is not synchronized.
+ *
+ * @param <V> the type of the values.
+ */
+public class LongHashMap<V>
+{
+    // marks the slots of removed mappings
+    private static final Object REMOVED = new Object();
+
+    private long[]   m_keys;
+    private Object[] m_values;   // null for free slots
+    private int      m_size;
+    private int      m_used;     // mappings and removed markers
+    private int      m_modCount;
+
+    public LongHashMap()
+    {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize the number of mappings that the map should hold
+     * without growing.
+     */
+    public LongHashMap(int expectedSize)
+    {
+        int capacity = 8;
+        while (capacity < 2 * expectedSize)
+        {
+            capacity *= 2;
+        }
+
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+    }
+
+    /**
+     * @return the value of given key or <code>null</code> if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int slot = find(key);
+        return slot >= 0 ? (V)m_values[slot] : null;
+    }
+
+    public boolean containsKey(long key)
+    {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @return the previous value of given key or <code>null</code> if there
+     * was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        if (value == null)
+            throw new IllegalArgumentException("Value can't be null"); //$NON-NLS-1$
+
+        int mask = m_keys.length - 1;
+        int slot = hash(key) & mask;
+        int free = -1;
+        while (m_values[slot] != null)
+        {
+            if (m_values[slot] == REMOVED)
+            {
+                if (free < 0)
+                    free = slot;
+            }
+            else if (m_keys[slot] == key)
+            {
+                V old = (V)m_values[slot];
+                m_values[slot] = value;
+                return old;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        // reuse the first removed slot on the way
+        if (free < 0)
+        {
+            free = slot;
+            m_used++;
+        }
+
+        m_keys[free] = key;
+        m_values[free] = value;
+        m_size++;
+        m_modCount++;
+
+        if (4 * m_used > 3 * m_keys.length)
+            rebuild();
+
+        return null;
+    }
+
+    /**
+     * @return the removed value or <code>null</code> if given key had none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int slot = find(key);
+        if (slot < 0)
+            return null;
+
+        V old = (V)m_values[slot];
+        removeSlot(slot);
+        return old;
+    }
+
+    public int size()
+    {
+        return m_size;
+    }
+
+    public boolean isEmpty()
+    {
+        return m_size == 0;
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < m_values.length; i++)
+        {
+            m_values[i] = null;
+        }
+
+        m_size = 0;
+        m_used = 0;
+        m_modCount++;
+    }
+
+    /**
+     * @return a view of the values of this map in no particular order. Its
+     * iterator supports removing.
+     */
+    public Collection<V> values()
+    {
+        return new AbstractCollection<V>() {
+            public Iterator<V> iterator()
+            {
+                return new ValueIterator();
+            }
+
+            public int size()
+            {
+                return m_size;
+            }
+        };
+    }
+
+    private class ValueIterator implements Iterator<V>
+    {
+        private int m_next = nextSlot(0);
+        private int m_last = -1;
+        private int m_expectedModCount = m_modCount;
+
+        public boolean hasNext()
+        {
+            return m_next < m_values.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V next()
+        {
+            if (m_modCount != m_expectedModCount)
+                throw new ConcurrentModificationException();
+
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            m_last = m_next;
+            m_next = nextSlot(m_next + 1);
+            return (V)m_values[m_last];
+        }
+
+        public void remove()
+        {
+            if (m_last < 0)
+                throw new IllegalStateException();
+
+            if (m_modCount != m_expectedModCount)
+                throw new ConcurrentModificationException();
+
+            removeSlot(m_last);
+            m_expectedModCount = m_modCount;
+            m_last = -1;
+        }
+    }
+
+    /**
+     * @return the first slot from given one on that holds a mapping or the
+     * length of the table if there is none.
+     */
+    private int nextSlot(int slot)
+    {
+        while (slot < m_values.length &&
+            (m_values[slot] == null || m_values[slot] == REMOVED))
+        {
+            slot++;
+        }
+
+        return slot;
+    }
+
+    /**
+     * @return the slot of given key or -1 if it has no value.
+     */
+    private int find(long key)
+    {
+        int mask = m_keys.length - 1;
+        int slot = hash(key) & mask;
+        while (m_values[slot] != null)
+        {
+            if (m_keys[slot] == key && m_values[slot] != REMOVED)
+                return slot;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void removeSlot(int slot)
+    {
+        m_values[slot] = REMOVED;
+        m_size--;
+        m_modCount++;
+    }
+
+    /**
+     * Copies the mappings to a new table without the removed markers, which
+     * is twice as large unless most of the used slots were removed ones.
+     */
+    private void rebuild()
+    {
+        long[] keys = m_keys;
+        Object[] values = m_values;
+
+        int capacity = 4 * m_size >= keys.length ? 2 * keys.length : keys.length;
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+        m_used = m_size;
+
+        int mask = capacity - 1;
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (values[i] == null || values[i] == REMOVED)
+                continue;
+
+            int slot = hash(keys[i]) & mask;
+            while (m_values[slot] != null)
+            {
+                slot = (slot + 1) & mask;
+            }
+
+            m_keys[slot] = keys[i];
+            m_values[slot] = values[i];
+        }
+    }
+
+    /**
+     * Keeps consecutive keys, like the ids of cards, in consecutive slots,
+     * so that dense keys don't collide, and spreads the higher bits like
+     * {@link java.util.HashMap} does.
+     */
+    private static int hash(long key)
+    {
+        int hash = (int)(key ^ (key >>> 32));
+        return hash ^ (hash >>> 16);
+    }
+}